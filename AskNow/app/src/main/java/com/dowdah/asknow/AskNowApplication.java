@@ -106,7 +106,7 @@ public class AskNowApplication extends Application implements LifecycleEventObse
     
     /**
      * 应用进入后台时调用
-     * 断开连接以节省资源
+     * WebSocket 保持一段时间后再断开以节省资源
      */
     private void onAppBackground() {
         try {
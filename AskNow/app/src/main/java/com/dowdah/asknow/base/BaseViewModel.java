@@ -31,8 +31,7 @@ public abstract class BaseViewModel extends AndroidViewModel {
     protected final MutableLiveData<String> errorMessage = new MutableLiveData<>();
     protected final MutableLiveData<Boolean> loading = new MutableLiveData<>(false);
     
-    // 分页相关字段（子类可选使用）
-    protected int currentPage = 1;
+    // 分页相关字段（子类可选使用，分页位置由仓库按游标维护）
     protected final MutableLiveData<Boolean> isLoadingMore = new MutableLiveData<>(false);
     protected final MutableLiveData<Boolean> hasMoreData = new MutableLiveData<>(true);
     protected final MutableLiveData<Boolean> isSyncing = new MutableLiveData<>(false);
@@ -114,35 +113,9 @@ public abstract class BaseViewModel extends AndroidViewModel {
      * 重置分页状态
      */
     protected void resetPaginationState() {
-        currentPage = 1;
         hasMoreData.postValue(true);
     }
     
-    /**
-     * 增加页码
-     */
-    protected void incrementPage() {
-        currentPage++;
-    }
-    
-    /**
-     * 减少页码（用于加载失败时恢复）
-     */
-    protected void decrementPage() {
-        if (currentPage > 1) {
-            currentPage--;
-        }
-    }
-    
-    /**
-     * 获取当前页码
-     * 
-     * @return 当前页码
-     */
-    protected int getCurrentPage() {
-        return currentPage;
-    }
-    
     /**
      * 在后台线程执行任务
      * 
@@ -28,11 +28,6 @@ public final class AppConstants {
      */
     public static final int MAX_MESSAGES_PAGE_SIZE = 200;
     
-    /**
-     * 默认起始页码
-     */
-    public static final int DEFAULT_START_PAGE = 1;
-    
     // ==================== 重试相关 ====================
     
     /**
@@ -53,20 +48,113 @@ public final class AppConstants {
     // ==================== WebSocket相关 ====================
     
     /**
-     * WebSocket退避延迟数组（毫秒）
+     * WebSocket重连最小延迟（毫秒）
      */
-    public static final int[] WEBSOCKET_BACKOFF_DELAYS = {1000, 2000, 4000, 8000, 16000, 30000};
+    public static final long WEBSOCKET_RECONNECT_BASE_DELAY_MS = 1000;
     
     /**
-     * WebSocket最大重连次数
+     * WebSocket重连最大延迟（毫秒），自动重连不设次数上限
      */
-    public static final int WEBSOCKET_MAX_RETRY_COUNT = 10;
+    public static final long WEBSOCKET_RECONNECT_MAX_DELAY_MS = 30000;
     
     /**
      * WebSocket正常关闭代码
      */
     public static final int WEBSOCKET_NORMAL_CLOSURE_CODE = 1000;
     
+    /**
+     * WebSocket保活探测间隔下限（毫秒），探测丢失时间隔减半，不低于该值
+     */
+    public static final long WEBSOCKET_KEEPALIVE_MIN_INTERVAL_MS = 10000;
+    
+    /**
+     * 计流量网络（蜂窝）的保活探测间隔上限（毫秒），低于常见运营商 NAT 的空闲回收时间
+     */
+    public static final long WEBSOCKET_KEEPALIVE_METERED_MAX_INTERVAL_MS = 25000;
+    
+    /**
+     * 不计流量网络（Wi-Fi）的保活探测间隔上限（毫秒），连接稳定时逐步放大以减少射频唤醒
+     */
+    public static final long WEBSOCKET_KEEPALIVE_UNMETERED_MAX_INTERVAL_MS = 120000;
+    
+    /**
+     * 尚无RTT样本时的探测超时（毫秒）
+     */
+    public static final long WEBSOCKET_PROBE_INITIAL_TIMEOUT_MS = 3000;
+    
+    /**
+     * 探测超时下限（毫秒）
+     */
+    public static final long WEBSOCKET_PROBE_MIN_TIMEOUT_MS = 1000;
+    
+    /**
+     * 探测超时上限（毫秒）
+     */
+    public static final long WEBSOCKET_PROBE_MAX_TIMEOUT_MS = 10000;
+    
+    /**
+     * 连续丢失多少个探测判定为僵尸连接
+     */
+    public static final int WEBSOCKET_ZOMBIE_PROBE_LOSSES = 2;
+    
+    /**
+     * 应用进入后台后保持WebSocket连接的时间（毫秒）
+     * 期间推送照常写入数据库，在此之内回到前台无需重新连接；超时后断开，回到前台时增量续传
+     */
+    public static final long WEBSOCKET_BACKGROUND_GRACE_MS = 60000;
+    
+    /**
+     * WebSocket入站消息批处理窗口（毫秒）
+     * 窗口内收到的推送合并为一个数据库事务写入
+     */
+    public static final long WEBSOCKET_INGEST_WINDOW_MS = 50;
+    
+    /**
+     * WebSocket入站消息单批最大数量，达到后立即写入，不再等待窗口结束
+     */
+    public static final int WEBSOCKET_INGEST_MAX_BATCH_SIZE = 64;
+    
+    /**
+     * WebSocket入站消息待处理上限
+     * 超过后先合并同一问题的状态更新，仍无法容纳时丢弃待处理的帧并从已提交的位置重新续传
+     */
+    public static final int WEBSOCKET_INGEST_CAPACITY = 1024;
+    
+    /**
+     * WebSocket事件总线每个帧订阅者的缓冲区容量
+     */
+    public static final int WEBSOCKET_EVENT_BUFFER_CAPACITY = 256;
+    
+    /**
+     * 是否优先通过已打开的WebSocket发送聊天消息（连接不可用或未确认时回退到HTTP）
+     */
+    public static final boolean CHAT_SEND_VIA_WEBSOCKET = true;
+    
+    /**
+     * WebSocket上行消息等待ACK的超时时间（毫秒）
+     */
+    public static final long WEBSOCKET_ACK_TIMEOUT_MS = 3000;
+    
+    /**
+     * WebSocket上行消息的最大发送次数（包括第一次），用完后回退到HTTP
+     */
+    public static final int WEBSOCKET_SEND_MAX_ATTEMPTS = 2;
+    
+    /**
+     * WebSocket下行帧编码子协议：MessagePack 二进制帧
+     */
+    public static final String WEBSOCKET_SUBPROTOCOL_MSGPACK = "asknow.msgpack.v1";
+    
+    /**
+     * WebSocket下行帧编码子协议：JSON 文本帧
+     */
+    public static final String WEBSOCKET_SUBPROTOCOL_JSON = "asknow.json.v1";
+    
+    /**
+     * 握手时是否请求 MessagePack 二进制帧（服务端不支持时回退到 JSON 文本帧）
+     */
+    public static final boolean WEBSOCKET_BINARY_CODEC_ENABLED = true;
+    
     // ==================== 文件上传相关 ====================
     
     /**
@@ -106,6 +194,57 @@ public final class AppConstants {
      */
     public static final long SYNC_INITIAL_DELAY_MS = 300;
     
+    /**
+     * 问题列表数据的有效期（毫秒）
+     * 上次同步在有效期内时，页面创建和回到前台直接显示本地数据，不请求服务器；下拉刷新不受限制
+     */
+    public static final long QUESTIONS_SYNC_TTL_MS = 60 * 1000L;
+    
+    /**
+     * 消息完整校对间隔（毫秒）
+     * 平时只拉取每个问题最大消息ID之后的新消息，超过该间隔后做一次全量拉取，删除服务端已不存在的消息
+     */
+    public static final long MESSAGE_VERIFY_INTERVAL_MS = 24 * 60 * 60 * 1000L;
+    
+    /**
+     * 批量获取消息时每次请求最多的问题数（与服务端 MAX_BATCH_QUESTIONS 一致）
+     */
+    public static final int MESSAGE_BATCH_MAX_QUESTIONS = 100;
+    
+    /**
+     * 问题列表同步时最多预取消息的问题数
+     * 只预取正在查看的问题和有未读消息的进行中问题，其余问题打开时再拉取
+     */
+    public static final int MESSAGE_PREFETCH_MAX_QUESTIONS = 5;
+    
+    /**
+     * 同步消息时每个数据库事务最多写入的消息数
+     * 响应体在事务之外读取，每个问题按此大小分块写入，避免慢速网络长时间占用写锁
+     */
+    public static final int MESSAGE_WRITE_CHUNK_SIZE = 100;
+    
+    /**
+     * 同时在途的后台同步请求上限
+     * 低于 OkHttp 对同一主机的默认并发上限（5），为界面操作的请求保留名额
+     */
+    public static final int SYNC_MAX_CONCURRENT_REQUESTS = 2;
+    
+    /**
+     * 写入去重过滤器每种实体（消息、问题）最多记录的行数
+     */
+    public static final int WRITE_DEDUP_CAPACITY = 4096;
+    
+    /**
+     * HTTP 磁盘缓存目录名（位于应用缓存目录下）
+     */
+    public static final String HTTP_CACHE_DIR = "http_cache";
+    
+    /**
+     * HTTP 磁盘缓存大小（字节）
+     * 列表接口带 ETag，缓存的响应用于条件请求，服务端返回 304 时不再下载响应体
+     */
+    public static final long HTTP_CACHE_SIZE_BYTES = 10L * 1024 * 1024;
+    
     // ==================== UI相关 ====================
     
     /**
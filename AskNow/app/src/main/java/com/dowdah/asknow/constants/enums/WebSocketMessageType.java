@@ -40,6 +40,31 @@ public final class WebSocketMessageType {
      */
     public static final String NEW_ANSWER = "NEW_ANSWER";
     
+    /**
+     * 重连握手完成消息（携带服务端纪元和当前事件序号）
+     */
+    public static final String RESUME = "RESUME";
+    
+    /**
+     * 连接质量探测（客户端发送，messageId 为探测编号）
+     */
+    public static final String PING = "PING";
+    
+    /**
+     * 探测回复（服务端原样返回 PING 的 messageId）
+     */
+    public static final String PONG = "PONG";
+    
+    /**
+     * 订阅主题（客户端发送，data.topics 为主题列表）
+     */
+    public static final String SUBSCRIBE = "SUBSCRIBE";
+    
+    /**
+     * 取消订阅主题（客户端发送，data.topics 为主题列表）
+     */
+    public static final String UNSUBSCRIBE = "UNSUBSCRIBE";
+    
     // Private constructor to prevent instantiation
     private WebSocketMessageType() {
         throw new AssertionError("Cannot instantiate constants class");
@@ -1,10 +1,12 @@
 package com.dowdah.asknow.data.api;
 
+import com.dowdah.asknow.data.model.BatchMessagesRequest;
 import com.dowdah.asknow.data.model.LoginRequest;
 import com.dowdah.asknow.data.model.LoginResponse;
 import com.dowdah.asknow.data.model.MessageRequest;
 import com.dowdah.asknow.data.model.MessageResponse;
 import com.dowdah.asknow.data.model.MessagesListResponse;
+import com.dowdah.asknow.data.model.QuestionChangesResponse;
 import com.dowdah.asknow.data.model.QuestionRequest;
 import com.dowdah.asknow.data.model.QuestionResponse;
 import com.dowdah.asknow.data.model.QuestionsListResponse;
@@ -14,6 +16,7 @@ import com.dowdah.asknow.data.model.UploadResponse;
 import com.google.gson.JsonObject;
 
 import okhttp3.MultipartBody;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.GET;
@@ -22,6 +25,7 @@ import retrofit2.http.Multipart;
 import retrofit2.http.POST;
 import retrofit2.http.Part;
 import retrofit2.http.Query;
+import retrofit2.http.Streaming;
 
 public interface ApiService {
     
@@ -31,11 +35,21 @@ public interface ApiService {
     @POST("api/login")
     Call<LoginResponse> login(@Body LoginRequest request);
     
+    // 游标分页：cursor 取自上一页的 nextCursor，第一页传 null
     @GET("api/questions")
     Call<QuestionsListResponse> getQuestions(
         @Header("Authorization") String token,
         @Query("status") String status,
-        @Query("page") int page,
+        @Query("cursor") String cursor,
+        @Query("page_size") int pageSize
+    );
+    
+    // 增量同步：获取游标 (updatedSince, sinceId) 之后变化的问题和被删除的问题ID
+    @GET("api/questions")
+    Call<QuestionChangesResponse> getQuestionChanges(
+        @Header("Authorization") String token,
+        @Query("updated_since") long updatedSince,
+        @Query("since_id") long sinceId,
         @Query("page_size") int pageSize
     );
     
@@ -62,10 +76,19 @@ public interface ApiService {
     Call<MessagesListResponse> getMessages(
         @Header("Authorization") String token,
         @Query("questionId") long questionId,
-        @Query("page") int page,
+        @Query("cursor") String cursor,
         @Query("page_size") int pageSize
     );
     
+    // 批量增量获取多个问题的消息，按问题分组返回（结构见 API_REFERENCE.md「批量获取消息」）；
+    // 响应体不缓冲，由 QuestionRepository 边读边分块写入数据库
+    @Streaming
+    @POST("api/messages/batch")
+    Call<ResponseBody> getMessagesBatch(
+        @Header("Authorization") String token,
+        @Body BatchMessagesRequest request
+    );
+    
     @POST("api/messages/mark-read")
     Call<JsonObject> markMessagesAsRead(
         @Header("Authorization") String token,
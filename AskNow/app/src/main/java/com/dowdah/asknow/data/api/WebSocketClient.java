@@ -2,31 +2,93 @@ package com.dowdah.asknow.data.api;
 
 import android.util.Log;
 
+import com.dowdah.asknow.constants.AppConstants;
+import com.dowdah.asknow.constants.enums.WebSocketMessageType;
 import com.dowdah.asknow.data.model.WebSocketMessage;
+import com.dowdah.asknow.data.websocket.ConnectionQuality;
+import com.dowdah.asknow.data.websocket.ConnectionQualityMonitor;
+import com.dowdah.asknow.data.websocket.ReconnectBackoff;
+import com.dowdah.asknow.data.websocket.WebSocketFrame;
+import com.dowdah.asknow.data.websocket.WebSocketFrameDecoder;
 import com.google.gson.Gson;
 
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.WebSocket;
 import okhttp3.WebSocketListener;
+import okio.ByteString;
 
 /**
  * WebSocket客户端
  * 管理WebSocket连接，提供自动重连功能
+ * 
+ * 重连由一个状态机统一管理，运行在注入的定时任务线程池上：
+ * - IDLE：尚未连接
+ * - CONNECTING：握手中
+ * - CONNECTED：已连接
+ * - BACKOFF：连接断开，等待去相关抖动退避后重连
+ * - WAITING_NETWORK：没有网络，暂停重连，网络恢复后立即重连
+ * - CLOSED：手动断开，不再重连
+ * 
+ * 自动重连不设上限，只有手动断开才会停止。
+ * 
+ * 握手时通过 Sec-WebSocket-Protocol 请求 MessagePack 二进制帧，服务端不支持时收到的是 JSON 文本帧，
+ * 两种帧都交给同一个解码器。permessage-deflate 由 OkHttp 在握手中自动协商。
+ * 
+ * 保活由应用层探测完成（{@link ConnectionQualityMonitor}）：连接建立后按自适应间隔发送 PING，
+ * 服务端回复 PONG；探测连续超时判定为僵尸连接，直接取消连接并进入重连流程。
  */
 public class WebSocketClient {
     private static final String TAG = "WebSocketClient";
-    private static final int[] BACKOFF_DELAYS = com.dowdah.asknow.constants.AppConstants.WEBSOCKET_BACKOFF_DELAYS;
-    private static final int MAX_RETRY_COUNT = com.dowdah.asknow.constants.AppConstants.WEBSOCKET_MAX_RETRY_COUNT;
+    private static final Gson GSON = new Gson();
+    
+    /**
+     * 连接状态
+     */
+    public enum State {
+        IDLE,
+        CONNECTING,
+        CONNECTED,
+        BACKOFF,
+        WAITING_NETWORK,
+        CLOSED
+    }
     
-    private WebSocket webSocket;
     private final OkHttpClient client;
-    private final String url;
+    private final Supplier<String> urlSupplier;
+    private final WebSocketFrameDecoder decoder;
     private final WebSocketCallback callback;
-    private int retryCount = 0;
-    private boolean isManuallyDisconnected = false;
-    private Thread reconnectThread;
+    private final ScheduledExecutorService scheduler;
+    private final BooleanSupplier networkAvailable;
+    private final BooleanSupplier networkUnmetered;
+    private final ReconnectBackoff backoff = new ReconnectBackoff(
+        AppConstants.WEBSOCKET_RECONNECT_BASE_DELAY_MS,
+        AppConstants.WEBSOCKET_RECONNECT_MAX_DELAY_MS,
+        new Random()
+    );
+    
+    // 以下字段由 this 锁保护
+    private WebSocket webSocket;
+    private State state = State.IDLE;
+    private ScheduledFuture<?> pendingReconnect;
+    private ScheduledFuture<?> pendingProbe;
+    private final ConnectionQualityMonitor qualityMonitor = new ConnectionQualityMonitor(
+        AppConstants.WEBSOCKET_KEEPALIVE_MIN_INTERVAL_MS,
+        AppConstants.WEBSOCKET_KEEPALIVE_METERED_MAX_INTERVAL_MS,
+        AppConstants.WEBSOCKET_KEEPALIVE_UNMETERED_MAX_INTERVAL_MS,
+        AppConstants.WEBSOCKET_PROBE_INITIAL_TIMEOUT_MS,
+        AppConstants.WEBSOCKET_PROBE_MIN_TIMEOUT_MS,
+        AppConstants.WEBSOCKET_PROBE_MAX_TIMEOUT_MS,
+        AppConstants.WEBSOCKET_ZOMBIE_PROBE_LOSSES
+    );
     
     /**
      * WebSocket回调接口
@@ -38,11 +100,11 @@ public class WebSocketClient {
         void onConnected();
         
         /**
-         * 收到消息时回调
+         * 收到消息时回调（非法帧已在解码阶段丢弃）
          * 
-         * @param message WebSocket消息
+         * @param frame 已解码的WebSocket帧
          */
-        void onMessage(WebSocketMessage message);
+        void onMessage(WebSocketFrame frame);
         
         /**
          * 连接断开时回调
@@ -55,148 +117,365 @@ public class WebSocketClient {
          * @param error 错误信息
          */
         void onError(Throwable error);
+        
+        /**
+         * 每次探测结束（收到回复或超时）时回调
+         * 
+         * @param quality 最新的连接质量
+         */
+        void onQualityChanged(ConnectionQuality quality);
     }
     
-    public WebSocketClient(OkHttpClient client, String url, WebSocketCallback callback) {
+    /**
+     * @param client OkHttp客户端
+     * @param urlSupplier 每次连接（包括自动重连）时获取连接地址，地址中携带最新的续传位置
+     * @param decoder 帧解码器
+     * @param scheduler 定时任务线程池，用于调度延迟重连
+     * @param networkAvailable 查询当前是否有网络，没有网络时暂停重连
+     * @param networkUnmetered 查询当前网络是否不计流量，决定保活间隔的上限
+     * @param callback 回调
+     */
+    public WebSocketClient(OkHttpClient client, Supplier<String> urlSupplier, WebSocketFrameDecoder decoder,
+                           ScheduledExecutorService scheduler, BooleanSupplier networkAvailable,
+                           BooleanSupplier networkUnmetered, WebSocketCallback callback) {
         this.client = client;
-        this.url = url;
+        this.urlSupplier = urlSupplier;
+        this.decoder = decoder;
+        this.scheduler = scheduler;
+        this.networkAvailable = networkAvailable;
+        this.networkUnmetered = networkUnmetered;
         this.callback = callback;
     }
     
-    public void connect() {
-        if (webSocket != null) {
+    public synchronized void connect() {
+        if (state == State.CONNECTING || state == State.CONNECTED) {
             Log.d(TAG, "WebSocket already connected");
             return;
         }
-        
+        cancelPendingReconnect();
+        openSocket();
+    }
+    
+    /**
+     * 建立新连接（调用方持有 this 锁）
+     */
+    private void openSocket() {
+        String url = urlSupplier.get();
         Log.d(TAG, "Connecting to WebSocket: " + url);
-        isManuallyDisconnected = false;
+        state = State.CONNECTING;
         
-        Request request = new Request.Builder()
-                .url(url)
-                .build();
+        Request.Builder builder = new Request.Builder()
+                .url(url);
+        if (AppConstants.WEBSOCKET_BINARY_CODEC_ENABLED) {
+            builder.header("Sec-WebSocket-Protocol",
+                AppConstants.WEBSOCKET_SUBPROTOCOL_MSGPACK + ", " + AppConstants.WEBSOCKET_SUBPROTOCOL_JSON);
+        }
+        Request request = builder.build();
         
         webSocket = client.newWebSocket(request, new WebSocketListener() {
             @Override
             public void onOpen(WebSocket webSocket, Response response) {
-                Log.d(TAG, "WebSocket connected");
-                retryCount = 0;
+                synchronized (WebSocketClient.this) {
+                    if (webSocket != WebSocketClient.this.webSocket) {
+                        return;
+                    }
+                    state = State.CONNECTED;
+                    backoff.reset();
+                    qualityMonitor.reset(networkUnmetered.getAsBoolean());
+                    // 服务端在补发完成后才处理上行帧，第一次探测等一个保活间隔，避免把补发耗时计入 RTT
+                    scheduleProbe(webSocket, qualityMonitor.getKeepAliveIntervalMs());
+                }
+                String protocol = response.header("Sec-WebSocket-Protocol");
+                String extensions = response.header("Sec-WebSocket-Extensions");
+                Log.d(TAG, "WebSocket connected (protocol=" + (protocol != null ? protocol : "default")
+                    + ", extensions=" + (extensions != null ? extensions : "none") + ")");
                 callback.onConnected();
             }
             
             @Override
             public void onMessage(WebSocket webSocket, String text) {
-                Log.d(TAG, "Received message: " + text);
-                try {
-                    Gson gson = new Gson();
-                    WebSocketMessage message = gson.fromJson(text, WebSocketMessage.class);
-                    callback.onMessage(message);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error parsing message", e);
+                if (!isCurrent(webSocket)) {
+                    return;
+                }
+                // 只记录长度，避免在消息突发时为日志拼接完整帧文本
+                Log.d(TAG, "Received frame (" + text.length() + " chars)");
+                WebSocketFrame frame = decoder.decode(text);
+                if (frame != null) {
+                    dispatch(webSocket, frame);
+                }
+            }
+            
+            @Override
+            public void onMessage(WebSocket webSocket, ByteString bytes) {
+                if (!isCurrent(webSocket)) {
+                    return;
+                }
+                Log.d(TAG, "Received binary frame (" + bytes.size() + " bytes)");
+                WebSocketFrame frame = decoder.decodeBinary(bytes.toByteArray());
+                if (frame != null) {
+                    dispatch(webSocket, frame);
                 }
             }
             
             @Override
             public void onClosing(WebSocket webSocket, int code, String reason) {
                 Log.d(TAG, "WebSocket closing: " + reason);
-                webSocket.close(com.dowdah.asknow.constants.AppConstants.WEBSOCKET_NORMAL_CLOSURE_CODE, null);
+                webSocket.close(AppConstants.WEBSOCKET_NORMAL_CLOSURE_CODE, null);
             }
             
             @Override
             public void onClosed(WebSocket webSocket, int code, String reason) {
                 Log.d(TAG, "WebSocket closed: " + reason);
-                WebSocketClient.this.webSocket = null;
-                callback.onDisconnected();
-                
-                if (!isManuallyDisconnected) {
-                    reconnect();
+                if (onSocketLost(webSocket)) {
+                    callback.onDisconnected();
                 }
             }
             
             @Override
             public void onFailure(WebSocket webSocket, Throwable t, Response response) {
                 Log.e(TAG, "WebSocket error", t);
-                WebSocketClient.this.webSocket = null;
-                callback.onError(t);
-                callback.onDisconnected();
-                
-                if (!isManuallyDisconnected) {
-                    reconnect();
+                if (onSocketLost(webSocket)) {
+                    callback.onError(t);
+                    callback.onDisconnected();
                 }
             }
         });
     }
     
-    public void disconnect() {
-        isManuallyDisconnected = true;
-        
-        // 中断待处理的重连线程
-        if (reconnectThread != null && reconnectThread.isAlive()) {
-            reconnectThread.interrupt();
-            reconnectThread = null;
-            Log.d(TAG, "Reconnect thread interrupted");
+    /**
+     * PONG 由连接质量监测处理，其他帧交给回调
+     */
+    private void dispatch(WebSocket socket, WebSocketFrame frame) {
+        if (!WebSocketMessageType.PONG.equals(frame.getType())) {
+            callback.onMessage(frame);
+            return;
+        }
+        ConnectionQuality quality;
+        synchronized (this) {
+            if (socket != webSocket || !qualityMonitor.onPong(frame.getMessageId(), nowMs())) {
+                return;
+            }
+            quality = qualityMonitor.snapshot();
+            cancelPendingProbe();
+            scheduleProbe(socket, quality.getKeepAliveIntervalMs());
+        }
+        Log.d(TAG, "Connection quality: " + quality);
+        callback.onQualityChanged(quality);
+    }
+    
+    /**
+     * 发送一次探测并安排超时检查（调用方持有 this 锁）
+     */
+    private void sendProbe(WebSocket socket) {
+        pendingProbe = null;
+        if (socket != webSocket || state != State.CONNECTED) {
+            return;
+        }
+        long now = nowMs();
+        String probeId = qualityMonitor.startProbe(now);
+        socket.send(GSON.toJson(new WebSocketMessage(WebSocketMessageType.PING, null, String.valueOf(now), probeId)));
+        pendingProbe = scheduler.schedule(() -> onProbeTimeout(socket, probeId),
+            qualityMonitor.getProbeTimeoutMs(), TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * 安排下一次探测，在定时任务线程执行（调用方持有 this 锁）
+     */
+    private void scheduleProbe(WebSocket socket, long delayMs) {
+        pendingProbe = scheduler.schedule(() -> {
+            synchronized (WebSocketClient.this) {
+                sendProbe(socket);
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * 探测超时（在定时任务线程执行）：未达到僵尸阈值时立即重新探测，否则取消连接
+     */
+    private void onProbeTimeout(WebSocket socket, String probeId) {
+        ConnectionQuality quality;
+        boolean zombie;
+        synchronized (this) {
+            if (socket != webSocket) {
+                return;
+            }
+            pendingProbe = null;
+            zombie = qualityMonitor.onProbeTimeout(probeId);
+            quality = qualityMonitor.snapshot();
+            if (!zombie) {
+                sendProbe(socket);
+            }
+        }
+        Log.w(TAG, "Probe " + probeId + " timed out (" + quality + ")");
+        callback.onQualityChanged(quality);
+        if (zombie) {
+            // 僵尸连接收不到关闭握手，直接取消，onFailure 会进入重连流程
+            Log.w(TAG, "Zombie connection detected, cancelling socket");
+            socket.cancel();
+        }
+    }
+    
+    private void cancelPendingProbe() {
+        if (pendingProbe != null) {
+            pendingProbe.cancel(false);
+            pendingProbe = null;
+        }
+    }
+    
+    private static long nowMs() {
+        return System.nanoTime() / 1_000_000;
+    }
+    
+    /**
+     * @return true 表示是当前连接；被 {@link #restart()} 替换后旧连接上仍在读取的帧应丢弃
+     */
+    private synchronized boolean isCurrent(WebSocket socket) {
+        return socket == webSocket;
+    }
+    
+    /**
+     * 当前连接断开，进入退避或等待网络状态
+     * 
+     * @param socket 断开的连接
+     * @return true 表示是当前连接断开；已被替换或手动断开的旧连接返回 false
+     */
+    private synchronized boolean onSocketLost(WebSocket socket) {
+        if (socket != webSocket) {
+            return false;
+        }
+        webSocket = null;
+        cancelPendingProbe();
+        scheduleReconnect();
+        return true;
+    }
+    
+    /**
+     * 安排下一次重连（调用方持有 this 锁）
+     */
+    private void scheduleReconnect() {
+        if (!networkAvailable.getAsBoolean()) {
+            Log.d(TAG, "No network, waiting for connectivity before reconnecting");
+            state = State.WAITING_NETWORK;
+            return;
+        }
+        long delay = backoff.nextDelayMs();
+        state = State.BACKOFF;
+        Log.d(TAG, "Reconnecting in " + delay + "ms (attempt " + backoff.getAttempts() + ")");
+        pendingReconnect = scheduler.schedule(this::reconnectNow, delay, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * 退避结束，发起重连（在定时任务线程执行）
+     */
+    private synchronized void reconnectNow() {
+        pendingReconnect = null;
+        if (state != State.BACKOFF) {
+            return;
+        }
+        openSocket();
+    }
+    
+    /**
+     * 网络恢复时调用：跳过剩余的退避时间立即重连
+     */
+    public synchronized void onNetworkAvailable() {
+        if (state != State.BACKOFF && state != State.WAITING_NETWORK) {
+            return;
+        }
+        Log.d(TAG, "Network available, reconnecting immediately");
+        cancelPendingReconnect();
+        backoff.reset();
+        openSocket();
+    }
+    
+    /**
+     * 网络断开时调用：取消待执行的重连，等待网络恢复
+     * 
+     * 已建立的连接不主动关闭，由 OkHttp 在读写失败时回调 onFailure
+     */
+    public synchronized void onNetworkLost() {
+        if (state != State.BACKOFF) {
+            return;
         }
+        Log.d(TAG, "Network lost, pausing reconnection");
+        cancelPendingReconnect();
+        state = State.WAITING_NETWORK;
+    }
+    
+    public synchronized void disconnect() {
+        state = State.CLOSED;
+        cancelPendingReconnect();
+        cancelPendingProbe();
         
         if (webSocket != null) {
-            webSocket.close(com.dowdah.asknow.constants.AppConstants.WEBSOCKET_NORMAL_CLOSURE_CODE, "Manual disconnect");
+            WebSocket socket = webSocket;
+            // 先置空，使旧连接的 onClosed 回调被忽略
             webSocket = null;
+            socket.close(AppConstants.WEBSOCKET_NORMAL_CLOSURE_CODE, "Manual disconnect");
+        }
+    }
+    
+    /**
+     * 丢弃当前连接并立即重新建立连接
+     * 
+     * 用于本地无法跟上推送速度时从已提交的位置重新续传：新连接的地址由 urlSupplier 重新生成，
+     * 旧连接的后续帧和断开回调都会被忽略。已手动断开时不做任何事。
+     */
+    public synchronized void restart() {
+        if (state == State.CLOSED) {
+            return;
+        }
+        cancelPendingReconnect();
+        cancelPendingProbe();
+        if (webSocket != null) {
+            WebSocket socket = webSocket;
+            webSocket = null;
+            socket.close(AppConstants.WEBSOCKET_NORMAL_CLOSURE_CODE, "Resync");
+        }
+        Log.d(TAG, "Restarting WebSocket to resync");
+        openSocket();
+    }
+    
+    private void cancelPendingReconnect() {
+        if (pendingReconnect != null) {
+            pendingReconnect.cancel(false);
+            pendingReconnect = null;
         }
     }
     
-    public void sendMessage(WebSocketMessage message) {
+    /**
+     * 发送一帧
+     * 
+     * @param message 消息
+     * @return true 表示已交给 OkHttp 的发送队列；未连接或连接正在关闭时返回 false
+     */
+    public synchronized boolean sendMessage(WebSocketMessage message) {
         if (webSocket != null) {
-            Gson gson = new Gson();
-            String json = gson.toJson(message);
-            webSocket.send(json);
-            Log.d(TAG, "Sent message: " + json);
+            String json = GSON.toJson(message);
+            boolean queued = webSocket.send(json);
+            Log.d(TAG, "Sent message: " + message.getType() + (queued ? "" : " (rejected)"));
+            return queued;
         } else {
             Log.w(TAG, "Cannot send message: WebSocket not connected");
+            return false;
         }
     }
     
-    public boolean isConnected() {
+    /**
+     * @return true 表示已连接或正在握手
+     */
+    public synchronized boolean isConnected() {
         return webSocket != null;
     }
     
-    private void reconnect() {
-        // 检查是否超过最大重连次数
-        if (retryCount >= MAX_RETRY_COUNT) {
-            Log.e(TAG, "Max retry count reached. Giving up reconnection.");
-            callback.onError(new Exception("Max retry count reached"));
-            return;
-        }
-        
-        // 取消之前的重连线程（如果存在）
-        if (reconnectThread != null && reconnectThread.isAlive()) {
-            reconnectThread.interrupt();
-        }
-        
-        int delay = BACKOFF_DELAYS[Math.min(retryCount, BACKOFF_DELAYS.length - 1)];
-        Log.d(TAG, "Reconnecting in " + delay + "ms (attempt " + (retryCount + 1) + "/" + MAX_RETRY_COUNT + ")");
-        
-        retryCount++;
-        
-        // 使用新线程处理延迟重连，避免阻塞 WebSocket 回调线程
-        reconnectThread = new Thread(() -> {
-            try {
-                Thread.sleep(delay);
-                if (!isManuallyDisconnected) {
-                    connect();
-                }
-            } catch (InterruptedException e) {
-                Log.d(TAG, "Reconnect cancelled due to interrupt");
-                Thread.currentThread().interrupt();
-            }
-        });
-        reconnectThread.start();
+    public synchronized State getState() {
+        return state;
     }
     
     /**
-     * 重置重连计数器
-     * 当手动重连时使用
+     * @return 当前连接质量
      */
-    public void resetRetryCount() {
-        retryCount = 0;
+    public synchronized ConnectionQuality getConnectionQuality() {
+        return qualityMonitor.snapshot();
     }
 }
-
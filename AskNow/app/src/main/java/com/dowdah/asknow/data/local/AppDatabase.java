@@ -5,25 +5,38 @@ import androidx.room.RoomDatabase;
 
 import com.dowdah.asknow.data.local.dao.MessageDao;
 import com.dowdah.asknow.data.local.dao.QuestionDao;
+import com.dowdah.asknow.data.local.dao.SyncStateDao;
 import com.dowdah.asknow.data.local.entity.MessageEntity;
 import com.dowdah.asknow.data.local.entity.QuestionEntity;
+import com.dowdah.asknow.data.local.entity.SyncStateEntity;
 
 /**
  * 应用数据库
  * 
  * 版本 8：移除 PendingMessageEntity 和 PendingMessageDao
  * 原因：不再通过 WebSocket 发送消息，改用 HTTP API
+ * 
+ * 版本 9：添加 SyncStateEntity（sync_state 表）
+ * 原因：问题列表改为按 updatedAt 游标增量同步
+ * 
+ * 版本 10：sync_state 表添加 lastVerifiedAt 列
+ * 原因：消息按最大消息ID增量同步，定期完整校对
+ * 
+ * 版本 11：questions 表添加未读数和最后一条消息摘要
+ * 原因：问题列表只同步问题和摘要，消息在打开聊天时再加载
  */
 @Database(
     entities = {
         QuestionEntity.class,
-        MessageEntity.class
+        MessageEntity.class,
+        SyncStateEntity.class
     },
-    version = 8,
+    version = 11,
     exportSchema = false
 )
 public abstract class AppDatabase extends RoomDatabase {
     public abstract QuestionDao questionDao();
     public abstract MessageDao messageDao();
+    public abstract SyncStateDao syncStateDao();
 }
 
@@ -0,0 +1,239 @@
+package com.dowdah.asknow.data.local;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.dowdah.asknow.constants.AppConstants;
+import com.dowdah.asknow.data.local.entity.MessageEntity;
+import com.dowdah.asknow.data.local.entity.QuestionEntity;
+import com.dowdah.asknow.utils.LongFingerprintCache;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * 数据库写入去重过滤器
+ *
+ * 同一条消息会从多条路径到达：HTTP 发送响应、WebSocket 推送、下一次 REST 同步，
+ * 每一份副本都会触发一次 REPLACE 写入和一次界面刷新。过滤器按ID记录最近写入的整行指纹，
+ * 与上次写入完全相同的行直接跳过，不再访问 Room。
+ *
+ * 指纹只代表"通过过滤器写入的最后一份内容"，绕过过滤器修改数据库的操作必须使对应条目失效：
+ * - 按ID修改或删除：{@link #forgetMessage(long)} / {@link #forgetQuestion(long)}
+ * - 批量修改一个问题的消息（如全部标记已读）或问题被删除：{@link #forgetQuestionMessages(long)}
+ * - 问题以 REPLACE 方式写入时，外键级联会删除该问题的消息，{@link #admitQuestionReplace} 会自动使该问题的消息指纹失效
+ * - 放行后写入失败或所在事务回滚：{@link #invalidateQuestions()} / {@link #invalidateMessages()}
+ *
+ * 消息指纹混入所属问题的代次，使一个问题的消息失效只需推进该问题的代次，不影响其他问题的指纹。
+ */
+@Singleton
+public final class WriteDedupFilter {
+    private static final String TAG = "WriteDedupFilter";
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long NULL_MARKER = 0x5bd1e9955bd1e995L;
+
+    private final LongFingerprintCache messages;
+    private final LongFingerprintCache questions;
+    // 问题ID → 消息指纹代次；没有记录的问题为代次 0
+    private final LongFingerprintCache messageGenerations;
+    private long lastGeneration;
+    private long admittedCount;
+    private long skippedMessageCount;
+    private long skippedQuestionCount;
+
+    @Inject
+    public WriteDedupFilter() {
+        this(AppConstants.WRITE_DEDUP_CAPACITY);
+    }
+
+    /**
+     * @param capacity 每种实体最多记录的行数
+     */
+    public WriteDedupFilter(int capacity) {
+        this.messages = new LongFingerprintCache(capacity);
+        this.questions = new LongFingerprintCache(capacity);
+        this.messageGenerations = new LongFingerprintCache(capacity);
+    }
+
+    /**
+     * 写入消息前调用
+     *
+     * @param message 将要写入的消息
+     * @return true 表示需要写入；false 表示与上次写入的内容完全相同，应跳过
+     */
+    public synchronized boolean admitMessage(MessageEntity message) {
+        long fingerprint = fingerprint(message);
+        if (messages.matches(message.getId(), fingerprint)) {
+            skippedMessageCount++;
+            return false;
+        }
+        messages.put(message.getId(), fingerprint);
+        admittedCount++;
+        return true;
+    }
+
+    /**
+     * 以 update 方式写入问题前调用
+     *
+     * @param question 将要写入的问题
+     * @return true 表示需要写入；false 表示与上次写入的内容完全相同，应跳过
+     */
+    public synchronized boolean admitQuestion(QuestionEntity question) {
+        long fingerprint = fingerprint(question);
+        if (questions.matches(question.getId(), fingerprint)) {
+            skippedQuestionCount++;
+            return false;
+        }
+        questions.put(question.getId(), fingerprint);
+        admittedCount++;
+        return true;
+    }
+
+    /**
+     * 以 insert（REPLACE）方式写入问题前调用
+     *
+     * 放行时同时使消息指纹失效：REPLACE 会先删除旧行，外键级联会删除该问题的所有消息
+     *
+     * @param question 将要写入的问题
+     * @return true 表示需要写入；false 表示与上次写入的内容完全相同，应跳过
+     */
+    public synchronized boolean admitQuestionReplace(QuestionEntity question) {
+        if (!admitQuestion(question)) {
+            return false;
+        }
+        forgetQuestionMessages(question.getId());
+        return true;
+    }
+
+    /**
+     * 消息被绕过过滤器修改或删除
+     *
+     * @param messageId 消息ID
+     */
+    public synchronized void forgetMessage(long messageId) {
+        messages.remove(messageId);
+    }
+
+    /**
+     * 问题被绕过过滤器修改
+     *
+     * @param questionId 问题ID
+     */
+    public synchronized void forgetQuestion(long questionId) {
+        questions.remove(questionId);
+    }
+
+    /**
+     * 一个问题的消息被绕过过滤器批量修改或删除，使该问题的所有消息指纹失效
+     *
+     * @param questionId 问题ID
+     */
+    public synchronized void forgetQuestionMessages(long questionId) {
+        long evicted = messageGenerations.getEvictionCount();
+        messageGenerations.put(questionId, ++lastGeneration);
+        if (messageGenerations.getEvictionCount() != evicted) {
+            // 被淘汰的问题回到代次 0，失效前记录的指纹可能重新匹配
+            messages.clear();
+        }
+    }
+
+    /**
+     * 放行的消息写入未能提交（事务回滚），清空所有消息指纹
+     */
+    public synchronized void invalidateMessages() {
+        messages.clear();
+    }
+
+    /**
+     * 放行的问题写入未能提交（事务回滚），清空所有问题指纹
+     */
+    public synchronized void invalidateQuestions() {
+        questions.clear();
+    }
+
+    /**
+     * @return 放行的写入次数
+     */
+    public synchronized long getAdmittedCount() {
+        return admittedCount;
+    }
+
+    /**
+     * @return 跳过的消息写入次数
+     */
+    public synchronized long getSkippedMessageCount() {
+        return skippedMessageCount;
+    }
+
+    /**
+     * @return 跳过的问题写入次数
+     */
+    public synchronized long getSkippedQuestionCount() {
+        return skippedQuestionCount;
+    }
+
+    /**
+     * 输出去重统计
+     */
+    public synchronized void logStats() {
+        Log.d(TAG, "admitted=" + admittedCount
+            + ", skippedMessages=" + skippedMessageCount
+            + ", skippedQuestions=" + skippedQuestionCount
+            + ", evicted=" + (messages.getEvictionCount() + questions.getEvictionCount()));
+    }
+
+    private long fingerprint(MessageEntity message) {
+        long hash = FNV_OFFSET;
+        hash = mix(hash, messageGenerations.get(message.getQuestionId(), 0L));
+        hash = mix(hash, message.getId());
+        hash = mix(hash, message.getQuestionId());
+        hash = mix(hash, message.getSenderId());
+        hash = mix(hash, message.getContent());
+        hash = mix(hash, message.getMessageType());
+        hash = mix(hash, message.getCreatedAt());
+        hash = mix(hash, message.isRead() ? 1L : 0L);
+        hash = mix(hash, message.getSendStatus());
+        return hash;
+    }
+
+    private static long fingerprint(QuestionEntity question) {
+        long hash = FNV_OFFSET;
+        hash = mix(hash, question.getId());
+        hash = mix(hash, question.getUserId());
+        Long tutorId = question.getTutorId();
+        hash = tutorId != null ? mix(hash, tutorId.longValue()) : mix(hash, NULL_MARKER);
+        hash = mix(hash, question.getContent());
+        hash = mix(hash, question.getImagePaths());
+        hash = mix(hash, question.getStatus());
+        hash = mix(hash, question.getCreatedAt());
+        hash = mix(hash, question.getUpdatedAt());
+        hash = mix(hash, question.getUnreadCount());
+        hash = mix(hash, question.getLastMessageId());
+        hash = mix(hash, question.getLastMessageContent());
+        hash = mix(hash, question.getLastMessageType());
+        hash = mix(hash, question.getLastMessageAt());
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        hash = (hash ^ value) * FNV_PRIME;
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * 逐字符混入字符串，不创建字节数组；以长度结尾区分 null、空串及相邻字段的边界
+     */
+    private static long mix(long hash, @Nullable String value) {
+        if (value == null) {
+            return mix(hash, NULL_MARKER);
+        }
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return mix(hash, length);
+    }
+}
@@ -25,6 +25,9 @@ public interface QuestionDao {
     @Query("SELECT * FROM questions WHERE id = :id LIMIT 1")
     LiveData<QuestionEntity> getQuestionByIdLive(long id);
     
+    @Query("SELECT COUNT(*) FROM questions WHERE id IN (:ids)")
+    int countQuestionsByIds(List<Long> ids);
+    
     @Query("SELECT * FROM questions WHERE userId = :userId ORDER BY createdAt DESC")
     LiveData<List<QuestionEntity>> getQuestionsByUserId(long userId);
     
@@ -34,9 +37,18 @@ public interface QuestionDao {
     @Query("SELECT * FROM questions WHERE status = :status ORDER BY createdAt DESC")
     LiveData<List<QuestionEntity>> getQuestionsByStatus(String status);
     
+    @Query("SELECT * FROM questions WHERE status = :status ORDER BY createdAt DESC")
+    List<QuestionEntity> getQuestionsByStatusSync(String status);
+    
+    @Query("SELECT * FROM questions WHERE userId = :userId AND status = :status ORDER BY createdAt DESC")
+    List<QuestionEntity> getQuestionsByUserIdAndStatusSync(long userId, String status);
+    
     @Query("SELECT * FROM questions WHERE tutorId = :tutorId AND status = :status ORDER BY updatedAt DESC")
     LiveData<List<QuestionEntity>> getQuestionsByTutorAndStatus(long tutorId, String status);
     
+    @Query("SELECT * FROM questions WHERE tutorId = :tutorId AND status = :status ORDER BY updatedAt DESC")
+    List<QuestionEntity> getQuestionsByTutorAndStatusSync(long tutorId, String status);
+    
     @Query("SELECT * FROM questions WHERE tutorId = :tutorId ORDER BY updatedAt DESC")
     List<QuestionEntity> getQuestionsByTutorId(long tutorId);
     
@@ -49,6 +61,20 @@ public interface QuestionDao {
     @Query("UPDATE questions SET updatedAt = :updatedAt WHERE id = :id")
     void updateUpdatedAt(long id, long updatedAt);
     
+    /**
+     * 收到新消息时更新问题的消息摘要，只接受比当前摘要更新的消息
+     * 
+     * @param unreadDelta 未读数增量（他人发送的未读消息为1，自己发送的为0）
+     * @return 更新的行数
+     */
+    @Query("UPDATE questions SET lastMessageId = :messageId, lastMessageContent = :content, "
+        + "lastMessageType = :messageType, lastMessageAt = :createdAt, unreadCount = unreadCount + :unreadDelta "
+        + "WHERE id = :questionId AND lastMessageId < :messageId")
+    int applyNewMessage(long questionId, long messageId, String content, String messageType, long createdAt, int unreadDelta);
+    
+    @Query("UPDATE questions SET unreadCount = 0 WHERE id = :questionId")
+    void clearUnreadCount(long questionId);
+    
     @Query("DELETE FROM questions WHERE id = :id")
     void deleteQuestion(long id);
     
@@ -0,0 +1,20 @@
+package com.dowdah.asknow.data.local.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import com.dowdah.asknow.data.local.entity.SyncStateEntity;
+
+@Dao
+public interface SyncStateDao {
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(SyncStateEntity state);
+
+    @Query("SELECT * FROM sync_state WHERE `key` = :key LIMIT 1")
+    SyncStateEntity get(String key);
+
+    @Query("DELETE FROM sync_state WHERE `key` = :key")
+    void delete(String key);
+}
@@ -30,6 +30,14 @@ public class QuestionEntity {
     private String status; // "pending", "in_progress", "closed"
     private long createdAt;
     private long updatedAt;
+    // 消息摘要：由服务端随问题列表下发，本地收到新消息或标记已读时更新，无需下载消息即可显示列表
+    private int unreadCount;
+    private long lastMessageId;
+    @Nullable
+    private String lastMessageContent;
+    @Nullable
+    private String lastMessageType;
+    private long lastMessageAt;
 
     public QuestionEntity() {
     }
@@ -109,5 +117,47 @@ public class QuestionEntity {
     public void setUpdatedAt(long updatedAt) {
         this.updatedAt = updatedAt;
     }
+
+    public int getUnreadCount() {
+        return unreadCount;
+    }
+
+    public void setUnreadCount(int unreadCount) {
+        this.unreadCount = unreadCount;
+    }
+
+    public long getLastMessageId() {
+        return lastMessageId;
+    }
+
+    public void setLastMessageId(long lastMessageId) {
+        this.lastMessageId = lastMessageId;
+    }
+
+    @Nullable
+    public String getLastMessageContent() {
+        return lastMessageContent;
+    }
+
+    public void setLastMessageContent(@Nullable String lastMessageContent) {
+        this.lastMessageContent = lastMessageContent;
+    }
+
+    @Nullable
+    public String getLastMessageType() {
+        return lastMessageType;
+    }
+
+    public void setLastMessageType(@Nullable String lastMessageType) {
+        this.lastMessageType = lastMessageType;
+    }
+
+    public long getLastMessageAt() {
+        return lastMessageAt;
+    }
+
+    public void setLastMessageAt(long lastMessageAt) {
+        this.lastMessageAt = lastMessageAt;
+    }
 }
 
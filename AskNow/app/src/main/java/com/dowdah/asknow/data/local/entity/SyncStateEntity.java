@@ -0,0 +1,120 @@
+package com.dowdah.asknow.data.local.entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.PrimaryKey;
+
+/**
+ * 增量同步游标
+ *
+ * 记录服务端已确认的最后一条变更 (updatedAt, id)，与同步的数据保存在同一个数据库中，
+ * 在同一个事务内提交，数据库被重建时游标随之清空，不会出现游标领先于本地数据的情况。
+ */
+@Entity(tableName = "sync_state")
+public class SyncStateEntity {
+    @PrimaryKey
+    @NonNull
+    private String key = "";
+
+    private long cursorUpdatedAt;
+    private long cursorId;
+    private long lastSyncedAt; // 最后一次同步完成的本地时间
+    private long lastVerifiedAt; // 最后一次完整校对（全量拉取并删除多余数据）的本地时间
+
+    public SyncStateEntity() {
+    }
+
+    @Ignore
+    public SyncStateEntity(@NonNull String key, long cursorUpdatedAt, long cursorId, long lastSyncedAt) {
+        this.key = key;
+        this.cursorUpdatedAt = cursorUpdatedAt;
+        this.cursorId = cursorId;
+        this.lastSyncedAt = lastSyncedAt;
+    }
+
+    @Ignore
+    public SyncStateEntity(@NonNull String key, long cursorUpdatedAt, long cursorId, long lastSyncedAt,
+                           long lastVerifiedAt) {
+        this(key, cursorUpdatedAt, cursorId, lastSyncedAt);
+        this.lastVerifiedAt = lastVerifiedAt;
+    }
+
+    /**
+     * 问题列表的同步键（本地数据库不随退出登录清空，按用户区分）
+     *
+     * @param role 用户角色
+     * @param userId 用户ID
+     * @return 同步键
+     */
+    @NonNull
+    public static String questionsKey(String role, long userId) {
+        return "questions:" + role + ":" + userId;
+    }
+
+    /**
+     * 按状态分页的问题列表的同步键（教师端标签页），只记录第一页最后一次刷新的时间
+     *
+     * @param role 用户角色
+     * @param userId 用户ID
+     * @param status 问题状态
+     * @return 同步键
+     */
+    @NonNull
+    public static String questionsKey(String role, long userId, String status) {
+        return questionsKey(role, userId) + ":" + status;
+    }
+
+    /**
+     * 单个问题消息的同步键，游标为已同步的最大消息ID（消息对问题的两个参与者相同，不区分用户）
+     *
+     * @param questionId 问题ID
+     * @return 同步键
+     */
+    @NonNull
+    public static String messagesKey(long questionId) {
+        return "messages:" + questionId;
+    }
+
+    // Getters and Setters
+    @NonNull
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(@NonNull String key) {
+        this.key = key;
+    }
+
+    public long getCursorUpdatedAt() {
+        return cursorUpdatedAt;
+    }
+
+    public void setCursorUpdatedAt(long cursorUpdatedAt) {
+        this.cursorUpdatedAt = cursorUpdatedAt;
+    }
+
+    public long getCursorId() {
+        return cursorId;
+    }
+
+    public void setCursorId(long cursorId) {
+        this.cursorId = cursorId;
+    }
+
+    public long getLastSyncedAt() {
+        return lastSyncedAt;
+    }
+
+    public void setLastSyncedAt(long lastSyncedAt) {
+        this.lastSyncedAt = lastSyncedAt;
+    }
+
+    public long getLastVerifiedAt() {
+        return lastVerifiedAt;
+    }
+
+    public void setLastVerifiedAt(long lastVerifiedAt) {
+        this.lastVerifiedAt = lastVerifiedAt;
+    }
+}
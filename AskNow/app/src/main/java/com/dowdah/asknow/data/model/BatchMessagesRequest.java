@@ -0,0 +1,61 @@
+package com.dowdah.asknow.data.model;
+
+import java.util.List;
+
+/**
+ * 批量获取消息请求（POST /api/messages/batch）
+ */
+public class BatchMessagesRequest {
+    private List<Cursor> cursors;
+    private int pageSize;
+
+    public BatchMessagesRequest(List<Cursor> cursors, int pageSize) {
+        this.cursors = cursors;
+        this.pageSize = pageSize;
+    }
+
+    public List<Cursor> getCursors() {
+        return cursors;
+    }
+
+    public void setCursors(List<Cursor> cursors) {
+        this.cursors = cursors;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * 单个问题的游标：获取 ID 大于 afterId 的消息
+     */
+    public static class Cursor {
+        private long questionId;
+        private long afterId;
+
+        public Cursor(long questionId, long afterId) {
+            this.questionId = questionId;
+            this.afterId = afterId;
+        }
+
+        public long getQuestionId() {
+            return questionId;
+        }
+
+        public void setQuestionId(long questionId) {
+            this.questionId = questionId;
+        }
+
+        public long getAfterId() {
+            return afterId;
+        }
+
+        public void setAfterId(long afterId) {
+            this.afterId = afterId;
+        }
+    }
+}
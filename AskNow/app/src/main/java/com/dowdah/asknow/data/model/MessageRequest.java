@@ -4,6 +4,7 @@ public class MessageRequest {
     private long questionId;
     private String content;
     private String messageType;
+    private String clientMessageId;  // 客户端生成的消息ID，服务端据此幂等去重
     
     public MessageRequest(long questionId, String content, String messageType) {
         this.questionId = questionId;
@@ -11,6 +12,11 @@ public class MessageRequest {
         this.messageType = messageType;
     }
     
+    public MessageRequest(long questionId, String content, String messageType, String clientMessageId) {
+        this(questionId, content, messageType);
+        this.clientMessageId = clientMessageId;
+    }
+    
     public long getQuestionId() {
         return questionId;
     }
@@ -34,5 +40,13 @@ public class MessageRequest {
     public void setMessageType(String messageType) {
         this.messageType = messageType;
     }
+    
+    public String getClientMessageId() {
+        return clientMessageId;
+    }
+    
+    public void setClientMessageId(String clientMessageId) {
+        this.clientMessageId = clientMessageId;
+    }
 }
 
@@ -5,7 +5,8 @@ import java.util.List;
 public class MessagesListResponse {
     private boolean success;
     private List<MessageData> messages;
-    private Pagination pagination;
+    private String nextCursor;
+    private boolean hasMore;
     
     public boolean isSuccess() {
         return success;
@@ -23,12 +24,23 @@ public class MessagesListResponse {
         this.messages = messages;
     }
     
-    public Pagination getPagination() {
-        return pagination;
+    /**
+     * @return 下一页游标，原样传回服务端即可，没有更多时为 null
+     */
+    public String getNextCursor() {
+        return nextCursor;
     }
     
-    public void setPagination(Pagination pagination) {
-        this.pagination = pagination;
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+    
+    public boolean hasMore() {
+        return hasMore;
+    }
+    
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
     }
     
     public static class MessageData {
@@ -1,68 +0,0 @@
-package com.dowdah.asknow.data.model;
-
-/**
- * 分页信息模型
- */
-public class Pagination {
-    private int page;
-    private int pageSize;
-    private int total;
-    private int totalPages;
-
-    public Pagination() {
-    }
-
-    public Pagination(int page, int pageSize, int total, int totalPages) {
-        this.page = page;
-        this.pageSize = pageSize;
-        this.total = total;
-        this.totalPages = totalPages;
-    }
-
-    public int getPage() {
-        return page;
-    }
-
-    public void setPage(int page) {
-        this.page = page;
-    }
-
-    public int getPageSize() {
-        return pageSize;
-    }
-
-    public void setPageSize(int pageSize) {
-        this.pageSize = pageSize;
-    }
-
-    public int getTotal() {
-        return total;
-    }
-
-    public void setTotal(int total) {
-        this.total = total;
-    }
-
-    public int getTotalPages() {
-        return totalPages;
-    }
-
-    public void setTotalPages(int totalPages) {
-        this.totalPages = totalPages;
-    }
-
-    public boolean hasMore() {
-        return page < totalPages;
-    }
-
-    @Override
-    public String toString() {
-        return "Pagination{" +
-                "page=" + page +
-                ", pageSize=" + pageSize +
-                ", total=" + total +
-                ", totalPages=" + totalPages +
-                '}';
-    }
-}
-
@@ -0,0 +1,89 @@
+package com.dowdah.asknow.data.model;
+
+import java.util.List;
+
+/**
+ * 问题增量同步响应（GET /api/questions?updated_since=...）
+ */
+public class QuestionChangesResponse {
+    private boolean success;
+    private List<QuestionsListResponse.QuestionData> questions;
+    private List<Long> deletedIds;
+    private Cursor cursor;
+    private boolean hasMore;
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public List<QuestionsListResponse.QuestionData> getQuestions() {
+        return questions;
+    }
+
+    public void setQuestions(List<QuestionsListResponse.QuestionData> questions) {
+        this.questions = questions;
+    }
+
+    /**
+     * @return 游标之后被删除的问题ID（墓碑）
+     */
+    public List<Long> getDeletedIds() {
+        return deletedIds;
+    }
+
+    public void setDeletedIds(List<Long> deletedIds) {
+        this.deletedIds = deletedIds;
+    }
+
+    public Cursor getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(Cursor cursor) {
+        this.cursor = cursor;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * 本页最后一条变更的位置，下一次请求从这里继续
+     */
+    public static class Cursor {
+        private long updatedAt;
+        private long id;
+
+        public Cursor() {
+        }
+
+        public Cursor(long updatedAt, long id) {
+            this.updatedAt = updatedAt;
+            this.id = id;
+        }
+
+        public long getUpdatedAt() {
+            return updatedAt;
+        }
+
+        public void setUpdatedAt(long updatedAt) {
+            this.updatedAt = updatedAt;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+    }
+}
@@ -5,7 +5,8 @@ import java.util.List;
 public class QuestionsListResponse {
     private boolean success;
     private List<QuestionData> questions;
-    private Pagination pagination;
+    private String nextCursor;
+    private boolean hasMore;
     
     public boolean isSuccess() {
         return success;
@@ -23,12 +24,23 @@ public class QuestionsListResponse {
         this.questions = questions;
     }
     
-    public Pagination getPagination() {
-        return pagination;
+    /**
+     * @return 下一页游标，原样传回服务端即可，没有更多时为 null
+     */
+    public String getNextCursor() {
+        return nextCursor;
     }
     
-    public void setPagination(Pagination pagination) {
-        this.pagination = pagination;
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+    
+    public boolean hasMore() {
+        return hasMore;
+    }
+    
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
     }
     
     public static class QuestionData {
@@ -40,6 +52,8 @@ public class QuestionsListResponse {
         private String status;
         private long createdAt;
         private long updatedAt;
+        private int unreadCount;
+        private MessagesListResponse.MessageData lastMessage;
         
         public long getId() {
             return id;
@@ -104,6 +118,28 @@ public class QuestionsListResponse {
         public void setUpdatedAt(long updatedAt) {
             this.updatedAt = updatedAt;
         }
+        
+        /**
+         * @return 当前用户在该问题中的未读消息数
+         */
+        public int getUnreadCount() {
+            return unreadCount;
+        }
+        
+        public void setUnreadCount(int unreadCount) {
+            this.unreadCount = unreadCount;
+        }
+        
+        /**
+         * @return 最后一条消息，没有消息时为 null
+         */
+        public MessagesListResponse.MessageData getLastMessage() {
+            return lastMessage;
+        }
+        
+        public void setLastMessage(MessagesListResponse.MessageData lastMessage) {
+            this.lastMessage = lastMessage;
+        }
     }
 }
 
@@ -39,40 +39,53 @@ public class MessageRepository {
     private static final int RETRY_BACKOFF_MULTIPLIER = com.dowdah.asknow.constants.AppConstants.RETRY_BACKOFF_MULTIPLIER;
     
     private final com.dowdah.asknow.data.local.dao.MessageDao messageDao;
+    private final com.dowdah.asknow.data.local.dao.QuestionDao questionDao;
     private final com.dowdah.asknow.data.api.ApiService apiService;
+    private final com.dowdah.asknow.data.local.WriteDedupFilter writeDedupFilter;
     private final Context context;
     private final ExecutorService executor;
     private boolean isNetworkAvailable = false;
+    private volatile boolean isNetworkUnmetered = false;
     private ConnectivityManager.NetworkCallback networkCallback;
     private NetworkAvailableListener networkAvailableListener;
     
     /**
-     * 网络恢复监听器接口
+     * 网络状态监听器接口
      */
     public interface NetworkAvailableListener {
         void onNetworkAvailable();
+        
+        /**
+         * 网络断开时回调
+         */
+        default void onNetworkLost() {
+        }
     }
     
     @Inject
     public MessageRepository(
         @NonNull @ApplicationContext Context context, 
         @NonNull com.dowdah.asknow.data.local.dao.MessageDao messageDao,
+        @NonNull com.dowdah.asknow.data.local.dao.QuestionDao questionDao,
         @NonNull com.dowdah.asknow.data.api.ApiService apiService,
-        @NonNull @javax.inject.Named("single") ExecutorService executor
+        @NonNull @javax.inject.Named("single") ExecutorService executor,
+        @NonNull com.dowdah.asknow.data.local.WriteDedupFilter writeDedupFilter
     ) {
         this.context = context;
         this.messageDao = messageDao;
+        this.questionDao = questionDao;
         this.apiService = apiService;
         this.executor = executor;
+        this.writeDedupFilter = writeDedupFilter;
         
         registerNetworkCallback();
         checkNetworkStatus();
     }
     
     /**
-     * 设置网络恢复监听器
+     * 设置网络状态监听器
      * 
-     * @param listener 网络恢复监听器
+     * @param listener 网络状态监听器
      */
     public void setNetworkAvailableListener(@Nullable NetworkAvailableListener listener) {
         this.networkAvailableListener = listener;
@@ -124,10 +137,18 @@ public class MessageRepository {
                 onNetworkAvailable();
             }
             
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                isNetworkUnmetered = capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+            }
+            
             @Override
             public void onLost(Network network) {
                 Log.d(TAG, "Network lost");
                 isNetworkAvailable = false;
+                if (networkAvailableListener != null) {
+                    networkAvailableListener.onNetworkLost();
+                }
             }
         };
         
@@ -150,6 +171,8 @@ public class MessageRepository {
             NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(network);
             isNetworkAvailable = capabilities != null && 
                 capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+            isNetworkUnmetered = capabilities != null &&
+                capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
         }
     }
     
@@ -168,6 +191,13 @@ public class MessageRepository {
         return isNetworkAvailable;
     }
     
+    /**
+     * @return true 表示当前网络不计流量（通常是 Wi-Fi）
+     */
+    public boolean isNetworkUnmetered() {
+        return isNetworkUnmetered;
+    }
+    
     /**
      * 获取指定问题的未读消息数量（LiveData）
      * 
@@ -243,6 +273,10 @@ public class MessageRepository {
             try {
                 // 先更新本地数据库
                 messageDao.markMessagesAsRead(questionId, currentUserId);
+                questionDao.clearUnreadCount(questionId);
+                // 批量更新绕过了写入去重过滤器，使该问题已记录的消息内容失效
+                writeDedupFilter.forgetQuestionMessages(questionId);
+                writeDedupFilter.forgetQuestion(questionId);
                 Log.d(TAG, "Marked messages as read locally for question " + questionId);
                 
                 // 然后通知服务器（如果网络可用）
@@ -327,6 +361,10 @@ public class MessageRepository {
             try {
                 // 先更新本地数据库
                 messageDao.markMessagesAsRead(questionId, currentUserId);
+                questionDao.clearUnreadCount(questionId);
+                // 批量更新绕过了写入去重过滤器，使该问题已记录的消息内容失效
+                writeDedupFilter.forgetQuestionMessages(questionId);
+                writeDedupFilter.forgetQuestion(questionId);
                 Log.d(TAG, "Marked messages as read locally for question " + questionId);
                 
                 // 然后通知服务器（如果网络可用）
@@ -3,27 +3,47 @@ package com.dowdah.asknow.data.repository;
 import android.util.Log;
 
 import com.dowdah.asknow.constants.enums.MessageStatus;
+import com.dowdah.asknow.constants.enums.QuestionStatus;
+import com.dowdah.asknow.constants.AppConstants;
 import com.dowdah.asknow.data.api.ApiService;
+import com.dowdah.asknow.data.local.AppDatabase;
+import com.dowdah.asknow.data.local.WriteDedupFilter;
 import com.dowdah.asknow.data.local.dao.MessageDao;
 import com.dowdah.asknow.data.local.dao.QuestionDao;
+import com.dowdah.asknow.data.local.dao.SyncStateDao;
 import com.dowdah.asknow.data.local.entity.MessageEntity;
 import com.dowdah.asknow.data.local.entity.QuestionEntity;
+import com.dowdah.asknow.data.local.entity.SyncStateEntity;
+import com.dowdah.asknow.data.model.BatchMessagesRequest;
 import com.dowdah.asknow.data.model.MessagesListResponse;
+import com.dowdah.asknow.data.model.QuestionChangesResponse;
 import com.dowdah.asknow.data.model.QuestionsListResponse;
 import com.dowdah.asknow.utils.ErrorHandler;
 import com.dowdah.asknow.utils.RetryHelper;
+import com.dowdah.asknow.utils.SortedLongSet;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
@@ -37,24 +57,47 @@ public class QuestionRepository {
     private static final String TAG = "QuestionRepository";
     
     private final ApiService apiService;
+    private final AppDatabase appDatabase;
     private final QuestionDao questionDao;
     private final MessageDao messageDao;
+    private final SyncStateDao syncStateDao;
     private final ExecutorService executor;
+    // 读取流式响应体，读取缓慢时不占用 executor，只把每个短事务交给 executor 执行
+    private final ExecutorService ioExecutor;
     private final com.google.gson.Gson gson;
+    private final WriteDedupFilter writeDedupFilter;
+    private final SyncScheduler syncScheduler;
+    private final SingleFlight singleFlight;
+    
+    /**
+     * 每个列表（角色、用户、状态）下一页的游标：值为 null 表示已经取完，没有记录表示还没有加载过
+     */
+    private final Map<String, String> pageCursors = new HashMap<>();
     
     @Inject
     public QuestionRepository(
         ApiService apiService, 
+        AppDatabase appDatabase,
         QuestionDao questionDao, 
         MessageDao messageDao,
+        SyncStateDao syncStateDao,
         @javax.inject.Named("single") ExecutorService executor,
-        com.google.gson.Gson gson
+        @javax.inject.Named("io") ExecutorService ioExecutor,
+        com.google.gson.Gson gson,
+        WriteDedupFilter writeDedupFilter,
+        SyncScheduler syncScheduler
     ) {
         this.apiService = apiService;
+        this.appDatabase = appDatabase;
         this.questionDao = questionDao;
         this.messageDao = messageDao;
+        this.syncStateDao = syncStateDao;
         this.executor = executor;
+        this.ioExecutor = ioExecutor;
         this.gson = gson;
+        this.writeDedupFilter = writeDedupFilter;
+        this.syncScheduler = syncScheduler;
+        this.singleFlight = new SingleFlight(syncScheduler);
     }
     
     /**
@@ -81,49 +124,220 @@ public class QuestionRepository {
     }
     
     /**
-     * 同步问题从服务器到本地
-     * 对于学生：同步自己提出的问题
-     * 对于老师：同步自己接取或已完结的问题
+     * 按状态同步一页问题（教师端每个标签页独立刷新和分页）
+     * 
+     * 范围由服务端按角色限定：待接取（pending）为所有未被接取的问题，
+     * 其他状态为当前教师接取的问题；学生始终只包含自己创建的问题
+     * 
+     * 刷新获取第一页；追加从该列表上一页返回的游标继续，页码由仓库维护，调用方不需要记录。
+     * 只有按状态刷新第一页时才清理本地多余的问题；不按状态过滤时只写入本页，
+     * 整个列表的刷新由 {@link #syncQuestionChanges} 增量完成
      * 
      * @param token 认证token
      * @param userId 当前用户ID
-     * @param role 用户角色 ("student" 或 "tutor")
+     * @param role 用户角色
+     * @param status 问题状态，null 表示不按状态过滤
+     * @param pageSize 每页大小
+     * @param isAppendMode 是否为追加模式（true=追加，false=刷新）
      * @param callback 同步回调
+     * @return 本次同步的取消范围，取消后不再回调
      */
-    public void syncQuestionsFromServer(String token, long userId, String role, SyncCallback callback) {
-        syncQuestionsFromServer(
-            token, 
-            userId, 
-            role, 
-            com.dowdah.asknow.constants.AppConstants.DEFAULT_START_PAGE,
-            com.dowdah.asknow.constants.AppConstants.DEFAULT_QUESTIONS_PAGE_SIZE,
-            false, 
-            callback
-        );
+    public SyncScheduler.Scope syncQuestionsFromServer(String token, long userId, String role, String status, int pageSize, boolean isAppendMode, SyncCallback callback) {
+        String listKey = pageListKey(userId, role, status);
+        String cursor = null;
+        if (isAppendMode) {
+            boolean exhausted;
+            synchronized (pageCursors) {
+                cursor = pageCursors.get(listKey);
+                exhausted = cursor == null && pageCursors.containsKey(listKey);
+            }
+            if (exhausted) {
+                Log.d(TAG, "No more pages for " + listKey);
+                if (callback != null) {
+                    callback.onSuccess(0);
+                    callback.onPageLoaded(false);
+                }
+                return syncScheduler.newScope();
+            }
+        }
+        
+        // 追加的键包含游标：同一位置的重复加载合并，上一页完成后的加载从新游标开始
+        String key = "page:" + listKey + ":" + pageSize + ":" + (isAppendMode ? "append:" + cursor : "refresh");
+        String startCursor = cursor;
+        return singleFlight.run(key, 0, callback, flight -> startQuestionsPage(
+            token, userId, role, status, startCursor, pageSize, isAppendMode, flight
+        ));
     }
     
     /**
-     * 同步问题从服务器到本地（支持分页）
+     * 数据过期时才刷新一个状态的第一页（教师端标签页切换时使用；下拉刷新直接调用
+     * {@link #syncQuestionsFromServer(String, long, String, String, int, boolean, SyncCallback)} 强制刷新）
+     * 
+     * 该状态的第一页在 maxAgeMs 之内刷新过、并且本进程记录了它的分页位置时不发出请求，
+     * 按记录的下一页游标回调 onPageLoaded，然后回调 onSkipped
      * 
      * @param token 认证token
      * @param userId 当前用户ID
      * @param role 用户角色
-     * @param page 页码
+     * @param status 问题状态
      * @param pageSize 每页大小
-     * @param isAppendMode 是否为追加模式（true=追加，false=刷新）
+     * @param maxAgeMs 数据保持新鲜的时长（毫秒）
      * @param callback 同步回调
+     * @return 调用方的取消范围
      */
-    public void syncQuestionsFromServer(String token, long userId, String role, int page, int pageSize, boolean isAppendMode, SyncCallback callback) {
-        Log.d(TAG, "Starting sync for user " + userId + " with role " + role + " page=" + page);
+    public SyncScheduler.Scope syncQuestionsFromServerIfStale(
+        String token,
+        long userId,
+        String role,
+        String status,
+        int pageSize,
+        long maxAgeMs,
+        SyncCallback callback
+    ) {
+        SyncScheduler.Scope scope = syncScheduler.newScope();
+        if (!isExecutorAvailable()) {
+            if (callback != null) {
+                callback.onError("线程池不可用，无法完成同步");
+            }
+            return scope;
+        }
         
+        String listKey = pageListKey(userId, role, status);
+        String syncKey = SyncStateEntity.questionsKey(role, userId, status);
+        executor.execute(() -> {
+            if (scope.isCancelled()) {
+                return;
+            }
+            boolean paged;
+            String cursor;
+            synchronized (pageCursors) {
+                paged = pageCursors.containsKey(listKey);
+                cursor = pageCursors.get(listKey);
+            }
+            // 没有分页位置时（例如进程重启）加载更多会从第一页开始，照常刷新
+            if (paged && isFresh(syncStateDao.get(syncKey), maxAgeMs)) {
+                Log.d(TAG, "Questions for " + syncKey + " are fresh, skipping sync");
+                if (callback != null) {
+                    callback.onPageLoaded(cursor != null);
+                    callback.onSkipped();
+                }
+                return;
+            }
+            SyncScheduler.Scope sync = syncQuestionsFromServer(token, userId, role, status, pageSize, false, callback);
+            scope.addCancelListener(sync::cancel);
+        });
+        return scope;
+    }
+    
+    /**
+     * 同步状态记录的最后一次同步是否在 maxAgeMs 之内（时钟被调回时按过期处理）
+     */
+    private static boolean isFresh(SyncStateEntity state, long maxAgeMs) {
+        if (state == null || state.getLastSyncedAt() <= 0) {
+            return false;
+        }
+        long age = System.currentTimeMillis() - state.getLastSyncedAt();
+        return age >= 0 && age < maxAgeMs;
+    }
+    
+    /**
+     * 记录一个状态的第一页刷新完成的时间（在 executor 线程调用）
+     */
+    private void markStatusPageSynced(long userId, String role, String status) {
+        syncStateDao.upsert(new SyncStateEntity(
+            SyncStateEntity.questionsKey(role, userId, status), 0, 0, System.currentTimeMillis()
+        ));
+    }
+    
+    /**
+     * 发起一页问题的同步（同一页的并发调用已由 {@link SingleFlight} 合并）
+     */
+    private SyncScheduler.Scope startQuestionsPage(String token, long userId, String role, String status, String cursor, int pageSize, boolean isAppendMode, SyncCallback callback) {
+        Log.d(TAG, "Starting sync for user " + userId + " with role " + role + " status=" + status + (isAppendMode ? " (next page)" : " (first page)"));
+        
+        SyncScheduler.Scope scope = syncScheduler.newScope();
+        syncScheduler.submit(scope, SyncScheduler.PRIORITY_FOCUSED, ticket -> fetchQuestionsPage(
+            token, userId, role, status, cursor, pageSize, isAppendMode, scope, ticket, callback
+        ));
+        return scope;
+    }
+    
+    /**
+     * 响应是否为服务端的 304（OkHttp 已用缓存的响应体补全，调用方看到的仍是 200）
+     */
+    private static boolean isNotModified(Response<?> response) {
+        okhttp3.Response networkResponse = response.raw().networkResponse();
+        return networkResponse != null && networkResponse.code() == HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+    
+    /**
+     * 未修改的页是否仍完整保存在本地
+     * 
+     * HTTP 缓存和数据库分开清理（例如数据库破坏性迁移后缓存仍在），此时 304 的内容不能当作本地已有
+     */
+    private boolean isPageStored(List<QuestionsListResponse.QuestionData> serverQuestions) {
+        if (serverQuestions.isEmpty()) {
+            return true;
+        }
+        List<Long> ids = new ArrayList<>(serverQuestions.size());
+        for (QuestionsListResponse.QuestionData serverQuestion : serverQuestions) {
+            ids.add(serverQuestion.getId());
+        }
+        return questionDao.countQuestionsByIds(ids) == ids.size();
+    }
+    
+    private static String pageListKey(long userId, String role, String status) {
+        return role + ":" + userId + ":" + status;
+    }
+    
+    /**
+     * 记录列表下一页的游标
+     * 
+     * 刷新总是覆盖；追加只在列表位置没有被其他刷新或追加改变时前进，避免迟到的响应把位置拨回去
+     * 
+     * @param listKey 列表键
+     * @param startCursor 本页请求使用的游标
+     * @param isAppendMode 是否为追加模式
+     * @param nextCursor 下一页游标，null 表示没有更多
+     */
+    private void advancePageCursor(String listKey, String startCursor, boolean isAppendMode, String nextCursor) {
+        synchronized (pageCursors) {
+            if (isAppendMode && !Objects.equals(pageCursors.get(listKey), startCursor)) {
+                return;
+            }
+            pageCursors.put(listKey, nextCursor);
+        }
+    }
+    
+    /**
+     * 获取一页问题（在调度器分配的名额内执行），完成后同步这些问题的消息
+     */
+    private void fetchQuestionsPage(
+        String token,
+        long userId,
+        String role,
+        String status,
+        String cursor,
+        int pageSize,
+        boolean isAppendMode,
+        SyncScheduler.Scope scope,
+        SyncScheduler.Ticket ticket,
+        SyncCallback callback
+    ) {
         String authHeader = "Bearer " + token;
-        apiService.getQuestions(authHeader, null, page, pageSize).enqueue(new Callback<QuestionsListResponse>() {
+        ticket.track(apiService.getQuestions(authHeader, status, cursor, pageSize)).enqueue(new Callback<QuestionsListResponse>() {
             @Override
             public void onResponse(Call<QuestionsListResponse> call, Response<QuestionsListResponse> response) {
+                ticket.done();
+                if (ticket.isCancelled()) {
+                    return;
+                }
                 if (response.isSuccessful() && response.body() != null && response.body().isSuccess()) {
                     List<QuestionsListResponse.QuestionData> serverQuestions = response.body().getQuestions();
-                    com.dowdah.asknow.data.model.Pagination pagination = response.body().getPagination();
-                    boolean hasMore = pagination != null && pagination.hasMore();
+                    String nextCursor = response.body().getNextCursor();
+                    boolean hasMore = response.body().hasMore() && nextCursor != null;
+                    advancePageCursor(pageListKey(userId, role, status), cursor, isAppendMode, hasMore ? nextCursor : null);
+                    boolean notModified = isNotModified(response);
                     
                     // 检查线程池是否可用（这是崩溃的关键位置之一）
                     if (!isExecutorAvailable()) {
@@ -136,57 +350,38 @@ public class QuestionRepository {
                     
                     executor.execute(() -> {
                         try {
+                            if (notModified && isPageStored(serverQuestions)) {
+                                // 本页与上次获取时完全相同，本地已有这些数据：跳过写入、清理和消息同步
+                                Log.d(TAG, "Questions page not modified, skipping local writes");
+                                if (!isAppendMode && status != null) {
+                                    markStatusPageSynced(userId, role, status);
+                                }
+                                if (callback != null) {
+                                    callback.onSuccess(0);
+                                    callback.onPageLoaded(hasMore);
+                                }
+                                return;
+                            }
+                            
                             // 获取服务器返回的问题ID集合
                             Set<Long> serverQuestionIds = new HashSet<>();
                             for (QuestionsListResponse.QuestionData serverQuestion : serverQuestions) {
                                 serverQuestionIds.add(serverQuestion.getId());
                                 
                                 // 插入或更新本地数据库
-                                QuestionEntity entity = new QuestionEntity();
-                                entity.setId(serverQuestion.getId());
-                                entity.setUserId(serverQuestion.getUserId());
-                                entity.setTutorId(serverQuestion.getTutorId());
-                                entity.setContent(serverQuestion.getContent());
-                                // 将图片路径列表转换为 JSON 字符串
-                                String imagePathsJson = null;
-                                if (serverQuestion.getImagePaths() != null && !serverQuestion.getImagePaths().isEmpty()) {
-                                    imagePathsJson = gson.toJson(serverQuestion.getImagePaths());
-                                }
-                                entity.setImagePaths(imagePathsJson);
-                                entity.setStatus(serverQuestion.getStatus());
-                                entity.setCreatedAt(serverQuestion.getCreatedAt());
-                                entity.setUpdatedAt(serverQuestion.getUpdatedAt());
-                                
-                                questionDao.insert(entity);
+                                saveServerQuestion(serverQuestion);
                             }
                             
-                            // 只在非追加模式（刷新模式）且是第一页时清理本地不存在于服务器的数据
-                            if (!isAppendMode && page == 1) {
-                                // 删除本地存在但服务器不存在的问题
-                                List<QuestionEntity> localQuestions;
-                                if (com.dowdah.asknow.constants.AppConstants.ROLE_STUDENT.equals(role)) {
-                                    // 学生端：获取本地所有该学生创建的问题
-                                    localQuestions = questionDao.getQuestionsByUserIdSync(userId);
-                                } else {
-                                    // 老师端：获取本地所有该老师接取的问题
-                                    localQuestions = questionDao.getQuestionsByTutorId(userId);
-                                }
-                                
-                                if (localQuestions != null) {
-                                    for (QuestionEntity localQuestion : localQuestions) {
-                                        if (!serverQuestionIds.contains(localQuestion.getId())) {
-                                            // 服务器不存在该问题，从本地删除
-                                            questionDao.deleteQuestion(localQuestion.getId());
-                                            Log.d(TAG, "Deleted question " + localQuestion.getId() + " (not on server)");
-                                        }
-                                    }
-                                }
+                            // 只在按状态刷新第一页时清理本地不存在于服务器的数据
+                            if (!isAppendMode && status != null) {
+                                removeMissingQuestions(userId, role, status, serverQuestions, serverQuestionIds, hasMore);
+                                markStatusPageSynced(userId, role, status);
                             }
                             
                             // 同步每个问题的消息
                             if (!serverQuestions.isEmpty()) {
                                 Log.d(TAG, "Starting messages sync for " + serverQuestions.size() + " questions");
-                                syncMessagesForQuestions(token, serverQuestions, hasMore, callback);
+                                syncMessagesForQuestions(token, serverQuestions, hasMore, scope, callback);
                             } else {
                                 Log.d(TAG, "Sync completed successfully. Synced " + serverQuestions.size() + " questions");
                                 if (callback != null) {
@@ -211,6 +406,10 @@ public class QuestionRepository {
             
             @Override
             public void onFailure(Call<QuestionsListResponse> call, Throwable t) {
+                ticket.done();
+                if (ticket.isCancelled()) {
+                    return;
+                }
                 Log.e(TAG, "Sync network error", t);
                 if (callback != null) {
                     String errorMessage = ErrorHandler.getDetailedErrorMessage(t);
@@ -221,192 +420,1057 @@ public class QuestionRepository {
     }
     
     /**
-     * 单个问题消息同步完成的回调接口
+     * 按状态刷新第一页后，删除本地属于该状态范围、但服务器已不再返回的问题
+     * 
+     * 只比较第一页覆盖的时间窗口（不早于本页最早的创建时间），还有更多页时更早的问题不在本页中，不能删除。
+     * 待接取范围跳过当前教师接取的问题：本地状态可能还没来得及更新，它们由增量同步维护
      */
-    private interface OnSingleQuestionMessagesSyncedCallback {
-        void onSuccess(int messageCount, int pageCount);
-        void onError(String errorMessage);
+    private void removeMissingQuestions(
+        long userId,
+        String role,
+        String status,
+        List<QuestionsListResponse.QuestionData> serverQuestions,
+        Set<Long> serverQuestionIds,
+        boolean hasMore
+    ) {
+        long oldestCreatedAt = Long.MIN_VALUE;
+        if (hasMore) {
+            if (serverQuestions.isEmpty()) {
+                return;
+            }
+            oldestCreatedAt = Long.MAX_VALUE;
+            for (QuestionsListResponse.QuestionData serverQuestion : serverQuestions) {
+                oldestCreatedAt = Math.min(oldestCreatedAt, serverQuestion.getCreatedAt());
+            }
+        }
+        
+        List<QuestionEntity> localQuestions;
+        if (AppConstants.ROLE_STUDENT.equals(role)) {
+            localQuestions = questionDao.getQuestionsByUserIdAndStatusSync(userId, status);
+        } else if (QuestionStatus.PENDING.equals(status)) {
+            localQuestions = questionDao.getQuestionsByStatusSync(status);
+        } else {
+            localQuestions = questionDao.getQuestionsByTutorAndStatusSync(userId, status);
+        }
+        if (localQuestions == null) {
+            return;
+        }
+        
+        for (QuestionEntity localQuestion : localQuestions) {
+            if (serverQuestionIds.contains(localQuestion.getId())
+                || localQuestion.getCreatedAt() < oldestCreatedAt
+                || (!AppConstants.ROLE_STUDENT.equals(role)
+                    && localQuestion.getTutorId() != null && localQuestion.getTutorId() == userId
+                    && QuestionStatus.PENDING.equals(status))) {
+                continue;
+            }
+            questionDao.deleteQuestion(localQuestion.getId());
+            writeDedupFilter.forgetQuestion(localQuestion.getId());
+            writeDedupFilter.forgetQuestionMessages(localQuestion.getId());
+            Log.d(TAG, "Deleted " + status + " question " + localQuestion.getId() + " (not on server)");
+        }
     }
     
     /**
-     * 递归获取单个问题的所有分页消息
+     * 增量同步问题：只获取本地游标之后变化的问题
      * 
-     * @param authHeader 认证头
-     * @param questionId 问题ID
-     * @param allMessages 累积所有消息的列表
-     * @param currentPage 当前页码
-     * @param callback 同步完成回调
-     */
-    private void syncAllMessagesForQuestion(
-        String authHeader,
-        long questionId,
-        List<MessagesListResponse.MessageData> allMessages,
-        int currentPage,
-        OnSingleQuestionMessagesSyncedCallback callback
+     * 游标为服务端确认过的最后一条变更 (updatedAt, id)，没有游标时从头开始，一次取完所有页。
+     * 每页的变更、删除（墓碑）和新游标在同一个事务中提交，中途失败时下次从已提交的页继续。
+     * 全部页完成后同步变化问题的消息；本地已拥有全部问题，回调 onPageLoaded(false)。
+     * 
+     * @param token 认证token
+     * @param userId 当前用户ID
+     * @param role 用户角色
+     * @param callback 同步回调
+     * @return 本次同步的取消范围，取消后丢弃未发出的请求、取消在途请求并且不再回调
+     */
+    public SyncScheduler.Scope syncQuestionChanges(String token, long userId, String role, SyncCallback callback) {
+        return syncQuestionChanges(token, userId, role, 0, callback);
+    }
+    
+    /**
+     * 增量同步问题，同一用户和角色的并发调用合并为一次同步
+     * 
+     * 所有调用方收到同一个结果；每个调用方的取消范围互相独立，全部取消后才取消在途请求
+     * 
+     * @param token 认证token
+     * @param userId 当前用户ID
+     * @param role 用户角色
+     * @param streamGeneration 调用方看到的推送流代次，在途同步开始于更早的代次时不合并
+     *                         （推送流出现缺口后的同步必须在缺口之后发出请求）
+     * @param callback 同步回调
+     * @return 调用方自己的取消范围
+     */
+    public SyncScheduler.Scope syncQuestionChanges(String token, long userId, String role, int streamGeneration, SyncCallback callback) {
+        String key = "changes:" + role + ":" + userId;
+        return singleFlight.run(key, streamGeneration, callback, flight -> startQuestionChanges(
+            token, userId, role, flight
+        ));
+    }
+    
+    /**
+     * 数据过期时才增量同步（页面创建、回到前台时使用；下拉刷新直接调用
+     * {@link #syncQuestionChanges(String, long, String, int, SyncCallback)} 强制同步）
+     * 
+     * 上次完整同步在 maxAgeMs 之内时不发出请求，页面直接显示本地数据库中的数据，回调 onSkipped
+     * 
+     * @param token 认证token
+     * @param userId 当前用户ID
+     * @param role 用户角色
+     * @param streamGeneration 调用方看到的推送流代次
+     * @param maxAgeMs 数据保持新鲜的时长（毫秒）
+     * @param callback 同步回调
+     * @return 调用方的取消范围
+     */
+    public SyncScheduler.Scope syncQuestionChangesIfStale(
+        String token,
+        long userId,
+        String role,
+        int streamGeneration,
+        long maxAgeMs,
+        SyncCallback callback
     ) {
-        apiService.getMessages(
-            authHeader,
-            questionId,
-            currentPage,
-            com.dowdah.asknow.constants.AppConstants.DEFAULT_MESSAGES_PAGE_SIZE
-        ).enqueue(new Callback<MessagesListResponse>() {
+        SyncScheduler.Scope scope = syncScheduler.newScope();
+        if (!isExecutorAvailable()) {
+            if (callback != null) {
+                callback.onError("线程池不可用，无法完成同步");
+            }
+            return scope;
+        }
+        
+        String syncKey = SyncStateEntity.questionsKey(role, userId);
+        executor.execute(() -> {
+            if (scope.isCancelled()) {
+                return;
+            }
+            if (isFresh(syncStateDao.get(syncKey), maxAgeMs)) {
+                Log.d(TAG, "Questions for " + syncKey + " are fresh, skipping sync");
+                if (callback != null) {
+                    callback.onSkipped();
+                }
+                return;
+            }
+            SyncScheduler.Scope sync = syncQuestionChanges(token, userId, role, streamGeneration, callback);
+            scope.addCancelListener(sync::cancel);
+        });
+        return scope;
+    }
+    
+    /**
+     * 发起增量同步（并发调用已由 {@link SingleFlight} 合并）
+     */
+    private SyncScheduler.Scope startQuestionChanges(String token, long userId, String role, SyncCallback callback) {
+        SyncScheduler.Scope scope = syncScheduler.newScope();
+        if (!isExecutorAvailable()) {
+            if (callback != null) {
+                callback.onError("线程池不可用，无法完成同步");
+            }
+            return scope;
+        }
+        
+        String syncKey = SyncStateEntity.questionsKey(role, userId);
+        executor.execute(() -> {
+            SyncStateEntity state = syncStateDao.get(syncKey);
+            QuestionChangesResponse.Cursor cursor = state != null
+                ? new QuestionChangesResponse.Cursor(state.getCursorUpdatedAt(), state.getCursorId())
+                : new QuestionChangesResponse.Cursor(0, 0);
+            Log.d(TAG, "Starting delta sync for " + syncKey + " since " + cursor.getUpdatedAt() + "/" + cursor.getId());
+            fetchQuestionChanges(token, syncKey, cursor, new ArrayList<>(), scope, callback);
+        });
+        return scope;
+    }
+    
+    /**
+     * 获取一页变更并提交，还有更多时继续获取下一页
+     * 
+     * @param token 认证token
+     * @param syncKey 同步键
+     * @param cursor 本页的起始游标
+     * @param changedQuestions 累积的变化问题（用于之后同步消息）
+     * @param scope 取消范围
+     * @param callback 同步回调
+     */
+    private void fetchQuestionChanges(
+        String token,
+        String syncKey,
+        QuestionChangesResponse.Cursor cursor,
+        List<QuestionsListResponse.QuestionData> changedQuestions,
+        SyncScheduler.Scope scope,
+        SyncCallback callback
+    ) {
+        syncScheduler.submit(scope, SyncScheduler.PRIORITY_FOCUSED, ticket -> ticket.track(apiService.getQuestionChanges(
+            "Bearer " + token,
+            cursor.getUpdatedAt(),
+            cursor.getId(),
+            AppConstants.MAX_QUESTIONS_PAGE_SIZE
+        )).enqueue(new Callback<QuestionChangesResponse>() {
             @Override
-            public void onResponse(Call<MessagesListResponse> call, Response<MessagesListResponse> response) {
-                if (response.isSuccessful() && response.body() != null && response.body().isSuccess()) {
-                    List<MessagesListResponse.MessageData> pageMessages = response.body().getMessages();
-                    com.dowdah.asknow.data.model.Pagination pagination = response.body().getPagination();
-                    
-                    // 将当前页消息添加到累积列表
-                    if (pageMessages != null && !pageMessages.isEmpty()) {
-                        allMessages.addAll(pageMessages);
+            public void onResponse(Call<QuestionChangesResponse> call, Response<QuestionChangesResponse> response) {
+                ticket.done();
+                if (ticket.isCancelled()) {
+                    return;
+                }
+                QuestionChangesResponse body = response.body();
+                if (!response.isSuccessful() || body == null || !body.isSuccess() || body.getCursor() == null) {
+                    Log.e(TAG, "Delta sync failed: " + response.code());
+                    if (callback != null) {
+                        callback.onError("同步失败: 服务器返回错误");
                     }
-                    
-                    // 检查是否还有更多页
-                    if (pagination != null && pagination.hasMore()) {
-                        Log.d(TAG, "Question " + questionId + " page " + currentPage + " fetched, has more pages");
-                        // 递归获取下一页
-                        syncAllMessagesForQuestion(authHeader, questionId, allMessages, currentPage + 1, callback);
-                    } else {
-                        // 所有页都已获取完成
-                        int totalPages = pagination != null ? pagination.getTotalPages() : currentPage;
-                        Log.d(TAG, "Question " + questionId + " all pages fetched: " + allMessages.size() + 
-                              " messages across " + totalPages + " pages");
-                        
+                    return;
+                }
+                if (!isExecutorAvailable()) {
+                    Log.e(TAG, "Cannot process delta sync response: executor not available");
+                    if (callback != null) {
+                        callback.onError("线程池不可用，无法完成同步");
+                    }
+                    return;
+                }
+                
+                executor.execute(() -> {
+                    try {
+                        applyQuestionChanges(syncKey, body);
+                        if (body.getQuestions() != null) {
+                            changedQuestions.addAll(body.getQuestions());
+                        }
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error applying question changes", e);
                         if (callback != null) {
-                            callback.onSuccess(allMessages.size(), totalPages);
+                            callback.onError("同步数据时发生错误: " + e.getMessage());
                         }
+                        return;
                     }
-                } else {
-                    Log.e(TAG, "Failed to fetch messages for question " + questionId + " page " + currentPage + 
-                          ": " + response.code());
-                    if (callback != null) {
-                        callback.onError("API response failed: " + response.code());
+                    
+                    QuestionChangesResponse.Cursor next = body.getCursor();
+                    boolean advanced = next.getUpdatedAt() != cursor.getUpdatedAt() || next.getId() != cursor.getId();
+                    if (body.hasMore() && advanced) {
+                        fetchQuestionChanges(token, syncKey, next, changedQuestions, scope, callback);
+                        return;
                     }
-                }
+                    
+                    Log.d(TAG, "Delta sync completed: " + changedQuestions.size() + " questions changed");
+                    syncMessagesForQuestions(token, changedQuestions, false, scope, callback);
+                });
             }
             
             @Override
-            public void onFailure(Call<MessagesListResponse> call, Throwable t) {
-                Log.e(TAG, "Network error fetching messages for question " + questionId + " page " + currentPage, t);
+            public void onFailure(Call<QuestionChangesResponse> call, Throwable t) {
+                ticket.done();
+                if (ticket.isCancelled()) {
+                    return;
+                }
+                Log.e(TAG, "Delta sync network error", t);
                 if (callback != null) {
-                    callback.onError("Network error: " + t.getMessage());
+                    callback.onError(ErrorHandler.getDetailedErrorMessage(t));
+                }
+            }
+        }));
+    }
+    
+    /**
+     * 在一个事务中应用一页变更：写入变化的问题、删除墓碑对应的问题、推进游标
+     * 
+     * 同步完成时间（lastSyncedAt）只在最后一页提交时更新，中途失败的同步不会让数据被当作新鲜的
+     * 
+     * @param syncKey 同步键
+     * @param changes 服务端返回的一页变更
+     */
+    private void applyQuestionChanges(String syncKey, QuestionChangesResponse changes) {
+        List<Long> deletedIds = changes.getDeletedIds() != null ? changes.getDeletedIds() : new ArrayList<>();
+        try {
+            appDatabase.runInTransaction(() -> {
+                if (changes.getQuestions() != null) {
+                    for (QuestionsListResponse.QuestionData serverQuestion : changes.getQuestions()) {
+                        saveServerQuestion(serverQuestion);
+                    }
+                }
+                for (Long questionId : deletedIds) {
+                    // 外键级联删除该问题的消息
+                    questionDao.deleteQuestion(questionId);
+                    syncStateDao.delete(SyncStateEntity.messagesKey(questionId));
                 }
+                long lastSyncedAt;
+                if (changes.hasMore()) {
+                    SyncStateEntity previous = syncStateDao.get(syncKey);
+                    lastSyncedAt = previous != null ? previous.getLastSyncedAt() : 0;
+                } else {
+                    lastSyncedAt = System.currentTimeMillis();
+                }
+                syncStateDao.upsert(new SyncStateEntity(
+                    syncKey,
+                    changes.getCursor().getUpdatedAt(),
+                    changes.getCursor().getId(),
+                    lastSyncedAt
+                ));
+            });
+        } catch (RuntimeException e) {
+            // 事务已回滚，本页放行的问题指纹不再对应数据库内容
+            writeDedupFilter.invalidateQuestions();
+            throw e;
+        }
+        
+        for (Long questionId : deletedIds) {
+            writeDedupFilter.forgetQuestion(questionId);
+            writeDedupFilter.forgetQuestionMessages(questionId);
+        }
+        if (!deletedIds.isEmpty()) {
+            Log.d(TAG, "Deleted " + deletedIds.size() + " questions (tombstones)");
+        }
+    }
+    
+    /**
+     * 把服务端问题写入本地数据库，与本地已有内容完全相同时跳过
+     * 
+     * 已存在的问题原地更新而不是 REPLACE，REPLACE 会先删除旧行，外键级联删除该问题的所有消息，
+     * 使消息的增量同步游标失效
+     * 
+     * @param serverQuestion 服务端问题数据
+     */
+    private void saveServerQuestion(QuestionsListResponse.QuestionData serverQuestion) {
+        QuestionEntity entity = new QuestionEntity();
+        entity.setId(serverQuestion.getId());
+        entity.setUserId(serverQuestion.getUserId());
+        entity.setTutorId(serverQuestion.getTutorId());
+        entity.setContent(serverQuestion.getContent());
+        // 将图片路径列表转换为 JSON 字符串
+        String imagePathsJson = null;
+        if (serverQuestion.getImagePaths() != null && !serverQuestion.getImagePaths().isEmpty()) {
+            imagePathsJson = gson.toJson(serverQuestion.getImagePaths());
+        }
+        entity.setImagePaths(imagePathsJson);
+        entity.setStatus(serverQuestion.getStatus());
+        entity.setCreatedAt(serverQuestion.getCreatedAt());
+        entity.setUpdatedAt(serverQuestion.getUpdatedAt());
+        entity.setUnreadCount(serverQuestion.getUnreadCount());
+        MessagesListResponse.MessageData lastMessage = serverQuestion.getLastMessage();
+        if (lastMessage != null) {
+            entity.setLastMessageId(lastMessage.getId());
+            entity.setLastMessageContent(lastMessage.getContent());
+            entity.setLastMessageType(lastMessage.getMessageType());
+            entity.setLastMessageAt(lastMessage.getCreatedAt());
+        }
+        
+        if (!writeDedupFilter.admitQuestion(entity)) {
+            return;
+        }
+        try {
+            if (questionDao.getQuestionById(entity.getId()) == null) {
+                questionDao.insert(entity);
+            } else {
+                questionDao.update(entity);
             }
+        } catch (RuntimeException e) {
+            writeDedupFilter.forgetQuestion(entity.getId());
+            throw e;
+        }
+    }
+    
+    /**
+     * 单个问题的消息同步任务
+     */
+    private static final class MessageSyncTask {
+        final long questionId;
+        final String syncKey;
+        final boolean fullPass;
+        final long previousVerifiedAt;
+        final long verifiedAt;
+        final int priority;
+        // 请求游标，只在网络回调中修改
+        long afterId;
+        // 以下字段只在 executor 线程访问（IO 线程等待每次写入完成后才继续，标记失败发生在写入之间）
+        final SortedLongSet seenIds;
+        long highWaterMark;
+        int savedCount;
+        boolean failed;
+        // 服务端判定当前用户不是该问题的参与者，没有可读取的消息（不是失败）
+        boolean unavailable;
+        
+        /**
+         * @param previousVerifiedAt 已记录的最后一次完整校对时间，完整校对结束前保持不变
+         * @param verifiedAt 本次同步完成后记录的完整校对时间
+         */
+        MessageSyncTask(long questionId, String syncKey, boolean fullPass, long startAfterId,
+                        long previousVerifiedAt, long verifiedAt, int priority) {
+            this.questionId = questionId;
+            this.syncKey = syncKey;
+            this.fullPass = fullPass;
+            this.previousVerifiedAt = previousVerifiedAt;
+            this.verifiedAt = verifiedAt;
+            this.priority = priority;
+            this.afterId = startAfterId;
+            this.highWaterMark = startAfterId;
+            this.seenIds = fullPass ? new SortedLongSet() : null;
+        }
+    }
+    
+    /**
+     * 按需同步单个问题的消息（打开问题详情时调用）
+     * 
+     * 问题列表同步只写入问题头（未读数、最后一条消息），不拉取消息；
+     * 用户打开问题时以最高优先级拉取该问题的消息。请求失败、解析失败或写入失败时回调 onError；
+     * 当前用户不是问题的参与者（例如老师查看待接取的问题）时服务端不返回消息，回调 onSuccess(0)
+     * 
+     * @param token 认证token
+     * @param questionId 问题ID
+     * @param callback 同步回调，可为 null
+     * @return 本次同步的取消范围，离开页面时取消
+     */
+    public SyncScheduler.Scope syncMessages(String token, long questionId, SyncCallback callback) {
+        SyncScheduler.Scope scope = syncScheduler.newScope();
+        if (!isExecutorAvailable()) {
+            if (callback != null) {
+                callback.onError("线程池不可用，无法完成同步");
+            }
+            return scope;
+        }
+        
+        executor.execute(() -> {
+            MessageSyncTask task = createMessageSyncTask(questionId, SyncScheduler.PRIORITY_FOCUSED, System.currentTimeMillis());
+            List<MessageSyncTask> tasks = new ArrayList<>();
+            tasks.add(task);
+            startMessageSync(token, tasks, scope, failedQuestionIds -> {
+                if (callback == null) {
+                    return;
+                }
+                if (failedQuestionIds.contains(questionId)) {
+                    callback.onError("消息同步失败，请稍后重试");
+                } else {
+                    callback.onSuccess(task.unavailable ? 0 : 1);
+                }
+            });
         });
+        return scope;
     }
     
     /**
-     * 同步每个问题的消息（使用完整分页同步）
+     * 预取列表中可能马上会被打开的问题的消息
+     * 
+     * 只预取正在查看的问题和有未读消息的进行中问题，最多
+     * {@link AppConstants#MESSAGE_PREFETCH_MAX_QUESTIONS} 个；其余问题只保留问题头，
+     * 打开时再通过 {@link #syncMessages(String, long, SyncCallback)} 拉取
+     * 
+     * 需在 executor 线程调用（读取本地同步状态）
      */
-    private void syncMessagesForQuestions(String token, List<QuestionsListResponse.QuestionData> questions, boolean hasMore, SyncCallback callback) {
-        if (questions.isEmpty()) {
+    private void syncMessagesForQuestions(
+        String token,
+        List<QuestionsListResponse.QuestionData> questions,
+        boolean hasMore,
+        SyncScheduler.Scope scope,
+        SyncCallback callback
+    ) {
+        long now = System.currentTimeMillis();
+        List<MessageSyncTask> tasks = new ArrayList<>();
+        for (QuestionsListResponse.QuestionData question : questions) {
+            int priority = syncScheduler.priorityOf(question.getId(), question.getStatus());
+            boolean likelyOpened = priority == SyncScheduler.PRIORITY_FOCUSED
+                || (priority == SyncScheduler.PRIORITY_ACTIVE && question.getUnreadCount() > 0);
+            if (likelyOpened) {
+                tasks.add(createMessageSyncTask(question.getId(), priority, now));
+            }
+        }
+        // 稳定排序，同一优先级保持服务端顺序
+        tasks.sort((a, b) -> Integer.compare(b.priority, a.priority));
+        if (tasks.size() > AppConstants.MESSAGE_PREFETCH_MAX_QUESTIONS) {
+            tasks = new ArrayList<>(tasks.subList(0, AppConstants.MESSAGE_PREFETCH_MAX_QUESTIONS));
+        }
+        
+        // 预取失败不影响问题列表，打开问题时会再次同步
+        startMessageSync(token, tasks, scope, failedQuestionIds -> {
             if (callback != null) {
-                callback.onSuccess(0);
+                callback.onSuccess(questions.size());
                 callback.onPageLoaded(hasMore);
             }
+        });
+    }
+    
+    /**
+     * 根据本地同步状态创建一个问题的消息同步任务
+     * 
+     * 每个问题记录已同步的最大消息ID（sync_state 表），平时只拉取该ID之后的新消息；
+     * 没有记录、记录的消息已不在本地（例如问题被整行替换导致消息级联删除），
+     * 或距上次完整校对超过 {@link AppConstants#MESSAGE_VERIFY_INTERVAL_MS} 时，
+     * 从头拉取全部消息并删除服务端已不存在的消息。
+     * 
+     * 需在 executor 线程调用
+     */
+    private MessageSyncTask createMessageSyncTask(long questionId, int priority, long now) {
+        String syncKey = SyncStateEntity.messagesKey(questionId);
+        SyncStateEntity state = syncStateDao.get(syncKey);
+        boolean fullPass = state == null
+            || now - state.getLastVerifiedAt() >= AppConstants.MESSAGE_VERIFY_INTERVAL_MS
+            || (state.getCursorId() > 0 && messageDao.getMessageById(state.getCursorId()) == null);
+        long previousVerifiedAt = state != null ? state.getLastVerifiedAt() : 0;
+        return new MessageSyncTask(
+            questionId,
+            syncKey,
+            fullPass,
+            fullPass ? 0 : state.getCursorId(),
+            previousVerifiedAt,
+            fullPass ? now : previousVerifiedAt,
+            priority
+        );
+    }
+    
+    /**
+     * 执行一组消息同步任务
+     * 
+     * 任务按 {@link AppConstants#MESSAGE_BATCH_MAX_QUESTIONS} 分批，批次通过 {@link SyncScheduler} 并行请求。
+     * 每批响应体边读边写，每个问题在短事务中分块写入并推进游标，不构建整批的响应对象，
+     * 内存中只保留完整校对需要的已见消息ID。
+     * 
+     * @param tasks 已按优先级排序的任务
+     * @param onComplete 所有批次写入完成后调用（没有任务时立即调用），取消时不调用
+     */
+    private void startMessageSync(
+        String token,
+        List<MessageSyncTask> tasks,
+        SyncScheduler.Scope scope,
+        MessageSyncCompletion onComplete
+    ) {
+        if (tasks.isEmpty()) {
+            onComplete.onComplete(new ArrayList<>());
             return;
         }
         
-        String authHeader = "Bearer " + token;
-        AtomicInteger completedCount = new AtomicInteger(0);
-        AtomicInteger totalCount = new AtomicInteger(questions.size());
+        Log.d(TAG, "Starting batched messages sync for " + tasks.size() + " questions");
+        MessageBatchRun run = new MessageBatchRun("Bearer " + token, scope, tasks, onComplete);
+        
+        int batchSize = AppConstants.MESSAGE_BATCH_MAX_QUESTIONS;
+        List<List<MessageSyncTask>> chunks = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i += batchSize) {
+            chunks.add(new ArrayList<>(tasks.subList(i, Math.min(i + batchSize, tasks.size()))));
+        }
+        run.outstanding.set(chunks.size());
+        for (List<MessageSyncTask> chunk : chunks) {
+            submitMessageBatch(run, chunk);
+        }
+    }
+    
+    /**
+     * 消息同步结束回调
+     */
+    private interface MessageSyncCompletion {
+        /**
+         * @param failedQuestionIds 未能完成同步的问题ID（请求失败、解析失败或写入失败），不包含服务端判定不可用的问题
+         */
+        void onComplete(List<Long> failedQuestionIds);
+    }
+    
+    /**
+     * 一次消息同步的所有批次：记录未完成（未写入数据库）的批次数，全部完成后回调
+     */
+    private static final class MessageBatchRun {
+        final String authHeader;
+        final SyncScheduler.Scope scope;
+        final List<MessageSyncTask> tasks;
+        final MessageSyncCompletion onComplete;
+        final AtomicInteger outstanding = new AtomicInteger();
+        final AtomicInteger requests = new AtomicInteger();
         
-        Log.d(TAG, "Starting messages sync for " + questions.size() + " questions");
+        MessageBatchRun(String authHeader, SyncScheduler.Scope scope, List<MessageSyncTask> tasks,
+                        MessageSyncCompletion onComplete) {
+            this.authHeader = authHeader;
+            this.scope = scope;
+            this.tasks = tasks;
+            this.onComplete = onComplete;
+        }
         
-        for (QuestionsListResponse.QuestionData question : questions) {
-            long questionId = question.getId();
-            
-            // 使用新的递归方法获取所有分页消息
-            List<MessagesListResponse.MessageData> allMessages = new ArrayList<>();
-            syncAllMessagesForQuestion(
-                authHeader,
-                questionId,
-                allMessages,
-                com.dowdah.asknow.constants.AppConstants.DEFAULT_START_PAGE,
-                new OnSingleQuestionMessagesSyncedCallback() {
-                    @Override
-                    public void onSuccess(int messageCount, int pageCount) {
-                        // 检查线程池是否可用
-                        if (!isExecutorAvailable()) {
-                            Log.e(TAG, "Cannot process messages sync: executor not available");
-                            // 继续处理其他问题
-                            int completed = completedCount.incrementAndGet();
-                            if (completed >= totalCount.get()) {
-                                if (callback != null) {
-                                    callback.onSuccess(questions.size());
-                                    callback.onPageLoaded(hasMore);
-                                }
-                            }
-                            return;
+        /**
+         * 所有批次结束后调用（最后一次减少未完成计数之后，各任务的失败标记已可见）
+         */
+        List<Long> failedQuestionIds() {
+            List<Long> failed = new ArrayList<>();
+            for (MessageSyncTask task : tasks) {
+                if (task.failed) {
+                    failed.add(task.questionId);
+                }
+            }
+            return failed;
+        }
+    }
+    
+    /**
+     * 提交一个批次（最多 {@link com.dowdah.asknow.constants.AppConstants#MESSAGE_BATCH_MAX_QUESTIONS} 个问题）
+     * 
+     * 批次以其中最高的问题优先级排队；响应体在 IO 线程边读边分块写入，读完后才释放并发名额。
+     * 还有更多消息的问题在本批写入后组成新批次从新游标继续，新批次在当前批次结束前提交，未完成计数不会提前归零
+     * 
+     * @param run 本次消息同步
+     * @param chunk 批次内的任务
+     */
+    private void submitMessageBatch(MessageBatchRun run, List<MessageSyncTask> chunk) {
+        int priority = SyncScheduler.PRIORITY_NORMAL;
+        List<BatchMessagesRequest.Cursor> cursors = new ArrayList<>(chunk.size());
+        for (MessageSyncTask task : chunk) {
+            priority = Math.max(priority, task.priority);
+            cursors.add(new BatchMessagesRequest.Cursor(task.questionId, task.afterId));
+        }
+        BatchMessagesRequest request = new BatchMessagesRequest(
+            cursors, com.dowdah.asknow.constants.AppConstants.MAX_MESSAGES_PAGE_SIZE
+        );
+        
+        syncScheduler.submit(run.scope, priority, ticket -> {
+            run.requests.incrementAndGet();
+            ticket.track(apiService.getMessagesBatch(run.authHeader, request)).enqueue(new Callback<ResponseBody>() {
+                @Override
+                public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                    ResponseBody body = response.body();
+                    if (ticket.isCancelled()) {
+                        ticket.done();
+                        if (body != null) {
+                            body.close();
                         }
-                        
-                        // 所有分页消息都已获取完成，现在执行数据库操作
-                        executor.execute(() -> {
-                            try {
-                                // 获取服务器消息ID集合
-                                Set<Long> serverMessageIds = new HashSet<>();
-                                for (MessagesListResponse.MessageData serverMessage : allMessages) {
-                                    serverMessageIds.add(serverMessage.getId());
-                                    
-                                    // 插入或更新消息到本地数据库
-                                    MessageEntity entity = new MessageEntity();
-                                    entity.setId(serverMessage.getId());
-                                    entity.setQuestionId(serverMessage.getQuestionId());
-                                    entity.setSenderId(serverMessage.getSenderId());
-                                    entity.setContent(serverMessage.getContent());
-                                    entity.setMessageType(serverMessage.getMessageType());
-                                    entity.setCreatedAt(serverMessage.getCreatedAt());
-                                    entity.setRead(serverMessage.isRead()); // 保留已读状态
-                                    entity.setSendStatus(MessageStatus.SENT); // 从服务器同步的消息都是已发送状态
-                                    
-                                    messageDao.insert(entity);
-                                }
-                                
-                                // 删除本地存在但服务器不存在的消息
-                                List<MessageEntity> localMessages = messageDao.getMessagesByQuestionIdSync(questionId);
-                                if (localMessages != null) {
-                                    for (MessageEntity localMessage : localMessages) {
-                                        if (!serverMessageIds.contains(localMessage.getId())) {
-                                            messageDao.deleteMessage(localMessage.getId());
-                                            Log.d(TAG, "Deleted message " + localMessage.getId() + " (not on server)");
-                                        }
-                                    }
-                                }
-                                
-                                Log.d(TAG, "Question " + questionId + " sync completed: " + messageCount + 
-                                      " messages from " + pageCount + " pages saved to database");
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error saving messages to database for question " + questionId, e);
-                            } finally {
-                                // 数据库操作完成后，检查是否所有问题都已完成
-                                int completed = completedCount.incrementAndGet();
-                                if (completed >= totalCount.get()) {
-                                    Log.d(TAG, "All questions' messages synced successfully");
-                                    if (callback != null) {
-                                        callback.onSuccess(questions.size());
-                                        callback.onPageLoaded(hasMore);
-                                    }
-                                }
-                            }
-                        });
+                        return;
                     }
-                    
-                    @Override
-                    public void onError(String errorMessage) {
-                        Log.e(TAG, "Failed to sync messages for question " + questionId + ": " + errorMessage);
-                        
-                        // 即使某个问题的消息同步失败，继续处理其他问题
-                        int completed = completedCount.incrementAndGet();
-                        if (completed >= totalCount.get()) {
-                            Log.d(TAG, "All questions processed (some may have failed)");
-                            if (callback != null) {
-                                callback.onSuccess(questions.size());
-                                callback.onPageLoaded(hasMore);
-                            }
+                    if (!response.isSuccessful() || body == null) {
+                        Log.e(TAG, "Failed to fetch message batch: " + response.code());
+                        ticket.done();
+                        finishMessageBatch(run, chunk, null, ticket);
+                        return;
+                    }
+                    finishMessageBatch(run, chunk, body, ticket);
+                }
+                
+                @Override
+                public void onFailure(Call<ResponseBody> call, Throwable t) {
+                    ticket.done();
+                    if (ticket.isCancelled()) {
+                        return;
+                    }
+                    Log.e(TAG, "Network error fetching message batch", t);
+                    finishMessageBatch(run, chunk, null, ticket);
+                }
+            });
+        });
+    }
+    
+    /**
+     * 在 IO 线程读取本批结果并逐块交给 executor 写入，然后提交后续批次；写入完成后才减少未完成计数
+     * 
+     * 响应体读取缓慢时只占用 IO 线程，executor 上的问题同步、有效期检查和发送消息的写入不受影响
+     * 
+     * @param run 本次消息同步
+     * @param chunk 批次内的任务
+     * @param body 未读取的响应体，null 表示请求失败
+     * @param ticket 本批请求的执行凭证，响应体读完后释放
+     */
+    private void finishMessageBatch(
+        MessageBatchRun run,
+        List<MessageSyncTask> chunk,
+        ResponseBody body,
+        SyncScheduler.Ticket ticket
+    ) {
+        if (!isExecutorAvailable() || ioExecutor.isShutdown()) {
+            Log.e(TAG, "Cannot save message batch: executor not available");
+            if (body != null) {
+                body.close();
+            }
+            ticket.done();
+            markMessageBatchFailed(chunk);
+            completeMessageBatch(run);
+            return;
+        }
+        
+        ioExecutor.execute(() -> {
+            List<MessageSyncTask> more = new ArrayList<>();
+            try {
+                if (body == null) {
+                    markMessageBatchFailed(chunk);
+                } else {
+                    more.addAll(ingestMessageBatch(chunk, body));
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error saving message batch to database", e);
+                markMessageBatchFailed(chunk);
+                more.clear();
+            } finally {
+                if (body != null) {
+                    body.close();
+                }
+                ticket.done();
+            }
+            if (ticket.isCancelled()) {
+                return;
+            }
+            
+            if (!more.isEmpty()) {
+                run.outstanding.incrementAndGet();
+                submitMessageBatch(run, more);
+            }
+            completeMessageBatch(run);
+        });
+    }
+    
+    private void completeMessageBatch(MessageBatchRun run) {
+        if (run.outstanding.decrementAndGet() == 0) {
+            Log.d(TAG, "Batched messages sync fetched in " + run.requests.get() + " requests");
+            run.onComplete.onComplete(run.failedQuestionIds());
+        }
+    }
+    
+    /**
+     * 请求失败、读取失败或响应中缺少该问题：已写入的页保留，跳过完整校对的清理
+     */
+    private void markMessageBatchFailed(List<MessageSyncTask> chunk) {
+        for (MessageSyncTask task : chunk) {
+            Log.w(TAG, "Messages sync failed for question " + task.questionId);
+            task.failed = true;
+        }
+    }
+    
+    /**
+     * 流式读取一批响应并分块写入（在 IO 线程调用）
+     * 
+     * 网络读取在事务之外进行：每个问题的消息读入缓冲区，达到 {@link AppConstants#MESSAGE_WRITE_CHUNK_SIZE}
+     * 条或该问题读完时交给 executor 在一个短事务中写入，问题的最后一块与其消息游标在同一个事务中提交。
+     * 响应体读取缓慢时不会长时间占用数据库写锁和 executor，WebSocket 推送和其他同步的写入不受影响。
+     * 缓冲区中的实体在整个批次内复用，不构建整批的响应对象（完整校对仍按 {@link SortedLongSet} 记录已见消息ID）。
+     * 
+     * 读取失败（网络中断、响应格式错误）时，已提交的问题保留；未读完的问题标记为失败，
+     * 其游标没有推进，下次从原游标重新拉取
+     * 
+     * @param chunk 批次内的任务
+     * @param body 响应体
+     * @return 还有更多消息的任务，游标已推进
+     */
+    private List<MessageSyncTask> ingestMessageBatch(List<MessageSyncTask> chunk, ResponseBody body) {
+        Map<Long, MessageSyncTask> tasks = new HashMap<>();
+        for (MessageSyncTask task : chunk) {
+            tasks.put(task.questionId, task);
+        }
+        Set<MessageSyncTask> unanswered = new HashSet<>(chunk);
+        List<MessageSyncTask> more = new ArrayList<>();
+        
+        try (JsonReader reader = new JsonReader(body.charStream())) {
+            readMessageBatch(reader, tasks, unanswered, more);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error reading message batch, " + unanswered.size() + " questions incomplete", e);
+        }
+        
+        markMessageBatchFailed(new ArrayList<>(unanswered));
+        return more;
+    }
+    
+    /**
+     * 读取批量响应：{"success": ..., "results": [{"questionId", "messages", "cursor", "hasMore"}, ...], "unavailable": [...]}
+     * 
+     * unavailable 中的问题不存在或当前用户不是参与者，标记为不可用而不是失败，游标保持不变
+     */
+    private void readMessageBatch(
+        JsonReader reader,
+        Map<Long, MessageSyncTask> tasks,
+        Set<MessageSyncTask> unanswered,
+        List<MessageSyncTask> more
+    ) throws IOException {
+        MessageWriteBuffer buffer = new MessageWriteBuffer();
+        boolean success = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("success".equals(name)) {
+                success = reader.nextBoolean();
+            } else if ("results".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readQuestionMessages(reader, tasks, unanswered, more, buffer);
+                }
+                reader.endArray();
+            } else if ("unavailable".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    MessageSyncTask task = tasks.get(reader.nextLong());
+                    if (task != null) {
+                        Log.d(TAG, "Messages unavailable for question " + task.questionId);
+                        task.unavailable = true;
+                        unanswered.remove(task);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (!success) {
+            throw new IOException("Message batch was not successful");
+        }
+    }
+    
+    /**
+     * 读取并写入一个问题的一页消息，读完后推进该问题的消息游标
+     * 
+     * 每条消息按自身的 questionId 找到任务，不依赖字段顺序
+     */
+    private void readQuestionMessages(
+        JsonReader reader,
+        Map<Long, MessageSyncTask> tasks,
+        Set<MessageSyncTask> unanswered,
+        List<MessageSyncTask> more,
+        MessageWriteBuffer buffer
+    ) throws IOException {
+        MessageSyncTask task = null;
+        long cursor = 0;
+        boolean hasMore = false;
+        buffer.clear();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if ("questionId".equals(name)) {
+                task = tasks.get(reader.nextLong());
+            } else if ("messages".equals(name)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readServerMessage(reader, buffer.next());
+                    if (buffer.isFull()) {
+                        commitMessageChunk(tasks, buffer, null, false);
+                    }
+                }
+                reader.endArray();
+            } else if ("cursor".equals(name)) {
+                cursor = reader.nextLong();
+            } else if ("hasMore".equals(name)) {
+                hasMore = reader.nextBoolean();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (task == null) {
+            commitMessageChunk(tasks, buffer, null, false);
+            return;
+        }
+        
+        unanswered.remove(task);
+        // 游标未前进时停止，避免服务端异常导致无限请求
+        boolean next = hasMore && cursor > task.afterId;
+        if (next) {
+            task.afterId = cursor;
+            more.add(task);
+        }
+        commitMessageChunk(tasks, buffer, task, !next);
+    }
+    
+    /**
+     * 把缓冲区中的消息交给 executor 写入，等待写入完成后再继续读取（缓冲区中的实体会被复用）
+     * 
+     * @param tasks 批次内的任务
+     * @param buffer 消息缓冲区
+     * @param pageTask 本块之后推进游标的任务，null 表示不推进
+     * @param lastPage 是否为该任务的最后一页
+     * @throws IOException 等待写入时被中断，或写入任务异常结束
+     */
+    private void commitMessageChunk(
+        Map<Long, MessageSyncTask> tasks,
+        MessageWriteBuffer buffer,
+        MessageSyncTask pageTask,
+        boolean lastPage
+    ) throws IOException {
+        if (buffer.size() == 0 && pageTask == null) {
+            return;
+        }
+        Future<?> write = executor.submit(() -> writeMessageChunk(tasks, buffer, pageTask, lastPage));
+        try {
+            write.get();
+        } catch (InterruptedException e) {
+            write.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing synced messages");
+        } catch (ExecutionException e) {
+            throw new IOException("Error writing synced messages", e.getCause());
+        }
+    }
+    
+    /**
+     * 在一个短事务中写入缓冲区中的消息，并可选地推进一个问题的消息游标，然后清空缓冲区（在 executor 线程调用）
+     * 
+     * 事务回滚时涉及的问题标记为失败，本块消息的写入指纹失效
+     * 
+     * @param tasks 批次内的任务
+     * @param buffer 消息缓冲区
+     * @param pageTask 本块之后推进游标的任务，null 表示不推进
+     * @param lastPage 是否为该任务的最后一页
+     */
+    private void writeMessageChunk(
+        Map<Long, MessageSyncTask> tasks,
+        MessageWriteBuffer buffer,
+        MessageSyncTask pageTask,
+        boolean lastPage
+    ) {
+        try {
+            appDatabase.runInTransaction(() -> {
+                for (int i = 0; i < buffer.size(); i++) {
+                    MessageEntity entity = buffer.get(i);
+                    saveServerMessage(tasks.get(entity.getQuestionId()), entity);
+                }
+                if (pageTask != null) {
+                    finishMessagePage(pageTask, lastPage);
+                }
+            });
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error committing " + buffer.size() + " synced messages", e);
+            for (int i = 0; i < buffer.size(); i++) {
+                MessageEntity entity = buffer.get(i);
+                writeDedupFilter.forgetMessage(entity.getId());
+                MessageSyncTask task = tasks.get(entity.getQuestionId());
+                if (task != null) {
+                    task.failed = true;
+                }
+            }
+            if (pageTask != null) {
+                pageTask.failed = true;
+            }
+        } finally {
+            buffer.clear();
+        }
+    }
+    
+    /**
+     * 消息写入缓冲区：实体对象在整个批次内复用，最多缓冲
+     * {@link AppConstants#MESSAGE_WRITE_CHUNK_SIZE} 条
+     */
+    private static final class MessageWriteBuffer {
+        private final List<MessageEntity> entities = new ArrayList<>();
+        private int size;
+        
+        /**
+         * @return 下一个可写入的实体，字段由调用方全部重新设置
+         */
+        MessageEntity next() {
+            if (size == entities.size()) {
+                entities.add(new MessageEntity());
+            }
+            return entities.get(size++);
+        }
+        
+        MessageEntity get(int index) {
+            return entities.get(index);
+        }
+        
+        int size() {
+            return size;
+        }
+        
+        boolean isFull() {
+            return size >= AppConstants.MESSAGE_WRITE_CHUNK_SIZE;
+        }
+        
+        void clear() {
+            size = 0;
+        }
+    }
+    
+    /**
+     * 把一条消息读入复用的实体，未出现的字段恢复默认值
+     */
+    private static void readServerMessage(JsonReader reader, MessageEntity entity) throws IOException {
+        entity.setId(0);
+        entity.setQuestionId(0);
+        entity.setSenderId(0);
+        entity.setContent(null);
+        entity.setMessageType(null);
+        entity.setCreatedAt(0);
+        entity.setRead(false);
+        entity.setSendStatus(MessageStatus.SENT); // 从服务器同步的消息都是已发送状态
+        
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if ("id".equals(name)) {
+                entity.setId(reader.nextLong());
+            } else if ("questionId".equals(name)) {
+                entity.setQuestionId(reader.nextLong());
+            } else if ("senderId".equals(name)) {
+                entity.setSenderId(reader.nextLong());
+            } else if ("content".equals(name)) {
+                entity.setContent(reader.nextString());
+            } else if ("messageType".equals(name)) {
+                entity.setMessageType(reader.nextString());
+            } else if ("createdAt".equals(name)) {
+                entity.setCreatedAt(reader.nextLong());
+            } else if ("isRead".equals(name)) {
+                entity.setRead(reader.nextBoolean()); // 保留已读状态
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+    
+    /**
+     * 写入一条服务端消息（在事务中调用）；写入失败时该问题本批剩余的消息和游标都不再写入
+     * 
+     * @param task 消息所属问题的同步任务，null 表示不在本批中
+     * @param entity 缓冲区中复用的消息实体
+     */
+    private void saveServerMessage(MessageSyncTask task, MessageEntity entity) {
+        if (task == null || task.failed) {
+            return;
+        }
+        try {
+            task.highWaterMark = Math.max(task.highWaterMark, entity.getId());
+            if (task.seenIds != null) {
+                task.seenIds.add(entity.getId());
+            }
+            if (writeDedupFilter.admitMessage(entity)) {
+                messageDao.insert(entity);
+            }
+            task.savedCount++;
+        } catch (RuntimeException e) {
+            task.failed = true;
+            writeDedupFilter.forgetMessage(entity.getId());
+            Log.e(TAG, "Error saving messages to database for question " + task.questionId, e);
+        }
+    }
+    
+    /**
+     * 一个问题的一页消息写入后推进该问题的消息游标（在事务中调用）
+     * 
+     * 增量同步的每一页都记录新的最大消息ID。完整校对在最后一页之前保留原来的校对时间，
+     * 中途中断时下一次仍会重新校对；最后一页写入后删除本地存在但服务端不存在的消息，
+     * 只删除已校对范围（不大于最大消息ID）内的正数ID，同步期间推送到达的新消息和本地临时消息不受影响。
+     * 
+     * @param task 消息同步任务
+     * @param lastPage 是否为该问题的最后一页
+     */
+    private void finishMessagePage(MessageSyncTask task, boolean lastPage) {
+        if (task.failed) {
+            return;
+        }
+        try {
+            boolean verified = task.fullPass && lastPage;
+            if (verified) {
+                // 删除本地存在但服务器不存在的消息
+                List<MessageEntity> localMessages = messageDao.getMessagesByQuestionIdSync(task.questionId);
+                if (localMessages != null) {
+                    for (MessageEntity localMessage : localMessages) {
+                        long id = localMessage.getId();
+                        if (id > 0 && id <= task.highWaterMark && !task.seenIds.contains(id)) {
+                            messageDao.deleteMessage(id);
+                            writeDedupFilter.forgetMessage(id);
+                            Log.d(TAG, "Deleted message " + id + " (not on server)");
                         }
                     }
                 }
-            );
+            }
+            
+            syncStateDao.upsert(new SyncStateEntity(
+                task.syncKey,
+                0,
+                task.highWaterMark,
+                System.currentTimeMillis(),
+                task.fullPass && !verified ? task.previousVerifiedAt : task.verifiedAt
+            ));
+        } catch (RuntimeException e) {
+            task.failed = true;
+            Log.e(TAG, "Error saving messages to database for question " + task.questionId, e);
+            return;
+        }
+        if (lastPage) {
+            Log.d(TAG, "Question " + task.questionId + (task.fullPass ? " full" : " incremental") + 
+                  " sync completed: " + task.savedCount + " messages saved to database");
         }
     }
     
@@ -417,6 +1481,12 @@ public class QuestionRepository {
         void onSuccess(int syncedCount);
         void onError(String errorMessage);
         void onPageLoaded(boolean hasMore);
+        
+        /**
+         * 本地数据仍在有效期内，没有发出请求
+         */
+        default void onSkipped() {
+        }
     }
     
     /**
@@ -0,0 +1,188 @@
+package com.dowdah.asknow.data.repository;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 同步请求合并（single-flight）
+ *
+ * 学生主页、问题列表页和教师端共享 ViewModel 的三个标签页可能同时发起同一次同步。
+ * 相同键（用户、角色、状态、游标、模式）的同步在途时，后来的调用方加入该同步，
+ * 不再发出新的网络请求和数据库写入，同步结束时所有调用方收到同一个结果。
+ *
+ * 每个调用方拿到自己的 {@link SyncScheduler.Scope}：取消只让该调用方退出，
+ * 所有调用方都退出后才取消在途同步。
+ */
+final class SingleFlight {
+    private static final String TAG = "SingleFlight";
+
+    /**
+     * 真正发起同步
+     */
+    interface Starter {
+        /**
+         * @param callback 合并后的回调，转发给所有调用方
+         * @return 在途同步的取消范围
+         */
+        @NonNull
+        SyncScheduler.Scope start(@NonNull QuestionRepository.SyncCallback callback);
+    }
+
+    private final SyncScheduler syncScheduler;
+    private final Map<String, Flight> flights = new HashMap<>();
+
+    SingleFlight(@NonNull SyncScheduler syncScheduler) {
+        this.syncScheduler = syncScheduler;
+    }
+
+    /**
+     * 执行或加入同步
+     *
+     * @param key 同步键，相同键的同步结果可以共享
+     * @param epoch 调用方要求的最小代次，在途同步的代次更早时不加入而是重新发起
+     * @param callback 调用方回调，可为 null
+     * @param starter 没有可加入的在途同步时用于发起同步
+     * @return 调用方自己的取消范围
+     */
+    @NonNull
+    SyncScheduler.Scope run(
+        @NonNull String key,
+        int epoch,
+        @Nullable QuestionRepository.SyncCallback callback,
+        @NonNull Starter starter
+    ) {
+        Member member = new Member(callback);
+        Flight flight;
+        boolean leader;
+        synchronized (this) {
+            flight = flights.get(key);
+            leader = flight == null || flight.epoch < epoch;
+            if (leader) {
+                // 更早代次的在途同步继续为它的调用方服务，只是不再接受加入
+                flight = new Flight(key, epoch);
+                flights.put(key, flight);
+            }
+            flight.members.add(member);
+        }
+
+        Flight joined = flight;
+        SyncScheduler.Scope handle = syncScheduler.newScope();
+        handle.addCancelListener(() -> leave(joined, member));
+        if (leader) {
+            SyncScheduler.Scope scope = starter.start(joined);
+            boolean cancelNow;
+            synchronized (this) {
+                joined.scope = scope;
+                cancelNow = joined.abandoned;
+            }
+            if (cancelNow) {
+                scope.cancel();
+            }
+        } else {
+            Log.d(TAG, "Joined in-flight sync " + key);
+        }
+        return handle;
+    }
+
+    /**
+     * @return 在途（未结束且有调用方）的同步数
+     */
+    synchronized int getInFlightCount() {
+        return flights.size();
+    }
+
+    private void leave(Flight flight, Member member) {
+        SyncScheduler.Scope toCancel = null;
+        synchronized (this) {
+            if (!flight.members.remove(member) || !flight.members.isEmpty() || flight.finished) {
+                return;
+            }
+            flight.abandoned = true;
+            if (flights.get(flight.key) == flight) {
+                flights.remove(flight.key);
+            }
+            toCancel = flight.scope;
+        }
+        if (toCancel != null) {
+            toCancel.cancel();
+        }
+    }
+
+    private static final class Member {
+        final QuestionRepository.SyncCallback callback;
+
+        Member(QuestionRepository.SyncCallback callback) {
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * 一次在途同步：把结果转发给所有仍在等待的调用方
+     */
+    private final class Flight implements QuestionRepository.SyncCallback {
+        final String key;
+        final int epoch;
+        final List<Member> members = new ArrayList<>();
+        SyncScheduler.Scope scope;
+        boolean finished;
+        boolean abandoned;
+
+        Flight(String key, int epoch) {
+            this.key = key;
+            this.epoch = epoch;
+        }
+
+        @Override
+        public void onSuccess(int syncedCount) {
+            for (Member member : finish()) {
+                if (member.callback != null) {
+                    member.callback.onSuccess(syncedCount);
+                }
+            }
+        }
+
+        @Override
+        public void onError(String errorMessage) {
+            for (Member member : finish()) {
+                if (member.callback != null) {
+                    member.callback.onError(errorMessage);
+                }
+            }
+        }
+
+        @Override
+        public void onPageLoaded(boolean hasMore) {
+            for (Member member : snapshot()) {
+                if (member.callback != null) {
+                    member.callback.onPageLoaded(hasMore);
+                }
+            }
+        }
+
+        /**
+         * 结束后新的调用方不再加入，已加入的调用方仍会收到后续的 onPageLoaded
+         */
+        private List<Member> finish() {
+            synchronized (SingleFlight.this) {
+                finished = true;
+                if (flights.get(key) == this) {
+                    flights.remove(key);
+                }
+                return new ArrayList<>(members);
+            }
+        }
+
+        private List<Member> snapshot() {
+            synchronized (SingleFlight.this) {
+                return new ArrayList<>(members);
+            }
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.dowdah.asknow.data.repository;
+
+import androidx.annotation.NonNull;
+
+import com.dowdah.asknow.constants.AppConstants;
+import com.dowdah.asknow.constants.enums.QuestionStatus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import retrofit2.Call;
+
+/**
+ * 后台同步请求调度器
+ *
+ * 同步请求与界面操作（发送消息、接受问题等）共用 OkHttp 对同一主机的并发上限，
+ * 调度器限制同时在途的同步请求数，其余按优先级排队：
+ * - {@link #PRIORITY_FOCUSED}：用户正在查看的问题（{@link #focus(long)}）和问题列表本身
+ * - {@link #PRIORITY_ACTIVE}：进行中的问题
+ * - {@link #PRIORITY_NORMAL}：其他问题
+ *
+ * 每个请求属于一个 {@link Scope}，页面销毁时取消 Scope，排队的任务被丢弃，在途请求被取消。
+ */
+@Singleton
+public final class SyncScheduler {
+
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_ACTIVE = 1;
+    public static final int PRIORITY_FOCUSED = 2;
+
+    /**
+     * 同步任务，完成（无论成功失败）后必须调用 {@link Ticket#done()} 释放并发名额
+     */
+    public interface Job {
+        void run(@NonNull Ticket ticket);
+    }
+
+    private final int maxConcurrent;
+    private final PriorityQueue<Ticket> queue = new PriorityQueue<>((a, b) -> {
+        if (a.priority != b.priority) {
+            return Integer.compare(b.priority, a.priority);
+        }
+        return Long.compare(a.sequence, b.sequence);
+    });
+    private final Map<Long, Integer> focusCounts = new HashMap<>();
+    private int running;
+    private long nextSequence;
+
+    @Inject
+    public SyncScheduler() {
+        this(AppConstants.SYNC_MAX_CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * @param maxConcurrent 最多同时在途的同步请求数
+     */
+    public SyncScheduler(int maxConcurrent) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+    }
+
+    /**
+     * @return 新的取消范围
+     */
+    @NonNull
+    public Scope newScope() {
+        return new Scope();
+    }
+
+    /**
+     * 提交任务，有空闲名额时立即在调用线程执行，否则排队
+     *
+     * @param scope 所属范围，已取消时直接丢弃
+     * @param priority 优先级，数值越大越先执行
+     * @param job 任务
+     */
+    public void submit(@NonNull Scope scope, int priority, @NonNull Job job) {
+        synchronized (this) {
+            if (scope.cancelled) {
+                return;
+            }
+            Ticket ticket = new Ticket(scope, priority, nextSequence++, job);
+            scope.tickets.add(ticket);
+            queue.add(ticket);
+        }
+        dispatch();
+    }
+
+    /**
+     * 标记用户正在查看的问题（引用计数），该问题的同步任务优先执行
+     *
+     * @param questionId 问题ID
+     */
+    public synchronized void focus(long questionId) {
+        Integer count = focusCounts.get(questionId);
+        focusCounts.put(questionId, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * 释放 {@link #focus(long)}
+     *
+     * @param questionId 问题ID
+     */
+    public synchronized void unfocus(long questionId) {
+        Integer count = focusCounts.get(questionId);
+        if (count == null) {
+            return;
+        }
+        if (count <= 1) {
+            focusCounts.remove(questionId);
+        } else {
+            focusCounts.put(questionId, count - 1);
+        }
+    }
+
+    /**
+     * 计算一个问题的同步优先级
+     *
+     * @param questionId 问题ID
+     * @param status 问题状态
+     * @return 优先级
+     */
+    public synchronized int priorityOf(long questionId, String status) {
+        if (focusCounts.containsKey(questionId)) {
+            return PRIORITY_FOCUSED;
+        }
+        if (QuestionStatus.IN_PROGRESS.equals(status)) {
+            return PRIORITY_ACTIVE;
+        }
+        return PRIORITY_NORMAL;
+    }
+
+    /**
+     * @return 在途任务数
+     */
+    public synchronized int getRunningCount() {
+        return running;
+    }
+
+    /**
+     * @return 排队任务数
+     */
+    public synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    private void dispatch() {
+        while (true) {
+            Ticket next;
+            synchronized (this) {
+                if (running >= maxConcurrent || queue.isEmpty()) {
+                    return;
+                }
+                next = queue.poll();
+                next.started = true;
+                running++;
+            }
+            try {
+                next.job.run(next);
+            } catch (RuntimeException e) {
+                next.done();
+                throw e;
+            }
+        }
+    }
+
+    private void release(Ticket ticket) {
+        synchronized (this) {
+            if (ticket.finished) {
+                return;
+            }
+            ticket.finished = true;
+            ticket.scope.tickets.remove(ticket);
+            if (ticket.started) {
+                running--;
+            } else {
+                queue.remove(ticket);
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * 一次提交的执行凭证
+     */
+    public final class Ticket {
+        private final Scope scope;
+        private final int priority;
+        private final long sequence;
+        private final Job job;
+        private final List<Call<?>> calls = new ArrayList<>();
+        private boolean started;
+        private boolean finished;
+
+        private Ticket(Scope scope, int priority, long sequence, Job job) {
+            this.scope = scope;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.job = job;
+        }
+
+        /**
+         * 登记在途请求，范围取消时一并取消；范围已取消时立即取消该请求
+         *
+         * @param call 请求
+         * @return 同一个请求，便于链式调用 enqueue
+         */
+        @NonNull
+        public <T> Call<T> track(@NonNull Call<T> call) {
+            boolean cancelNow;
+            synchronized (SyncScheduler.this) {
+                cancelNow = scope.cancelled;
+                if (!cancelNow) {
+                    calls.add(call);
+                }
+            }
+            if (cancelNow) {
+                call.cancel();
+            }
+            return call;
+        }
+
+        /**
+         * @return 所属范围是否已取消，回调中检查后应直接调用 {@link #done()} 结束
+         */
+        public boolean isCancelled() {
+            synchronized (SyncScheduler.this) {
+                return scope.cancelled;
+            }
+        }
+
+        /**
+         * 任务结束，释放并发名额（可重复调用）
+         */
+        public void done() {
+            release(this);
+        }
+    }
+
+    /**
+     * 取消范围：通常对应一个页面的生命周期
+     */
+    public final class Scope {
+        private final Set<Ticket> tickets = new HashSet<>();
+        private final List<Runnable> cancelListeners = new ArrayList<>();
+        private boolean cancelled;
+
+        private Scope() {
+        }
+
+        /**
+         * 丢弃排队的任务，取消在途请求并释放其并发名额
+         */
+        public void cancel() {
+            List<Ticket> runningTickets = new ArrayList<>();
+            List<Call<?>> calls = new ArrayList<>();
+            List<Runnable> listeners;
+            synchronized (SyncScheduler.this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                for (Ticket ticket : tickets) {
+                    if (ticket.started) {
+                        runningTickets.add(ticket);
+                        calls.addAll(ticket.calls);
+                    } else {
+                        // 先移出队列，释放名额时不会再被调度
+                        ticket.finished = true;
+                        queue.remove(ticket);
+                    }
+                }
+                tickets.clear();
+                tickets.addAll(runningTickets);
+                listeners = new ArrayList<>(cancelListeners);
+                cancelListeners.clear();
+            }
+            for (Call<?> call : calls) {
+                call.cancel();
+            }
+            for (Ticket ticket : runningTickets) {
+                ticket.done();
+            }
+            for (Runnable listener : listeners) {
+                listener.run();
+            }
+        }
+        
+        /**
+         * 登记取消时执行的操作，范围已取消时立即执行
+         * 
+         * @param listener 取消操作
+         */
+        public void addCancelListener(@NonNull Runnable listener) {
+            synchronized (SyncScheduler.this) {
+                if (!cancelled) {
+                    cancelListeners.add(listener);
+                    return;
+                }
+            }
+            listener.run();
+        }
+
+        public boolean isCancelled() {
+            synchronized (SyncScheduler.this) {
+                return cancelled;
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.dowdah.asknow.data.websocket;
+
+import androidx.annotation.Nullable;
+
+/**
+ * ACK 帧的类型化载荷
+ *
+ * 只有上行聊天消息的 ACK 携带 data：status 为 ok 时 message 为服务端保存的消息，
+ * 为 error 时 error 为失败原因。其他 ACK 没有载荷。
+ */
+public final class AckPayload {
+
+    public static final String STATUS_OK = "ok";
+    public static final String STATUS_ERROR = "error";
+
+    String status;
+    String error;
+    ChatMessagePayload message;
+
+    AckPayload() {
+    }
+
+    public boolean isOk() {
+        return STATUS_OK.equals(status) && message != null;
+    }
+
+    @Nullable
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return 服务端保存的消息，失败时返回 null
+     */
+    @Nullable
+    public ChatMessagePayload getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,61 @@
+package com.dowdah.asknow.data.websocket;
+
+import com.dowdah.asknow.constants.enums.MessageType;
+
+/**
+ * CHAT_MESSAGE 帧的类型化载荷
+ *
+ * 字段在解码时已完成校验：id、questionId、senderId、content 必定存在
+ */
+public final class ChatMessagePayload {
+
+    long id;
+    long questionId;
+    long senderId;
+    String content;
+    String messageType = MessageType.TEXT;
+    long createdAt;
+    boolean isRead;
+
+    boolean hasId;
+    boolean hasQuestionId;
+    boolean hasSenderId;
+    boolean hasCreatedAt;
+
+    ChatMessagePayload() {
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getQuestionId() {
+        return questionId;
+    }
+
+    public long getSenderId() {
+        return senderId;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public String getMessageType() {
+        return messageType;
+    }
+
+    /**
+     * 获取创建时间
+     *
+     * @param fallback 消息中没有 createdAt 时使用的时间
+     * @return 创建时间（毫秒）
+     */
+    public long getCreatedAtOr(long fallback) {
+        return hasCreatedAt ? createdAt : fallback;
+    }
+
+    public boolean isRead() {
+        return isRead;
+    }
+}
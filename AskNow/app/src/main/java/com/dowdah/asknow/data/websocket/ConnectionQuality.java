@@ -0,0 +1,96 @@
+package com.dowdah.asknow.data.websocket;
+
+import androidx.annotation.NonNull;
+
+/**
+ * WebSocket 连接质量快照（不可变）
+ *
+ * 由 {@link ConnectionQualityMonitor} 在每次探测结束时生成，其他模块可以据此调整行为，
+ * 例如 RTT 较高或丢包较多时放宽超时、减少预取。
+ */
+public final class ConnectionQuality {
+
+    /**
+     * 尚未完成任何探测时的快照
+     */
+    public static final ConnectionQuality UNKNOWN = new ConnectionQuality(-1, -1, 0, 0, false, 0, 0);
+
+    private final long smoothedRttMs;
+    private final long rttVarianceMs;
+    private final double lossRate;
+    private final long keepAliveIntervalMs;
+    private final boolean unmetered;
+    private final long probesSent;
+    private final long probesLost;
+
+    public ConnectionQuality(long smoothedRttMs, long rttVarianceMs, double lossRate, long keepAliveIntervalMs,
+                             boolean unmetered, long probesSent, long probesLost) {
+        this.smoothedRttMs = smoothedRttMs;
+        this.rttVarianceMs = rttVarianceMs;
+        this.lossRate = lossRate;
+        this.keepAliveIntervalMs = keepAliveIntervalMs;
+        this.unmetered = unmetered;
+        this.probesSent = probesSent;
+        this.probesLost = probesLost;
+    }
+
+    /**
+     * @return 平滑 RTT（毫秒），没有样本时为 -1
+     */
+    public long getSmoothedRttMs() {
+        return smoothedRttMs;
+    }
+
+    /**
+     * @return RTT 平均偏差（毫秒），没有样本时为 -1
+     */
+    public long getRttVarianceMs() {
+        return rttVarianceMs;
+    }
+
+    /**
+     * @return 最近探测的丢失率估计（0 ~ 1）
+     */
+    public double getLossRate() {
+        return lossRate;
+    }
+
+    /**
+     * @return 当前保活探测间隔（毫秒）
+     */
+    public long getKeepAliveIntervalMs() {
+        return keepAliveIntervalMs;
+    }
+
+    /**
+     * @return true 表示当前为不计流量的网络（通常是 Wi-Fi）
+     */
+    public boolean isUnmetered() {
+        return unmetered;
+    }
+
+    public long getProbesSent() {
+        return probesSent;
+    }
+
+    public long getProbesLost() {
+        return probesLost;
+    }
+
+    /**
+     * @return true 表示已有 RTT 样本
+     */
+    public boolean hasRtt() {
+        return smoothedRttMs >= 0;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "srtt=" + smoothedRttMs + "ms, rttvar=" + rttVarianceMs + "ms"
+            + ", loss=" + String.format(java.util.Locale.US, "%.2f", lossRate)
+            + ", keepAlive=" + keepAliveIntervalMs + "ms"
+            + ", " + (unmetered ? "unmetered" : "metered")
+            + ", probes=" + probesSent + "/" + probesLost + " lost";
+    }
+}
@@ -0,0 +1,192 @@
+package com.dowdah.asknow.data.websocket;
+
+import androidx.annotation.Nullable;
+
+/**
+ * WebSocket 连接质量监测
+ *
+ * 客户端定期发送带编号的 PING 帧，服务端原样回复 PONG，据此估计往返时间和丢包率，并自适应调整保活间隔：
+ * - RTT 按 RFC 6298 计算平滑值和平均偏差：srtt += (rtt - srtt) / 8，rttvar += (|rtt - srtt| - rttvar) / 4
+ * - 探测超时取 srtt + 4 * rttvar（限制在上下限之间），超时视为丢失；连续丢失达到阈值即判定为僵尸连接
+ * - 丢失率为最近探测结果的指数加权平均
+ * - 保活间隔按网络类型分别记录：连续若干次探测成功后放大，探测丢失时减半。
+ *   不计流量的网络（Wi-Fi）上限较高以减少射频唤醒，计流量网络（蜂窝）上限较低，避免运营商 NAT 回收空闲连接
+ *
+ * 同一时刻最多一个探测在途。非线程安全，由调用方保证在同一把锁内使用。
+ */
+public final class ConnectionQualityMonitor {
+
+    private static final double LOSS_WEIGHT = 0.2;
+    private static final int GROW_AFTER_SUCCESSES = 4;
+    private static final double GROW_FACTOR = 1.5;
+
+    private final long minIntervalMs;
+    private final long meteredMaxIntervalMs;
+    private final long unmeteredMaxIntervalMs;
+    private final long initialTimeoutMs;
+    private final long minTimeoutMs;
+    private final long maxTimeoutMs;
+    private final int zombieThreshold;
+
+    // 按网络类型分别记录的保活间隔，跨连接保留
+    private long meteredIntervalMs;
+    private long unmeteredIntervalMs;
+    private boolean unmetered;
+
+    private long smoothedRttMs = -1;
+    private long rttVarianceMs = -1;
+    private double lossRate;
+    private int successStreak;
+    private int consecutiveLosses;
+    private long probesSent;
+    private long probesLost;
+
+    private long nextProbeId;
+    @Nullable
+    private String outstandingProbe;
+    private long outstandingSentAtMs;
+
+    /**
+     * @param minIntervalMs 保活间隔下限
+     * @param meteredMaxIntervalMs 计流量网络的保活间隔上限（同时作为初始值）
+     * @param unmeteredMaxIntervalMs 不计流量网络的保活间隔上限
+     * @param initialTimeoutMs 没有 RTT 样本时的探测超时
+     * @param minTimeoutMs 探测超时下限
+     * @param maxTimeoutMs 探测超时上限
+     * @param zombieThreshold 连续丢失多少次判定为僵尸连接
+     */
+    public ConnectionQualityMonitor(long minIntervalMs, long meteredMaxIntervalMs, long unmeteredMaxIntervalMs,
+                                    long initialTimeoutMs, long minTimeoutMs, long maxTimeoutMs,
+                                    int zombieThreshold) {
+        if (minIntervalMs <= 0 || meteredMaxIntervalMs < minIntervalMs || unmeteredMaxIntervalMs < minIntervalMs) {
+            throw new IllegalArgumentException("Invalid keep-alive range");
+        }
+        this.minIntervalMs = minIntervalMs;
+        this.meteredMaxIntervalMs = meteredMaxIntervalMs;
+        this.unmeteredMaxIntervalMs = unmeteredMaxIntervalMs;
+        this.initialTimeoutMs = initialTimeoutMs;
+        this.minTimeoutMs = minTimeoutMs;
+        this.maxTimeoutMs = maxTimeoutMs;
+        this.zombieThreshold = Math.max(1, zombieThreshold);
+        this.meteredIntervalMs = meteredMaxIntervalMs;
+        // Wi-Fi 从计流量网络的上限起步，稳定后再逐步放大
+        this.unmeteredIntervalMs = Math.min(unmeteredMaxIntervalMs, meteredMaxIntervalMs);
+    }
+
+    /**
+     * 新连接建立时调用：丢弃在途探测和 RTT 样本（网络路径可能已变化），保留各网络类型学到的保活间隔
+     *
+     * @param unmetered 当前网络是否不计流量
+     */
+    public void reset(boolean unmetered) {
+        this.unmetered = unmetered;
+        smoothedRttMs = -1;
+        rttVarianceMs = -1;
+        successStreak = 0;
+        consecutiveLosses = 0;
+        outstandingProbe = null;
+    }
+
+    /**
+     * 开始一次探测
+     *
+     * @param nowMs 当前时间
+     * @return 探测编号，作为 PING 帧的 messageId
+     */
+    public String startProbe(long nowMs) {
+        outstandingProbe = "probe-" + (++nextProbeId);
+        outstandingSentAtMs = nowMs;
+        probesSent++;
+        return outstandingProbe;
+    }
+
+    /**
+     * 收到 PONG
+     *
+     * @param probeId PONG 帧的 messageId
+     * @param nowMs 当前时间
+     * @return true 表示是在途探测的回复；超时后才到达的回复返回 false，不计入 RTT
+     */
+    public boolean onPong(@Nullable String probeId, long nowMs) {
+        if (probeId == null || !probeId.equals(outstandingProbe)) {
+            return false;
+        }
+        outstandingProbe = null;
+        long rtt = Math.max(0, nowMs - outstandingSentAtMs);
+        if (smoothedRttMs < 0) {
+            smoothedRttMs = rtt;
+            rttVarianceMs = rtt / 2;
+        } else {
+            rttVarianceMs += (Math.abs(rtt - smoothedRttMs) - rttVarianceMs) / 4;
+            smoothedRttMs += (rtt - smoothedRttMs) / 8;
+        }
+        lossRate *= 1 - LOSS_WEIGHT;
+        consecutiveLosses = 0;
+        if (++successStreak >= GROW_AFTER_SUCCESSES) {
+            successStreak = 0;
+            setInterval((long) (getKeepAliveIntervalMs() * GROW_FACTOR));
+        }
+        return true;
+    }
+
+    /**
+     * 探测超时
+     *
+     * @param probeId 超时的探测编号
+     * @return true 表示连续丢失已达到阈值，应判定为僵尸连接
+     */
+    public boolean onProbeTimeout(String probeId) {
+        if (!probeId.equals(outstandingProbe)) {
+            return false;
+        }
+        outstandingProbe = null;
+        probesLost++;
+        lossRate = lossRate * (1 - LOSS_WEIGHT) + LOSS_WEIGHT;
+        successStreak = 0;
+        setInterval(getKeepAliveIntervalMs() / 2);
+        return ++consecutiveLosses >= zombieThreshold;
+    }
+
+    /**
+     * @return true 表示有探测在途
+     */
+    public boolean isProbeOutstanding() {
+        return outstandingProbe != null;
+    }
+
+    /**
+     * @return 探测超时（毫秒）
+     */
+    public long getProbeTimeoutMs() {
+        if (smoothedRttMs < 0) {
+            return initialTimeoutMs;
+        }
+        long timeout = smoothedRttMs + 4 * rttVarianceMs;
+        return Math.max(minTimeoutMs, Math.min(maxTimeoutMs, timeout));
+    }
+
+    /**
+     * @return 当前网络类型的保活间隔（毫秒）
+     */
+    public long getKeepAliveIntervalMs() {
+        return unmetered ? unmeteredIntervalMs : meteredIntervalMs;
+    }
+
+    private void setInterval(long intervalMs) {
+        long max = unmetered ? unmeteredMaxIntervalMs : meteredMaxIntervalMs;
+        long clamped = Math.max(minIntervalMs, Math.min(max, intervalMs));
+        if (unmetered) {
+            unmeteredIntervalMs = clamped;
+        } else {
+            meteredIntervalMs = clamped;
+        }
+    }
+
+    /**
+     * @return 当前连接质量快照
+     */
+    public ConnectionQuality snapshot() {
+        return new ConnectionQuality(smoothedRttMs, rttVarianceMs, lossRate, getKeepAliveIntervalMs(),
+            unmetered, probesSent, probesLost);
+    }
+}
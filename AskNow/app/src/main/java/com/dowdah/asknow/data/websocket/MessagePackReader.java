@@ -0,0 +1,463 @@
+package com.dowdah.asknow.data.websocket;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * MessagePack 二进制帧读取器
+ *
+ * 以 JsonReader 的接口读取 MessagePack 数据（与 Gson 的 JsonTreeReader 做法相同），
+ * 使 {@link WebSocketFrameDecoder} 的字段映射和校验逻辑可以同时用于 JSON 文本帧和二进制帧。
+ *
+ * 只支持服务端推送用到的类型：nil、bool、整数、浮点数、str、array、map，
+ * map 的键必须是 str；bin、ext 等类型按格式错误处理。
+ * 与 JsonReader 一致，nextLong / nextInt / nextDouble 接受内容为数字的字符串，
+ * nextString 接受数字并返回其文本形式。
+ */
+public final class MessagePackReader extends JsonReader {
+
+    private static final int INITIAL_STACK_SIZE = 16;
+
+    private final byte[] data;
+    private int pos;
+    /**
+     * 容器栈：每层剩余的元素数（map 按键和值分别计数），下标 0 为顶层
+     */
+    private int[] remaining = new int[INITIAL_STACK_SIZE];
+    private boolean[] isMap = new boolean[INITIAL_STACK_SIZE];
+    private int depth;
+    private boolean documentDone;
+
+    /**
+     * @param data 一个完整的 MessagePack 值
+     */
+    public MessagePackReader(@NonNull byte[] data) {
+        super(new StringReader(""));
+        this.data = data;
+    }
+
+    @Override
+    public JsonToken peek() throws IOException {
+        if (depth > 0) {
+            if (remaining[depth] == 0) {
+                return isMap[depth] ? JsonToken.END_OBJECT : JsonToken.END_ARRAY;
+            }
+            if (isMap[depth] && remaining[depth] % 2 == 0) {
+                return JsonToken.NAME;
+            }
+        } else if (documentDone) {
+            return JsonToken.END_DOCUMENT;
+        }
+        return tokenOf(peekFormat());
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        expect(JsonToken.BEGIN_OBJECT);
+        int format = readByte();
+        int size = format == 0xde ? readUnsignedShort() : format == 0xdf ? readLength() : format & 0x0f;
+        valueConsumed();
+        push(true, size);
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        expect(JsonToken.END_OBJECT);
+        depth--;
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        expect(JsonToken.BEGIN_ARRAY);
+        int format = readByte();
+        int size = format == 0xdc ? readUnsignedShort() : format == 0xdd ? readLength() : format & 0x0f;
+        valueConsumed();
+        push(false, size);
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        expect(JsonToken.END_ARRAY);
+        depth--;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        JsonToken token = peek();
+        return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY && token != JsonToken.END_DOCUMENT;
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        expect(JsonToken.NAME);
+        int format = readByte();
+        if (tokenOf(format) != JsonToken.STRING) {
+            throw new MalformedJsonException("Map key is not a string at " + getPath());
+        }
+        String name = readString(format);
+        remaining[depth]--;
+        return name;
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        JsonToken token = peek();
+        String value;
+        if (token == JsonToken.STRING) {
+            value = readString(readByte());
+        } else if (token == JsonToken.NUMBER) {
+            int format = readByte();
+            value = isFloat(format) ? Double.toString(readFloat(format)) : Long.toString(readInteger(format));
+        } else {
+            throw unexpected(JsonToken.STRING, token);
+        }
+        valueConsumed();
+        return value;
+    }
+
+    @Override
+    public long nextLong() throws IOException {
+        JsonToken token = peek();
+        int start = pos;
+        long value;
+        try {
+            if (token == JsonToken.NUMBER) {
+                int format = readByte();
+                if (isFloat(format)) {
+                    double asDouble = readFloat(format);
+                    value = (long) asDouble;
+                    if (value != asDouble) {
+                        throw new NumberFormatException("Expected a long but was " + asDouble + " at " + getPath());
+                    }
+                } else {
+                    value = readInteger(format);
+                }
+            } else if (token == JsonToken.STRING) {
+                value = Long.parseLong(readString(readByte()));
+            } else {
+                throw unexpected(JsonToken.NUMBER, token);
+            }
+        } catch (NumberFormatException e) {
+            // 与 JsonReader 一致：转换失败时不消耗该值
+            pos = start;
+            throw e;
+        }
+        valueConsumed();
+        return value;
+    }
+
+    @Override
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if ((int) value != value) {
+            throw new NumberFormatException("Expected an int but was " + value + " at " + getPath());
+        }
+        return (int) value;
+    }
+
+    @Override
+    public double nextDouble() throws IOException {
+        JsonToken token = peek();
+        double value;
+        if (token == JsonToken.NUMBER) {
+            int format = readByte();
+            value = isFloat(format) ? readFloat(format) : readInteger(format);
+        } else if (token == JsonToken.STRING) {
+            value = Double.parseDouble(readString(readByte()));
+        } else {
+            throw unexpected(JsonToken.NUMBER, token);
+        }
+        valueConsumed();
+        return value;
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+        expect(JsonToken.BOOLEAN);
+        boolean value = readByte() == 0xc3;
+        valueConsumed();
+        return value;
+    }
+
+    @Override
+    public void nextNull() throws IOException {
+        expect(JsonToken.NULL);
+        readByte();
+        valueConsumed();
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        JsonToken token = peek();
+        if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY || token == JsonToken.END_DOCUMENT) {
+            throw new IllegalStateException("Expected a value but was " + token + " at " + getPath());
+        }
+        if (token == JsonToken.NAME) {
+            nextName();
+        }
+        // 不进入容器，按长度前缀直接跳过整个值
+        long pending = 1;
+        while (pending > 0) {
+            pending--;
+            int format = readByte();
+            switch (tokenOf(format)) {
+                case BEGIN_OBJECT:
+                    pending += 2L * (format == 0xde ? readUnsignedShort() : format == 0xdf ? readLength() : format & 0x0f);
+                    break;
+                case BEGIN_ARRAY:
+                    pending += format == 0xdc ? readUnsignedShort() : format == 0xdd ? readLength() : format & 0x0f;
+                    break;
+                case STRING:
+                    skip(stringLength(format));
+                    break;
+                case NUMBER:
+                    skip(numberLength(format));
+                    break;
+                default:
+                    // nil / bool 只有类型字节
+                    break;
+            }
+        }
+        valueConsumed();
+    }
+
+    @Override
+    public void close() {
+        pos = data.length;
+        depth = 0;
+        documentDone = true;
+    }
+
+    @Override
+    public String getPath() {
+        return "$ (byte " + pos + ")";
+    }
+
+    @Override
+    public String toString() {
+        return "MessagePackReader at byte " + pos + " of " + data.length;
+    }
+
+    // ==================== 内部实现 ====================
+
+    private void expect(JsonToken expected) throws IOException {
+        JsonToken token = peek();
+        if (token != expected) {
+            throw unexpected(expected, token);
+        }
+    }
+
+    private IllegalStateException unexpected(JsonToken expected, JsonToken actual) {
+        return new IllegalStateException("Expected " + expected + " but was " + actual + " at " + getPath());
+    }
+
+    /**
+     * 当前容器消耗一个值；顶层值消耗后文档结束
+     */
+    private void valueConsumed() {
+        if (depth > 0) {
+            remaining[depth]--;
+        } else {
+            documentDone = true;
+        }
+    }
+
+    private void push(boolean map, int size) {
+        depth++;
+        if (depth == remaining.length) {
+            remaining = Arrays.copyOf(remaining, depth * 2);
+            isMap = Arrays.copyOf(isMap, depth * 2);
+        }
+        isMap[depth] = map;
+        remaining[depth] = map ? size * 2 : size;
+    }
+
+    private static JsonToken tokenOf(int format) throws MalformedJsonException {
+        if (format <= 0x7f || format >= 0xe0) {
+            return JsonToken.NUMBER;
+        }
+        if (format <= 0x8f) {
+            return JsonToken.BEGIN_OBJECT;
+        }
+        if (format <= 0x9f) {
+            return JsonToken.BEGIN_ARRAY;
+        }
+        if (format <= 0xbf) {
+            return JsonToken.STRING;
+        }
+        switch (format) {
+            case 0xc0:
+                return JsonToken.NULL;
+            case 0xc2:
+            case 0xc3:
+                return JsonToken.BOOLEAN;
+            case 0xca:
+            case 0xcb:
+            case 0xcc:
+            case 0xcd:
+            case 0xce:
+            case 0xcf:
+            case 0xd0:
+            case 0xd1:
+            case 0xd2:
+            case 0xd3:
+                return JsonToken.NUMBER;
+            case 0xd9:
+            case 0xda:
+            case 0xdb:
+                return JsonToken.STRING;
+            case 0xdc:
+            case 0xdd:
+                return JsonToken.BEGIN_ARRAY;
+            case 0xde:
+            case 0xdf:
+                return JsonToken.BEGIN_OBJECT;
+            default:
+                throw new MalformedJsonException("Unsupported MessagePack format 0x" + Integer.toHexString(format));
+        }
+    }
+
+    private static boolean isFloat(int format) {
+        return format == 0xca || format == 0xcb;
+    }
+
+    private int peekFormat() throws IOException {
+        require(1);
+        return data[pos] & 0xff;
+    }
+
+    private int readByte() throws IOException {
+        require(1);
+        return data[pos++] & 0xff;
+    }
+
+    private int readUnsignedShort() throws IOException {
+        require(2);
+        int value = ((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff);
+        pos += 2;
+        return value;
+    }
+
+    private int readInt32() throws IOException {
+        require(4);
+        int value = ((data[pos] & 0xff) << 24) | ((data[pos + 1] & 0xff) << 16)
+            | ((data[pos + 2] & 0xff) << 8) | (data[pos + 3] & 0xff);
+        pos += 4;
+        return value;
+    }
+
+    private long readInt64() throws IOException {
+        long high = readInt32() & 0xffffffffL;
+        long low = readInt32() & 0xffffffffL;
+        return (high << 32) | low;
+    }
+
+    /**
+     * 读取 32 位长度，超过剩余字节数的长度视为格式错误
+     */
+    private int readLength() throws IOException {
+        long length = readInt32() & 0xffffffffL;
+        if (length > data.length - pos) {
+            throw new MalformedJsonException("Length " + length + " exceeds frame at " + getPath());
+        }
+        return (int) length;
+    }
+
+    private long readInteger(int format) throws IOException {
+        if (format <= 0x7f) {
+            return format;
+        }
+        if (format >= 0xe0) {
+            return (byte) format;
+        }
+        switch (format) {
+            case 0xcc:
+                return readByte();
+            case 0xcd:
+                return readUnsignedShort();
+            case 0xce:
+                return readInt32() & 0xffffffffL;
+            case 0xcf:
+                long value = readInt64();
+                if (value < 0) {
+                    throw new NumberFormatException("uint64 out of long range at " + getPath());
+                }
+                return value;
+            case 0xd0:
+                return (byte) readByte();
+            case 0xd1:
+                return (short) readUnsignedShort();
+            case 0xd2:
+                return readInt32();
+            default:
+                return readInt64();
+        }
+    }
+
+    private double readFloat(int format) throws IOException {
+        return format == 0xca ? Float.intBitsToFloat(readInt32()) : Double.longBitsToDouble(readInt64());
+    }
+
+    private String readString(int format) throws IOException {
+        int length = stringLength(format);
+        require(length);
+        String value = new String(data, pos, length, StandardCharsets.UTF_8);
+        pos += length;
+        return value;
+    }
+
+    private int stringLength(int format) throws IOException {
+        switch (format) {
+            case 0xd9:
+                return readByte();
+            case 0xda:
+                return readUnsignedShort();
+            case 0xdb:
+                return readLength();
+            default:
+                return format & 0x1f;
+        }
+    }
+
+    private static int numberLength(int format) {
+        switch (format) {
+            case 0xcc:
+            case 0xd0:
+                return 1;
+            case 0xcd:
+            case 0xd1:
+                return 2;
+            case 0xca:
+            case 0xce:
+            case 0xd2:
+                return 4;
+            case 0xcb:
+            case 0xcf:
+            case 0xd3:
+                return 8;
+            default:
+                // fixint
+                return 0;
+        }
+    }
+
+    private void skip(int length) throws IOException {
+        require(length);
+        pos += length;
+    }
+
+    private void require(int length) throws EOFException {
+        if (length > data.length - pos) {
+            throw new EOFException("Unexpected end of MessagePack frame at " + getPath());
+        }
+    }
+}
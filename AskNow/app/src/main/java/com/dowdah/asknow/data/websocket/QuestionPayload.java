@@ -0,0 +1,91 @@
+package com.dowdah.asknow.data.websocket;
+
+import androidx.annotation.Nullable;
+
+/**
+ * 问题相关帧（NEW_QUESTION、QUESTION_UPDATED 及旧版 QUESTION_ACCEPTED / QUESTION_CLOSED）的类型化载荷
+ *
+ * 可选字段通过 hasXxx() 判断是否出现在消息中，便于增量更新时只覆盖消息里实际携带的字段。
+ * imagePaths 在解码时已直接转换为 JSON 数组字符串，与数据库中的存储格式一致。
+ */
+public final class QuestionPayload {
+
+    long questionId;
+    long userId;
+    Long tutorId;
+    String content;
+    String imagePathsJson;
+    String status;
+    long createdAt;
+    long updatedAt;
+
+    boolean hasQuestionId;
+    boolean hasUserId;
+    boolean hasCreatedAt;
+    boolean hasUpdatedAt;
+
+    QuestionPayload() {
+    }
+
+    public long getQuestionId() {
+        return questionId;
+    }
+
+    public boolean hasUserId() {
+        return hasUserId;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    /**
+     * @return 老师ID，消息中没有或为 null 时返回 null
+     */
+    @Nullable
+    public Long getTutorId() {
+        return tutorId;
+    }
+
+    /**
+     * @return 问题内容，消息中没有时返回 null
+     */
+    @Nullable
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * @return 图片路径 JSON 数组字符串，没有图片时返回 null
+     */
+    @Nullable
+    public String getImagePathsJson() {
+        return imagePathsJson;
+    }
+
+    /**
+     * @return 问题状态，旧版消息中可能为 null
+     */
+    @Nullable
+    public String getStatus() {
+        return status;
+    }
+
+    public boolean hasCreatedAt() {
+        return hasCreatedAt;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * 获取更新时间
+     *
+     * @param fallback 消息中没有 updatedAt 时使用的时间
+     * @return 更新时间（毫秒）
+     */
+    public long getUpdatedAtOr(long fallback) {
+        return hasUpdatedAt ? updatedAt : fallback;
+    }
+}
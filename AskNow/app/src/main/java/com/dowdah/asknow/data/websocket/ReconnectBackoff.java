@@ -0,0 +1,68 @@
+package com.dowdah.asknow.data.websocket;
+
+import java.util.Random;
+
+/**
+ * 去相关抖动（decorrelated jitter）退避策略
+ *
+ * 每次延迟在 [base, 上次延迟 * 3] 之间随机选取，并以 cap 封顶：
+ * sleep = min(cap, random(base, sleep * 3))
+ *
+ * 与固定的指数退避表相比，大量客户端在同一时刻失去服务端时，
+ * 各自的重连时间会迅速分散开，不会按相同节奏同时冲击服务端。
+ *
+ * 非线程安全，由调用方保证在同一线程或同一把锁内使用。
+ */
+public final class ReconnectBackoff {
+
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final Random random;
+    private long lastDelayMs;
+    private int attempts;
+
+    /**
+     * @param baseDelayMs 最小延迟（毫秒）
+     * @param maxDelayMs 最大延迟（毫秒）
+     * @param random 随机数源（测试时可传入固定种子）
+     */
+    public ReconnectBackoff(long baseDelayMs, long maxDelayMs, Random random) {
+        if (baseDelayMs <= 0 || maxDelayMs < baseDelayMs) {
+            throw new IllegalArgumentException("Invalid backoff range: " + baseDelayMs + ".." + maxDelayMs);
+        }
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.random = random;
+        this.lastDelayMs = baseDelayMs;
+    }
+
+    /**
+     * 计算下一次重连的延迟
+     *
+     * @return 延迟（毫秒），范围 [baseDelayMs, maxDelayMs]
+     */
+    public long nextDelayMs() {
+        long upper = Math.min(maxDelayMs, lastDelayMs * 3);
+        long delay = upper > baseDelayMs
+            ? baseDelayMs + (long) (random.nextDouble() * (upper - baseDelayMs + 1))
+            : baseDelayMs;
+        lastDelayMs = Math.min(delay, maxDelayMs);
+        attempts++;
+        return lastDelayMs;
+    }
+
+    /**
+     * 连接成功或网络恢复后重置
+     */
+    public void reset() {
+        lastDelayMs = baseDelayMs;
+        attempts = 0;
+    }
+
+    /**
+     * @return 自上次重置以来的重连次数
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+}
@@ -0,0 +1,56 @@
+package com.dowdah.asknow.data.websocket;
+
+/**
+ * RESUME 帧的类型化载荷
+ *
+ * 服务端在重连握手的最后发送，此前的帧为增量补发的事件（delta）或全量快照（snapshot）
+ */
+public final class ResumePayload {
+
+    /**
+     * 增量补发模式：此前的帧为客户端错过的事件
+     */
+    public static final String MODE_DELTA = "delta";
+
+    /**
+     * 全量快照模式：缺口过大或服务端纪元变化，此前的帧为全量快照
+     */
+    public static final String MODE_SNAPSHOT = "snapshot";
+
+    String mode;
+    String epoch;
+    long seq;
+    int count;
+
+    ResumePayload() {
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public boolean isSnapshot() {
+        return MODE_SNAPSHOT.equals(mode);
+    }
+
+    /**
+     * @return 服务端纪元，进程重启后变化
+     */
+    public String getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return 握手时服务端的当前事件序号
+     */
+    public long getSeq() {
+        return seq;
+    }
+
+    /**
+     * @return 握手期间发送的补发或快照帧数量
+     */
+    public int getCount() {
+        return count;
+    }
+}
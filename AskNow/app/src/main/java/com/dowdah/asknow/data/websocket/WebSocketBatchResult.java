@@ -0,0 +1,76 @@
+package com.dowdah.asknow.data.websocket;
+
+import androidx.annotation.Nullable;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 一批入站帧的处理结果
+ *
+ * 处理器在事务中登记受影响的问题ID，事务提交后由 WebSocketManager 统一通知界面
+ */
+public final class WebSocketBatchResult {
+
+    private final Set<Long> questionsWithNewMessages = new LinkedHashSet<>();
+    private long maxAppliedSeq;
+    private ResumePayload resume;
+
+    /**
+     * 登记收到新聊天消息的问题
+     *
+     * @param questionId 问题ID
+     */
+    public void markNewMessage(long questionId) {
+        questionsWithNewMessages.add(questionId);
+    }
+
+    /**
+     * @return 本批收到新聊天消息的问题ID（按首次出现顺序）
+     */
+    public Set<Long> getQuestionsWithNewMessages() {
+        return questionsWithNewMessages;
+    }
+
+    /**
+     * 记录已应用帧的事件序号
+     *
+     * @param seq 事件序号，0 表示没有序号
+     */
+    public void markApplied(long seq) {
+        if (seq > maxAppliedSeq) {
+            maxAppliedSeq = seq;
+        }
+    }
+
+    /**
+     * @return 本批已应用的最大事件序号，没有带序号的帧时返回 0
+     */
+    public long getMaxAppliedSeq() {
+        return maxAppliedSeq;
+    }
+
+    /**
+     * 记录本批包含的重连握手结果
+     *
+     * 全量快照模式下此前帧的序号可能属于旧的服务端纪元，因此以握手序号为准重新计算
+     *
+     * @param resume 重连握手载荷
+     */
+    public void markResumed(ResumePayload resume) {
+        this.resume = resume;
+        if (resume.isSnapshot()) {
+            maxAppliedSeq = resume.getSeq();
+        } else {
+            markApplied(resume.getSeq());
+        }
+    }
+
+    /**
+     * @return 本批包含的重连握手结果，没有时返回 null
+     */
+    @Nullable
+    public ResumePayload getResume() {
+        return resume;
+    }
+}
@@ -0,0 +1,397 @@
+package com.dowdah.asknow.data.websocket;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebSocket 事件总线
+ *
+ * 替代基于 MutableLiveData.postValue 的推送通知。postValue 在主线程处理之前会合并多次调用，
+ * 同一帧内到达的多条消息只有最后一条能被观察者看到。事件总线为每个订阅者维护独立的有界缓冲区，
+ * 通过投递线程池（生产环境为主线程）按顺序逐条投递：
+ * - 帧订阅：每帧一个事件，缓冲区满时按 {@link OverflowPolicy} 丢弃并计数
+ * - 新消息订阅：只关心"哪些问题有新消息"，未投递的问题ID合并为一个集合，一次投递
+ *
+ * 发布方在数据库事务提交后调用 publish 方法，订阅者收到事件时数据已经可以从数据库读到。
+ */
+public final class WebSocketEventBus {
+    private static final String TAG = "WebSocketEventBus";
+
+    /**
+     * 单次投递任务最多投递的帧数，超过后重新排队，避免长时间占用主线程
+     */
+    private static final int MAX_FRAMES_PER_DRAIN = 64;
+
+    /**
+     * 缓冲区满时的处理策略
+     */
+    public enum OverflowPolicy {
+        /**
+         * 丢弃最早的未投递帧，保留最新状态
+         */
+        DROP_OLDEST,
+
+        /**
+         * 丢弃新到达的帧，保留已缓冲的帧
+         */
+        DROP_NEWEST
+    }
+
+    /**
+     * 帧监听器（在投递线程调用）
+     */
+    public interface FrameListener {
+        void onFrame(@NonNull WebSocketFrame frame);
+    }
+
+    /**
+     * 新消息监听器（在投递线程调用）
+     */
+    public interface QuestionSetListener {
+        /**
+         * @param questionIds 自上次投递以来收到新消息的问题ID，不为空
+         */
+        void onQuestionsChanged(@NonNull Set<Long> questionIds);
+    }
+
+    /**
+     * 订阅句柄
+     */
+    public interface Subscription {
+        /**
+         * 取消订阅，未投递的事件被丢弃
+         */
+        void cancel();
+
+        /**
+         * @return 已投递的事件数
+         */
+        long getDeliveredCount();
+
+        /**
+         * @return 因缓冲区溢出丢弃的事件数
+         */
+        long getDroppedCount();
+    }
+
+    private final Executor deliveryExecutor;
+    private final CopyOnWriteArrayList<FrameSubscriber> frameSubscribers = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<QuestionSetSubscriber> messageSubscribers = new CopyOnWriteArrayList<>();
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * @param deliveryExecutor 投递线程池，生产环境为主线程
+     */
+    public WebSocketEventBus(@NonNull Executor deliveryExecutor) {
+        this.deliveryExecutor = deliveryExecutor;
+    }
+
+    /**
+     * 订阅所有推送帧
+     *
+     * @param capacity 缓冲区容量
+     * @param policy 溢出策略
+     * @param listener 监听器
+     * @return 订阅句柄，不再需要时调用 {@link Subscription#cancel()}
+     */
+    @NonNull
+    public Subscription subscribeFrames(int capacity, @NonNull OverflowPolicy policy, @NonNull FrameListener listener) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        FrameSubscriber subscriber = new FrameSubscriber(capacity, policy, listener);
+        frameSubscribers.add(subscriber);
+        return subscriber;
+    }
+
+    /**
+     * 订阅新消息通知（问题ID集合）
+     *
+     * @param listener 监听器
+     * @return 订阅句柄
+     */
+    @NonNull
+    public Subscription subscribeNewMessages(@NonNull QuestionSetListener listener) {
+        QuestionSetSubscriber subscriber = new QuestionSetSubscriber(listener, true);
+        messageSubscribers.add(subscriber);
+        return subscriber;
+    }
+
+    /**
+     * 按生命周期订阅新消息通知
+     *
+     * STARTED 之前及 STOPPED 之后到达的问题ID会被合并，重新 STARTED 时一次投递；
+     * DESTROYED 时自动取消订阅。必须在主线程调用。
+     *
+     * @param owner 生命周期所有者（Fragment 中使用 getViewLifecycleOwner()）
+     * @param listener 监听器
+     */
+    public void observeNewMessages(@NonNull LifecycleOwner owner, @NonNull QuestionSetListener listener) {
+        Lifecycle lifecycle = owner.getLifecycle();
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            return;
+        }
+        QuestionSetSubscriber subscriber = new QuestionSetSubscriber(listener, false);
+        messageSubscribers.add(subscriber);
+        lifecycle.addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onStart(@NonNull LifecycleOwner source) {
+                subscriber.setActive(true);
+            }
+
+            @Override
+            public void onStop(@NonNull LifecycleOwner source) {
+                subscriber.setActive(false);
+            }
+
+            @Override
+            public void onDestroy(@NonNull LifecycleOwner source) {
+                subscriber.cancel();
+                source.getLifecycle().removeObserver(this);
+            }
+        });
+    }
+
+    /**
+     * 发布一批帧（事务提交后调用）
+     *
+     * @param frames 按到达顺序排列的帧
+     */
+    public void publishFrames(@NonNull Collection<WebSocketFrame> frames) {
+        if (frames.isEmpty()) {
+            return;
+        }
+        publishedCount.addAndGet(frames.size());
+        for (FrameSubscriber subscriber : frameSubscribers) {
+            subscriber.offer(frames);
+        }
+    }
+
+    /**
+     * 发布收到新消息的问题ID
+     *
+     * @param questionIds 问题ID集合
+     */
+    public void publishNewMessages(@NonNull Set<Long> questionIds) {
+        if (questionIds.isEmpty()) {
+            return;
+        }
+        for (QuestionSetSubscriber subscriber : messageSubscribers) {
+            subscriber.offer(questionIds);
+        }
+    }
+
+    /**
+     * @return 发布的帧总数
+     */
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    /**
+     * @return 所有订阅者累计投递的事件数
+     */
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    /**
+     * @return 所有订阅者累计丢弃的事件数
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 输出投递统计
+     */
+    public void logStats() {
+        Log.d(TAG, "published=" + publishedCount.get()
+            + ", delivered=" + deliveredCount.get()
+            + ", dropped=" + droppedCount.get()
+            + ", frameSubscribers=" + frameSubscribers.size()
+            + ", messageSubscribers=" + messageSubscribers.size());
+    }
+
+    /**
+     * 帧订阅者：有界缓冲区 + 单个投递任务
+     */
+    private final class FrameSubscriber implements Subscription {
+        private final int capacity;
+        private final OverflowPolicy policy;
+        private final FrameListener listener;
+        private final ArrayDeque<WebSocketFrame> buffer = new ArrayDeque<>();
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private boolean drainScheduled;
+        private volatile boolean cancelled;
+
+        FrameSubscriber(int capacity, OverflowPolicy policy, FrameListener listener) {
+            this.capacity = capacity;
+            this.policy = policy;
+            this.listener = listener;
+        }
+
+        void offer(Collection<WebSocketFrame> frames) {
+            int overflow = 0;
+            boolean schedule;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                for (WebSocketFrame frame : frames) {
+                    if (buffer.size() >= capacity) {
+                        overflow++;
+                        if (policy == OverflowPolicy.DROP_NEWEST) {
+                            continue;
+                        }
+                        buffer.pollFirst();
+                    }
+                    buffer.addLast(frame);
+                }
+                schedule = !drainScheduled && !buffer.isEmpty();
+                if (schedule) {
+                    drainScheduled = true;
+                }
+            }
+            if (overflow > 0) {
+                dropped.addAndGet(overflow);
+                droppedCount.addAndGet(overflow);
+                Log.w(TAG, "Subscriber buffer full, dropped " + overflow + " frames (" + policy + ")");
+            }
+            if (schedule) {
+                deliveryExecutor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            for (int i = 0; i < MAX_FRAMES_PER_DRAIN; i++) {
+                WebSocketFrame frame;
+                synchronized (this) {
+                    frame = cancelled ? null : buffer.pollFirst();
+                    if (frame == null) {
+                        drainScheduled = false;
+                        return;
+                    }
+                }
+                listener.onFrame(frame);
+                delivered.incrementAndGet();
+                deliveredCount.incrementAndGet();
+            }
+            // 还有剩余帧，让出投递线程后继续
+            deliveryExecutor.execute(this::drain);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            frameSubscribers.remove(this);
+            synchronized (this) {
+                buffer.clear();
+            }
+        }
+
+        @Override
+        public long getDeliveredCount() {
+            return delivered.get();
+        }
+
+        @Override
+        public long getDroppedCount() {
+            return dropped.get();
+        }
+    }
+
+    /**
+     * 新消息订阅者：未投递的问题ID合并为一个集合，天然有界（不超过问题总数），不会丢弃
+     */
+    private final class QuestionSetSubscriber implements Subscription {
+        private final QuestionSetListener listener;
+        private final AtomicLong delivered = new AtomicLong();
+        private Set<Long> pending = new LinkedHashSet<>();
+        private boolean drainScheduled;
+        private volatile boolean active;
+        private volatile boolean cancelled;
+
+        QuestionSetSubscriber(QuestionSetListener listener, boolean active) {
+            this.listener = listener;
+            this.active = active;
+        }
+
+        void offer(Set<Long> questionIds) {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                pending.addAll(questionIds);
+            }
+            scheduleDrain();
+        }
+
+        void setActive(boolean active) {
+            this.active = active;
+            if (active) {
+                scheduleDrain();
+            }
+        }
+
+        private void scheduleDrain() {
+            synchronized (this) {
+                if (drainScheduled || !active || pending.isEmpty()) {
+                    return;
+                }
+                drainScheduled = true;
+            }
+            deliveryExecutor.execute(this::drain);
+        }
+
+        private void drain() {
+            Set<Long> batch;
+            synchronized (this) {
+                drainScheduled = false;
+                if (cancelled || !active || pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new LinkedHashSet<>();
+            }
+            listener.onQuestionsChanged(Collections.unmodifiableSet(batch));
+            delivered.addAndGet(batch.size());
+            deliveredCount.addAndGet(batch.size());
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            messageSubscribers.remove(this);
+            synchronized (this) {
+                pending.clear();
+            }
+        }
+
+        @Override
+        public long getDeliveredCount() {
+            return delivered.get();
+        }
+
+        @Override
+        public long getDroppedCount() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.dowdah.asknow.data.websocket;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * 已解码的 WebSocket 入站帧
+ *
+ * 由 {@link WebSocketFrameDecoder} 一次性流式解析生成，data 字段根据 type
+ * 直接映射为对应的类型化载荷，不再保留通用的 JsonObject 树：
+ * - CHAT_MESSAGE -> {@link ChatMessagePayload}
+ * - NEW_QUESTION / QUESTION_UPDATED / QUESTION_ACCEPTED / QUESTION_CLOSED -> {@link QuestionPayload}
+ * - RESUME -> {@link ResumePayload}
+ * - ACK -> {@link AckPayload}（仅上行聊天消息的 ACK 携带，其他 ACK 无载荷）
+ * - 未知类型 -> 无载荷
+ *
+ * 服务端推送的业务事件带有全局递增的 seq，用于断线重连时增量补发；
+ * ACK、RESUME 等控制帧以及全量快照帧没有 seq（为 0）。
+ */
+public final class WebSocketFrame {
+
+    private final String type;
+    private final String messageId;
+    private final String timestamp;
+    private final long seq;
+    private final Object payload;
+
+    WebSocketFrame(@NonNull String type, @Nullable String messageId, @Nullable String timestamp, @Nullable Object payload) {
+        this(type, messageId, timestamp, 0L, payload);
+    }
+
+    WebSocketFrame(@NonNull String type, @Nullable String messageId, @Nullable String timestamp, long seq, @Nullable Object payload) {
+        this.type = type;
+        this.messageId = messageId;
+        this.timestamp = timestamp;
+        this.seq = seq;
+        this.payload = payload;
+    }
+
+    @NonNull
+    public String getType() {
+        return type;
+    }
+
+    @Nullable
+    public String getMessageId() {
+        return messageId;
+    }
+
+    @Nullable
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return 事件序号，没有序号的帧返回 0
+     */
+    public long getSeq() {
+        return seq;
+    }
+
+    /**
+     * 获取聊天消息载荷
+     *
+     * @return 聊天消息载荷，如果该帧不是聊天消息则返回 null
+     */
+    @Nullable
+    public ChatMessagePayload getChatMessage() {
+        return payload instanceof ChatMessagePayload ? (ChatMessagePayload) payload : null;
+    }
+
+    /**
+     * 获取问题载荷
+     *
+     * @return 问题载荷，如果该帧不是问题相关消息则返回 null
+     */
+    @Nullable
+    public QuestionPayload getQuestion() {
+        return payload instanceof QuestionPayload ? (QuestionPayload) payload : null;
+    }
+
+    /**
+     * 获取确认载荷
+     *
+     * @return 上行聊天消息的处理结果，如果该帧不是 ACK 或 ACK 没有载荷则返回 null
+     */
+    @Nullable
+    public AckPayload getAck() {
+        return payload instanceof AckPayload ? (AckPayload) payload : null;
+    }
+
+    /**
+     * 获取重连握手载荷
+     *
+     * @return 重连握手载荷，如果该帧不是 RESUME 则返回 null
+     */
+    @Nullable
+    public ResumePayload getResume() {
+        return payload instanceof ResumePayload ? (ResumePayload) payload : null;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "WebSocketFrame{type=" + type + ", seq=" + seq + ", messageId=" + messageId + "}";
+    }
+}
@@ -0,0 +1,424 @@
+package com.dowdah.asknow.data.websocket;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.dowdah.asknow.constants.enums.WebSocketMessageType;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * WebSocket 入站帧解码器
+ *
+ * 使用 JsonReader 对帧文本做单次流式解析，根据 type 把 data 直接映射为类型化载荷，
+ * 并在同一次遍历中完成必填字段校验，不再为每一帧创建 Gson 实例和 JsonObject 树。
+ * 协商了 MessagePack 子协议时，二进制帧通过 {@link MessagePackReader} 走同一套解析逻辑。
+ *
+ * 解码器本身无状态，可以在多个线程间共享同一个实例。
+ * 非法帧（JSON 格式错误、缺少 type、缺少必填字段）返回 null 并记录原因，由调用方直接丢弃。
+ */
+public final class WebSocketFrameDecoder {
+    private static final String TAG = "WebSocketFrameDecoder";
+
+    /**
+     * 解码一帧文本
+     *
+     * @param text WebSocket 文本帧
+     * @return 解码后的帧，非法帧返回 null
+     */
+    @Nullable
+    public WebSocketFrame decode(@Nullable String text) {
+        if (text == null || text.isEmpty()) {
+            Log.w(TAG, "Dropping empty frame");
+            return null;
+        }
+        try {
+            return decodeFrame(new JsonReader(new StringReader(text)));
+        } catch (IOException | JsonParseException | IllegalStateException | NumberFormatException e) {
+            Log.w(TAG, "Dropping malformed frame: " + e.getMessage());
+            return null;
+        } catch (InvalidFrameException e) {
+            Log.w(TAG, "Dropping invalid frame: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 解码一帧 MessagePack 二进制数据
+     *
+     * @param bytes WebSocket 二进制帧
+     * @return 解码后的帧，非法帧返回 null
+     */
+    @Nullable
+    public WebSocketFrame decodeBinary(@Nullable byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            Log.w(TAG, "Dropping empty binary frame");
+            return null;
+        }
+        try {
+            return decodeFrame(new MessagePackReader(bytes));
+        } catch (IOException | JsonParseException | IllegalStateException | NumberFormatException e) {
+            Log.w(TAG, "Dropping malformed binary frame: " + e.getMessage());
+            return null;
+        } catch (InvalidFrameException e) {
+            Log.w(TAG, "Dropping invalid binary frame: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private WebSocketFrame decodeFrame(JsonReader reader) throws IOException {
+        String type = null;
+        String messageId = null;
+        String timestamp = null;
+        long seq = 0L;
+        Object payload = null;
+        boolean hasData = false;
+        // data 出现在 type 之前时（后端不会这样发送，仅作兜底）暂存为树，读到 type 后再解码
+        JsonElement deferredData = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "type":
+                    type = nextStringOrNull(reader);
+                    break;
+                case "messageId":
+                    messageId = nextStringOrNull(reader);
+                    break;
+                case "timestamp":
+                    timestamp = nextStringOrNull(reader);
+                    break;
+                case "seq":
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else {
+                        seq = reader.nextLong();
+                    }
+                    break;
+                case "data":
+                    hasData = true;
+                    if (type != null) {
+                        payload = decodePayload(type, reader);
+                    } else if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else {
+                        deferredData = JsonParser.parseReader(reader);
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (type == null) {
+            throw new InvalidFrameException("missing type");
+        }
+        if (deferredData != null) {
+            payload = decodePayload(type, new JsonReader(new StringReader(deferredData.toString())));
+        }
+        if (!hasData || payload == null) {
+            // data 缺失时，对需要载荷的类型执行与空载荷相同的校验
+            payload = validateMissingPayload(type);
+        }
+        return new WebSocketFrame(type, messageId, timestamp, seq, payload);
+    }
+
+    /**
+     * 根据消息类型解码 data 字段
+     *
+     * @return 类型化载荷；不需要载荷的类型（如 ACK）返回 null
+     */
+    @Nullable
+    private Object decodePayload(String type, JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        switch (type) {
+            case WebSocketMessageType.CHAT_MESSAGE:
+                return decodeChatMessage(reader);
+            case WebSocketMessageType.NEW_QUESTION:
+            case WebSocketMessageType.QUESTION_UPDATED:
+            case WebSocketMessageType.QUESTION_ACCEPTED:
+            case WebSocketMessageType.QUESTION_CLOSED:
+                return decodeQuestion(type, reader);
+            case WebSocketMessageType.RESUME:
+                return decodeResume(reader);
+            case WebSocketMessageType.ACK:
+                return decodeAck(reader);
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
+
+    @Nullable
+    private Object validateMissingPayload(String type) {
+        switch (type) {
+            case WebSocketMessageType.CHAT_MESSAGE:
+            case WebSocketMessageType.NEW_QUESTION:
+            case WebSocketMessageType.QUESTION_UPDATED:
+            case WebSocketMessageType.QUESTION_ACCEPTED:
+            case WebSocketMessageType.QUESTION_CLOSED:
+            case WebSocketMessageType.RESUME:
+                throw new InvalidFrameException(type + " missing data");
+            default:
+                return null;
+        }
+    }
+
+    private ChatMessagePayload decodeChatMessage(JsonReader reader) throws IOException {
+        ChatMessagePayload payload = new ChatMessagePayload();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                // 后端发送的格式为 data.id，客户端转发的格式为 data.messageId，优先使用 id
+                case "id":
+                    payload.id = reader.nextLong();
+                    payload.hasId = true;
+                    break;
+                case "messageId":
+                    long forwardedId = reader.nextLong();
+                    if (!payload.hasId) {
+                        payload.id = forwardedId;
+                        payload.hasId = true;
+                    }
+                    break;
+                case "questionId":
+                    payload.questionId = reader.nextLong();
+                    payload.hasQuestionId = true;
+                    break;
+                case "senderId":
+                    payload.senderId = reader.nextLong();
+                    payload.hasSenderId = true;
+                    break;
+                case "content":
+                    payload.content = reader.nextString();
+                    break;
+                case "messageType":
+                    payload.messageType = reader.nextString();
+                    break;
+                case "createdAt":
+                    payload.createdAt = reader.nextLong();
+                    payload.hasCreatedAt = true;
+                    break;
+                case "isRead":
+                    payload.isRead = reader.nextBoolean();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (!payload.hasId) {
+            throw new InvalidFrameException("CHAT_MESSAGE missing both id and messageId");
+        }
+        if (!payload.hasQuestionId) {
+            throw new InvalidFrameException("CHAT_MESSAGE missing questionId");
+        }
+        if (!payload.hasSenderId) {
+            throw new InvalidFrameException("CHAT_MESSAGE missing senderId");
+        }
+        if (payload.content == null) {
+            throw new InvalidFrameException("CHAT_MESSAGE missing content");
+        }
+        return payload;
+    }
+
+    private QuestionPayload decodeQuestion(String type, JsonReader reader) throws IOException {
+        QuestionPayload payload = new QuestionPayload();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "questionId":
+                    payload.questionId = reader.nextLong();
+                    payload.hasQuestionId = true;
+                    break;
+                case "userId":
+                    payload.userId = reader.nextLong();
+                    payload.hasUserId = true;
+                    break;
+                case "tutorId":
+                    payload.tutorId = reader.nextLong();
+                    break;
+                case "content":
+                    payload.content = reader.nextString();
+                    break;
+                case "imagePaths":
+                    payload.imagePathsJson = readImagePaths(reader);
+                    break;
+                case "status":
+                    payload.status = reader.nextString();
+                    break;
+                case "createdAt":
+                    payload.createdAt = reader.nextLong();
+                    payload.hasCreatedAt = true;
+                    break;
+                case "updatedAt":
+                    payload.updatedAt = reader.nextLong();
+                    payload.hasUpdatedAt = true;
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (!payload.hasQuestionId) {
+            throw new InvalidFrameException(type + " missing questionId");
+        }
+        if (WebSocketMessageType.QUESTION_UPDATED.equals(type) && payload.status == null) {
+            throw new InvalidFrameException(type + " missing status");
+        }
+        if (WebSocketMessageType.NEW_QUESTION.equals(type)
+                && (!payload.hasUserId || payload.content == null || payload.status == null || !payload.hasCreatedAt)) {
+            throw new InvalidFrameException(type + " missing userId/content/status/createdAt");
+        }
+        return payload;
+    }
+
+    private ResumePayload decodeResume(JsonReader reader) throws IOException {
+        ResumePayload payload = new ResumePayload();
+        boolean hasSeq = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "mode":
+                    payload.mode = reader.nextString();
+                    break;
+                case "epoch":
+                    payload.epoch = reader.nextString();
+                    break;
+                case "seq":
+                    payload.seq = reader.nextLong();
+                    hasSeq = true;
+                    break;
+                case "count":
+                    payload.count = reader.nextInt();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (payload.mode == null || payload.epoch == null || !hasSeq) {
+            throw new InvalidFrameException("RESUME missing mode/epoch/seq");
+        }
+        return payload;
+    }
+
+    private AckPayload decodeAck(JsonReader reader) throws IOException {
+        AckPayload payload = new AckPayload();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "status":
+                    payload.status = reader.nextString();
+                    break;
+                case "error":
+                    payload.error = reader.nextString();
+                    break;
+                case "message":
+                    payload.message = decodeChatMessage(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (payload.status == null) {
+            throw new InvalidFrameException("ACK missing status");
+        }
+        return payload;
+    }
+
+    /**
+     * 读取 imagePaths 字段并直接写成 JSON 数组字符串
+     *
+     * 与 QuestionRepository 中从 REST API 获取数据的处理方式保持一致：空数组视为没有图片
+     */
+    @Nullable
+    private String readImagePaths(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.STRING) {
+            // 兼容已经序列化为字符串的旧格式
+            String raw = reader.nextString();
+            return raw.isEmpty() || "[]".equals(raw) ? null : raw;
+        }
+        StringWriter out = new StringWriter();
+        JsonWriter writer = new JsonWriter(out);
+        // 与 Gson 默认输出保持一致，保证同一组路径生成的字符串完全相同
+        writer.setHtmlSafe(true);
+        int count = 0;
+        writer.beginArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            writer.value(reader.nextString());
+            count++;
+        }
+        reader.endArray();
+        writer.endArray();
+        writer.flush();
+        return count > 0 ? out.toString() : null;
+    }
+
+    @Nullable
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * 帧内容不满足协议要求（缺少必填字段等）
+     */
+    private static final class InvalidFrameException extends RuntimeException {
+        InvalidFrameException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.dowdah.asknow.data.websocket;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * WebSocket 帧处理器注册表
+ *
+ * 按消息类型登记处理器，并在登记时声明允许的用户角色，分发时只做一次哈希查找，
+ * 不再依赖逐个比较字符串的 if/else 链。新增推送类型只需要调用 {@link #register}。
+ *
+ * 每种类型都会记录调用次数、失败次数和处理耗时直方图（按 2 的幂分桶，单位微秒），
+ * 用于定位拖慢摄入线程的消息类型。
+ */
+public final class WebSocketHandlerRegistry {
+    private static final String TAG = "WebSocketHandlerRegistry";
+
+    /**
+     * 耗时直方图桶数：第 i 个桶统计 [2^(i-1), 2^i) 微秒，最后一个桶统计所有更慢的调用
+     */
+    public static final int LATENCY_BUCKETS = 16;
+
+    /**
+     * 帧处理器，在摄入线程的数据库事务中执行
+     */
+    public interface Handler {
+        void handle(@NonNull WebSocketFrame frame, @NonNull WebSocketBatchResult result);
+    }
+
+    private final Map<String, Registration> registrations = new HashMap<>();
+    private final AtomicLong unhandledCount = new AtomicLong();
+
+    /**
+     * 登记处理器
+     *
+     * @param type 消息类型（见 WebSocketMessageType）
+     * @param handler 处理器
+     * @param roles 允许处理该类型的角色，不传表示所有角色
+     */
+    public synchronized void register(@NonNull String type, @NonNull Handler handler, String... roles) {
+        Set<String> allowedRoles = roles.length == 0
+            ? Collections.emptySet()
+            : Collections.unmodifiableSet(new HashSet<>(Arrays.asList(roles)));
+        if (registrations.put(type, new Registration(type, handler, allowedRoles)) != null) {
+            Log.w(TAG, "Handler for " + type + " replaced");
+        }
+    }
+
+    /**
+     * 分发一帧
+     *
+     * 处理器抛出的异常在这里捕获并计入失败次数，不影响同一批中的其他帧
+     *
+     * @param frame 已解码的帧
+     * @param role 当前用户角色
+     * @param result 本批处理结果
+     * @return 是否找到并执行了处理器
+     */
+    public boolean dispatch(@NonNull WebSocketFrame frame, @Nullable String role, @NonNull WebSocketBatchResult result) {
+        Registration registration;
+        synchronized (this) {
+            registration = registrations.get(frame.getType());
+        }
+        if (registration == null || !registration.accepts(role)) {
+            unhandledCount.incrementAndGet();
+            return false;
+        }
+
+        long start = System.nanoTime();
+        try {
+            registration.handler.handle(frame, result);
+        } catch (Exception e) {
+            registration.stats.failures.incrementAndGet();
+            Log.e(TAG, "Error handling " + frame.getType(), e);
+        } finally {
+            registration.stats.record(System.nanoTime() - start);
+        }
+        return true;
+    }
+
+    /**
+     * @return 未找到处理器或角色不匹配而被忽略的帧数
+     */
+    public long getUnhandledCount() {
+        return unhandledCount.get();
+    }
+
+    /**
+     * 获取指定类型的统计信息
+     *
+     * @param type 消息类型
+     * @return 统计信息，未登记的类型返回 null
+     */
+    @Nullable
+    public synchronized HandlerStats getStats(@NonNull String type) {
+        Registration registration = registrations.get(type);
+        return registration != null ? registration.stats : null;
+    }
+
+    /**
+     * 将所有类型的统计信息输出到日志
+     */
+    public void logStats() {
+        Map<String, Registration> snapshot;
+        synchronized (this) {
+            snapshot = new HashMap<>(registrations);
+        }
+        for (Registration registration : snapshot.values()) {
+            if (registration.stats.getInvocations() > 0) {
+                Log.d(TAG, registration.type + ": " + registration.stats);
+            }
+        }
+        Log.d(TAG, "Unhandled frames: " + unhandledCount.get());
+    }
+
+    private static final class Registration {
+        final String type;
+        final Handler handler;
+        final Set<String> allowedRoles;
+        final HandlerStats stats = new HandlerStats();
+
+        Registration(String type, Handler handler, Set<String> allowedRoles) {
+            this.type = type;
+            this.handler = handler;
+            this.allowedRoles = allowedRoles;
+        }
+
+        boolean accepts(@Nullable String role) {
+            return allowedRoles.isEmpty() || (role != null && allowedRoles.contains(role));
+        }
+    }
+
+    /**
+     * 单个消息类型的处理统计
+     */
+    public static final class HandlerStats {
+        private final AtomicLong invocations = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(LATENCY_BUCKETS);
+
+        void record(long elapsedNanos) {
+            invocations.incrementAndGet();
+            totalNanos.addAndGet(elapsedNanos);
+            maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+            histogram.incrementAndGet(bucketOf(elapsedNanos / 1000));
+        }
+
+        static int bucketOf(long micros) {
+            if (micros <= 0) {
+                return 0;
+            }
+            int bucket = 64 - Long.numberOfLeadingZeros(micros);
+            return Math.min(bucket, LATENCY_BUCKETS - 1);
+        }
+
+        public long getInvocations() {
+            return invocations.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public long getAverageMicros() {
+            long count = invocations.get();
+            return count == 0 ? 0 : totalNanos.get() / count / 1000;
+        }
+
+        public long getMaxMicros() {
+            return maxNanos.get() / 1000;
+        }
+
+        /**
+         * @return 耗时直方图快照，下标含义见 {@link #LATENCY_BUCKETS}
+         */
+        public long[] getHistogram() {
+            long[] snapshot = new long[LATENCY_BUCKETS];
+            for (int i = 0; i < LATENCY_BUCKETS; i++) {
+                snapshot[i] = histogram.get(i);
+            }
+            return snapshot;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "count=" + getInvocations()
+                + ", failures=" + getFailures()
+                + ", avg=" + getAverageMicros() + "us"
+                + ", max=" + getMaxMicros() + "us"
+                + ", histogram=" + Arrays.toString(getHistogram());
+        }
+    }
+}
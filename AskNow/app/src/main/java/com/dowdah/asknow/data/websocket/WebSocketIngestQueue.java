@@ -0,0 +1,347 @@
+package com.dowdah.asknow.data.websocket;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.dowdah.asknow.constants.enums.WebSocketMessageType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebSocket 入站帧微批处理队列
+ *
+ * 收到第一帧时开启一个时间窗口，窗口结束或累积帧数达到上限时，把这段时间内的帧作为一批
+ * 交给 {@link BatchHandler} 处理。调用方在一个数据库事务中应用整批数据，
+ * 这样 Room 每批只触发一次失效通知，而不是每帧一次。
+ * 每批最多 maxBatchSize 帧，积压的帧按顺序分成多批紧接着处理，单个事务的持续时间有上限。
+ *
+ * 所有批次都在传入的单线程执行器上按到达顺序处理，执行器上同时最多只有一个窗口任务和一个处理任务。
+ *
+ * 待处理的帧数有上限。队列已满时：
+ * - 新到的 QUESTION_UPDATED 如果有同一问题的待处理更新，直接替换旧帧（旧状态已被取代），不占用新位置
+ * - 否则丢弃所有待处理的帧并回调 {@link OverflowHandler}，由调用方从已提交的位置重新续传
+ */
+public final class WebSocketIngestQueue {
+    private static final String TAG = "WebSocketIngestQueue";
+
+    /**
+     * 批处理回调，在摄入线程上执行
+     */
+    public interface BatchHandler {
+        void onBatch(@NonNull List<WebSocketFrame> batch);
+    }
+
+    /**
+     * 队列溢出回调，在调用 enqueue 的线程上执行（锁外）
+     */
+    public interface OverflowHandler {
+        /**
+         * @param droppedFrames 丢弃的帧数（包括触发溢出的这一帧）
+         */
+        void onOverflow(int droppedFrames);
+    }
+
+    private static final class Entry {
+        final WebSocketFrame frame;
+        final long enqueuedAtNanos;
+
+        Entry(WebSocketFrame frame, long enqueuedAtNanos) {
+            this.frame = frame;
+            this.enqueuedAtNanos = enqueuedAtNanos;
+        }
+    }
+
+    private final ScheduledExecutorService executor;
+    private final long windowMs;
+    private final int maxBatchSize;
+    private final int capacity;
+    private final BatchHandler handler;
+    private final OverflowHandler overflowHandler;
+
+    // 以下字段由 this 锁保护
+    private List<Entry> pending = new ArrayList<>();
+    // 待处理帧中每个问题最新一条 QUESTION_UPDATED 的下标
+    private final Map<Long, Integer> pendingUpdateIndex = new HashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean drainScheduled;
+    private int maxDepth;
+
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final AtomicLong appliedCount = new AtomicLong();
+    private final AtomicLong collapsedCount = new AtomicLong();
+    private final AtomicLong overflowCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /**
+     * @param executor 单线程执行器，批次按顺序在其上处理
+     * @param windowMs 批处理窗口（毫秒）
+     * @param maxBatchSize 每批最多帧数，达到该帧数时不再等待窗口结束
+     * @param capacity 待处理帧数上限
+     * @param handler 批处理回调
+     * @param overflowHandler 队列溢出回调
+     */
+    public WebSocketIngestQueue(ScheduledExecutorService executor, long windowMs, int maxBatchSize, int capacity,
+                                BatchHandler handler, OverflowHandler overflowHandler) {
+        if (capacity < maxBatchSize) {
+            throw new IllegalArgumentException("capacity " + capacity + " is smaller than batch size " + maxBatchSize);
+        }
+        this.executor = executor;
+        this.windowMs = windowMs;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.capacity = capacity;
+        this.handler = handler;
+        this.overflowHandler = overflowHandler;
+    }
+
+    /**
+     * 加入一帧，可在任意线程调用
+     *
+     * @param frame 已解码的帧
+     */
+    public void enqueue(@NonNull WebSocketFrame frame) {
+        enqueuedCount.incrementAndGet();
+        int dropped = 0;
+        synchronized (this) {
+            if (pending.size() >= capacity) {
+                if (collapse(frame)) {
+                    collapsedCount.incrementAndGet();
+                    return;
+                }
+                dropped = pending.size() + 1;
+                resetPending();
+            } else {
+                append(frame);
+                scheduleDrain();
+            }
+        }
+        if (dropped > 0) {
+            overflowCount.incrementAndGet();
+            droppedCount.addAndGet(dropped);
+            Log.w(TAG, "Ingest queue saturated (" + capacity + "), dropped " + dropped + " frames");
+            overflowHandler.onOverflow(dropped);
+        }
+    }
+
+    /**
+     * 丢弃尚未处理的帧（例如用户退出登录或连接被替换时）
+     */
+    public synchronized void clear() {
+        resetPending();
+    }
+
+    private void append(WebSocketFrame frame) {
+        pending.add(new Entry(frame, System.nanoTime()));
+        if (WebSocketMessageType.QUESTION_UPDATED.equals(frame.getType()) && frame.getQuestion() != null) {
+            pendingUpdateIndex.put(frame.getQuestion().getQuestionId(), pending.size() - 1);
+        }
+        maxDepth = Math.max(maxDepth, pending.size());
+    }
+
+    /**
+     * 用新的 QUESTION_UPDATED 原地替换同一问题的待处理更新，保留旧帧的入队时间
+     *
+     * @return true 表示已合并
+     */
+    private boolean collapse(WebSocketFrame frame) {
+        if (!WebSocketMessageType.QUESTION_UPDATED.equals(frame.getType()) || frame.getQuestion() == null) {
+            return false;
+        }
+        Integer index = pendingUpdateIndex.get(frame.getQuestion().getQuestionId());
+        if (index == null) {
+            return false;
+        }
+        Entry superseded = pending.get(index);
+        pending.set(index, new Entry(frame, superseded.enqueuedAtNanos));
+        return true;
+    }
+
+    private void scheduleDrain() {
+        try {
+            if (pending.size() >= maxBatchSize || windowMs <= 0) {
+                if (!drainScheduled) {
+                    cancelScheduledFlush();
+                    drainScheduled = true;
+                    executor.execute(this::drain);
+                }
+            } else if (scheduledFlush == null && !drainScheduled) {
+                scheduledFlush = executor.schedule(this::drain, windowMs, TimeUnit.MILLISECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Ingest executor rejected flush, dropping " + pending.size() + " frames");
+            resetPending();
+        }
+    }
+
+    private void resetPending() {
+        cancelScheduledFlush();
+        pending = new ArrayList<>();
+        pendingUpdateIndex.clear();
+    }
+
+    private void drain() {
+        List<Entry> entries;
+        synchronized (this) {
+            drainScheduled = false;
+            cancelScheduledFlush();
+            if (pending.isEmpty()) {
+                return;
+            }
+            entries = takeBatch();
+            if (!pending.isEmpty()) {
+                // 剩余的帧已经等过窗口，紧接着作为下一批处理
+                scheduleNextDrain();
+            }
+        }
+        List<WebSocketFrame> batch = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            batch.add(entry.frame);
+        }
+        try {
+            handler.onBatch(batch);
+        } catch (Exception e) {
+            Log.e(TAG, "Error applying batch of " + batch.size() + " frames", e);
+        }
+        recordLatency(entries);
+    }
+
+    /**
+     * 取出最多 maxBatchSize 帧，调整剩余帧的合并下标
+     */
+    private List<Entry> takeBatch() {
+        if (pending.size() <= maxBatchSize) {
+            List<Entry> entries = pending;
+            pending = new ArrayList<>();
+            pendingUpdateIndex.clear();
+            return entries;
+        }
+        List<Entry> entries = new ArrayList<>(pending.subList(0, maxBatchSize));
+        pending = new ArrayList<>(pending.subList(maxBatchSize, pending.size()));
+        Iterator<Map.Entry<Long, Integer>> it = pendingUpdateIndex.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Integer> entry = it.next();
+            if (entry.getValue() < maxBatchSize) {
+                it.remove();
+            } else {
+                entry.setValue(entry.getValue() - maxBatchSize);
+            }
+        }
+        return entries;
+    }
+
+    private void scheduleNextDrain() {
+        try {
+            drainScheduled = true;
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Ingest executor rejected flush, dropping " + pending.size() + " frames");
+            drainScheduled = false;
+            resetPending();
+        }
+    }
+
+    private void recordLatency(List<Entry> entries) {
+        long now = System.nanoTime();
+        long total = 0;
+        long max = 0;
+        for (Entry entry : entries) {
+            long latency = now - entry.enqueuedAtNanos;
+            total += latency;
+            max = Math.max(max, latency);
+        }
+        appliedCount.addAndGet(entries.size());
+        totalLatencyNanos.addAndGet(total);
+        maxLatencyNanos.accumulateAndGet(max, Math::max);
+    }
+
+    private void cancelScheduledFlush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+
+    /**
+     * @return 当前待处理的帧数
+     */
+    public synchronized int getDepth() {
+        return pending.size();
+    }
+
+    /**
+     * @return 待处理帧数的历史最大值
+     */
+    public synchronized int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getEnqueuedCount() {
+        return enqueuedCount.get();
+    }
+
+    public long getAppliedCount() {
+        return appliedCount.get();
+    }
+
+    /**
+     * @return 队列满时被新帧替换的 QUESTION_UPDATED 数
+     */
+    public long getCollapsedCount() {
+        return collapsedCount.get();
+    }
+
+    /**
+     * @return 溢出（丢弃并重新续传）次数
+     */
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    /**
+     * @return 溢出时丢弃的帧数
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return 入队到批次提交的平均延迟（毫秒）
+     */
+    public double getAverageLatencyMs() {
+        long applied = appliedCount.get();
+        return applied == 0 ? 0 : totalLatencyNanos.get() / 1e6 / applied;
+    }
+
+    /**
+     * @return 入队到批次提交的最大延迟（毫秒）
+     */
+    public double getMaxLatencyMs() {
+        return maxLatencyNanos.get() / 1e6;
+    }
+
+    /**
+     * 输出队列统计
+     */
+    public void logStats() {
+        Log.d(TAG, "depth=" + getDepth() + "/" + capacity
+            + ", maxDepth=" + getMaxDepth()
+            + ", enqueued=" + enqueuedCount.get()
+            + ", applied=" + appliedCount.get()
+            + ", collapsed=" + collapsedCount.get()
+            + ", overflows=" + overflowCount.get()
+            + ", dropped=" + droppedCount.get()
+            + ", latencyAvg=" + String.format(java.util.Locale.US, "%.1f", getAverageLatencyMs()) + "ms"
+            + ", latencyMax=" + String.format(java.util.Locale.US, "%.1f", getMaxLatencyMs()) + "ms");
+    }
+}
@@ -0,0 +1,229 @@
+package com.dowdah.asknow.data.websocket;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.dowdah.asknow.data.model.WebSocketMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebSocket 上行可靠发送队列
+ *
+ * 按 messageId 跟踪已发出但尚未确认的帧：
+ * - 收到 ACK：按 ACK 结果回调成功或失败
+ * - ACK 超时：在同一连接上重传，重传次数用完后回调 onFallback，由调用方改走 HTTP
+ * - 连接断开或发送失败：立即回调 onFallback
+ *
+ * 服务端按 messageId 幂等处理，重传以及回退到 HTTP（携带同一 messageId）都不会产生重复消息。
+ * 每条消息的回调只会触发一次。
+ */
+public final class WebSocketOutbox {
+    private static final String TAG = "WebSocketOutbox";
+
+    /**
+     * 帧发送通道
+     */
+    public interface Transport {
+        /**
+         * @return true 表示帧已交给已打开的连接；连接不可用时返回 false
+         */
+        boolean send(@NonNull WebSocketMessage message);
+    }
+
+    /**
+     * 发送结果回调（在接收线程或定时任务线程调用）
+     */
+    public interface Callback {
+        /**
+         * 服务端已保存消息
+         *
+         * @param message 服务端保存的消息
+         */
+        void onAcked(@NonNull ChatMessagePayload message);
+
+        /**
+         * 服务端拒绝了消息（如问题不存在），不应再重试
+         *
+         * @param error 失败原因
+         */
+        void onRejected(@NonNull String error);
+
+        /**
+         * WebSocket 无法确认送达，调用方应改用 HTTP 发送同一条消息
+         */
+        void onFallback();
+    }
+
+    private static final class Pending {
+        final WebSocketMessage message;
+        final Callback callback;
+        int attempts;
+        ScheduledFuture<?> timeout;
+
+        Pending(WebSocketMessage message, Callback callback) {
+            this.message = message;
+            this.callback = callback;
+        }
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final Transport transport;
+    private final long ackTimeoutMs;
+    private final int maxAttempts;
+    private final Map<String, Pending> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong ackedCount = new AtomicLong();
+    private final AtomicLong retransmitCount = new AtomicLong();
+    private final AtomicLong fallbackCount = new AtomicLong();
+
+    /**
+     * @param scheduler 定时任务线程池，用于 ACK 超时检测
+     * @param transport 帧发送通道
+     * @param ackTimeoutMs 等待 ACK 的超时时间（毫秒）
+     * @param maxAttempts 每条消息在 WebSocket 上的最大发送次数（包括第一次）
+     */
+    public WebSocketOutbox(@NonNull ScheduledExecutorService scheduler, @NonNull Transport transport,
+                           long ackTimeoutMs, int maxAttempts) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive: " + maxAttempts);
+        }
+        this.scheduler = scheduler;
+        this.transport = transport;
+        this.ackTimeoutMs = ackTimeoutMs;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * 发送一帧并等待 ACK
+     *
+     * @param message 带 messageId 的帧
+     * @param callback 发送结果回调
+     */
+    public void send(@NonNull WebSocketMessage message, @NonNull Callback callback) {
+        String messageId = message.getMessageId();
+        if (messageId == null) {
+            throw new IllegalArgumentException("message must carry a messageId");
+        }
+        Pending pending = new Pending(message, callback);
+        if (inFlight.putIfAbsent(messageId, pending) != null) {
+            Log.w(TAG, "Message " + messageId + " already in flight, ignoring duplicate send");
+            return;
+        }
+        transmit(messageId, pending);
+    }
+
+    /**
+     * 处理 ACK（在接收线程调用）
+     *
+     * @param messageId ACK 对应的 messageId
+     * @param ack ACK 载荷；服务端不支持上行聊天消息时没有载荷
+     * @return true 表示 ACK 对应一条在途消息
+     */
+    public boolean onAck(@Nullable String messageId, @Nullable AckPayload ack) {
+        if (messageId == null) {
+            return false;
+        }
+        Pending pending = inFlight.remove(messageId);
+        if (pending == null) {
+            // 重传后迟到的 ACK，或其他类型帧的 ACK
+            return false;
+        }
+        cancelTimeout(pending);
+        if (ack == null) {
+            Log.w(TAG, "ACK for " + messageId + " carries no result, falling back");
+            fallback(pending);
+        } else if (ack.isOk()) {
+            ackedCount.incrementAndGet();
+            pending.callback.onAcked(ack.getMessage());
+        } else {
+            String error = ack.getError();
+            pending.callback.onRejected(error != null ? error : "Rejected by server");
+        }
+        return true;
+    }
+
+    /**
+     * 连接断开时调用：所有在途消息回退到 HTTP
+     */
+    public void failAll() {
+        List<Pending> drained = new ArrayList<>();
+        for (String messageId : new ArrayList<>(inFlight.keySet())) {
+            Pending pending = inFlight.remove(messageId);
+            if (pending != null) {
+                drained.add(pending);
+            }
+        }
+        if (!drained.isEmpty()) {
+            Log.d(TAG, "Connection lost, falling back " + drained.size() + " in-flight messages");
+        }
+        for (Pending pending : drained) {
+            cancelTimeout(pending);
+            fallback(pending);
+        }
+    }
+
+    private void transmit(String messageId, Pending pending) {
+        pending.attempts++;
+        if (!transport.send(pending.message)) {
+            if (inFlight.remove(messageId, pending)) {
+                fallback(pending);
+            }
+            return;
+        }
+        pending.timeout = scheduler.schedule(() -> onTimeout(messageId, pending), ackTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void onTimeout(String messageId, Pending pending) {
+        if (inFlight.get(messageId) != pending) {
+            return;
+        }
+        if (pending.attempts < maxAttempts) {
+            retransmitCount.incrementAndGet();
+            Log.d(TAG, "ACK timeout for " + messageId + ", retransmitting (attempt " + (pending.attempts + 1) + ")");
+            transmit(messageId, pending);
+        } else if (inFlight.remove(messageId, pending)) {
+            Log.w(TAG, "No ACK for " + messageId + " after " + pending.attempts + " attempts, falling back");
+            fallback(pending);
+        }
+    }
+
+    private void fallback(Pending pending) {
+        fallbackCount.incrementAndGet();
+        pending.callback.onFallback();
+    }
+
+    private static void cancelTimeout(Pending pending) {
+        ScheduledFuture<?> timeout = pending.timeout;
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+    }
+
+    /**
+     * @return 等待 ACK 的消息数
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    public long getAckedCount() {
+        return ackedCount.get();
+    }
+
+    public long getRetransmitCount() {
+        return retransmitCount.get();
+    }
+
+    public long getFallbackCount() {
+        return fallbackCount.get();
+    }
+}
@@ -0,0 +1,76 @@
+package com.dowdah.asknow.data.websocket;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * WebSocket 订阅主题（引用计数）
+ *
+ * 服务端只向订阅了主题的连接推送对应事件（问题参与者无论是否订阅都会收到自己问题的更新）：
+ * - {@link #TUTOR_PENDING}：待接取问题列表（新问题、待接取问题被接受或关闭），仅老师
+ * - {@link #question(long)}：单个问题的聊天消息和状态更新
+ *
+ * 多个页面可以同时持有同一主题，第一次持有和最后一次释放时才需要通知服务端。
+ */
+public final class WebSocketTopics {
+
+    /**
+     * 待接取问题列表
+     */
+    public static final String TUTOR_PENDING = "tutor:pending";
+
+    private static final String QUESTION_PREFIX = "question:";
+
+    private final Map<String, Integer> refCounts = new HashMap<>();
+
+    /**
+     * @param questionId 问题ID
+     * @return 问题主题名
+     */
+    public static String question(long questionId) {
+        return QUESTION_PREFIX + questionId;
+    }
+
+    /**
+     * 持有一个主题
+     *
+     * @param topic 主题
+     * @return true 表示是第一次持有，需要向服务端订阅
+     */
+    public synchronized boolean acquire(@NonNull String topic) {
+        Integer count = refCounts.get(topic);
+        refCounts.put(topic, count == null ? 1 : count + 1);
+        return count == null;
+    }
+
+    /**
+     * 释放一个主题
+     *
+     * @param topic 主题
+     * @return true 表示已没有持有者，需要向服务端取消订阅
+     */
+    public synchronized boolean release(@NonNull String topic) {
+        Integer count = refCounts.get(topic);
+        if (count == null) {
+            return false;
+        }
+        if (count > 1) {
+            refCounts.put(topic, count - 1);
+            return false;
+        }
+        refCounts.remove(topic);
+        return true;
+    }
+
+    /**
+     * @return 当前持有的全部主题（有序，用于生成连接地址）
+     */
+    public synchronized Set<String> snapshot() {
+        return Collections.unmodifiableSet(new TreeSet<>(refCounts.keySet()));
+    }
+}
@@ -10,6 +10,7 @@ import androidx.sqlite.db.SupportSQLiteDatabase;
 import com.dowdah.asknow.data.local.AppDatabase;
 import com.dowdah.asknow.data.local.dao.MessageDao;
 import com.dowdah.asknow.data.local.dao.QuestionDao;
+import com.dowdah.asknow.data.local.dao.SyncStateDao;
 
 import javax.inject.Singleton;
 
@@ -59,6 +60,44 @@ public class DatabaseModule {
         }
     };
     
+    // 数据库迁移：版本8到版本9
+    // 添加sync_state表，保存增量同步游标
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `sync_state` ("
+                + "`key` TEXT NOT NULL, "
+                + "`cursorUpdatedAt` INTEGER NOT NULL, "
+                + "`cursorId` INTEGER NOT NULL, "
+                + "`lastSyncedAt` INTEGER NOT NULL, "
+                + "PRIMARY KEY(`key`))");
+        }
+    };
+    
+    // 数据库迁移：版本9到版本10
+    // 为sync_state表添加lastVerifiedAt列，记录最后一次完整校对的时间
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE sync_state ADD COLUMN lastVerifiedAt INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+    
+    // 数据库迁移：版本10到版本11
+    // 为questions表添加未读数和最后一条消息摘要，并清除问题列表的同步游标，
+    // 下次同步重新下载全部问题以填充摘要
+    static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE questions ADD COLUMN unreadCount INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("ALTER TABLE questions ADD COLUMN lastMessageId INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("ALTER TABLE questions ADD COLUMN lastMessageContent TEXT");
+            database.execSQL("ALTER TABLE questions ADD COLUMN lastMessageType TEXT");
+            database.execSQL("ALTER TABLE questions ADD COLUMN lastMessageAt INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("DELETE FROM sync_state WHERE `key` LIKE 'questions:%'");
+        }
+    };
+    
     @Provides
     @Singleton
     public AppDatabase provideAppDatabase(@ApplicationContext Context context) {
@@ -67,7 +106,7 @@ public class DatabaseModule {
                 AppDatabase.class,
                 DATABASE_NAME
             )
-            .addMigrations(MIGRATION_4_5, MIGRATION_5_6, MIGRATION_7_8)
+            .addMigrations(MIGRATION_4_5, MIGRATION_5_6, MIGRATION_7_8, MIGRATION_8_9, MIGRATION_9_10, MIGRATION_10_11)
             .fallbackToDestructiveMigration()
             .build();
     }
@@ -83,5 +122,11 @@ public class DatabaseModule {
     public MessageDao provideMessageDao(AppDatabase database) {
         return database.messageDao();
     }
+    
+    @Provides
+    @Singleton
+    public SyncStateDao provideSyncStateDao(AppDatabase database) {
+        return database.syncStateDao();
+    }
 }
 
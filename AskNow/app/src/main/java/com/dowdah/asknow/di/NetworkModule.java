@@ -3,10 +3,12 @@ package com.dowdah.asknow.di;
 import android.content.Context;
 
 import com.dowdah.asknow.BuildConfig;
+import com.dowdah.asknow.constants.AppConstants;
 import com.dowdah.asknow.data.api.ApiService;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
+import java.io.File;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Singleton;
@@ -16,6 +18,7 @@ import dagger.Provides;
 import dagger.hilt.InstallIn;
 import dagger.hilt.android.qualifiers.ApplicationContext;
 import dagger.hilt.components.SingletonComponent;
+import okhttp3.Cache;
 import okhttp3.OkHttpClient;
 import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Retrofit;
@@ -44,15 +47,35 @@ public class NetworkModule {
     @Singleton
     public HttpLoggingInterceptor provideLoggingInterceptor() {
         HttpLoggingInterceptor interceptor = new HttpLoggingInterceptor();
-        interceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
+        // BODY 级别会把整个响应体读入内存再记录，只在调试版本使用；
+        // 发布版本只记录请求行和状态，流式读取的批量消息响应不会被整体缓冲
+        interceptor.setLevel(BuildConfig.DEBUG
+            ? HttpLoggingInterceptor.Level.BODY
+            : HttpLoggingInterceptor.Level.BASIC);
         return interceptor;
     }
     
+    /**
+     * HTTP 磁盘缓存
+     * 问题和消息列表响应带 ETag 和 Cache-Control: no-cache，OkHttp 缓存后每次请求自动带上 If-None-Match，
+     * 内容未变化时服务端返回 304，OkHttp 用缓存的响应体补全，不再下载完整列表
+     */
     @Provides
     @Singleton
-    public OkHttpClient provideOkHttpClient(HttpLoggingInterceptor loggingInterceptor) {
+    public Cache provideHttpCache(@ApplicationContext Context context) {
+        return new Cache(
+            new File(context.getCacheDir(), AppConstants.HTTP_CACHE_DIR),
+            AppConstants.HTTP_CACHE_SIZE_BYTES
+        );
+    }
+    
+    @Provides
+    @Singleton
+    public OkHttpClient provideOkHttpClient(HttpLoggingInterceptor loggingInterceptor, Cache cache) {
         return new OkHttpClient.Builder()
             .addInterceptor(loggingInterceptor)
+            // HTTP 缓存（条件请求）
+            .cache(cache)
             // 连接超时
             .connectTimeout(15, TimeUnit.SECONDS)
             // 读取超时
@@ -65,9 +88,8 @@ public class NetworkModule {
             .retryOnConnectionFailure(true)
             // 连接池配置：最多5个空闲连接，保持5分钟
             .connectionPool(new okhttp3.ConnectionPool(5, 5, TimeUnit.MINUTES))
-            // WebSocket 协议层 ping/pong 帧：每30秒自动发送，保持连接活跃并检测僵尸连接
-            // 无需应用层再实现 JSON heartbeat
-            .pingInterval(30, TimeUnit.SECONDS)
+            // 不设置 pingInterval：WebSocket 保活和僵尸连接检测由 WebSocketClient 的应用层探测完成，
+            // 探测间隔按网络类型和丢包情况自适应调整
             .build();
     }
     
@@ -11,8 +11,9 @@ import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.dowdah.asknow.R;
+import com.dowdah.asknow.constants.AppConstants;
+import com.dowdah.asknow.constants.enums.MessageType;
 import com.dowdah.asknow.constants.enums.QuestionStatus;
-import com.dowdah.asknow.data.local.dao.MessageDao;
 import com.dowdah.asknow.data.local.entity.QuestionEntity;
 
 import java.text.SimpleDateFormat;
@@ -20,7 +21,6 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.ExecutorService;
 
 public class QuestionAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     
@@ -32,9 +32,6 @@ public class QuestionAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
     private boolean showLoadingFooter = false;
     private boolean showRetryFooter = false;
     private BaseLoadingFooterViewHolder.OnRetryClickListener retryListener;
-    private MessageDao messageDao;
-    private long currentUserId;
-    private ExecutorService executor;
     
     /**
      * 问题点击监听器接口
@@ -47,18 +44,6 @@ public class QuestionAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
         this.listener = listener;
     }
     
-    public QuestionAdapter(
-        @NonNull OnQuestionClickListener listener,
-        @Nullable MessageDao messageDao,
-        long currentUserId,
-        @Nullable ExecutorService executor
-    ) {
-        this.listener = listener;
-        this.messageDao = messageDao;
-        this.currentUserId = currentUserId;
-        this.executor = executor;
-    }
-    
     /**
      * 设置重试点击监听器
      * 
@@ -127,7 +112,9 @@ public class QuestionAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
                     oldQuestion.getImagePaths().equals(newQuestion.getImagePaths())) &&
                    oldQuestion.getStatus().equals(newQuestion.getStatus()) &&
                    oldQuestion.getCreatedAt() == newQuestion.getCreatedAt() &&
-                   oldQuestion.getUpdatedAt() == newQuestion.getUpdatedAt();
+                   oldQuestion.getUpdatedAt() == newQuestion.getUpdatedAt() &&
+                   oldQuestion.getUnreadCount() == newQuestion.getUnreadCount() &&
+                   oldQuestion.getLastMessageId() == newQuestion.getLastMessageId();
         }
     }
     
@@ -194,7 +181,7 @@ public class QuestionAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
         if (holder instanceof QuestionViewHolder) {
             QuestionEntity question = questions.get(position);
-            ((QuestionViewHolder) holder).bind(question, listener, messageDao, currentUserId, executor);
+            ((QuestionViewHolder) holder).bind(question, listener);
         } else if (holder instanceof BaseLoadingFooterViewHolder) {
             ((BaseLoadingFooterViewHolder) holder).bind(showRetryFooter, retryListener);
         }
@@ -207,6 +194,7 @@ public class QuestionAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
     
     static class QuestionViewHolder extends RecyclerView.ViewHolder {
         private final TextView tvContent;
+        private final TextView tvLastMessage;
         private final TextView tvStatus;
         private final TextView tvDate;
         private final TextView tvUnreadBadge;
@@ -214,12 +202,13 @@ public class QuestionAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
         public QuestionViewHolder(@NonNull View itemView) {
             super(itemView);
             tvContent = itemView.findViewById(R.id.tvContent);
+            tvLastMessage = itemView.findViewById(R.id.tvLastMessage);
             tvStatus = itemView.findViewById(R.id.tvStatus);
             tvDate = itemView.findViewById(R.id.tvDate);
             tvUnreadBadge = itemView.findViewById(R.id.tvUnreadBadge);
         }
         
-        public void bind(QuestionEntity question, OnQuestionClickListener listener, MessageDao messageDao, long currentUserId, ExecutorService executor) {
+        public void bind(QuestionEntity question, OnQuestionClickListener listener) {
             if (question == null) {
                 return;
             }
@@ -233,19 +222,21 @@ public class QuestionAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
             SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, yyyy HH:mm", Locale.getDefault());
             tvDate.setText(sdf.format(new Date(question.getCreatedAt())));
             
+            // 最后一条消息预览（来自问题的消息摘要，不需要本地有消息）
+            if (question.getLastMessageId() > 0) {
+                tvLastMessage.setText(MessageType.IMAGE.equals(question.getLastMessageType())
+                    ? itemView.getContext().getString(R.string.last_message_image)
+                    : question.getLastMessageContent());
+                tvLastMessage.setVisibility(View.VISIBLE);
+            } else {
+                tvLastMessage.setVisibility(View.GONE);
+            }
+            
             // 显示未读消息数量
-            if (messageDao != null && currentUserId > 0 && executor != null) {
-                executor.execute(() -> {
-                    int unreadCount = messageDao.getUnreadMessageCount(question.getId(), currentUserId);
-                    com.dowdah.asknow.utils.ThreadUtils.executeOnMain(() -> {
-                        if (unreadCount > 0) {
-                            tvUnreadBadge.setText(String.valueOf(Math.min(unreadCount, com.dowdah.asknow.constants.AppConstants.MAX_UNREAD_BADGE_COUNT)));
-                            tvUnreadBadge.setVisibility(View.VISIBLE);
-                        } else {
-                            tvUnreadBadge.setVisibility(View.GONE);
-                        }
-                    });
-                });
+            int unreadCount = question.getUnreadCount();
+            if (unreadCount > 0) {
+                tvUnreadBadge.setText(String.valueOf(Math.min(unreadCount, AppConstants.MAX_UNREAD_BADGE_COUNT)));
+                tvUnreadBadge.setVisibility(View.VISIBLE);
             } else {
                 tvUnreadBadge.setVisibility(View.GONE);
             }
@@ -15,6 +15,7 @@ import com.dowdah.asknow.constants.enums.MessageStatus;
 import com.dowdah.asknow.constants.enums.MessageType;
 import com.dowdah.asknow.constants.enums.QuestionStatus;
 import com.dowdah.asknow.data.api.ApiService;
+import com.dowdah.asknow.data.local.WriteDedupFilter;
 import com.dowdah.asknow.data.local.dao.MessageDao;
 import com.dowdah.asknow.data.local.dao.QuestionDao;
 import com.dowdah.asknow.data.local.entity.MessageEntity;
@@ -24,13 +25,20 @@ import com.dowdah.asknow.data.model.MessageResponse;
 import com.dowdah.asknow.data.model.UploadProgress;
 import com.dowdah.asknow.data.model.UploadResponse;
 import com.dowdah.asknow.data.repository.MessageRepository;
+import com.dowdah.asknow.data.repository.QuestionRepository;
+import com.dowdah.asknow.data.repository.SyncScheduler;
+import com.dowdah.asknow.data.websocket.ChatMessagePayload;
+import com.dowdah.asknow.data.websocket.WebSocketOutbox;
+import com.dowdah.asknow.data.websocket.WebSocketTopics;
 import com.dowdah.asknow.utils.SharedPreferencesManager;
+import com.dowdah.asknow.utils.WebSocketManager;
 import com.google.gson.JsonObject;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
@@ -49,6 +57,7 @@ import retrofit2.Response;
  * 
  * 主要功能：
  * - 乐观更新：发送消息时立即显示，提升用户体验
+ * - 发送通道：WebSocket 已连接时直接在该连接上发送并等待 ACK，否则走 HTTP
  * - 消息状态管理：pending（发送中）、sent（已发送）、failed（失败）
  * - 问题状态管理：接受问题、关闭问题
  * - 已读未读管理：标记消息为已读
@@ -67,6 +76,10 @@ public class ChatViewModel extends BaseViewModel {
     private final MessageDao messageDao;
     private final MessageRepository messageRepository;
     private final SharedPreferencesManager prefsManager;
+    private final WebSocketManager webSocketManager;
+    private final WriteDedupFilter writeDedupFilter;
+    private final SyncScheduler syncScheduler;
+    private final QuestionRepository questionRepository;
     
     // 使用AtomicLong生成唯一的临时消息ID
     private final AtomicLong tempIdGenerator = new AtomicLong(-System.currentTimeMillis());
@@ -83,6 +96,11 @@ public class ChatViewModel extends BaseViewModel {
     private volatile boolean isSendingMessage = false;
     private volatile boolean isUploadingImage = false;
     
+    // 当前页面订阅的问题主题和同步优先级，cleanup 时释放
+    private String watchedTopic;
+    private long watchedQuestionId;
+    private SyncScheduler.Scope hydrationScope;
+    
     private final MutableLiveData<Boolean> messageSent = new MutableLiveData<>();
     private final MutableLiveData<UploadProgress> uploadProgress = new MutableLiveData<>();
     
@@ -93,7 +111,11 @@ public class ChatViewModel extends BaseViewModel {
         QuestionDao questionDao,
         MessageDao messageDao,
         MessageRepository messageRepository,
-        SharedPreferencesManager prefsManager
+        SharedPreferencesManager prefsManager,
+        WebSocketManager webSocketManager,
+        WriteDedupFilter writeDedupFilter,
+        SyncScheduler syncScheduler,
+        QuestionRepository questionRepository
     ) {
         super(application);
         this.apiService = apiService;
@@ -101,6 +123,63 @@ public class ChatViewModel extends BaseViewModel {
         this.messageDao = messageDao;
         this.messageRepository = messageRepository;
         this.prefsManager = prefsManager;
+        this.webSocketManager = webSocketManager;
+        this.writeDedupFilter = writeDedupFilter;
+        this.syncScheduler = syncScheduler;
+        this.questionRepository = questionRepository;
+    }
+    
+    /**
+     * 订阅问题的实时消息（question:{id} 主题），并在页面存在期间优先同步该问题的消息，
+     * 同一个 ViewModel 只订阅一次
+     * 
+     * 问题列表只同步问题头，打开页面时在这里拉取该问题的消息，拉取失败时提示错误
+     * 
+     * @param questionId 问题ID
+     */
+    public void watchQuestion(long questionId) {
+        if (watchedTopic != null) {
+            return;
+        }
+        watchedTopic = WebSocketTopics.question(questionId);
+        watchedQuestionId = questionId;
+        webSocketManager.subscribeTopic(watchedTopic);
+        syncScheduler.focus(questionId);
+        hydrationScope = questionRepository.syncMessages(
+            prefsManager.getToken(),
+            questionId,
+            new QuestionRepository.SyncCallback() {
+                @Override
+                public void onSuccess(int syncedCount) {
+                    // 消息写入数据库后由 LiveData 显示
+                }
+                
+                @Override
+                public void onError(String errorMessage) {
+                    Log.e(TAG, "Failed to load messages: " + errorMessage);
+                    setError(errorMessage);
+                }
+                
+                @Override
+                public void onPageLoaded(boolean hasMore) {
+                    // 按需同步不分页
+                }
+            }
+        );
+    }
+    
+    @Override
+    protected void cleanup() {
+        super.cleanup();
+        if (watchedTopic != null) {
+            webSocketManager.unsubscribeTopic(watchedTopic);
+            syncScheduler.unfocus(watchedQuestionId);
+            watchedTopic = null;
+        }
+        if (hydrationScope != null) {
+            hydrationScope.cancel();
+            hydrationScope = null;
+        }
     }
     
     public LiveData<List<MessageEntity>> getMessagesByQuestionId(long questionId) {
@@ -194,61 +273,141 @@ public class ChatViewModel extends BaseViewModel {
             }
         });
         
-        // 2. 发送 HTTP API
+        // 2. 发送到服务端
+        deliverMessage(tempId, questionId, content, messageType, false);
+    }
+    
+    /**
+     * 选择发送通道并发送本地消息
+     * 
+     * WebSocket 已连接时直接在该连接上发送，省去一次 HTTP 请求的握手和排队开销；
+     * 连接不可用、ACK 超时或连接中途断开时回退到 HTTP。两条路径使用同一个
+     * clientMessageId，服务端按此去重，回退不会产生重复消息。
+     * 
+     * @param localId 本地消息ID（临时ID或失败消息的ID）
+     * @param questionId 问题ID
+     * @param content 消息内容
+     * @param messageType 消息类型
+     * @param isRetry 是否为重试（重试不清空输入框，也不影响新消息的防抖状态）
+     */
+    private void deliverMessage(long localId, long questionId, String content, String messageType, boolean isRetry) {
+        String clientMessageId = UUID.randomUUID().toString();
+        
+        if (!AppConstants.CHAT_SEND_VIA_WEBSOCKET || !webSocketManager.isChannelOpen()) {
+            sendViaHttp(localId, questionId, content, messageType, clientMessageId, isRetry);
+            return;
+        }
+        
+        webSocketManager.sendChatMessage(questionId, content, messageType, clientMessageId, new WebSocketOutbox.Callback() {
+            @Override
+            public void onAcked(@NonNull ChatMessagePayload message) {
+                onMessageDelivered(localId, questionId, message.getId(), message.getSenderId(), message.getContent(),
+                    message.getMessageType(), message.getCreatedAtOr(System.currentTimeMillis()), isRetry);
+            }
+            
+            @Override
+            public void onRejected(@NonNull String error) {
+                handleMessageSendFailure(localId, "Server error: " + error, !isRetry);
+            }
+            
+            @Override
+            public void onFallback() {
+                Log.d(TAG, "WebSocket send not confirmed, falling back to HTTP for local id=" + localId);
+                sendViaHttp(localId, questionId, content, messageType, clientMessageId, isRetry);
+            }
+        });
+    }
+    
+    /**
+     * 通过 HTTP API 发送消息
+     * 
+     * @param localId 本地消息ID
+     * @param questionId 问题ID
+     * @param content 消息内容
+     * @param messageType 消息类型
+     * @param clientMessageId 客户端生成的消息ID
+     * @param isRetry 是否为重试
+     */
+    private void sendViaHttp(long localId, long questionId, String content, String messageType,
+                             String clientMessageId, boolean isRetry) {
         String token = "Bearer " + prefsManager.getToken();
-        MessageRequest request = new MessageRequest(questionId, content, messageType);
+        MessageRequest request = new MessageRequest(questionId, content, messageType, clientMessageId);
         
         apiService.sendMessage(token, request).enqueue(new Callback<MessageResponse>() {
             @Override
             public void onResponse(Call<MessageResponse> call, Response<MessageResponse> response) {
                 if (response.isSuccessful() && response.body() != null && response.body().isSuccess()) {
                     MessageResponse.MessageData data = response.body().getData();
-                    
-                    // 3. 替换临时消息为真实消息（使用锁保护，防止竞态条件）
-                    executeInBackground(() -> {
-                        synchronized (messageLock) {
-                            // 删除临时消息
-                            messageDao.deleteById(tempId);
-                            
-                            // 插入真实消息
-                            MessageEntity realEntity = new MessageEntity(
-                                data.getQuestionId(),
-                                data.getSenderId(),
-                                data.getContent(),
-                                data.getMessageType(),
-                                data.getCreatedAt()
-                            );
-                            realEntity.setId(data.getId());
-                            realEntity.setSendStatus(MessageStatus.SENT);
-                            realEntity.setRead(true); // 自己发送的消息标记为已读
-                            messageDao.insert(realEntity);
-                            
-                            Log.d(TAG, messageType + " message sent successfully: replaced temp id=" + tempId + " with real id=" + data.getId());
-                        }
-                        
-                        // 更新问题的 updatedAt
-                        questionDao.updateUpdatedAt(questionId, data.getCreatedAt());
-                    });
-                    
-                    // 注意：不需要再通过 WebSocket 发送消息
-                    // HTTP API 后端已经处理了消息的保存和 WebSocket 推送
-                    
-                    isSendingMessage = false;
-                    messageSent.postValue(true);
+                    onMessageDelivered(localId, questionId, data.getId(), data.getSenderId(), data.getContent(),
+                        data.getMessageType(), data.getCreatedAt(), isRetry);
                 } else {
-                    // 4. 标记失败（使用锁保护）
-                    handleMessageSendFailure(tempId, "Server error: " + response.code(), true);
+                    // 标记失败（使用锁保护）；重试失败保持 FAILED 状态且不清空文本框
+                    handleMessageSendFailure(localId, "Server error: " + response.code(), !isRetry);
                 }
             }
             
             @Override
             public void onFailure(Call<MessageResponse> call, Throwable t) {
-                // 5. 标记失败（使用锁保护）
-                handleMessageSendFailure(tempId, "Network error: " + t.getMessage(), true);
+                handleMessageSendFailure(localId, "Network error: " + t.getMessage(), !isRetry);
             }
         });
     }
     
+    /**
+     * 服务端已保存消息：替换本地消息为真实消息
+     * 
+     * @param localId 本地消息ID
+     * @param questionId 问题ID
+     * @param id 服务端消息ID
+     * @param senderId 发送者ID
+     * @param content 消息内容
+     * @param messageType 消息类型
+     * @param createdAt 服务端创建时间
+     * @param isRetry 是否为重试
+     */
+    private void onMessageDelivered(long localId, long questionId, long id, long senderId, String content,
+                                    String messageType, long createdAt, boolean isRetry) {
+        // 替换本地消息为真实消息（使用锁保护，防止竞态条件）
+        executeInBackground(() -> {
+            synchronized (messageLock) {
+                // 删除本地消息
+                messageDao.deleteById(localId);
+                
+                // 插入真实消息
+                MessageEntity realEntity = new MessageEntity(
+                    questionId,
+                    senderId,
+                    content,
+                    messageType,
+                    createdAt
+                );
+                realEntity.setId(id);
+                realEntity.setSendStatus(MessageStatus.SENT);
+                realEntity.setRead(true); // 自己发送的消息标记为已读
+                if (writeDedupFilter.admitMessage(realEntity)) {
+                    messageDao.insert(realEntity);
+                }
+                
+                Log.d(TAG, messageType + " message sent successfully: replaced local id=" + localId + " with real id=" + id);
+            }
+            
+            // 更新问题的 updatedAt 和消息摘要（自己发送的消息不计入未读）
+            questionDao.updateUpdatedAt(questionId, createdAt);
+            questionDao.applyNewMessage(questionId, id, content, messageType, createdAt, 0);
+            writeDedupFilter.forgetQuestion(questionId);
+        });
+        
+        // 注意：不需要再推送给对方，服务端保存消息后已经通过 WebSocket 推送
+        
+        if (isRetry) {
+            // 重试成功不需要清空文本框，因为重试的是列表中已有的消息
+            Log.d(TAG, "Message retry completed successfully");
+        } else {
+            isSendingMessage = false;
+            messageSent.postValue(true);
+        }
+    }
+    
     /**
      * 处理消息发送失败
      * 
@@ -299,55 +458,9 @@ public class ChatViewModel extends BaseViewModel {
                 Log.d(TAG, "Retrying message: updated status to PENDING");
             }
             
-            // 3. 在主线程重新发送 HTTP 请求
-            new android.os.Handler(android.os.Looper.getMainLooper()).post(() -> {
-                String token = "Bearer " + prefsManager.getToken();
-                MessageRequest request = new MessageRequest(questionId, content, messageType);
-                
-                apiService.sendMessage(token, request).enqueue(new Callback<MessageResponse>() {
-                    @Override
-                    public void onResponse(Call<MessageResponse> call, Response<MessageResponse> response) {
-                        if (response.isSuccessful() && response.body() != null && response.body().isSuccess()) {
-                            // 成功：删除旧消息，插入新消息
-                            MessageResponse.MessageData data = response.body().getData();
-                            executeInBackground(() -> {
-                                synchronized (messageLock) {
-                                    messageDao.deleteById(failedMessageId);
-                                    
-                                    MessageEntity realEntity = new MessageEntity(
-                                        data.getQuestionId(),
-                                        data.getSenderId(),
-                                        data.getContent(),
-                                        data.getMessageType(),
-                                        data.getCreatedAt()
-                                    );
-                                    realEntity.setId(data.getId());
-                                    realEntity.setSendStatus(MessageStatus.SENT);
-                                    realEntity.setRead(true);
-                                    messageDao.insert(realEntity);
-                                    
-                                    Log.d(TAG, "Message retry successful: replaced id=" + failedMessageId + " with real id=" + data.getId());
-                                }
-                                
-                                // 更新问题的 updatedAt
-                                questionDao.updateUpdatedAt(questionId, data.getCreatedAt());
-                            });
-                            
-                            // 注意：重试成功不需要清空文本框，因为重试的是列表中已有的消息
-                            Log.d(TAG, "Message retry completed successfully");
-                        } else {
-                            // 失败：保持 FAILED 状态（不清空文本框）
-                            handleMessageSendFailure(failedMessageId, "Server error: " + response.code(), false);
-                        }
-                    }
-                    
-                    @Override
-                    public void onFailure(Call<MessageResponse> call, Throwable t) {
-                        // 失败：保持 FAILED 状态（不清空文本框）
-                        handleMessageSendFailure(failedMessageId, "Network error: " + t.getMessage(), false);
-                    }
-                });
-            });
+            // 3. 在主线程重新发送（与新消息相同的通道选择）
+            new android.os.Handler(android.os.Looper.getMainLooper()).post(() ->
+                deliverMessage(failedMessageId, questionId, content, messageType, true));
         });
     }
     
@@ -429,7 +542,9 @@ public class ChatViewModel extends BaseViewModel {
                         question.setTutorId(tutorId);
                     }
                     question.setUpdatedAt(System.currentTimeMillis());
-                    questionDao.update(question);
+                    if (writeDedupFilter.admitQuestion(question)) {
+                        questionDao.update(question);
+                    }
                     Log.d(TAG, "Optimistic update: changed question " + questionId + " status to " + newStatus);
                 }
             }
@@ -481,7 +596,9 @@ public class ChatViewModel extends BaseViewModel {
                 if (question != null && originalStatus != null) {
                     question.setStatus(originalStatus);
                     question.setTutorId(originalTutorId);
-                    questionDao.update(question);
+                    if (writeDedupFilter.admitQuestion(question)) {
+                        questionDao.update(question);
+                    }
                     Log.e(TAG, "Rolled back question " + questionId + " update due to: " + errorMsg);
                 }
             }
@@ -16,16 +16,12 @@ import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
 import com.dowdah.asknow.R;
 import com.dowdah.asknow.constants.AppConstants;
-import com.dowdah.asknow.data.local.dao.MessageDao;
 import com.dowdah.asknow.data.local.entity.QuestionEntity;
 import com.dowdah.asknow.ui.adapter.QuestionAdapter;
 import com.dowdah.asknow.utils.SharedPreferencesManager;
 import com.dowdah.asknow.utils.WebSocketManager;
 
-import java.util.concurrent.ExecutorService;
-
 import javax.inject.Inject;
-import javax.inject.Named;
 
 /**
  * BaseQuestionListFragment - 问题列表 Fragment 的基类
@@ -54,19 +50,12 @@ public abstract class BaseQuestionListFragment extends Fragment {
     protected QuestionAdapter adapter;
     protected LinearLayoutManager layoutManager;
     
-    @Inject
-    protected MessageDao messageDao;
-    
     @Inject
     protected SharedPreferencesManager prefsManager;
     
     @Inject
     protected WebSocketManager webSocketManager;
     
-    @Inject
-    @Named("io")
-    protected ExecutorService ioExecutor;
-    
     /**
      * 获取 ViewModel（子类实现）
      * 
@@ -121,14 +110,12 @@ public abstract class BaseQuestionListFragment extends Fragment {
      * 设置 RecyclerView
      */
     protected void setupRecyclerView() {
-        long currentUserId = prefsManager.getUserId();
-        
         // 创建适配器
         adapter = new QuestionAdapter(question -> {
             Intent intent = new Intent(requireContext(), getDetailActivityClass());
             intent.putExtra("question_id", question.getId());
             startActivity(intent);
-        }, messageDao, currentUserId, ioExecutor);
+        });
         
         // 设置 LayoutManager
         layoutManager = new LinearLayoutManager(requireContext());
@@ -218,12 +205,10 @@ public abstract class BaseQuestionListFragment extends Fragment {
             }
         });
         
-        // 监听新消息到达，刷新未读数量
-        webSocketManager.getNewMessageReceived().observe(getViewLifecycleOwner(), questionId -> {
-            if (questionId != null) {
-                // 收到新消息，刷新适配器以更新未读数量
-                adapter.refreshUnreadCounts();
-            }
+        // 监听新消息到达，刷新未读数量（同一时间段内多个问题的新消息合并为一次通知）
+        webSocketManager.getEventBus().observeNewMessages(getViewLifecycleOwner(), questionIds -> {
+            // 收到新消息，刷新适配器以更新未读数量
+            adapter.refreshUnreadCounts();
         });
     }
     
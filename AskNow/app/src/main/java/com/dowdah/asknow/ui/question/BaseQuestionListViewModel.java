@@ -6,15 +6,16 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
-import androidx.lifecycle.Observer;
 
 import com.dowdah.asknow.base.BaseViewModel;
 import com.dowdah.asknow.constants.AppConstants;
 import com.dowdah.asknow.constants.enums.WebSocketMessageType;
 import com.dowdah.asknow.data.local.dao.QuestionDao;
 import com.dowdah.asknow.data.local.entity.QuestionEntity;
-import com.dowdah.asknow.data.model.WebSocketMessage;
 import com.dowdah.asknow.data.repository.QuestionRepository;
+import com.dowdah.asknow.data.repository.SyncScheduler;
+import com.dowdah.asknow.data.websocket.WebSocketEventBus;
+import com.dowdah.asknow.data.websocket.WebSocketFrame;
 import com.dowdah.asknow.utils.SharedPreferencesManager;
 import com.dowdah.asknow.utils.WebSocketManager;
 
@@ -42,10 +43,14 @@ public abstract class BaseQuestionListViewModel extends BaseViewModel {
     protected final WebSocketManager webSocketManager;
     
     protected final String role;
-    protected final MutableLiveData<WebSocketMessage> newWebSocketMessage = new MutableLiveData<>();
+    protected final MutableLiveData<WebSocketFrame> newWebSocketMessage = new MutableLiveData<>();
     
-    // WebSocket message observer for cleanup
-    protected final Observer<WebSocketMessage> webSocketMessageObserver;
+    // WebSocket 事件订阅，cleanup 时取消
+    protected final WebSocketEventBus.Subscription webSocketSubscription;
+    
+    // 进行中的同步和加载更多，cleanup 时取消，页面销毁后不再占用请求名额
+    private SyncScheduler.Scope syncScope;
+    private SyncScheduler.Scope loadMoreScope;
     
     /**
      * 构造函数
@@ -72,35 +77,31 @@ public abstract class BaseQuestionListViewModel extends BaseViewModel {
         this.webSocketManager = webSocketManager;
         this.role = role;
         
-        // 创建 WebSocket 消息观察者
-        this.webSocketMessageObserver = message -> {
-            if (message != null) {
-                handleWebSocketMessage(message);
-            }
-        };
-        
-        // 开始观察 WebSocket 消息
-        observeWebSocketMessages();
-    }
-    
-    /**
-     * 观察 WebSocket 消息
-     */
-    private void observeWebSocketMessages() {
-        webSocketManager.getIncomingMessage().observeForever(webSocketMessageObserver);
+        // 订阅 WebSocket 事件（主线程逐条投递，同一帧内到达的多条消息不会被合并）
+        this.webSocketSubscription = webSocketManager.getEventBus().subscribeFrames(
+            AppConstants.WEBSOCKET_EVENT_BUFFER_CAPACITY,
+            WebSocketEventBus.OverflowPolicy.DROP_OLDEST,
+            this::handleWebSocketMessage
+        );
     }
     
     /**
-     * 处理 WebSocket 消息（子类可以重写以添加特定处理）
+     * 处理 WebSocket 消息（在主线程调用，子类可以重写以添加特定处理）
      * 
-     * @param message WebSocket消息
+     * @param message 已解码的WebSocket帧
      */
-    protected void handleWebSocketMessage(WebSocketMessage message) {
+    protected void handleWebSocketMessage(WebSocketFrame message) {
         String type = message.getType();
         String expectedType = getWebSocketMessageType();
         
         if (expectedType != null && expectedType.equals(type)) {
-            newWebSocketMessage.postValue(message);
+            newWebSocketMessage.setValue(message);
+        }
+        
+        // 服务端以全量快照代替增量补发，推送之外的变化可能已丢失，重新完整同步
+        if (WebSocketMessageType.RESUME.equals(type) && webSocketManager.needsFullSync()) {
+            Log.d(TAG, "Push stream resumed from snapshot, running full sync");
+            syncQuestionsFromServer();
         }
     }
     
@@ -123,7 +124,7 @@ public abstract class BaseQuestionListViewModel extends BaseViewModel {
      * 
      * @return WebSocket消息的LiveData
      */
-    public LiveData<WebSocketMessage> getNewWebSocketMessage() {
+    public LiveData<WebSocketFrame> getNewWebSocketMessage() {
         return newWebSocketMessage;
     }
     
@@ -137,47 +138,83 @@ public abstract class BaseQuestionListViewModel extends BaseViewModel {
     }
     
     /**
-     * 从服务器同步问题到本地（下拉刷新，重置为第一页）
+     * 页面回到前台时调用：推送流自上次完整同步以来一直连续时跳过完整同步，
+     * 上次同步在 {@link AppConstants#QUESTIONS_SYNC_TTL_MS} 之内时也不请求服务器
+     */
+    public void syncQuestionsOnResume() {
+        if (!webSocketManager.needsFullSync()) {
+            Log.d(TAG, "Push stream continuous since last sync, skipping full sync");
+            return;
+        }
+        syncQuestions(false);
+    }
+    
+    /**
+     * 从服务器同步问题到本地（下拉刷新）
+     * 
+     * 按本地保存的游标增量同步，只下载上次同步之后变化的问题；首次同步时下载全部问题。
+     * 不检查数据有效期，总是请求服务器
      */
     public void syncQuestionsFromServer() {
+        syncQuestions(true);
+    }
+    
+    /**
+     * @param force true 总是请求服务器，false 数据在有效期内时跳过
+     */
+    private void syncQuestions(boolean force) {
         if (Boolean.TRUE.equals(isSyncing.getValue())) {
             Log.d(TAG, "Sync already in progress, skipping");
             return;
         }
         
-        resetPaginationState();
+        // 有效期内的同步会被跳过，分页状态等知道是否同步之后再设置
+        if (force) {
+            resetPaginationState();
+        }
         isSyncing.postValue(true);
         
         String token = prefsManager.getToken();
         long userId = prefsManager.getUserId();
+        int generation = webSocketManager.getStreamGeneration();
         
-        questionRepository.syncQuestionsFromServer(
-            token,
-            userId,
-            role,
-            AppConstants.DEFAULT_START_PAGE,
-            AppConstants.DEFAULT_QUESTIONS_PAGE_SIZE,
-            false, // 刷新模式
-            new QuestionRepository.SyncCallback() {
-                @Override
-                public void onSuccess(int syncedCount) {
-                    isSyncing.postValue(false);
-                    Log.d(TAG, "Sync completed: " + syncedCount + " questions");
-                }
-                
-                @Override
-                public void onError(String errorMsg) {
-                    isSyncing.postValue(false);
-                    setError(errorMsg);
-                    Log.e(TAG, "Sync failed: " + errorMsg);
-                }
-                
-                @Override
-                public void onPageLoaded(boolean hasMore) {
-                    hasMoreData.postValue(hasMore);
-                }
+        QuestionRepository.SyncCallback callback = new QuestionRepository.SyncCallback() {
+            @Override
+            public void onSuccess(int syncedCount) {
+                isSyncing.postValue(false);
+                webSocketManager.markFullSyncCompleted(generation);
+                Log.d(TAG, "Sync completed: " + syncedCount + " questions");
             }
-        );
+            
+            @Override
+            public void onError(String errorMsg) {
+                isSyncing.postValue(false);
+                setError(errorMsg);
+                Log.e(TAG, "Sync failed: " + errorMsg);
+            }
+            
+            @Override
+            public void onPageLoaded(boolean hasMore) {
+                hasMoreData.postValue(hasMore);
+            }
+            
+            @Override
+            public void onSkipped() {
+                // 没有同步，不标记推送流代次，过期后的下一次回到前台仍会同步；
+                // 有效期从上次增量同步取完最后一页时开始计算，本地已拥有全部问题，与同步完成时一致，不需要加载更多
+                isSyncing.postValue(false);
+                hasMoreData.postValue(false);
+            }
+        };
+        
+        // 其他页面正在进行的同一同步会被合并，这里直接等待它的结果
+        if (force) {
+            syncScope = questionRepository.syncQuestionChanges(token, userId, role, generation, callback);
+        } else {
+            syncScope = questionRepository.syncQuestionChangesIfStale(
+                token, userId, role, generation, AppConstants.QUESTIONS_SYNC_TTL_MS, callback
+            );
+        }
     }
     
     /**
@@ -190,19 +227,18 @@ public abstract class BaseQuestionListViewModel extends BaseViewModel {
             return;
         }
         
-        incrementPage();
         isLoadingMore.postValue(true);
         
         String token = prefsManager.getToken();
         long userId = prefsManager.getUserId();
         
-        questionRepository.syncQuestionsFromServer(
+        loadMoreScope = questionRepository.syncQuestionsFromServer(
             token,
             userId,
             role,
-            getCurrentPage(),
+            null, // 不按状态过滤
             AppConstants.DEFAULT_QUESTIONS_PAGE_SIZE,
-            true, // 追加模式
+            true, // 追加模式：从上一页的游标继续
             new QuestionRepository.SyncCallback() {
                 @Override
                 public void onSuccess(int syncedCount) {
@@ -213,7 +249,6 @@ public abstract class BaseQuestionListViewModel extends BaseViewModel {
                 @Override
                 public void onError(String errorMsg) {
                     isLoadingMore.postValue(false);
-                    decrementPage(); // 恢复页码
                     setError(errorMsg);
                     Log.e(TAG, "Load more failed: " + errorMsg);
                 }
@@ -230,9 +265,16 @@ public abstract class BaseQuestionListViewModel extends BaseViewModel {
     protected void cleanup() {
         super.cleanup();
         
-        // 移除 WebSocket 观察者，防止内存泄漏
-        if (webSocketMessageObserver != null) {
-            webSocketManager.getIncomingMessage().removeObserver(webSocketMessageObserver);
+        // 取消 WebSocket 事件订阅，防止内存泄漏
+        if (webSocketSubscription != null) {
+            webSocketSubscription.cancel();
+        }
+        
+        if (syncScope != null) {
+            syncScope.cancel();
+        }
+        if (loadMoreScope != null) {
+            loadMoreScope.cancel();
         }
     }
     
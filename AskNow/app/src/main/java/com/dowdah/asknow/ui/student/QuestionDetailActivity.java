@@ -106,6 +106,7 @@ public class QuestionDetailActivity extends AppCompatActivity {
         
         currentUserId = prefsManager.getUserId();
         chatViewModel = new ViewModelProvider(this).get(ChatViewModel.class);
+        chatViewModel.watchQuestion(questionId);
         executor = Executors.newSingleThreadExecutor();
         
         setupToolbar();
@@ -43,9 +43,9 @@ public class StudentMainActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        // 延迟同步，避免阻塞主线程初始化
+        // 延迟同步，避免阻塞主线程初始化；推送流连续时跳过完整同步
         binding.getRoot().postDelayed(() -> {
-            viewModel.syncQuestionsFromServer();
+            viewModel.syncQuestionsOnResume();
         }, com.dowdah.asknow.constants.AppConstants.SYNC_INITIAL_DELAY_MS);
     }
     
@@ -12,6 +12,7 @@ import com.dowdah.asknow.R;
 import com.dowdah.asknow.constants.AppConstants;
 import com.dowdah.asknow.constants.enums.WebSocketMessageType;
 import com.dowdah.asknow.data.api.ApiService;
+import com.dowdah.asknow.data.local.WriteDedupFilter;
 import com.dowdah.asknow.data.local.dao.QuestionDao;
 import com.dowdah.asknow.data.local.entity.QuestionEntity;
 import com.dowdah.asknow.data.model.QuestionRequest;
@@ -56,6 +57,7 @@ public class StudentViewModel extends BaseQuestionListViewModel {
     private static final String TAG = "StudentViewModel";
     
     private final ApiService apiService;
+    private final WriteDedupFilter writeDedupFilter;
     
     // 上传进度和问题创建结果的 LiveData
     private final MutableLiveData<UploadProgress> uploadProgress = new MutableLiveData<>();
@@ -68,7 +70,8 @@ public class StudentViewModel extends BaseQuestionListViewModel {
         QuestionDao questionDao,
         SharedPreferencesManager prefsManager,
         QuestionRepository questionRepository,
-        WebSocketManager webSocketManager
+        WebSocketManager webSocketManager,
+        WriteDedupFilter writeDedupFilter
     ) {
         super(
             application,
@@ -79,6 +82,7 @@ public class StudentViewModel extends BaseQuestionListViewModel {
             AppConstants.ROLE_STUDENT
         );
         this.apiService = apiService;
+        this.writeDedupFilter = writeDedupFilter;
     }
     
     public LiveData<UploadProgress> getUploadProgress() {
@@ -135,7 +139,9 @@ public class StudentViewModel extends BaseQuestionListViewModel {
                             data.getCreatedAt() // updatedAt
                         );
                         entity.setId(data.getId());
-                        questionDao.insert(entity);
+                        if (writeDedupFilter.admitQuestionReplace(entity)) {
+                            questionDao.insert(entity);
+                        }
                     });
                     
                     // 注意：不需要再通过 WebSocket 发送
@@ -109,6 +109,7 @@ public class AnswerActivity extends AppCompatActivity {
         
         currentUserId = prefsManager.getUserId();
         chatViewModel = new ViewModelProvider(this).get(ChatViewModel.class);
+        chatViewModel.watchQuestion(questionId);
         executor = Executors.newSingleThreadExecutor();
         
         setupToolbar();
@@ -13,16 +13,11 @@ import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 
 import com.dowdah.asknow.constants.enums.QuestionStatus;
-import com.dowdah.asknow.data.local.dao.MessageDao;
 import com.dowdah.asknow.databinding.FragmentQuestionListByStatusBinding;
 import com.dowdah.asknow.ui.adapter.QuestionAdapter;
-import com.dowdah.asknow.utils.SharedPreferencesManager;
 import com.dowdah.asknow.utils.WebSocketManager;
 
-import java.util.concurrent.ExecutorService;
-
 import javax.inject.Inject;
-import javax.inject.Named;
 
 import dagger.hilt.android.AndroidEntryPoint;
 
@@ -36,19 +31,9 @@ public class QuestionListByStatusFragment extends Fragment {
     private QuestionAdapter adapter;
     private String status;
     
-    @Inject
-    MessageDao messageDao;
-    
-    @Inject
-    SharedPreferencesManager prefsManager;
-    
     @Inject
     WebSocketManager webSocketManager;
     
-    @Inject
-    @Named("io")
-    ExecutorService ioExecutor;
-    
     public static QuestionListByStatusFragment newInstance(String status) {
         QuestionListByStatusFragment fragment = new QuestionListByStatusFragment();
         Bundle args = new Bundle();
@@ -83,12 +68,11 @@ public class QuestionListByStatusFragment extends Fragment {
     }
     
     private void setupRecyclerView() {
-        long currentUserId = prefsManager.getUserId();
         adapter = new QuestionAdapter(question -> {
             Intent intent = new Intent(requireContext(), AnswerActivity.class);
             intent.putExtra("question_id", question.getId());
             startActivity(intent);
-        }, messageDao, currentUserId, ioExecutor);
+        });
         
         LinearLayoutManager layoutManager = new LinearLayoutManager(requireContext());
         binding.recyclerView.setLayoutManager(layoutManager);
@@ -104,12 +88,12 @@ public class QuestionListByStatusFragment extends Fragment {
         
         // 设置重试监听
         adapter.setRetryListener(() -> {
-            viewModel.loadMoreQuestions();
+            viewModel.loadMoreTab(status);
         });
         
-        // 设置下拉刷新
+        // 设置下拉刷新：只刷新本标签页对应状态的问题
         binding.swipeRefreshLayout.setOnRefreshListener(() -> {
-            viewModel.syncQuestionsFromServer();
+            viewModel.refreshTab(status);
         });
         
         // 设置滚动监听，加载更多
@@ -126,7 +110,7 @@ public class QuestionListByStatusFragment extends Fragment {
                     
                     if ((visibleItemCount + firstVisibleItemPosition) >= totalItemCount - 2
                         && firstVisibleItemPosition >= 0) {
-                        viewModel.loadMoreQuestions();
+                        viewModel.loadMoreTab(status);
                     }
                 }
             }
@@ -157,8 +141,8 @@ public class QuestionListByStatusFragment extends Fragment {
             });
         }
         
-        // 监听同步状态
-        viewModel.getIsSyncing().observe(getViewLifecycleOwner(), isSyncing -> {
+        // 监听本标签页的同步状态
+        viewModel.getTabSyncing(status).observe(getViewLifecycleOwner(), isSyncing -> {
             binding.swipeRefreshLayout.setRefreshing(isSyncing != null && isSyncing);
             
             // 同步完成后，刷新未读数量
@@ -168,7 +152,7 @@ public class QuestionListByStatusFragment extends Fragment {
         });
         
         // 监听加载更多状态
-        viewModel.getIsLoadingMore().observe(getViewLifecycleOwner(), isLoadingMore -> {
+        viewModel.getTabLoadingMore(status).observe(getViewLifecycleOwner(), isLoadingMore -> {
             if (isLoadingMore != null && isLoadingMore) {
                 adapter.showLoadingFooter();
             } else {
@@ -177,21 +161,26 @@ public class QuestionListByStatusFragment extends Fragment {
         });
         
         // 监听是否还有更多数据
-        viewModel.getHasMoreData().observe(getViewLifecycleOwner(), hasMoreData -> {
+        viewModel.getTabHasMoreData(status).observe(getViewLifecycleOwner(), hasMoreData -> {
             if (hasMoreData != null && !hasMoreData) {
                 adapter.hideLoadingFooter();
             }
         });
         
-        // 监听新消息到达，刷新未读数量
-        webSocketManager.getNewMessageReceived().observe(getViewLifecycleOwner(), questionId -> {
-            if (questionId != null) {
-                // 收到新消息，刷新适配器以更新未读数量
-                adapter.refreshUnreadCounts();
-            }
+        // 监听新消息到达，刷新未读数量（同一时间段内多个问题的新消息合并为一次通知）
+        webSocketManager.getEventBus().observeNewMessages(getViewLifecycleOwner(), questionIds -> {
+            // 收到新消息，刷新适配器以更新未读数量
+            adapter.refreshUnreadCounts();
         });
     }
     
+    @Override
+    public void onResume() {
+        super.onResume();
+        // ViewPager2 只让当前标签页进入 RESUMED，后台标签页在用户打开之前不同步
+        viewModel.onTabOpened(status);
+    }
+    
     @Override
     public void onDestroyView() {
         super.onDestroyView();
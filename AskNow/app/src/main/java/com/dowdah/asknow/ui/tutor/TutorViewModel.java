@@ -1,9 +1,11 @@
 package com.dowdah.asknow.ui.tutor;
 
 import android.app.Application;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
 
 import com.dowdah.asknow.constants.AppConstants;
 import com.dowdah.asknow.constants.enums.QuestionStatus;
@@ -11,11 +13,15 @@ import com.dowdah.asknow.constants.enums.WebSocketMessageType;
 import com.dowdah.asknow.data.local.dao.QuestionDao;
 import com.dowdah.asknow.data.local.entity.QuestionEntity;
 import com.dowdah.asknow.data.repository.QuestionRepository;
+import com.dowdah.asknow.data.repository.SyncScheduler;
+import com.dowdah.asknow.data.websocket.WebSocketTopics;
 import com.dowdah.asknow.ui.question.BaseQuestionListViewModel;
 import com.dowdah.asknow.utils.SharedPreferencesManager;
 import com.dowdah.asknow.utils.WebSocketManager;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 
@@ -33,11 +39,16 @@ import dagger.hilt.android.lifecycle.HiltViewModel;
  * - 查看待接取的问题（PENDING）
  * - 查看进行中的问题（IN_PROGRESS）
  * - 查看已完成的问题（CLOSED）
+ * - 持有 tutor:pending 订阅，接收新问题和待接取问题的变化
+ * - 三个标签页各自按状态刷新和分页，标签页打开时数据过期才同步
  */
 @HiltViewModel
 public class TutorViewModel extends BaseQuestionListViewModel {
     private static final String TAG = "TutorViewModel";
     
+    // 每个标签页（按问题状态）的同步和分页状态，只在主线程访问
+    private final Map<String, TabState> tabStates = new HashMap<>();
+    
     @Inject
     public TutorViewModel(
         @NonNull Application application,
@@ -54,6 +65,183 @@ public class TutorViewModel extends BaseQuestionListViewModel {
             webSocketManager,
             AppConstants.ROLE_TUTOR
         );
+        webSocketManager.subscribeTopic(WebSocketTopics.TUTOR_PENDING);
+        tabStates.put(QuestionStatus.PENDING, new TabState());
+        tabStates.put(QuestionStatus.IN_PROGRESS, new TabState());
+        tabStates.put(QuestionStatus.CLOSED, new TabState());
+    }
+    
+    @Override
+    protected void cleanup() {
+        super.cleanup();
+        webSocketManager.unsubscribeTopic(WebSocketTopics.TUTOR_PENDING);
+        for (TabState state : tabStates.values()) {
+            if (state.syncScope != null) {
+                state.syncScope.cancel();
+            }
+            if (state.loadMoreScope != null) {
+                state.loadMoreScope.cancel();
+            }
+        }
+    }
+    
+    /**
+     * 标签页显示时调用：该状态的第一页在 {@link AppConstants#QUESTIONS_SYNC_TTL_MS} 之内刷新过时不请求服务器，
+     * 未打开的标签页不发出请求
+     * 
+     * @param status 标签页对应的问题状态
+     */
+    public void onTabOpened(String status) {
+        syncTab(status, false);
+    }
+    
+    /**
+     * 刷新一个标签页（下拉刷新）：只获取该状态的第一页，不检查数据有效期
+     * 
+     * @param status 标签页对应的问题状态
+     */
+    public void refreshTab(String status) {
+        syncTab(status, true);
+    }
+    
+    /**
+     * @param status 标签页对应的问题状态
+     * @param force true 总是请求服务器，false 数据在有效期内时跳过
+     */
+    private void syncTab(String status, boolean force) {
+        TabState state = tabStates.get(status);
+        if (state == null || Boolean.TRUE.equals(state.isSyncing.getValue())) {
+            return;
+        }
+        
+        // 跳过时由仓库按记录的分页位置回调 onPageLoaded
+        if (force) {
+            state.hasMoreData.postValue(true);
+        }
+        state.isSyncing.postValue(true);
+        
+        QuestionRepository.SyncCallback callback = new QuestionRepository.SyncCallback() {
+            @Override
+            public void onSuccess(int syncedCount) {
+                state.isSyncing.postValue(false);
+                Log.d(TAG, "Tab " + status + " refreshed: " + syncedCount + " questions");
+            }
+            
+            @Override
+            public void onError(String errorMsg) {
+                state.isSyncing.postValue(false);
+                setError(errorMsg);
+                Log.e(TAG, "Tab " + status + " refresh failed: " + errorMsg);
+            }
+            
+            @Override
+            public void onPageLoaded(boolean hasMore) {
+                state.hasMoreData.postValue(hasMore);
+            }
+            
+            @Override
+            public void onSkipped() {
+                state.isSyncing.postValue(false);
+            }
+        };
+        
+        if (force) {
+            state.syncScope = questionRepository.syncQuestionsFromServer(
+                prefsManager.getToken(),
+                prefsManager.getUserId(),
+                role,
+                status,
+                AppConstants.DEFAULT_QUESTIONS_PAGE_SIZE,
+                false,
+                callback
+            );
+        } else {
+            state.syncScope = questionRepository.syncQuestionsFromServerIfStale(
+                prefsManager.getToken(),
+                prefsManager.getUserId(),
+                role,
+                status,
+                AppConstants.DEFAULT_QUESTIONS_PAGE_SIZE,
+                AppConstants.QUESTIONS_SYNC_TTL_MS,
+                callback
+            );
+        }
+    }
+    
+    /**
+     * 加载一个标签页的下一页（滚动加载），不影响其他标签页的分页位置
+     * 
+     * @param status 标签页对应的问题状态
+     */
+    public void loadMoreTab(String status) {
+        TabState state = tabStates.get(status);
+        if (state == null
+            || Boolean.TRUE.equals(state.isLoadingMore.getValue())
+            || Boolean.FALSE.equals(state.hasMoreData.getValue())) {
+            return;
+        }
+        
+        state.isLoadingMore.postValue(true);
+        
+        state.loadMoreScope = questionRepository.syncQuestionsFromServer(
+            prefsManager.getToken(),
+            prefsManager.getUserId(),
+            role,
+            status,
+            AppConstants.DEFAULT_QUESTIONS_PAGE_SIZE,
+            true,
+            new QuestionRepository.SyncCallback() {
+                @Override
+                public void onSuccess(int syncedCount) {
+                    state.isLoadingMore.postValue(false);
+                    Log.d(TAG, "Tab " + status + " loaded next page: " + syncedCount + " questions");
+                }
+                
+                @Override
+                public void onError(String errorMsg) {
+                    state.isLoadingMore.postValue(false);
+                    setError(errorMsg);
+                    Log.e(TAG, "Tab " + status + " load more failed: " + errorMsg);
+                }
+                
+                @Override
+                public void onPageLoaded(boolean hasMore) {
+                    state.hasMoreData.postValue(hasMore);
+                }
+            }
+        );
+    }
+    
+    /**
+     * @param status 标签页对应的问题状态
+     * @return 该标签页是否正在刷新
+     */
+    public LiveData<Boolean> getTabSyncing(String status) {
+        return requireTab(status).isSyncing;
+    }
+    
+    /**
+     * @param status 标签页对应的问题状态
+     * @return 该标签页是否正在加载更多
+     */
+    public LiveData<Boolean> getTabLoadingMore(String status) {
+        return requireTab(status).isLoadingMore;
+    }
+    
+    /**
+     * @param status 标签页对应的问题状态
+     * @return 该标签页是否还有更多数据
+     */
+    public LiveData<Boolean> getTabHasMoreData(String status) {
+        return requireTab(status).hasMoreData;
+    }
+    
+    private TabState requireTab(String status) {
+        TabState state = tabStates.get(status);
+        if (state == null) {
+            throw new IllegalArgumentException("Unknown tab status: " + status);
+        }
+        return state;
     }
     
     @Override
@@ -98,5 +286,16 @@ public class TutorViewModel extends BaseQuestionListViewModel {
         long tutorId = prefsManager.getUserId();
         return questionDao.getQuestionsByTutorAndStatus(tutorId, QuestionStatus.CLOSED);
     }
+    
+    /**
+     * 单个标签页的同步和分页状态
+     */
+    private static final class TabState {
+        final MutableLiveData<Boolean> isSyncing = new MutableLiveData<>(false);
+        final MutableLiveData<Boolean> isLoadingMore = new MutableLiveData<>(false);
+        final MutableLiveData<Boolean> hasMoreData = new MutableLiveData<>(true);
+        SyncScheduler.Scope syncScope;
+        SyncScheduler.Scope loadMoreScope;
+    }
 }
 
@@ -0,0 +1,196 @@
+package com.dowdah.asknow.utils;
+
+import java.util.Arrays;
+
+/**
+ * 定长 long → long 缓存（开放寻址 + CLOCK 淘汰）
+ *
+ * 键和值存放在预先分配的基本类型数组中，读写过程不产生任何对象分配：
+ * - 线性探测，表长为不小于容量两倍的 2 的幂，装载因子不超过 0.5
+ * - 删除使用向后移位（backward-shift），不留墓碑，探测链始终紧凑
+ * - 达到容量时按 CLOCK 算法淘汰：命中过的条目获得一次"第二次机会"
+ *
+ * 非线程安全，由调用方加锁。
+ */
+public final class LongFingerprintCache {
+
+    private static final byte EMPTY = 0;
+    private static final byte PRESENT = 1;
+    private static final byte REFERENCED = 2;
+
+    private final long[] keys;
+    private final long[] values;
+    private final byte[] states;
+    private final int mask;
+    private final int maxEntries;
+    private int size;
+    private int hand;
+    private long evictionCount;
+
+    /**
+     * @param maxEntries 最大条目数
+     */
+    public LongFingerprintCache(int maxEntries) {
+        if (maxEntries <= 0 || maxEntries > (1 << 29)) {
+            throw new IllegalArgumentException("Invalid capacity: " + maxEntries);
+        }
+        int tableSize = Integer.highestOneBit(maxEntries * 2 - 1) << 1;
+        this.keys = new long[tableSize];
+        this.values = new long[tableSize];
+        this.states = new byte[tableSize];
+        this.mask = tableSize - 1;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * 查询键对应的值是否等于给定值，命中时标记为最近使用
+     *
+     * @param key 键
+     * @param value 期望的值
+     * @return true 表示键存在且值相等
+     */
+    public boolean matches(long key, long value) {
+        int slot = find(key);
+        if (slot < 0 || values[slot] != value) {
+            return false;
+        }
+        states[slot] = REFERENCED;
+        return true;
+    }
+
+    /**
+     * 读取键对应的值，命中时标记为最近使用
+     *
+     * @param key 键
+     * @param defaultValue 键不存在时返回的值
+     * @return 键对应的值
+     */
+    public long get(long key, long defaultValue) {
+        int slot = find(key);
+        if (slot < 0) {
+            return defaultValue;
+        }
+        states[slot] = REFERENCED;
+        return values[slot];
+    }
+
+    /**
+     * 写入键值，已满时先淘汰一个条目
+     *
+     * @param key 键
+     * @param value 值
+     */
+    public void put(long key, long value) {
+        int slot = find(key);
+        if (slot >= 0) {
+            values[slot] = value;
+            states[slot] = REFERENCED;
+            return;
+        }
+        if (size >= maxEntries) {
+            evict();
+            slot = find(key);
+        }
+        int insertAt = -slot - 1;
+        keys[insertAt] = key;
+        values[insertAt] = value;
+        states[insertAt] = PRESENT;
+        size++;
+    }
+
+    /**
+     * 删除键
+     *
+     * @param key 键
+     * @return true 表示键存在并已删除
+     */
+    public boolean remove(long key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return false;
+        }
+        removeAt(slot);
+        return true;
+    }
+
+    /**
+     * 清空所有条目
+     */
+    public void clear() {
+        Arrays.fill(states, EMPTY);
+        size = 0;
+        hand = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 因容量不足淘汰的条目数
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return 键所在槽位；不存在时返回 -(插入槽位) - 1
+     */
+    private int find(long key) {
+        int slot = home(key);
+        while (states[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -slot - 1;
+    }
+
+    private int home(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * CLOCK 淘汰：跳过并清除带引用标记的条目，淘汰遇到的第一个未被引用的条目
+     */
+    private void evict() {
+        while (true) {
+            byte state = states[hand];
+            if (state == REFERENCED) {
+                states[hand] = PRESENT;
+            } else if (state == PRESENT) {
+                // 向后移位后当前槽位可能换成了后面的条目，指针留在原地，下次从它开始检查
+                removeAt(hand);
+                evictionCount++;
+                return;
+            }
+            hand = (hand + 1) & mask;
+        }
+    }
+
+    /**
+     * 向后移位删除：把探测链上后续可以前移的条目依次移入空位
+     */
+    private void removeAt(int slot) {
+        int gap = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (states[next] == EMPTY) {
+                break;
+            }
+            // 条目的理想位置不在 (gap, next] 之间时，移到空位不会破坏它的探测链
+            int ideal = home(keys[next]);
+            if (((next - ideal) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                states[gap] = states[next];
+                gap = next;
+            }
+        }
+        states[gap] = EMPTY;
+        size--;
+    }
+}
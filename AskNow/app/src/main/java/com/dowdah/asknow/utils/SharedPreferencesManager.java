@@ -22,6 +22,8 @@ public class SharedPreferencesManager {
     private static final String KEY_USER_ID = "user_id";
     private static final String KEY_USERNAME = "username";
     private static final String KEY_ROLE = "role";
+    private static final String KEY_WS_EPOCH = "ws_epoch";
+    private static final String KEY_WS_LAST_SEQ = "ws_last_seq";
     
     private final SharedPreferences preferences;
     
@@ -114,6 +116,39 @@ public class SharedPreferencesManager {
         return getToken() != null && !getToken().isEmpty();
     }
     
+    /**
+     * 保存 WebSocket 断线续传位置
+     * 在一批推送事件写入数据库后调用
+     * 
+     * @param epoch 服务端纪元
+     * @param lastSeq 最后应用的事件序号
+     */
+    public void saveWebSocketResumePoint(@NonNull String epoch, long lastSeq) {
+        preferences.edit()
+            .putString(KEY_WS_EPOCH, epoch)
+            .putLong(KEY_WS_LAST_SEQ, lastSeq)
+            .apply();
+    }
+    
+    /**
+     * 获取服务端纪元
+     * 
+     * @return 服务端纪元，未连接过时返回null
+     */
+    @Nullable
+    public String getWebSocketEpoch() {
+        return preferences.getString(KEY_WS_EPOCH, null);
+    }
+    
+    /**
+     * 获取最后应用的 WebSocket 事件序号
+     * 
+     * @return 事件序号，未记录时返回0
+     */
+    public long getWebSocketLastSeq() {
+        return preferences.getLong(KEY_WS_LAST_SEQ, 0);
+    }
+    
     /**
      * 清除所有保存的数据
      */
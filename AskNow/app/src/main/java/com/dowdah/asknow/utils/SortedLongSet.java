@@ -0,0 +1,85 @@
+package com.dowdah.asknow.utils;
+
+import java.util.Arrays;
+
+/**
+ * 基于有序 long 数组的集合
+ *
+ * 用于记录同步过程中见过的消息ID：每个ID只占 8 字节，没有装箱和哈希表开销。
+ * 服务端按ID升序返回，追加时保持有序，查询使用二分查找；乱序追加时标记为无序，
+ * 下一次查询前排序去重。
+ *
+ * 非线程安全，由调用方保证同一时间只有一个线程访问。
+ */
+public final class SortedLongSet {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] values;
+    private int size;
+    private boolean sorted = true;
+
+    public SortedLongSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity 初始容量
+     */
+    public SortedLongSet(int initialCapacity) {
+        this.values = new long[Math.max(1, initialCapacity)];
+    }
+
+    /**
+     * 添加一个值
+     *
+     * @param value 值
+     */
+    public void add(long value) {
+        if (size > 0) {
+            long last = values[size - 1];
+            if (value == last) {
+                return;
+            }
+            if (value < last) {
+                sorted = false;
+            }
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * @param value 值
+     * @return 是否包含该值
+     */
+    public boolean contains(long value) {
+        ensureSorted();
+        return Arrays.binarySearch(values, 0, size, value) >= 0;
+    }
+
+    /**
+     * @return 不同值的个数
+     */
+    public int size() {
+        ensureSorted();
+        return size;
+    }
+
+    private void ensureSorted() {
+        if (sorted) {
+            return;
+        }
+        Arrays.sort(values, 0, size);
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || values[i] != values[unique - 1]) {
+                values[unique++] = values[i];
+            }
+        }
+        size = unique;
+        sorted = true;
+    }
+}
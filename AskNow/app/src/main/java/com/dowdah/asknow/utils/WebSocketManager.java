@@ -1,28 +1,51 @@
 package com.dowdah.asknow.utils;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
-import com.dowdah.asknow.constants.enums.MessageType;
 import com.dowdah.asknow.constants.enums.QuestionStatus;
 import com.dowdah.asknow.constants.enums.WebSocketMessageType;
+import com.dowdah.asknow.constants.AppConstants;
 import com.dowdah.asknow.data.api.WebSocketClient;
+import com.dowdah.asknow.data.local.AppDatabase;
+import com.dowdah.asknow.data.local.WriteDedupFilter;
 import com.dowdah.asknow.data.local.dao.MessageDao;
 import com.dowdah.asknow.data.local.dao.QuestionDao;
 import com.dowdah.asknow.data.local.entity.MessageEntity;
 import com.dowdah.asknow.data.local.entity.QuestionEntity;
 import com.dowdah.asknow.data.model.WebSocketMessage;
 import com.dowdah.asknow.data.repository.MessageRepository;
-import com.google.gson.Gson;
+import com.dowdah.asknow.data.websocket.ChatMessagePayload;
+import com.dowdah.asknow.data.websocket.ConnectionQuality;
+import com.dowdah.asknow.data.websocket.QuestionPayload;
+import com.dowdah.asknow.data.websocket.ResumePayload;
+import com.dowdah.asknow.data.websocket.WebSocketBatchResult;
+import com.dowdah.asknow.data.websocket.WebSocketEventBus;
+import com.dowdah.asknow.data.websocket.WebSocketFrame;
+import com.dowdah.asknow.data.websocket.WebSocketFrameDecoder;
+import com.dowdah.asknow.data.websocket.WebSocketHandlerRegistry;
+import com.dowdah.asknow.data.websocket.WebSocketIngestQueue;
+import com.dowdah.asknow.data.websocket.WebSocketOutbox;
+import com.dowdah.asknow.data.websocket.WebSocketTopics;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 
-import java.util.concurrent.ExecutorService;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 
 import okhttp3.OkHttpClient;
@@ -31,48 +54,112 @@ import okhttp3.OkHttpClient;
 public class WebSocketManager {
     private static final String TAG = "WebSocketManager";
     
-    private WebSocketClient webSocketClient;
+    private volatile WebSocketClient webSocketClient;
     private final OkHttpClient okHttpClient;
     private final String wsBaseUrl;
     private final MessageRepository messageRepository;
+    private final AppDatabase appDatabase;
     private final QuestionDao questionDao;
     private final MessageDao messageDao;
+    private final WriteDedupFilter writeDedupFilter;
     private final SharedPreferencesManager prefsManager;
-    private final ExecutorService executor;
+    private final ScheduledExecutorService executor;
+    private final ScheduledExecutorService scheduledExecutor;
+    private final WebSocketFrameDecoder frameDecoder = new WebSocketFrameDecoder();
+    private final WebSocketIngestQueue ingestQueue;
+    private final WebSocketHandlerRegistry handlerRegistry = new WebSocketHandlerRegistry();
+    // 推送事件在主线程逐条投递，替代会合并多次 postValue 的 LiveData
+    private final WebSocketEventBus eventBus = new WebSocketEventBus(new Handler(Looper.getMainLooper())::post);
+    private final WebSocketOutbox outbox;
     
     private final MutableLiveData<Boolean> isConnected = new MutableLiveData<>(false);
     private final MutableLiveData<String> errorMessage = new MutableLiveData<>();
-    private final MutableLiveData<WebSocketMessage> incomingMessage = new MutableLiveData<>();
-    private final MutableLiveData<Long> newMessageReceived = new MutableLiveData<>();  // 通知新消息到达，值为 questionId
+    private final MutableLiveData<ConnectionQuality> connectionQuality = new MutableLiveData<>(ConnectionQuality.UNKNOWN);
     
     // 标记应用是否在前台，用于控制 WebSocket 连接行为
     private volatile boolean isAppInForeground = true;
     
+    // 进入后台后延迟断开的任务，回到前台时取消（由 this 锁保护）
+    private ScheduledFuture<?> pendingBackgroundDisconnect;
+    
+    // 推送流代次：服务端以全量快照代替增量补发（缺口过大、纪元变化、首次连接）时加一，
+    // 说明本地数据可能缺少推送之外的变化，需要一次完整的 HTTP 同步
+    private final AtomicInteger streamGeneration = new AtomicInteger(1);
+    // 最近一次完整 HTTP 同步开始时的推送流代次
+    private volatile int syncedGeneration;
+    
+    // 当前连接的用户角色，批处理时用于过滤消息类型
+    private volatile String connectedRole;
+    
+    // 已收到的最大事件序号（接收线程维护），用于丢弃重连补发与实时推送之间的重复帧
+    private volatile long receivedSeq;
+    // 批次写入失败、等待从最后提交的位置重新续传时为 true，期间收到的帧直接丢弃，
+    // 避免后续批次把续传位置推进到未写入的事件之后（重建连接时清除）
+    private volatile boolean resyncPending;
+    
+    // 页面持有的订阅主题；连接地址中声明的主题在补发前生效
+    private final WebSocketTopics topics = new WebSocketTopics();
+    // 当前连接的地址中声明的主题
+    private volatile Set<String> connectedTopics = Collections.emptySet();
+    
     @Inject
     public WebSocketManager(
         OkHttpClient okHttpClient,
         String wsBaseUrl,
         MessageRepository messageRepository,
+        AppDatabase appDatabase,
         QuestionDao questionDao,
         MessageDao messageDao,
-        SharedPreferencesManager prefsManager
+        SharedPreferencesManager prefsManager,
+        @Named("scheduled") ScheduledExecutorService scheduledExecutor,
+        WriteDedupFilter writeDedupFilter
     ) {
         this.okHttpClient = okHttpClient;
         this.wsBaseUrl = wsBaseUrl;
         this.messageRepository = messageRepository;
+        this.appDatabase = appDatabase;
         this.questionDao = questionDao;
         this.messageDao = messageDao;
         this.prefsManager = prefsManager;
-        this.executor = Executors.newSingleThreadExecutor();
+        this.scheduledExecutor = scheduledExecutor;
+        this.writeDedupFilter = writeDedupFilter;
+        // 单线程的摄入线程：批次按到达顺序写入数据库
+        this.executor = Executors.newSingleThreadScheduledExecutor();
+        this.ingestQueue = new WebSocketIngestQueue(
+            executor,
+            AppConstants.WEBSOCKET_INGEST_WINDOW_MS,
+            AppConstants.WEBSOCKET_INGEST_MAX_BATCH_SIZE,
+            AppConstants.WEBSOCKET_INGEST_CAPACITY,
+            this::applyBatch,
+            this::onIngestOverflow
+        );
+        this.outbox = new WebSocketOutbox(
+            scheduledExecutor,
+            this::sendIfOpen,
+            AppConstants.WEBSOCKET_ACK_TIMEOUT_MS,
+            AppConstants.WEBSOCKET_SEND_MAX_ATTEMPTS
+        );
+        registerHandlers();
         
-        // 设置网络恢复监听器，统一由 WebSocketManager 处理重连
-        messageRepository.setNetworkAvailableListener(() -> {
-            Log.d(TAG, "Network available, checking WebSocket connection");
-            if (webSocketClient == null || !webSocketClient.isConnected()) {
-                Log.d(TAG, "WebSocket not connected, attempting reconnect");
-                reconnect();
-            } else {
-                Log.d(TAG, "WebSocket already connected, no action needed");
+        // 设置网络状态监听器，网络变化交给 WebSocketClient 的重连状态机处理
+        messageRepository.setNetworkAvailableListener(new MessageRepository.NetworkAvailableListener() {
+            @Override
+            public void onNetworkAvailable() {
+                WebSocketClient client = webSocketClient;
+                if (client != null) {
+                    client.onNetworkAvailable();
+                } else {
+                    Log.d(TAG, "Network available, WebSocket not started, attempting connect");
+                    connect();
+                }
+            }
+            
+            @Override
+            public void onNetworkLost() {
+                WebSocketClient client = webSocketClient;
+                if (client != null) {
+                    client.onNetworkLost();
+                }
             }
         });
     }
@@ -103,27 +190,43 @@ public class WebSocketManager {
             return;
         }
         
-        String url = wsBaseUrl + userId;
         Log.d(TAG, "Connecting WebSocket for user " + userId + " (" + role + ")");
+        connectedRole = role;
         
-        webSocketClient = new WebSocketClient(okHttpClient, url, new WebSocketClient.WebSocketCallback() {
+        webSocketClient = new WebSocketClient(okHttpClient, () -> buildConnectUrl(userId), frameDecoder,
+            scheduledExecutor, messageRepository::isNetworkAvailable, messageRepository::isNetworkUnmetered,
+            new WebSocketClient.WebSocketCallback() {
             @Override
             public void onConnected() {
                 Log.d(TAG, "WebSocket connected");
                 isConnected.postValue(true);
+                syncTopicsAfterConnect();
             }
             
             @Override
-            public void onMessage(WebSocketMessage message) {
-                Log.d(TAG, "Received message: " + message.getType());
-                incomingMessage.postValue(message);
-                handleMessage(message, role);
+            public void onMessage(WebSocketFrame frame) {
+                if (resyncPending) {
+                    Log.d(TAG, "Dropping " + frame.getType() + " while resyncing after a failed batch");
+                    return;
+                }
+                if (!acceptSequence(frame)) {
+                    return;
+                }
+                Log.d(TAG, "Received message: " + frame.getType());
+                // ACK 在接收线程直接交给发送队列，不经过批处理窗口，减少发送延迟
+                if (WebSocketMessageType.ACK.equals(frame.getType())) {
+                    outbox.onAck(frame.getMessageId(), frame.getAck());
+                    return;
+                }
+                ingestQueue.enqueue(frame);
             }
             
             @Override
             public void onDisconnected() {
                 Log.d(TAG, "WebSocket disconnected");
                 isConnected.postValue(false);
+                // 未确认的上行消息无法再收到 ACK，回退到 HTTP
+                outbox.failAll();
             }
             
             @Override
@@ -131,12 +234,139 @@ public class WebSocketManager {
                 Log.e(TAG, "WebSocket error", error);
                 errorMessage.postValue("Connection error: " + error.getMessage());
             }
+            
+            @Override
+            public void onQualityChanged(ConnectionQuality quality) {
+                connectionQuality.postValue(quality);
+            }
         });
         
         webSocketClient.connect();
     }
     
+    /**
+     * 构建连接地址，携带最后写入数据库的事件序号和服务端纪元
+     * 
+     * 每次连接（包括 WebSocketClient 自动重连）都会重新调用，
+     * 同时把接收序号回退到已持久化的位置，保证未写入的事件能被服务端补发
+     * 
+     * @param userId 用户ID
+     * @return 连接地址
+     */
+    private String buildConnectUrl(long userId) {
+        long lastSeq = prefsManager.getWebSocketLastSeq();
+        String epoch = prefsManager.getWebSocketEpoch();
+        receivedSeq = lastSeq;
+        resyncPending = false;
+        Set<String> subscribed = topics.snapshot();
+        connectedTopics = subscribed;
+        
+        StringBuilder url = new StringBuilder(wsBaseUrl).append(userId);
+        char separator = '?';
+        if (epoch != null && lastSeq > 0) {
+            url.append("?since=").append(lastSeq).append("&epoch=").append(epoch);
+            separator = '&';
+        }
+        if (!subscribed.isEmpty()) {
+            url.append(separator).append("topics=").append(String.join(",", subscribed));
+        }
+        return url.toString();
+    }
+    
+    /**
+     * 持有一个订阅主题，第一次持有时通知服务端
+     * 
+     * 未连接时只记录，下次连接在地址中声明。订阅之前错过的主题事件不会补发，
+     * 页面应自行通过 HTTP 加载初始数据
+     * 
+     * @param topic 主题，见 {@link WebSocketTopics}
+     */
+    public void subscribeTopic(String topic) {
+        if (topics.acquire(topic)) {
+            sendTopics(WebSocketMessageType.SUBSCRIBE, Collections.singleton(topic));
+        }
+    }
+    
+    /**
+     * 释放一个订阅主题，最后一个持有者释放时通知服务端
+     * 
+     * @param topic 主题
+     */
+    public void unsubscribeTopic(String topic) {
+        if (topics.release(topic)) {
+            sendTopics(WebSocketMessageType.UNSUBSCRIBE, Collections.singleton(topic));
+        }
+    }
+    
+    /**
+     * 连接建立后补发握手期间变化的订阅（地址生成之后、连接建立之前持有或释放的主题）
+     */
+    private void syncTopicsAfterConnect() {
+        Set<String> declared = connectedTopics;
+        Set<String> current = topics.snapshot();
+        if (declared.equals(current)) {
+            return;
+        }
+        Set<String> added = new HashSet<>(current);
+        added.removeAll(declared);
+        Set<String> removed = new HashSet<>(declared);
+        removed.removeAll(current);
+        sendTopics(WebSocketMessageType.SUBSCRIBE, added);
+        sendTopics(WebSocketMessageType.UNSUBSCRIBE, removed);
+    }
+    
+    private void sendTopics(String type, Set<String> changed) {
+        if (changed.isEmpty()) {
+            return;
+        }
+        JsonArray list = new JsonArray();
+        for (String topic : changed) {
+            list.add(topic);
+        }
+        JsonObject data = new JsonObject();
+        data.add("topics", list);
+        // 发送失败（未连接）时无需处理，下次连接会在地址中声明全部订阅
+        if (sendIfOpen(new WebSocketMessage(type, data, String.valueOf(System.currentTimeMillis()), null))) {
+            Log.d(TAG, type + " " + changed);
+        }
+    }
+    
+    /**
+     * 按事件序号过滤重复帧（在接收线程调用）
+     * 
+     * 补发与实时推送可能交叠，序号不大于已收到序号的帧直接丢弃；
+     * 收到 RESUME 时以服务端的当前序号为准（全量快照模式下旧序号可能属于上一个纪元）
+     * 
+     * @param frame 已解码的帧
+     * @return true 表示应该继续处理该帧
+     */
+    private boolean acceptSequence(WebSocketFrame frame) {
+        ResumePayload resume = frame.getResume();
+        if (resume != null) {
+            receivedSeq = resume.isSnapshot() ? resume.getSeq() : Math.max(receivedSeq, resume.getSeq());
+            Log.d(TAG, "Resumed in " + resume.getMode() + " mode at seq " + resume.getSeq()
+                + " (" + resume.getCount() + " frames)");
+            return true;
+        }
+        long seq = frame.getSeq();
+        if (seq <= 0) {
+            return true;
+        }
+        if (seq <= receivedSeq) {
+            Log.d(TAG, "Dropping duplicate frame seq " + seq);
+            return false;
+        }
+        receivedSeq = seq;
+        return true;
+    }
+    
     public void disconnect() {
+        ingestQueue.clear();
+        outbox.failAll();
+        ingestQueue.logStats();
+        handlerRegistry.logStats();
+        eventBus.logStats();
+        writeDedupFilter.logStats();
         if (webSocketClient != null) {
             webSocketClient.disconnect();
             webSocketClient = null;
@@ -149,282 +379,360 @@ public class WebSocketManager {
         connect();
     }
     
-    private void handleMessage(WebSocketMessage message, String role) {
-        String type = message.getType();
-        
-        if (WebSocketMessageType.ACK.equals(type)) {
-            // ACK 消息已由后端处理，客户端不需要额外处理
-            Log.d(TAG, "Received ACK: " + message.getMessageId());
-        } else if (WebSocketMessageType.CHAT_MESSAGE.equals(type)) {
-            handleChatMessage(message);
-        } else if (WebSocketMessageType.QUESTION_UPDATED.equals(type)) {
-            // 新的统一的问题更新消息类型（替代 QUESTION_ACCEPTED 和 QUESTION_CLOSED）
-            handleQuestionUpdated(message);
-        } else if (WebSocketMessageType.QUESTION_ACCEPTED.equals(type)) {
-            // 向后兼容
-            handleQuestionAccepted(message);
-        } else if (WebSocketMessageType.QUESTION_CLOSED.equals(type)) {
-            // 向后兼容
-            handleQuestionClosed(message);
-        } else if (WebSocketMessageType.NEW_QUESTION.equals(type) && com.dowdah.asknow.constants.AppConstants.ROLE_TUTOR.equals(role)) {
-            handleNewQuestion(message);
-        } else if (WebSocketMessageType.NEW_ANSWER.equals(type) && com.dowdah.asknow.constants.AppConstants.ROLE_STUDENT.equals(role)) {
-            // 向后兼容
-        }
-    }
-    
-    private void handleChatMessage(WebSocketMessage message) {
-        executor.execute(() -> {
-            try {
-                if (message == null) {
-                    Log.w(TAG, "Received null message");
-                    return;
-                }
-                
-                JsonObject data = message.getData();
-                if (data == null) {
-                    Log.w(TAG, "Message data is null");
-                    return;
-                }
-                
-                // 处理两种消息格式：
-                // 1. 后端发送的格式：data.id
-                // 2. 客户端转发的格式：data.messageId
-                long messageId;
-                if (data.has("id") && !data.get("id").isJsonNull()) {
-                    messageId = data.get("id").getAsLong();
-                } else if (data.has("messageId") && !data.get("messageId").isJsonNull()) {
-                    messageId = data.get("messageId").getAsLong();
-                } else {
-                    Log.w(TAG, "Message missing both id and messageId fields");
-                    return;
-                }
-                
-                // 验证必要字段
-                if (!data.has("questionId") || data.get("questionId").isJsonNull()) {
-                    Log.w(TAG, "Message missing questionId field");
-                    return;
-                }
-                if (!data.has("senderId") || data.get("senderId").isJsonNull()) {
-                    Log.w(TAG, "Message missing senderId field");
-                    return;
-                }
-                if (!data.has("content") || data.get("content").isJsonNull()) {
-                    Log.w(TAG, "Message missing content field");
-                    return;
-                }
-                
-                long questionId = data.get("questionId").getAsLong();
-                long senderId = data.get("senderId").getAsLong();
-                String content = data.get("content").getAsString();
-                
-                // 获取消息类型，默认为text
-                String messageType = MessageType.TEXT;
-                if (data.has("messageType") && !data.get("messageType").isJsonNull()) {
-                    messageType = data.get("messageType").getAsString();
-                }
-                
-                // 获取创建时间，如果没有则使用当前时间
-                long createdAt = System.currentTimeMillis();
-                if (data.has("createdAt") && !data.get("createdAt").isJsonNull()) {
-                    createdAt = data.get("createdAt").getAsLong();
-                }
-                
-                // 获取已读状态，默认为未读
-                boolean isRead = false;
-                if (data.has("isRead") && !data.get("isRead").isJsonNull()) {
-                    isRead = data.get("isRead").getAsBoolean();
-                }
-                
-                MessageEntity entity = new MessageEntity(
-                    questionId,
-                    senderId,
-                    content,
-                    messageType,
-                    createdAt
-                );
-                entity.setId(messageId);
-                entity.setRead(isRead); // 设置已读状态
-                messageDao.insert(entity);
-                
-                // 通知界面有新消息到达（触发未读数量刷新）
-                newMessageReceived.postValue(questionId);
-                
-                Log.d(TAG, "Saved chat message from WebSocket: id=" + messageId + ", questionId=" + questionId);
-            } catch (Exception e) {
-                Log.e(TAG, "Error handling chat message", e);
-            }
-        });
+    /**
+     * 登记各消息类型的处理器
+     * 
+     * 角色过滤在登记时声明，分发时由注册表统一判断
+     */
+    private void registerHandlers() {
+        // ACK 在接收线程交给 WebSocketOutbox，不进入批处理
+        handlerRegistry.register(WebSocketMessageType.CHAT_MESSAGE, this::handleChatMessage);
+        // 统一的问题更新消息类型（替代 QUESTION_ACCEPTED 和 QUESTION_CLOSED）
+        handlerRegistry.register(WebSocketMessageType.QUESTION_UPDATED, this::handleQuestionUpdated);
+        handlerRegistry.register(WebSocketMessageType.NEW_QUESTION, this::handleNewQuestion,
+            AppConstants.ROLE_TUTOR);
+        // 重连握手完成，续传位置在本批提交后保存
+        handlerRegistry.register(WebSocketMessageType.RESUME,
+            (frame, result) -> result.markResumed(frame.getResume()));
+        registerLegacyHandlers();
     }
     
     /**
-     * 处理问题更新消息（统一消息类型）
+     * 登记旧版消息类型的处理器（向后兼容）
      * 
-     * 注意：只更新问题的状态相关字段，保留 imagePaths 字段不被覆盖
-     * 这是为了避免图片消失的问题，因为 WebSocket 消息中的 imagePath 字段
-     * 与数据库中的 imagePaths（JSON 数组）字段格式不一致
+     * NEW_ANSWER 在客户端一直没有处理逻辑，不再登记，收到时计入未处理帧数
+     */
+    private void registerLegacyHandlers() {
+        handlerRegistry.register(WebSocketMessageType.QUESTION_ACCEPTED,
+            (frame, result) -> updateQuestionStatus(frame.getQuestion(), QuestionStatus.IN_PROGRESS, true, "QUESTION_ACCEPTED"));
+        handlerRegistry.register(WebSocketMessageType.QUESTION_CLOSED,
+            (frame, result) -> updateQuestionStatus(frame.getQuestion(), QuestionStatus.CLOSED, false, "QUESTION_CLOSED"));
+    }
+    
+    /**
+     * 摄入队列溢出（在接收线程调用）
+     * 
+     * 待处理的帧已被丢弃，重建连接后 buildConnectUrl 把接收序号回退到最后提交的位置，
+     * 服务端从该位置补发（超出事件日志范围时发送全量快照）
      * 
-     * @param message WebSocket消息
+     * @param droppedFrames 丢弃的帧数
      */
-    private void handleQuestionUpdated(WebSocketMessage message) {
-        executor.execute(() -> {
-            try {
-                if (message == null) {
-                    Log.w(TAG, "Received null message");
-                    return;
-                }
-                
-                JsonObject data = message.getData();
-                if (data == null) {
-                    Log.w(TAG, "Message data is null");
-                    return;
-                }
-                
-                // 验证必要字段
-                if (!data.has("questionId") || data.get("questionId").isJsonNull()) {
-                    Log.w(TAG, "Question update missing questionId field");
-                    return;
-                }
-                if (!data.has("status") || data.get("status").isJsonNull()) {
-                    Log.w(TAG, "Question update missing status field");
-                    return;
-                }
-                
-                long questionId = data.get("questionId").getAsLong();
-                String status = data.get("status").getAsString();
-                Long tutorId = data.has("tutorId") && !data.get("tutorId").isJsonNull() 
-                    ? data.get("tutorId").getAsLong() : null;
-                long updatedAt = data.has("updatedAt") && !data.get("updatedAt").isJsonNull()
-                    ? data.get("updatedAt").getAsLong() : System.currentTimeMillis();
-                
-                // 从数据库读取现有的问题实体
-                QuestionEntity question = questionDao.getQuestionById(questionId);
-                
-                if (question != null) {
-                    // 只更新状态相关字段，保留其他字段（特别是 imagePaths）
-                    question.setStatus(status);
-                    question.setUpdatedAt(updatedAt);
-                    
-                    // 如果消息中包含 tutorId，则更新
-                    if (tutorId != null) {
-                        question.setTutorId(tutorId);
-                    }
-                    
-                    // 如果消息中包含 content，则更新（可选，一般状态更新不会改变内容）
-                    if (data.has("content") && !data.get("content").isJsonNull()) {
-                        question.setContent(data.get("content").getAsString());
+    private void onIngestOverflow(int droppedFrames) {
+        Log.w(TAG, "Ingest queue overflow, dropped " + droppedFrames + " frames, resyncing from last committed seq");
+        WebSocketClient client = webSocketClient;
+        if (client != null) {
+            client.restart();
+        }
+    }
+    
+    /**
+     * 批次事务回滚（在摄入线程调用）
+     * 
+     * 本批的事件已经计入接收序号但没有写入，之后的批次一旦提交就会把续传位置推进到它们之后。
+     * 丢弃待处理和后续到达的帧，重建连接后 buildConnectUrl 把接收序号回退到最后提交的位置，
+     * 服务端从该位置重新补发（与摄入队列溢出的处理相同）
+     * 
+     * @param failedFrames 回滚的帧数
+     */
+    private void resyncAfterFailedBatch(int failedFrames) {
+        Log.w(TAG, "WebSocket batch of " + failedFrames + " frames rolled back, resyncing from last committed seq");
+        resyncPending = true;
+        ingestQueue.clear();
+        WebSocketClient client = webSocketClient;
+        if (client != null) {
+            client.restart();
+        }
+    }
+    
+    /**
+     * 在一个数据库事务中应用一批推送帧
+     * 
+     * 注册表逐帧捕获异常（例如消息所属问题尚未同步导致外键约束失败），
+     * 避免单帧失败回滚整批数据。事务提交后再通过事件总线通知订阅者。
+     * 
+     * @param batch 按到达顺序排列的帧
+     */
+    private void applyBatch(List<WebSocketFrame> batch) {
+        String role = connectedRole;
+        WebSocketBatchResult result = new WebSocketBatchResult();
+        try {
+            appDatabase.runInTransaction(() -> {
+                for (WebSocketFrame frame : batch) {
+                    if (!handlerRegistry.dispatch(frame, role, result)) {
+                        Log.d(TAG, "No handler for " + frame.getType() + " (role " + role + ")");
                     }
-                    
-                    // 使用 update 而不是 insert，避免触发外键级联删除导致消息丢失
-                    questionDao.update(question);
-                    
-                    Log.d(TAG, "Question updated from WebSocket: " + questionId + ", status: " + status + 
-                          " (imagePaths preserved)");
-                } else {
-                    Log.w(TAG, "Question not found in database for update: " + questionId);
+                    result.markApplied(frame.getSeq());
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "Error handling question updated", e);
-            }
-        });
+            });
+        } catch (RuntimeException e) {
+            // 事务已回滚，本批放行的写入指纹不再对应数据库内容
+            writeDedupFilter.invalidateQuestions();
+            writeDedupFilter.invalidateMessages();
+            resyncAfterFailedBatch(batch.size());
+            throw e;
+        }
+        Log.d(TAG, "Applied WebSocket batch of " + batch.size() + " frames");
+        saveResumePoint(result);
+        if (result.getResume() != null && result.getResume().isSnapshot()) {
+            // 先于帧投递更新代次，订阅者收到 RESUME 时 needsFullSync() 已经为 true
+            streamGeneration.incrementAndGet();
+        }
+        
+        // 逐帧投递给帧订阅者；收到新消息的问题ID合并后投递（触发未读数量刷新）
+        eventBus.publishFrames(batch);
+        eventBus.publishNewMessages(result.getQuestionsWithNewMessages());
     }
     
-    private void handleQuestionAccepted(WebSocketMessage message) {
-        updateQuestionStatus(message, QuestionStatus.IN_PROGRESS, true, "QUESTION_ACCEPTED");
+    /**
+     * 批次提交后保存续传位置，下次连接时服务端从这里开始补发
+     * 
+     * @param result 本批处理结果
+     */
+    private void saveResumePoint(WebSocketBatchResult result) {
+        ResumePayload resume = result.getResume();
+        String epoch = resume != null ? resume.getEpoch() : prefsManager.getWebSocketEpoch();
+        long seq = result.getMaxAppliedSeq();
+        if (epoch == null || seq <= 0) {
+            return;
+        }
+        if (resume == null && seq <= prefsManager.getWebSocketLastSeq()) {
+            return;
+        }
+        prefsManager.saveWebSocketResumePoint(epoch, seq);
     }
     
-    private void handleQuestionClosed(WebSocketMessage message) {
-        updateQuestionStatus(message, QuestionStatus.CLOSED, false, "QUESTION_CLOSED");
+    /**
+     * 处理聊天消息
+     * 
+     * 必填字段（id、questionId、senderId、content）已在解码阶段校验
+     */
+    private void handleChatMessage(WebSocketFrame frame, WebSocketBatchResult result) {
+        ChatMessagePayload payload = frame.getChatMessage();
+        MessageEntity entity = new MessageEntity(
+            payload.getQuestionId(),
+            payload.getSenderId(),
+            payload.getContent(),
+            payload.getMessageType(),
+            payload.getCreatedAtOr(System.currentTimeMillis())
+        );
+        entity.setId(payload.getId());
+        entity.setRead(payload.isRead()); // 设置已读状态
+        if (!writeDedupFilter.admitMessage(entity)) {
+            // 已通过 HTTP 响应或同步写入过完全相同的内容
+            Log.d(TAG, "Skipped duplicate chat message from WebSocket: id=" + payload.getId());
+            return;
+        }
+        try {
+            messageDao.insert(entity);
+        } catch (RuntimeException e) {
+            // 写入失败（例如所属问题尚未同步），撤销指纹，下一次同步送达的同一条消息仍会写入
+            writeDedupFilter.forgetMessage(entity.getId());
+            throw e;
+        }
+        // 更新问题列表显示的消息摘要（绕过写入去重过滤器，使该问题的指纹失效）
+        boolean unread = !payload.isRead() && payload.getSenderId() != prefsManager.getUserId();
+        if (questionDao.applyNewMessage(payload.getQuestionId(), entity.getId(), entity.getContent(),
+                entity.getMessageType(), entity.getCreatedAt(), unread ? 1 : 0) > 0) {
+            writeDedupFilter.forgetQuestion(payload.getQuestionId());
+        }
+        result.markNewMessage(payload.getQuestionId());
+        
+        Log.d(TAG, "Saved chat message from WebSocket: id=" + payload.getId() + ", questionId=" + payload.getQuestionId());
+    }
+    
+    /**
+     * 处理问题更新消息（统一消息类型）
+     * 
+     * 注意：只更新问题的状态相关字段，保留 imagePaths 字段不被覆盖
+     * 这是为了避免图片消失的问题，因为 WebSocket 消息中的 imagePath 字段
+     * 与数据库中的 imagePaths（JSON 数组）字段格式不一致
+     * 
+     * questionId、status 已在解码阶段校验
+     */
+    private void handleQuestionUpdated(WebSocketFrame frame, WebSocketBatchResult result) {
+        QuestionPayload payload = frame.getQuestion();
+        long questionId = payload.getQuestionId();
+        String status = payload.getStatus();
+        
+        // 从数据库读取现有的问题实体
+        QuestionEntity question = questionDao.getQuestionById(questionId);
+        
+        if (question != null) {
+            // 只更新状态相关字段，保留其他字段（特别是 imagePaths）
+            question.setStatus(status);
+            question.setUpdatedAt(payload.getUpdatedAtOr(System.currentTimeMillis()));
+            
+            // 如果消息中包含 tutorId，则更新
+            if (payload.getTutorId() != null) {
+                question.setTutorId(payload.getTutorId());
+            }
+            
+            // 如果消息中包含 content，则更新（可选，一般状态更新不会改变内容）
+            if (payload.getContent() != null) {
+                question.setContent(payload.getContent());
+            }
+            
+            if (!writeDedupFilter.admitQuestion(question)) {
+                Log.d(TAG, "Skipped duplicate question update from WebSocket: " + questionId);
+                return;
+            }
+            // 使用 update 而不是 insert，避免触发外键级联删除导致消息丢失
+            updateQuestion(question);
+            
+            Log.d(TAG, "Question updated from WebSocket: " + questionId + ", status: " + status + 
+                  " (imagePaths preserved)");
+        } else {
+            Log.w(TAG, "Question not found in database for update: " + questionId);
+        }
     }
     
     /**
-     * 统一处理问题状态更新
+     * 统一处理旧版问题状态更新消息
      * 
-     * @param message WebSocket消息
+     * @param payload 问题载荷
      * @param newStatus 新状态
      * @param updateTutor 是否更新tutorId
      * @param messageType 消息类型（用于日志）
      */
-    private void updateQuestionStatus(WebSocketMessage message, String newStatus, boolean updateTutor, String messageType) {
-        executor.execute(() -> {
-            try {
-                if (message == null || message.getData() == null) {
-                    Log.w(TAG, "Invalid message for " + messageType);
-                    return;
-                }
-                
-                JsonObject data = message.getData();
-                if (!data.has("questionId") || data.get("questionId").isJsonNull()) {
-                    Log.w(TAG, messageType + " missing questionId");
-                    return;
-                }
-                
-                long questionId = data.get("questionId").getAsLong();
-                QuestionEntity question = questionDao.getQuestionById(questionId);
-                
-                if (question != null) {
-                    question.setStatus(newStatus);
-                    question.setUpdatedAt(System.currentTimeMillis());
-                    
-                    // 如果需要更新tutorId
-                    if (updateTutor && data.has("tutorId") && !data.get("tutorId").isJsonNull()) {
-                        long tutorId = data.get("tutorId").getAsLong();
-                        question.setTutorId(tutorId);
-                    }
-                    
-                    // 使用 update 而不是 insert，避免触发外键级联删除导致消息丢失
-                    questionDao.update(question);
-                    Log.d(TAG, "Updated question " + questionId + " status to " + newStatus + " via " + messageType);
-                } else {
-                    Log.w(TAG, "Question not found in database for " + messageType + ": " + questionId);
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error handling " + messageType, e);
+    private void updateQuestionStatus(QuestionPayload payload, String newStatus, boolean updateTutor, String messageType) {
+        long questionId = payload.getQuestionId();
+        QuestionEntity question = questionDao.getQuestionById(questionId);
+        
+        if (question != null) {
+            question.setStatus(newStatus);
+            question.setUpdatedAt(System.currentTimeMillis());
+            
+            // 如果需要更新tutorId
+            if (updateTutor && payload.getTutorId() != null) {
+                question.setTutorId(payload.getTutorId());
             }
-        });
+            
+            if (!writeDedupFilter.admitQuestion(question)) {
+                return;
+            }
+            // 使用 update 而不是 insert，避免触发外键级联删除导致消息丢失
+            updateQuestion(question);
+            Log.d(TAG, "Updated question " + questionId + " status to " + newStatus + " via " + messageType);
+        } else {
+            Log.w(TAG, "Question not found in database for " + messageType + ": " + questionId);
+        }
     }
     
-    private void handleNewQuestion(WebSocketMessage message) {
-        executor.execute(() -> {
-            try {
-                JsonObject data = message.getData();
-                long questionId = data.get("questionId").getAsLong();
-                long userId = data.get("userId").getAsLong();
-                String content = data.get("content").getAsString();
-                
-                // 正确提取 imagePaths 数组并转换为 JSON 字符串
-                // WebSocket 消息中的 imagePaths 字段为 JSON 数组，需要转换为字符串存储到数据库
-                // 这与 QuestionRepository 中从 REST API 获取数据的处理方式保持一致
-                String imagePathsJson = null;
-                if (data.has("imagePaths") && !data.get("imagePaths").isJsonNull()) {
-                    JsonArray imagePathsArray = data.get("imagePaths").getAsJsonArray();
-                    if (imagePathsArray.size() > 0) {
-                        // 将 JsonArray 转换为 JSON 字符串存储
-                        imagePathsJson = new Gson().toJson(imagePathsArray);
-                    }
-                }
-                
-                String status = data.get("status").getAsString();
-                long createdAt = data.get("createdAt").getAsLong();
-                
-                QuestionEntity entity = new QuestionEntity(
-                    userId,
-                    null,
-                    content,
-                    imagePathsJson,
-                    status,
-                    createdAt,
-                    createdAt
-                );
-                entity.setId(questionId);
-                questionDao.insert(entity);
-                
-                Log.d(TAG, "Question saved from WebSocket" + 
-                    (imagePathsJson != null ? " with images" : ""));
-            } catch (Exception e) {
-                Log.e(TAG, "Error handling new question", e);
+    /**
+     * 处理新问题消息（仅老师端登记）
+     * 
+     * imagePaths 已在解码阶段转换为 JSON 字符串，与 QuestionRepository 中从 REST API 获取数据的处理方式保持一致。
+     * 快照重放和主题补发可能推送本地已存在的问题，此时原地更新而不是 REPLACE：
+     * REPLACE 会先删除旧行，外键级联删除该问题的消息，并清空接取老师、未读数和最后一条消息
+     */
+    private void handleNewQuestion(WebSocketFrame frame, WebSocketBatchResult result) {
+        QuestionPayload payload = frame.getQuestion();
+        String imagePathsJson = payload.getImagePathsJson();
+        
+        QuestionEntity existing = questionDao.getQuestionById(payload.getQuestionId());
+        if (existing != null) {
+            // 只更新新问题事件携带的字段；状态和接取老师由状态更新事件和 HTTP 同步维护
+            existing.setUserId(payload.getUserId());
+            existing.setContent(payload.getContent());
+            existing.setImagePaths(imagePathsJson);
+            existing.setCreatedAt(payload.getCreatedAt());
+            if (!writeDedupFilter.admitQuestion(existing)) {
+                Log.d(TAG, "Skipped duplicate question from WebSocket: " + payload.getQuestionId());
+                return;
             }
-        });
+            updateQuestion(existing);
+            Log.d(TAG, "Question refreshed from WebSocket: " + payload.getQuestionId());
+            return;
+        }
+        
+        QuestionEntity entity = new QuestionEntity(
+            payload.getUserId(),
+            null,
+            payload.getContent(),
+            imagePathsJson,
+            payload.getStatus(),
+            payload.getCreatedAt(),
+            payload.getCreatedAt()
+        );
+        entity.setId(payload.getQuestionId());
+        if (!writeDedupFilter.admitQuestion(entity)) {
+            Log.d(TAG, "Skipped duplicate question from WebSocket: " + payload.getQuestionId());
+            return;
+        }
+        try {
+            questionDao.insert(entity);
+        } catch (RuntimeException e) {
+            writeDedupFilter.forgetQuestion(entity.getId());
+            throw e;
+        }
+        
+        Log.d(TAG, "Question saved from WebSocket" + 
+            (imagePathsJson != null ? " with images" : ""));
+    }
+    
+    /**
+     * 以 update 方式写入已通过去重过滤器的问题，写入失败时撤销其指纹
+     * 
+     * 注册表逐帧捕获异常后批次事务仍会提交，不撤销的话下一次同步送达的相同内容会被当作重复跳过
+     * 
+     * @param question 已放行的问题
+     */
+    private void updateQuestion(QuestionEntity question) {
+        try {
+            questionDao.update(question);
+        } catch (RuntimeException e) {
+            writeDedupFilter.forgetQuestion(question.getId());
+            throw e;
+        }
+    }
+    
+    /**
+     * @return true 表示连接已打开，可以通过 WebSocket 发送上行消息
+     */
+    public boolean isChannelOpen() {
+        WebSocketClient client = webSocketClient;
+        return client != null && client.getState() == WebSocketClient.State.CONNECTED;
+    }
+    
+    /**
+     * 通过 WebSocket 发送聊天消息
+     * 
+     * ACK 超时会在同一连接上重传，仍未确认或连接断开时回调 onFallback，
+     * 调用方应使用同一个 clientMessageId 改走 HTTP，服务端据此去重
+     * 
+     * @param questionId 问题ID
+     * @param content 消息内容
+     * @param messageType 消息类型
+     * @param clientMessageId 客户端生成的消息ID
+     * @param callback 发送结果回调
+     */
+    public void sendChatMessage(long questionId, String content, String messageType,
+                                String clientMessageId, WebSocketOutbox.Callback callback) {
+        JsonObject data = new JsonObject();
+        data.addProperty("questionId", questionId);
+        data.addProperty("content", content);
+        data.addProperty("messageType", messageType);
+        WebSocketMessage message = new WebSocketMessage(
+            WebSocketMessageType.CHAT_MESSAGE,
+            data,
+            String.valueOf(System.currentTimeMillis()),
+            clientMessageId
+        );
+        outbox.send(message, callback);
+    }
+    
+    private boolean sendIfOpen(WebSocketMessage message) {
+        WebSocketClient client = webSocketClient;
+        return client != null && client.getState() == WebSocketClient.State.CONNECTED && client.sendMessage(message);
+    }
+    
+    /**
+     * 获取消息处理器注册表（用于查看各消息类型的处理次数和耗时）
+     * 
+     * @return 处理器注册表
+     */
+    public WebSocketHandlerRegistry getHandlerRegistry() {
+        return handlerRegistry;
     }
     
     public LiveData<Boolean> isConnected() {
@@ -435,31 +743,100 @@ public class WebSocketManager {
         return errorMessage;
     }
     
-    public LiveData<WebSocketMessage> getIncomingMessage() {
-        return incomingMessage;
+    /**
+     * @return 当前推送流代次
+     */
+    public int getStreamGeneration() {
+        return streamGeneration.get();
     }
     
-    public LiveData<Long> getNewMessageReceived() {
-        return newMessageReceived;
+    /**
+     * 完整 HTTP 同步成功后调用
+     * 
+     * @param generation 同步开始时的推送流代次（同步期间发生的缺口仍需下一次同步）
+     */
+    public void markFullSyncCompleted(int generation) {
+        syncedGeneration = Math.max(syncedGeneration, generation);
+    }
+    
+    /**
+     * 判断是否需要完整的 HTTP 同步
+     * 
+     * 推送流自上次完整同步以来一直连续（断线后都以增量补发续上）时，本地数据已是最新，
+     * 回到前台不必重新加载全部问题
+     * 
+     * @return true 表示推送流出现过缺口或从未完整同步过
+     */
+    public boolean needsFullSync() {
+        return syncedGeneration < streamGeneration.get();
+    }
+    
+    /**
+     * 获取连接质量（RTT、丢包率、当前保活间隔），每次探测结束时更新
+     * 
+     * @return 连接质量
+     */
+    public LiveData<ConnectionQuality> getConnectionQuality() {
+        return connectionQuality;
+    }
+    
+    /**
+     * 获取推送事件总线
+     * 
+     * @return 事件总线，订阅者在主线程收到事务提交后的帧和新消息通知
+     */
+    public WebSocketEventBus getEventBus() {
+        return eventBus;
     }
     
     /**
      * 应用进入后台时调用
-     * 停止 WebSocket 连接并阻止自动重连，节省电池和网络资源
+     * 
+     * 连接再保持一段时间（WEBSOCKET_BACKGROUND_GRACE_MS），期间推送照常写入数据库；
+     * 超时后断开并阻止自动重连，节省电池和网络资源
      */
     public void onAppBackground() {
-        Log.d(TAG, "App entering background - disabling WebSocket reconnection");
+        Log.d(TAG, "App entering background - keeping WebSocket for "
+            + AppConstants.WEBSOCKET_BACKGROUND_GRACE_MS + "ms");
         isAppInForeground = false;
+        synchronized (this) {
+            cancelBackgroundDisconnect();
+            pendingBackgroundDisconnect = scheduledExecutor.schedule(this::onBackgroundGraceExpired,
+                AppConstants.WEBSOCKET_BACKGROUND_GRACE_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * 后台保持时间结束（在定时任务线程执行）
+     */
+    private void onBackgroundGraceExpired() {
+        synchronized (this) {
+            pendingBackgroundDisconnect = null;
+        }
+        if (isAppInForeground) {
+            return;
+        }
+        Log.d(TAG, "Background grace period expired - disconnecting WebSocket");
         disconnect();
     }
     
+    private synchronized void cancelBackgroundDisconnect() {
+        if (pendingBackgroundDisconnect != null) {
+            pendingBackgroundDisconnect.cancel(false);
+            pendingBackgroundDisconnect = null;
+        }
+    }
+    
     /**
      * 应用返回前台时调用
-     * 允许 WebSocket 重新连接
+     * 
+     * 仍在后台保持时间内时连接未断开，不需要做任何事；
+     * 否则重新连接，服务端从最后提交的位置增量补发
      */
     public void onAppForeground() {
         Log.d(TAG, "App entering foreground - enabling WebSocket reconnection");
         isAppInForeground = true;
+        cancelBackgroundDisconnect();
         
         // 如果用户已登录，自动重连 WebSocket
         if (prefsManager != null && prefsManager.isLoggedIn()) {
@@ -479,6 +856,7 @@ public class WebSocketManager {
      * - 清理WebSocket相关资源
      */
     public void cleanup() {
+        cancelBackgroundDisconnect();
         disconnect();
         // 注意：不关闭executor，因为它是通过Dagger注入的应用级单例
         // 由ExecutorModule提供，在整个应用生命周期中保持运行
@@ -0,0 +1,145 @@
+package com.dowdah.asknow.data.local;
+
+import com.dowdah.asknow.constants.enums.MessageStatus;
+import com.dowdah.asknow.data.local.entity.MessageEntity;
+import com.dowdah.asknow.data.local.entity.QuestionEntity;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * WriteDedupFilter 单元测试
+ *
+ * 测试功能：
+ * - 完全相同的行被跳过，任一字段变化都会放行
+ * - 失效操作（包括事务回滚）后重新放行
+ * - 问题以 REPLACE 方式写入时该问题的消息指纹失效
+ * - 按问题使消息指纹失效，不影响其他问题
+ */
+public class WriteDedupFilterTest {
+
+    private final WriteDedupFilter filter = new WriteDedupFilter(64);
+
+    /**
+     * 测试同一条消息的多份副本只写入一次
+     */
+    @Test
+    public void testDuplicateMessageSkipped() {
+        assertTrue(filter.admitMessage(message(42L, "hello", false)));
+        assertFalse(filter.admitMessage(message(42L, "hello", false)));
+        assertFalse(filter.admitMessage(message(42L, "hello", false)));
+
+        assertEquals(1, filter.getAdmittedCount());
+        assertEquals(2, filter.getSkippedMessageCount());
+    }
+
+    /**
+     * 测试字段变化时放行
+     */
+    @Test
+    public void testChangedMessageAdmitted() {
+        assertTrue(filter.admitMessage(message(42L, "hello", false)));
+        assertTrue(filter.admitMessage(message(42L, "hello", true)));
+        assertTrue(filter.admitMessage(message(42L, "hello!", true)));
+
+        MessageEntity failed = message(42L, "hello!", true);
+        failed.setSendStatus(MessageStatus.FAILED);
+        assertTrue(filter.admitMessage(failed));
+
+        // null 与空串不同
+        assertTrue(filter.admitMessage(message(43L, null, false)));
+        assertTrue(filter.admitMessage(message(43L, "", false)));
+        assertEquals(0, filter.getSkippedMessageCount());
+    }
+
+    /**
+     * 测试失效后重新放行
+     */
+    @Test
+    public void testForgetAndInvalidate() {
+        filter.admitMessage(message(1L, "a", false));
+        filter.admitMessage(message(2L, "b", false));
+
+        filter.forgetMessage(1L);
+        assertTrue(filter.admitMessage(message(1L, "a", false)));
+        assertFalse(filter.admitMessage(message(2L, "b", false)));
+
+        filter.invalidateMessages();
+        assertTrue(filter.admitMessage(message(2L, "b", false)));
+    }
+
+    /**
+     * 测试按问题失效：只重新放行该问题的消息（例如标记一个问题的消息已读后）
+     */
+    @Test
+    public void testForgetQuestionMessages() {
+        filter.admitMessage(message(1L, 9L, "a", false));
+        filter.admitMessage(message(2L, 9L, "b", false));
+        filter.admitMessage(message(3L, 10L, "c", false));
+
+        filter.forgetQuestionMessages(9L);
+        assertTrue(filter.admitMessage(message(1L, 9L, "a", false)));
+        assertTrue(filter.admitMessage(message(2L, 9L, "b", false)));
+        assertFalse(filter.admitMessage(message(3L, 10L, "c", false)));
+
+        // 失效后重新写入的内容照常去重
+        assertFalse(filter.admitMessage(message(1L, 9L, "a", false)));
+    }
+
+    /**
+     * 测试问题写入：update 不影响消息，REPLACE 使该问题的消息指纹失效
+     */
+    @Test
+    public void testQuestionReplaceInvalidatesMessages() {
+        QuestionEntity question = question(9L, "pending", 100L);
+        filter.admitMessage(message(1L, 9L, "a", false));
+        filter.admitMessage(message(2L, 10L, "b", false));
+
+        assertTrue(filter.admitQuestion(question));
+        assertFalse(filter.admitQuestion(question(9L, "pending", 100L)));
+        assertFalse(filter.admitMessage(message(1L, 9L, "a", false)));
+
+        // 重复的 REPLACE 被跳过，不会级联删除消息
+        assertFalse(filter.admitQuestionReplace(question(9L, "pending", 100L)));
+        assertFalse(filter.admitMessage(message(1L, 9L, "a", false)));
+
+        assertTrue(filter.admitQuestionReplace(question(9L, "in_progress", 200L)));
+        assertTrue(filter.admitMessage(message(1L, 9L, "a", false)));
+        assertFalse(filter.admitMessage(message(2L, 10L, "b", false)));
+        assertEquals(2, filter.getSkippedQuestionCount());
+
+        filter.forgetQuestion(9L);
+        assertTrue(filter.admitQuestion(question(9L, "in_progress", 200L)));
+    }
+
+    /**
+     * 测试事务回滚后问题指纹失效，同一内容重新放行，消息指纹不受影响
+     */
+    @Test
+    public void testInvalidateQuestions() {
+        filter.admitQuestion(question(9L, "pending", 100L));
+        filter.admitMessage(message(1L, "a", false));
+
+        filter.invalidateQuestions();
+        assertTrue(filter.admitQuestion(question(9L, "pending", 100L)));
+        assertFalse(filter.admitMessage(message(1L, "a", false)));
+    }
+
+    private static MessageEntity message(long id, String content, boolean isRead) {
+        return message(id, 7L, content, isRead);
+    }
+
+    private static MessageEntity message(long id, long questionId, String content, boolean isRead) {
+        MessageEntity entity = new MessageEntity(questionId, 3L, content, "text", 1700000000000L);
+        entity.setId(id);
+        entity.setRead(isRead);
+        return entity;
+    }
+
+    private static QuestionEntity question(long id, String status, long updatedAt) {
+        QuestionEntity entity = new QuestionEntity(2L, null, "q", null, status, 100L, updatedAt);
+        entity.setId(id);
+        return entity;
+    }
+}
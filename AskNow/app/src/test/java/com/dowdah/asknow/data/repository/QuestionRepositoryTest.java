@@ -1,13 +1,23 @@
 package com.dowdah.asknow.data.repository;
 
+import com.dowdah.asknow.constants.AppConstants;
 import com.dowdah.asknow.constants.QuestionStatus;
 import com.dowdah.asknow.data.api.ApiService;
+import com.dowdah.asknow.data.local.AppDatabase;
+import com.dowdah.asknow.data.local.WriteDedupFilter;
 import com.dowdah.asknow.data.local.dao.MessageDao;
 import com.dowdah.asknow.data.local.dao.QuestionDao;
+import com.dowdah.asknow.data.local.dao.SyncStateDao;
+import com.dowdah.asknow.data.local.entity.MessageEntity;
 import com.dowdah.asknow.data.local.entity.QuestionEntity;
-import com.dowdah.asknow.data.model.Pagination;
+import com.dowdah.asknow.data.local.entity.SyncStateEntity;
+import com.dowdah.asknow.data.model.BatchMessagesRequest;
+import com.dowdah.asknow.data.model.MessagesListResponse;
+import com.dowdah.asknow.data.model.QuestionChangesResponse;
 import com.dowdah.asknow.data.model.QuestionsListResponse;
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -17,6 +27,10 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
@@ -24,6 +38,11 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import okio.Okio;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
@@ -33,6 +52,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
@@ -42,7 +62,11 @@ import static org.mockito.Mockito.*;
  * 测试功能：
  * - 同步问题从服务器到本地
  * - 分页加载
- * - 数据清理（删除本地不存在于服务器的数据）
+ * - 数据清理（按状态刷新时删除本地不存在于服务器的数据，不按状态过滤时不删除）
+ * - 增量同步（游标、墓碑、多页）
+ * - 消息按最大消息ID增量同步，游标失效时完整校对
+ * - 消息响应流式读取，每个问题分块在短事务中写入，读取中断时未读完的问题不推进游标
+ * - 按需同步失败时回调错误
  */
 @RunWith(MockitoJUnitRunner.class)
 public class QuestionRepositoryTest {
@@ -56,11 +80,25 @@ public class QuestionRepositoryTest {
     @Mock
     private MessageDao messageDao;
     
+    @Mock
+    private AppDatabase appDatabase;
+    
+    @Mock
+    private SyncStateDao syncStateDao;
+    
     @Mock
     private Call<QuestionsListResponse> questionsCall;
     
+    @Mock
+    private Call<QuestionChangesResponse> changesCall;
+    
+    @Mock
+    private Call<ResponseBody> batchCall;
+    
     private ExecutorService executor;
+    private ExecutorService ioExecutor;
     private Gson gson;
+    private SyncScheduler syncScheduler;
     private QuestionRepository repository;
     
     private static final String TEST_TOKEN = "test_token";
@@ -73,14 +111,27 @@ public class QuestionRepositoryTest {
         MockitoAnnotations.openMocks(this);
         
         executor = Executors.newSingleThreadExecutor();
+        ioExecutor = Executors.newSingleThreadExecutor();
         gson = new Gson();
         
+        // 事务直接在调用线程执行
+        lenient().doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(appDatabase).runInTransaction(any(Runnable.class));
+        
+        syncScheduler = new SyncScheduler();
         repository = new QuestionRepository(
             apiService,
+            appDatabase,
             questionDao,
             messageDao,
+            syncStateDao,
             executor,
-            gson
+            ioExecutor,
+            gson,
+            new WriteDedupFilter(),
+            syncScheduler
         );
     }
     
@@ -108,17 +159,11 @@ public class QuestionRepositoryTest {
         
         List<QuestionsListResponse.QuestionData> questions = Arrays.asList(question1, question2);
         
-        Pagination pagination = new Pagination();
-        pagination.setTotalPages(1);
-        pagination.setPage(1);
-        pagination.setTotal(2);
-        
         QuestionsListResponse response = new QuestionsListResponse();
         response.setSuccess(true);
         response.setQuestions(questions);
-        response.setPagination(pagination);
         
-        when(apiService.getQuestions(anyString(), isNull(), anyInt(), anyInt()))
+        when(apiService.getQuestions(anyString(), eq(QuestionStatus.PENDING), isNull(), anyInt()))
             .thenReturn(questionsCall);
         
         ArgumentCaptor<Callback<QuestionsListResponse>> callbackCaptor = 
@@ -133,7 +178,9 @@ public class QuestionRepositoryTest {
         }).when(questionDao).insert(any(QuestionEntity.class));
         
         // Act
-        repository.syncQuestionsFromServer(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, syncCallback);
+        repository.syncQuestionsFromServer(
+            TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, QuestionStatus.PENDING, 20, false, syncCallback
+        );
         
         verify(questionsCall).enqueue(callbackCaptor.capture());
         callbackCaptor.getValue().onResponse(questionsCall, Response.success(response));
@@ -153,7 +200,7 @@ public class QuestionRepositoryTest {
         // Arrange
         Throwable error = new java.io.IOException("Network error");
         
-        when(apiService.getQuestions(anyString(), isNull(), anyInt(), anyInt()))
+        when(apiService.getQuestions(anyString(), eq(QuestionStatus.PENDING), isNull(), anyInt()))
             .thenReturn(questionsCall);
         
         ArgumentCaptor<Callback<QuestionsListResponse>> callbackCaptor = 
@@ -162,7 +209,9 @@ public class QuestionRepositoryTest {
         QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
         
         // Act
-        repository.syncQuestionsFromServer(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, syncCallback);
+        repository.syncQuestionsFromServer(
+            TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, QuestionStatus.PENDING, 20, false, syncCallback
+        );
         
         verify(questionsCall).enqueue(callbackCaptor.capture());
         callbackCaptor.getValue().onFailure(questionsCall, error);
@@ -183,7 +232,7 @@ public class QuestionRepositoryTest {
         QuestionsListResponse response = new QuestionsListResponse();
         response.setSuccess(false);
         
-        when(apiService.getQuestions(anyString(), isNull(), anyInt(), anyInt()))
+        when(apiService.getQuestions(anyString(), eq(QuestionStatus.PENDING), isNull(), anyInt()))
             .thenReturn(questionsCall);
         
         ArgumentCaptor<Callback<QuestionsListResponse>> callbackCaptor = 
@@ -192,7 +241,9 @@ public class QuestionRepositoryTest {
         QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
         
         // Act
-        repository.syncQuestionsFromServer(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, syncCallback);
+        repository.syncQuestionsFromServer(
+            TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, QuestionStatus.PENDING, 20, false, syncCallback
+        );
         
         verify(questionsCall).enqueue(callbackCaptor.capture());
         callbackCaptor.getValue().onResponse(questionsCall, Response.success(response));
@@ -218,16 +269,13 @@ public class QuestionRepositoryTest {
         
         List<QuestionsListResponse.QuestionData> questions = Arrays.asList(question);
         
-        Pagination pagination = new Pagination();
-        pagination.setTotalPages(3);
-        pagination.setPage(1);
-        
         QuestionsListResponse response = new QuestionsListResponse();
         response.setSuccess(true);
         response.setQuestions(questions);
-        response.setPagination(pagination);
+        response.setNextCursor("cursor-1");
+        response.setHasMore(true);
         
-        when(apiService.getQuestions(anyString(), isNull(), anyInt(), anyInt()))
+        when(apiService.getQuestions(anyString(), eq(QuestionStatus.PENDING), isNull(), anyInt()))
             .thenReturn(questionsCall);
         
         ArgumentCaptor<Callback<QuestionsListResponse>> callbackCaptor = 
@@ -243,13 +291,7 @@ public class QuestionRepositoryTest {
         
         // Act
         repository.syncQuestionsFromServer(
-            TEST_TOKEN, 
-            TEST_USER_ID, 
-            TEST_ROLE_STUDENT, 
-            1, 
-            20, 
-            false, 
-            syncCallback
+            TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, QuestionStatus.PENDING, 20, false, syncCallback
         );
         
         verify(questionsCall).enqueue(callbackCaptor.capture());
@@ -262,6 +304,244 @@ public class QuestionRepositoryTest {
         verify(syncCallback).onPageLoaded(true);
     }
     
+    /**
+     * 测试游标分页 - 追加从上一页的 nextCursor 继续，取完后不再请求服务器
+     */
+    @Test
+    public void testSyncQuestions_AppendContinuesFromCursor() throws InterruptedException {
+        // Arrange
+        QuestionsListResponse first = new QuestionsListResponse();
+        first.setSuccess(true);
+        first.setQuestions(Arrays.asList());
+        first.setNextCursor("cursor-1");
+        first.setHasMore(true);
+        
+        QuestionsListResponse last = new QuestionsListResponse();
+        last.setSuccess(true);
+        last.setQuestions(Arrays.asList());
+        
+        when(apiService.getQuestions(anyString(), eq(QuestionStatus.PENDING), isNull(), anyInt()))
+            .thenReturn(questionsCall);
+        when(apiService.getQuestions(anyString(), eq(QuestionStatus.PENDING), eq("cursor-1"), anyInt()))
+            .thenReturn(questionsCall);
+        ArgumentCaptor<Callback<QuestionsListResponse>> callbackCaptor =
+            ArgumentCaptor.forClass(Callback.class);
+        
+        // Act - 刷新第一页
+        CountDownLatch firstLatch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback firstCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            firstLatch.countDown();
+            return null;
+        }).when(firstCallback).onPageLoaded(anyBoolean());
+        repository.syncQuestionsFromServer(
+            TEST_TOKEN, TEST_USER_ID, TEST_ROLE_TUTOR, QuestionStatus.PENDING, 20, false, firstCallback
+        );
+        verify(questionsCall, timeout(1000)).enqueue(callbackCaptor.capture());
+        callbackCaptor.getValue().onResponse(questionsCall, Response.success(first));
+        assertTrue("Async operation timed out", firstLatch.await(1, TimeUnit.SECONDS));
+        verify(firstCallback).onPageLoaded(true);
+        
+        // Act - 追加下一页，使用上一页返回的游标
+        CountDownLatch nextLatch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback nextCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            nextLatch.countDown();
+            return null;
+        }).when(nextCallback).onPageLoaded(anyBoolean());
+        repository.syncQuestionsFromServer(
+            TEST_TOKEN, TEST_USER_ID, TEST_ROLE_TUTOR, QuestionStatus.PENDING, 20, true, nextCallback
+        );
+        verify(apiService).getQuestions(anyString(), eq(QuestionStatus.PENDING), eq("cursor-1"), anyInt());
+        verify(questionsCall, timeout(1000).times(2)).enqueue(callbackCaptor.capture());
+        callbackCaptor.getValue().onResponse(questionsCall, Response.success(last));
+        assertTrue("Async operation timed out", nextLatch.await(1, TimeUnit.SECONDS));
+        verify(nextCallback).onPageLoaded(false);
+        
+        // Act - 已取完，再追加直接回调没有更多
+        QuestionRepository.SyncCallback doneCallback = mock(QuestionRepository.SyncCallback.class);
+        repository.syncQuestionsFromServer(
+            TEST_TOKEN, TEST_USER_ID, TEST_ROLE_TUTOR, QuestionStatus.PENDING, 20, true, doneCallback
+        );
+        
+        // Assert
+        verify(doneCallback).onPageLoaded(false);
+        verify(apiService, times(2)).getQuestions(anyString(), eq(QuestionStatus.PENDING), any(), anyInt());
+    }
+    
+    /**
+     * 测试条件请求 - 服务端返回 304 且本地已有本页问题时跳过所有写入
+     */
+    @Test
+    public void testSyncQuestions_NotModifiedSkipsWrites() throws InterruptedException {
+        // Arrange
+        QuestionsListResponse.QuestionData question = new QuestionsListResponse.QuestionData();
+        question.setId(3L);
+        question.setUserId(2L);
+        question.setTutorId(TEST_USER_ID);
+        question.setContent("Question 3");
+        question.setStatus(QuestionStatus.IN_PROGRESS);
+        question.setCreatedAt(100L);
+        question.setUpdatedAt(200L);
+        
+        QuestionsListResponse response = new QuestionsListResponse();
+        response.setSuccess(true);
+        response.setQuestions(Arrays.asList(question));
+        
+        // OkHttp 用缓存补全 304：应用看到 200，网络响应为 304
+        Request request = new Request.Builder().url("http://localhost/api/questions").build();
+        okhttp3.Response networkResponse = new okhttp3.Response.Builder()
+            .request(request)
+            .protocol(Protocol.HTTP_1_1)
+            .code(304)
+            .message("Not Modified")
+            .build();
+        okhttp3.Response rawResponse = new okhttp3.Response.Builder()
+            .request(request)
+            .protocol(Protocol.HTTP_1_1)
+            .code(200)
+            .message("OK")
+            .networkResponse(networkResponse)
+            .build();
+        
+        when(questionDao.countQuestionsByIds(Arrays.asList(3L))).thenReturn(1);
+        when(apiService.getQuestions(anyString(), eq(QuestionStatus.IN_PROGRESS), isNull(), anyInt()))
+            .thenReturn(questionsCall);
+        
+        CountDownLatch latch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            latch.countDown();
+            return null;
+        }).when(syncCallback).onPageLoaded(anyBoolean());
+        
+        // Act
+        repository.syncQuestionsFromServer(
+            TEST_TOKEN, TEST_USER_ID, TEST_ROLE_TUTOR, QuestionStatus.IN_PROGRESS, 20, false, syncCallback
+        );
+        
+        ArgumentCaptor<Callback<QuestionsListResponse>> callbackCaptor =
+            ArgumentCaptor.forClass(Callback.class);
+        verify(questionsCall, timeout(1000)).enqueue(callbackCaptor.capture());
+        callbackCaptor.getValue().onResponse(questionsCall, Response.success(response, rawResponse));
+        
+        // Assert
+        assertTrue("Async operation timed out", latch.await(1, TimeUnit.SECONDS));
+        verify(syncCallback).onSuccess(0);
+        verify(syncCallback).onPageLoaded(false);
+        verify(questionDao, never()).insert(any(QuestionEntity.class));
+        verify(questionDao, never()).update(any(QuestionEntity.class));
+        verify(questionDao, never()).deleteQuestion(anyLong());
+        verify(apiService, never()).getMessagesBatch(anyString(), any());
+    }
+    
+    /**
+     * 测试按状态刷新 - 教师端标签页只请求本状态，只删除本状态中服务端已没有的问题
+     */
+    @Test
+    public void testSyncQuestions_StatusScopedRefresh() throws InterruptedException {
+        // Arrange
+        QuestionsListResponse.QuestionData question = new QuestionsListResponse.QuestionData();
+        question.setId(3L);
+        question.setUserId(2L);
+        question.setTutorId(TEST_USER_ID);
+        question.setContent("Question 3");
+        question.setStatus(QuestionStatus.IN_PROGRESS);
+        question.setCreatedAt(100L);
+        question.setUpdatedAt(200L);
+        
+        QuestionsListResponse response = new QuestionsListResponse();
+        response.setSuccess(true);
+        response.setQuestions(Arrays.asList(question));
+        
+        QuestionEntity kept = new QuestionEntity();
+        kept.setId(3L);
+        QuestionEntity removed = new QuestionEntity();
+        removed.setId(4L);
+        when(questionDao.getQuestionsByTutorAndStatusSync(TEST_USER_ID, QuestionStatus.IN_PROGRESS))
+            .thenReturn(Arrays.asList(kept, removed));
+        when(apiService.getQuestions(anyString(), eq(QuestionStatus.IN_PROGRESS), isNull(), anyInt()))
+            .thenReturn(questionsCall);
+        
+        CountDownLatch latch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            latch.countDown();
+            return null;
+        }).when(syncCallback).onPageLoaded(anyBoolean());
+        
+        // Act
+        repository.syncQuestionsFromServer(
+            TEST_TOKEN, TEST_USER_ID, TEST_ROLE_TUTOR, QuestionStatus.IN_PROGRESS, 20, false, syncCallback
+        );
+        
+        ArgumentCaptor<Callback<QuestionsListResponse>> callbackCaptor =
+            ArgumentCaptor.forClass(Callback.class);
+        verify(questionsCall, timeout(1000)).enqueue(callbackCaptor.capture());
+        callbackCaptor.getValue().onResponse(questionsCall, Response.success(response));
+        
+        // Assert
+        assertTrue("Async operation timed out", latch.await(1, TimeUnit.SECONDS));
+        verify(questionDao).deleteQuestion(4L);
+        verify(questionDao, never()).deleteQuestion(3L);
+        verify(questionDao, never()).getQuestionsByTutorId(anyLong());
+        verify(syncCallback).onPageLoaded(false);
+    }
+    
+    /**
+     * 测试标签页有效期 - 按状态记录刷新时间，有效期内再次打开时不请求服务器并沿用记录的分页位置
+     */
+    @Test
+    public void testSyncQuestionsIfStale_SkipsFreshStatusPage() throws InterruptedException {
+        // Arrange - 第一次打开时没有刷新记录，照常请求
+        String syncKey = SyncStateEntity.questionsKey(TEST_ROLE_TUTOR, TEST_USER_ID, QuestionStatus.CLOSED);
+        QuestionsListResponse response = new QuestionsListResponse();
+        response.setSuccess(true);
+        response.setQuestions(new ArrayList<>());
+        when(apiService.getQuestions(anyString(), eq(QuestionStatus.CLOSED), isNull(), anyInt()))
+            .thenReturn(questionsCall);
+    
+        CountDownLatch firstLatch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback firstCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            firstLatch.countDown();
+            return null;
+        }).when(firstCallback).onPageLoaded(anyBoolean());
+    
+        repository.syncQuestionsFromServerIfStale(
+            TEST_TOKEN, TEST_USER_ID, TEST_ROLE_TUTOR, QuestionStatus.CLOSED, 20, 60000L, firstCallback
+        );
+        ArgumentCaptor<Callback<QuestionsListResponse>> callbackCaptor =
+            ArgumentCaptor.forClass(Callback.class);
+        verify(questionsCall, timeout(1000)).enqueue(callbackCaptor.capture());
+        callbackCaptor.getValue().onResponse(questionsCall, Response.success(response));
+        assertTrue("Async operation timed out", firstLatch.await(1, TimeUnit.SECONDS));
+    
+        ArgumentCaptor<SyncStateEntity> stateCaptor = ArgumentCaptor.forClass(SyncStateEntity.class);
+        verify(syncStateDao).upsert(stateCaptor.capture());
+        assertEquals(syncKey, stateCaptor.getValue().getKey());
+        verify(firstCallback, never()).onSkipped();
+    
+        // Act - 有效期内再次打开
+        when(syncStateDao.get(syncKey)).thenReturn(stateCaptor.getValue());
+        CountDownLatch secondLatch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback secondCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            secondLatch.countDown();
+            return null;
+        }).when(secondCallback).onSkipped();
+    
+        repository.syncQuestionsFromServerIfStale(
+            TEST_TOKEN, TEST_USER_ID, TEST_ROLE_TUTOR, QuestionStatus.CLOSED, 20, 60000L, secondCallback
+        );
+    
+        // Assert - 没有新的请求，分页位置与上次刷新一致
+        assertTrue("Async operation timed out", secondLatch.await(1, TimeUnit.SECONDS));
+        verify(apiService, times(1)).getQuestions(anyString(), eq(QuestionStatus.CLOSED), isNull(), anyInt());
+        verify(secondCallback).onPageLoaded(false);
+        verify(secondCallback, never()).onSuccess(anyInt());
+    }
+    
     /**
      * 测试同步空列表
      */
@@ -270,16 +550,11 @@ public class QuestionRepositoryTest {
         // Arrange
         List<QuestionsListResponse.QuestionData> questions = Arrays.asList();
         
-        Pagination pagination = new Pagination();
-        pagination.setTotalPages(0);
-        pagination.setPage(1);
-        
         QuestionsListResponse response = new QuestionsListResponse();
         response.setSuccess(true);
         response.setQuestions(questions);
-        response.setPagination(pagination);
         
-        when(apiService.getQuestions(anyString(), isNull(), anyInt(), anyInt()))
+        when(apiService.getQuestions(anyString(), eq(QuestionStatus.PENDING), isNull(), anyInt()))
             .thenReturn(questionsCall);
         
         ArgumentCaptor<Callback<QuestionsListResponse>> callbackCaptor = 
@@ -294,7 +569,9 @@ public class QuestionRepositoryTest {
         }).when(syncCallback).onSuccess(anyInt());
         
         // Act
-        repository.syncQuestionsFromServer(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, syncCallback);
+        repository.syncQuestionsFromServer(
+            TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, QuestionStatus.PENDING, 20, false, syncCallback
+        );
         
         verify(questionsCall).enqueue(callbackCaptor.capture());
         callbackCaptor.getValue().onResponse(questionsCall, Response.success(response));
@@ -309,5 +586,851 @@ public class QuestionRepositoryTest {
         // 不应该插入任何问题
         verify(questionDao, never()).insert(any(QuestionEntity.class));
     }
-}
-
+    
+    /**
+     * 测试不按状态过滤的一页 - 只写入本页，不删除本地不在本页的问题
+     */
+    @Test
+    public void testSyncQuestions_UnscopedPageKeepsLocalQuestions() throws InterruptedException {
+        // Arrange
+        QuestionsListResponse.QuestionData question = new QuestionsListResponse.QuestionData();
+        question.setId(1L);
+        question.setUserId(TEST_USER_ID);
+        question.setContent("Question 1");
+        question.setStatus(QuestionStatus.PENDING);
+        question.setCreatedAt(100L);
+        question.setUpdatedAt(200L);
+        
+        QuestionsListResponse response = new QuestionsListResponse();
+        response.setSuccess(true);
+        response.setQuestions(Arrays.asList(question));
+        response.setNextCursor("cursor-1");
+        response.setHasMore(true);
+        
+        when(apiService.getQuestions(anyString(), isNull(), isNull(), anyInt()))
+            .thenReturn(questionsCall);
+        
+        CountDownLatch latch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            latch.countDown();
+            return null;
+        }).when(syncCallback).onPageLoaded(anyBoolean());
+        
+        // Act
+        repository.syncQuestionsFromServer(
+            TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, null, 20, false, syncCallback
+        );
+        
+        ArgumentCaptor<Callback<QuestionsListResponse>> callbackCaptor =
+            ArgumentCaptor.forClass(Callback.class);
+        verify(questionsCall, timeout(1000)).enqueue(callbackCaptor.capture());
+        callbackCaptor.getValue().onResponse(questionsCall, Response.success(response));
+        
+        // Assert
+        assertTrue("Async operation timed out", latch.await(1, TimeUnit.SECONDS));
+        verify(questionDao).insert(any(QuestionEntity.class));
+        verify(questionDao, never()).getQuestionsByUserIdSync(anyLong());
+        verify(questionDao, never()).deleteQuestion(anyLong());
+        verify(syncStateDao, never()).upsert(any(SyncStateEntity.class));
+    }
+    
+    /**
+     * 测试增量同步 - 从保存的游标开始，应用变更和墓碑并推进游标
+     */
+    @Test
+    public void testSyncQuestionChanges_AppliesChangesAndTombstones() throws InterruptedException {
+        // Arrange
+        String syncKey = SyncStateEntity.questionsKey(TEST_ROLE_STUDENT, TEST_USER_ID);
+        when(syncStateDao.get(syncKey)).thenReturn(new SyncStateEntity(syncKey, 1000L, 5L, 0L));
+        when(apiService.getQuestionChanges(anyString(), anyLong(), anyLong(), anyInt()))
+            .thenReturn(changesCall);
+        
+        QuestionChangesResponse response = new QuestionChangesResponse();
+        response.setSuccess(true);
+        response.setQuestions(Arrays.asList());
+        response.setDeletedIds(Arrays.asList(7L));
+        response.setCursor(new QuestionChangesResponse.Cursor(2000L, 7L));
+        response.setHasMore(false);
+        
+        CountDownLatch latch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            latch.countDown();
+            return null;
+        }).when(syncCallback).onPageLoaded(anyBoolean());
+        
+        // Act
+        repository.syncQuestionChanges(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, syncCallback);
+        
+        ArgumentCaptor<Callback<QuestionChangesResponse>> callbackCaptor =
+            ArgumentCaptor.forClass(Callback.class);
+        verify(changesCall, timeout(1000)).enqueue(callbackCaptor.capture());
+        verify(apiService).getQuestionChanges(anyString(), eq(1000L), eq(5L), anyInt());
+        callbackCaptor.getValue().onResponse(changesCall, Response.success(response));
+        
+        assertTrue("Async operation timed out", latch.await(1, TimeUnit.SECONDS));
+        
+        // Assert - 删除墓碑对应的问题，游标推进到本页最后一条变更
+        verify(questionDao).deleteQuestion(7L);
+        ArgumentCaptor<SyncStateEntity> stateCaptor = ArgumentCaptor.forClass(SyncStateEntity.class);
+        verify(syncStateDao).upsert(stateCaptor.capture());
+        assertEquals(2000L, stateCaptor.getValue().getCursorUpdatedAt());
+        assertEquals(7L, stateCaptor.getValue().getCursorId());
+        verify(syncCallback).onSuccess(0);
+        verify(syncCallback).onPageLoaded(false);
+    }
+    
+    /**
+     * 测试增量同步 - 事务回滚后重新应用同一页变更，问题不会因写入指纹被跳过
+     */
+    @Test
+    public void testSyncQuestionChanges_RollbackReadmitsQuestions() throws InterruptedException {
+        // Arrange - 第一次提交游标时失败，事务回滚
+        when(apiService.getQuestionChanges(anyString(), anyLong(), anyLong(), anyInt())).thenReturn(changesCall);
+        doThrow(new RuntimeException("disk I/O error")).doNothing().when(syncStateDao).upsert(any(SyncStateEntity.class));
+        
+        QuestionsListResponse.QuestionData question = new QuestionsListResponse.QuestionData();
+        question.setId(3L);
+        question.setUserId(TEST_USER_ID);
+        question.setContent("Question 3");
+        question.setStatus(QuestionStatus.PENDING);
+        question.setCreatedAt(100L);
+        question.setUpdatedAt(200L);
+        QuestionChangesResponse changes = new QuestionChangesResponse();
+        changes.setSuccess(true);
+        changes.setQuestions(Arrays.asList(question));
+        changes.setCursor(new QuestionChangesResponse.Cursor(200L, 3L));
+        changes.setHasMore(false);
+        
+        CountDownLatch errorLatch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback failedCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            errorLatch.countDown();
+            return null;
+        }).when(failedCallback).onError(anyString());
+        CountDownLatch latch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            latch.countDown();
+            return null;
+        }).when(syncCallback).onPageLoaded(anyBoolean());
+        
+        // Act
+        ArgumentCaptor<Callback<QuestionChangesResponse>> callbackCaptor = ArgumentCaptor.forClass(Callback.class);
+        repository.syncQuestionChanges(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, failedCallback);
+        verify(changesCall, timeout(1000)).enqueue(callbackCaptor.capture());
+        callbackCaptor.getValue().onResponse(changesCall, Response.success(changes));
+        assertTrue("Async operation timed out", errorLatch.await(1, TimeUnit.SECONDS));
+        
+        repository.syncQuestionChanges(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, syncCallback);
+        verify(changesCall, timeout(1000).times(2)).enqueue(callbackCaptor.capture());
+        callbackCaptor.getValue().onResponse(changesCall, Response.success(changes));
+        
+        // Assert - 同一个问题两次都写入数据库
+        assertTrue("Async operation timed out", latch.await(1, TimeUnit.SECONDS));
+        verify(questionDao, times(2)).insert(any(QuestionEntity.class));
+        verify(syncCallback).onSuccess(1);
+    }
+    
+    /**
+     * 测试增量同步 - 首次同步从头开始，有更多页时从新游标继续获取
+     */
+    @Test
+    public void testSyncQuestionChanges_FollowsCursorAcrossPages() throws InterruptedException {
+        // Arrange
+        QuestionsListResponse.QuestionData question = new QuestionsListResponse.QuestionData();
+        question.setId(3L);
+        question.setUserId(TEST_USER_ID);
+        question.setContent("Question 3");
+        question.setStatus(QuestionStatus.PENDING);
+        question.setCreatedAt(100L);
+        question.setUpdatedAt(300L);
+        
+        QuestionChangesResponse firstPage = new QuestionChangesResponse();
+        firstPage.setSuccess(true);
+        firstPage.setQuestions(Arrays.asList(question));
+        firstPage.setCursor(new QuestionChangesResponse.Cursor(300L, 3L));
+        firstPage.setHasMore(true);
+        
+        @SuppressWarnings("unchecked")
+        Call<QuestionChangesResponse> secondCall = mock(Call.class);
+        when(apiService.getQuestionChanges(anyString(), eq(0L), eq(0L), anyInt())).thenReturn(changesCall);
+        when(apiService.getQuestionChanges(anyString(), eq(300L), eq(3L), anyInt())).thenReturn(secondCall);
+        
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        
+        // Act
+        repository.syncQuestionChanges(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, syncCallback);
+        
+        ArgumentCaptor<Callback<QuestionChangesResponse>> callbackCaptor =
+            ArgumentCaptor.forClass(Callback.class);
+        verify(changesCall, timeout(1000)).enqueue(callbackCaptor.capture());
+        callbackCaptor.getValue().onResponse(changesCall, Response.success(firstPage));
+        
+        // Assert - 第一页已提交，随后从新游标请求第二页；同步未完成，不记录同步完成时间
+        verify(secondCall, timeout(1000)).enqueue(any());
+        verify(questionDao).insert(any(QuestionEntity.class));
+        ArgumentCaptor<SyncStateEntity> stateCaptor = ArgumentCaptor.forClass(SyncStateEntity.class);
+        verify(syncStateDao).upsert(stateCaptor.capture());
+        assertEquals(0L, stateCaptor.getValue().getLastSyncedAt());
+        verify(syncCallback, never()).onSuccess(anyInt());
+    }
+    
+    /**
+     * 测试有效期 - 上次同步在有效期内时不请求服务器
+     */
+    @Test
+    public void testSyncQuestionChangesIfStale_SkipsFreshData() throws InterruptedException {
+        // Arrange
+        String syncKey = SyncStateEntity.questionsKey(TEST_ROLE_STUDENT, TEST_USER_ID);
+        when(syncStateDao.get(syncKey)).thenReturn(
+            new SyncStateEntity(syncKey, 1000L, 5L, System.currentTimeMillis() - 1000));
+        
+        CountDownLatch latch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            latch.countDown();
+            return null;
+        }).when(syncCallback).onSkipped();
+        
+        // Act
+        repository.syncQuestionChangesIfStale(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, 0, 60000L, syncCallback);
+        
+        // Assert
+        assertTrue("Async operation timed out", latch.await(1, TimeUnit.SECONDS));
+        verify(apiService, never()).getQuestionChanges(anyString(), anyLong(), anyLong(), anyInt());
+        verify(syncCallback, never()).onSuccess(anyInt());
+    }
+    
+    /**
+     * 测试有效期 - 数据过期时照常增量同步
+     */
+    @Test
+    public void testSyncQuestionChangesIfStale_SyncsStaleData() {
+        // Arrange
+        String syncKey = SyncStateEntity.questionsKey(TEST_ROLE_STUDENT, TEST_USER_ID);
+        when(syncStateDao.get(syncKey)).thenReturn(
+            new SyncStateEntity(syncKey, 1000L, 5L, System.currentTimeMillis() - 120000L));
+        when(apiService.getQuestionChanges(anyString(), anyLong(), anyLong(), anyInt())).thenReturn(changesCall);
+        
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        
+        // Act
+        repository.syncQuestionChangesIfStale(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, 0, 60000L, syncCallback);
+        
+        // Assert
+        verify(changesCall, timeout(1000)).enqueue(any());
+        verify(apiService).getQuestionChanges(anyString(), eq(1000L), eq(5L), anyInt());
+        verify(syncCallback, never()).onSkipped();
+    }
+    
+    /**
+     * 测试消息增量同步 - 只请求本地最大消息ID之后的消息，推进游标并保留校对时间
+     */
+    @Test
+    public void testSyncMessages_FetchesOnlyAfterHighWaterMark() throws InterruptedException {
+        // Arrange
+        long verifiedAt = System.currentTimeMillis() - 1000;
+        String messagesKey = SyncStateEntity.messagesKey(3L);
+        when(syncStateDao.get(messagesKey)).thenReturn(new SyncStateEntity(messagesKey, 0L, 40L, 0L, verifiedAt));
+        when(messageDao.getMessageById(40L)).thenReturn(new MessageEntity());
+        when(syncStateDao.get(SyncStateEntity.questionsKey(TEST_ROLE_STUDENT, TEST_USER_ID))).thenReturn(null);
+        when(apiService.getQuestionChanges(anyString(), anyLong(), anyLong(), anyInt())).thenReturn(changesCall);
+        when(apiService.getMessagesBatch(anyString(), any(BatchMessagesRequest.class))).thenReturn(batchCall);
+        
+        MessagesListResponse.MessageData message = new MessagesListResponse.MessageData();
+        message.setId(41L);
+        message.setQuestionId(3L);
+        message.setSenderId(TEST_USER_ID);
+        message.setContent("hello");
+        message.setMessageType("text");
+        
+        CountDownLatch latch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            latch.countDown();
+            return null;
+        }).when(syncCallback).onPageLoaded(anyBoolean());
+        
+        // Act
+        repository.syncQuestionChanges(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, syncCallback);
+        respondWithChangedQuestions(3L);
+        
+        ArgumentCaptor<Callback<ResponseBody>> batchCaptor = ArgumentCaptor.forClass(Callback.class);
+        verify(batchCall, timeout(1000)).enqueue(batchCaptor.capture());
+        batchCaptor.getValue().onResponse(batchCall, Response.success(batchBody(questionResult(3L, 41L, false, message))));
+        
+        assertTrue("Async operation timed out", latch.await(1, TimeUnit.SECONDS));
+        
+        // Assert - 请求从游标 40 开始，不做删除，游标推进到 41
+        ArgumentCaptor<BatchMessagesRequest> requestCaptor = ArgumentCaptor.forClass(BatchMessagesRequest.class);
+        verify(apiService).getMessagesBatch(anyString(), requestCaptor.capture());
+        assertEquals(1, requestCaptor.getValue().getCursors().size());
+        assertEquals(40L, requestCaptor.getValue().getCursors().get(0).getAfterId());
+        verify(messageDao, never()).deleteMessage(anyLong());
+        verify(messageDao).insert(any(MessageEntity.class));
+        ArgumentCaptor<SyncStateEntity> stateCaptor = ArgumentCaptor.forClass(SyncStateEntity.class);
+        verify(syncStateDao, atLeastOnce()).upsert(stateCaptor.capture());
+        SyncStateEntity saved = stateCaptor.getValue();
+        assertEquals(messagesKey, saved.getKey());
+        assertEquals(41L, saved.getCursorId());
+        assertEquals(verifiedAt, saved.getLastVerifiedAt());
+    }
+    
+    /**
+     * 测试消息增量同步 - 游标对应的消息已不在本地时改为完整校对
+     */
+    @Test
+    public void testSyncMessages_FullPassWhenHighWaterMessageMissing() {
+        // Arrange
+        String messagesKey = SyncStateEntity.messagesKey(3L);
+        when(syncStateDao.get(messagesKey))
+            .thenReturn(new SyncStateEntity(messagesKey, 0L, 40L, 0L, System.currentTimeMillis()));
+        when(messageDao.getMessageById(40L)).thenReturn(null);
+        when(syncStateDao.get(SyncStateEntity.questionsKey(TEST_ROLE_STUDENT, TEST_USER_ID))).thenReturn(null);
+        when(apiService.getQuestionChanges(anyString(), anyLong(), anyLong(), anyInt())).thenReturn(changesCall);
+        when(apiService.getMessagesBatch(anyString(), any(BatchMessagesRequest.class))).thenReturn(batchCall);
+        
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        
+        // Act
+        repository.syncQuestionChanges(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, syncCallback);
+        respondWithChangedQuestions(3L);
+        
+        // Assert - 从头开始全量拉取
+        verify(batchCall, timeout(1000)).enqueue(any());
+        ArgumentCaptor<BatchMessagesRequest> requestCaptor = ArgumentCaptor.forClass(BatchMessagesRequest.class);
+        verify(apiService).getMessagesBatch(anyString(), requestCaptor.capture());
+        assertEquals(0L, requestCaptor.getValue().getCursors().get(0).getAfterId());
+    }
+    
+    /**
+     * 测试完整校对 - 每页到达即写入，最后一页后只删除已校对范围内服务端不存在的消息
+     */
+    @Test
+    public void testSyncMessages_FullPassPersistsPagesAndCleansUpAfterLastPage() throws InterruptedException {
+        // Arrange
+        long previousVerifiedAt = 1000L;
+        String messagesKey = SyncStateEntity.messagesKey(3L);
+        when(syncStateDao.get(messagesKey)).thenReturn(new SyncStateEntity(messagesKey, 0L, 2L, 0L, previousVerifiedAt));
+        when(syncStateDao.get(SyncStateEntity.questionsKey(TEST_ROLE_STUDENT, TEST_USER_ID))).thenReturn(null);
+        when(apiService.getQuestionChanges(anyString(), anyLong(), anyLong(), anyInt())).thenReturn(changesCall);
+        when(apiService.getMessagesBatch(anyString(), any(BatchMessagesRequest.class))).thenReturn(batchCall);
+        // 本地：1、2 在校对范围内，100 是同步期间推送到达的新消息，-5 是发送中的临时消息
+        when(messageDao.getMessagesByQuestionIdSync(3L))
+            .thenReturn(Arrays.asList(localMessage(1L), localMessage(2L), localMessage(100L), localMessage(-5L)));
+        
+        CountDownLatch latch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            latch.countDown();
+            return null;
+        }).when(syncCallback).onPageLoaded(anyBoolean());
+        
+        // Act - 第一页
+        repository.syncQuestionChanges(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, syncCallback);
+        respondWithChangedQuestions(3L);
+        ArgumentCaptor<Callback<ResponseBody>> batchCaptor = ArgumentCaptor.forClass(Callback.class);
+        verify(batchCall, timeout(1000)).enqueue(batchCaptor.capture());
+        batchCaptor.getValue().onResponse(batchCall, Response.success(messagePage(3L, 1L, true)));
+        
+        // Assert - 第一页立即写入，游标推进但保留原校对时间，不做清理
+        ArgumentCaptor<SyncStateEntity> stateCaptor = ArgumentCaptor.forClass(SyncStateEntity.class);
+        verify(syncStateDao, timeout(1000).atLeast(2)).upsert(stateCaptor.capture());
+        SyncStateEntity firstPage = stateCaptor.getValue();
+        assertEquals(1L, firstPage.getCursorId());
+        assertEquals(previousVerifiedAt, firstPage.getLastVerifiedAt());
+        verify(messageDao, never()).deleteMessage(anyLong());
+        
+        // Act - 最后一页
+        verify(batchCall, timeout(1000).times(2)).enqueue(batchCaptor.capture());
+        batchCaptor.getValue().onResponse(batchCall, Response.success(messagePage(3L, 3L, false)));
+        assertTrue("Async operation timed out", latch.await(1, TimeUnit.SECONDS));
+        
+        // Assert - 只删除范围内缺失的消息 2
+        verify(messageDao).deleteMessage(2L);
+        verify(messageDao, never()).deleteMessage(1L);
+        verify(messageDao, never()).deleteMessage(100L);
+        verify(messageDao, never()).deleteMessage(-5L);
+        verify(syncStateDao, atLeast(3)).upsert(stateCaptor.capture());
+        SyncStateEntity lastPage = stateCaptor.getValue();
+        assertEquals(3L, lastPage.getCursorId());
+        assertTrue(lastPage.getLastVerifiedAt() > previousVerifiedAt);
+    }
+    
+    /**
+     * 测试消息批量同步 - 多个变化的问题合并为一次请求
+     */
+    @Test
+    public void testSyncMessages_BatchesChangedQuestionsInOneRequest() {
+        // Arrange
+        when(syncStateDao.get(anyString())).thenReturn(null);
+        when(apiService.getQuestionChanges(anyString(), anyLong(), anyLong(), anyInt())).thenReturn(changesCall);
+        when(apiService.getMessagesBatch(anyString(), any(BatchMessagesRequest.class))).thenReturn(batchCall);
+        
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        
+        // Act
+        repository.syncQuestionChanges(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, syncCallback);
+        respondWithChangedQuestions(3L, 4L, 5L);
+        
+        // Assert - 只发出一次请求，包含全部三个问题的游标
+        verify(batchCall, timeout(1000)).enqueue(any());
+        ArgumentCaptor<BatchMessagesRequest> requestCaptor = ArgumentCaptor.forClass(BatchMessagesRequest.class);
+        verify(apiService, times(1)).getMessagesBatch(anyString(), requestCaptor.capture());
+        List<BatchMessagesRequest.Cursor> cursors = requestCaptor.getValue().getCursors();
+        assertEquals(3, cursors.size());
+        assertEquals(3L, cursors.get(0).getQuestionId());
+        assertEquals(5L, cursors.get(2).getQuestionId());
+    }
+    
+    /**
+     * 测试消息批量同步 - 用户正在查看的问题排在批次最前面
+     */
+    @Test
+    public void testSyncMessages_FocusedQuestionFirst() {
+        // Arrange
+        syncScheduler.focus(5L);
+        when(syncStateDao.get(anyString())).thenReturn(null);
+        when(apiService.getQuestionChanges(anyString(), anyLong(), anyLong(), anyInt())).thenReturn(changesCall);
+        when(apiService.getMessagesBatch(anyString(), any(BatchMessagesRequest.class))).thenReturn(batchCall);
+        
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        
+        // Act
+        repository.syncQuestionChanges(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, syncCallback);
+        respondWithChangedQuestions(3L, 4L, 5L);
+        
+        // Assert
+        verify(batchCall, timeout(1000)).enqueue(any());
+        ArgumentCaptor<BatchMessagesRequest> requestCaptor = ArgumentCaptor.forClass(BatchMessagesRequest.class);
+        verify(apiService).getMessagesBatch(anyString(), requestCaptor.capture());
+        List<BatchMessagesRequest.Cursor> cursors = requestCaptor.getValue().getCursors();
+        assertEquals(5L, cursors.get(0).getQuestionId());
+        assertEquals(3L, cursors.get(1).getQuestionId());
+    }
+    
+    /**
+     * 测试消息预取 - 没有未读消息、也没有被查看的问题只同步问题头，不拉取消息
+     */
+    @Test
+    public void testSyncMessages_SkipsQuestionsWithoutUnreadMessages() throws InterruptedException {
+        // Arrange
+        when(apiService.getQuestionChanges(anyString(), anyLong(), anyLong(), anyInt())).thenReturn(changesCall);
+        
+        CountDownLatch latch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            latch.countDown();
+            return null;
+        }).when(syncCallback).onPageLoaded(anyBoolean());
+        
+        // Act
+        repository.syncQuestionChanges(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, syncCallback);
+        respondWithQuestions(0, 3L, 4L);
+        
+        // Assert
+        assertTrue("Async operation timed out", latch.await(1, TimeUnit.SECONDS));
+        verify(syncCallback).onSuccess(2);
+        verify(apiService, never()).getMessagesBatch(anyString(), any(BatchMessagesRequest.class));
+    }
+    
+    /**
+     * 测试消息预取 - 有未读消息的进行中问题最多预取 MESSAGE_PREFETCH_MAX_QUESTIONS 个
+     */
+    @Test
+    public void testSyncMessages_PrefetchIsCapped() {
+        // Arrange
+        when(syncStateDao.get(anyString())).thenReturn(null);
+        when(apiService.getQuestionChanges(anyString(), anyLong(), anyLong(), anyInt())).thenReturn(changesCall);
+        when(apiService.getMessagesBatch(anyString(), any(BatchMessagesRequest.class))).thenReturn(batchCall);
+        
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        
+        // Act
+        repository.syncQuestionChanges(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, syncCallback);
+        respondWithChangedQuestions(3L, 4L, 5L, 6L, 7L, 8L, 9L);
+        
+        // Assert
+        verify(batchCall, timeout(1000)).enqueue(any());
+        ArgumentCaptor<BatchMessagesRequest> requestCaptor = ArgumentCaptor.forClass(BatchMessagesRequest.class);
+        verify(apiService).getMessagesBatch(anyString(), requestCaptor.capture());
+        assertEquals(AppConstants.MESSAGE_PREFETCH_MAX_QUESTIONS, requestCaptor.getValue().getCursors().size());
+    }
+    
+    /**
+     * 测试按需同步 - 打开问题时拉取该问题的消息
+     */
+    @Test
+    public void testSyncMessages_OnDemandForOpenedQuestion() throws InterruptedException {
+        // Arrange
+        when(syncStateDao.get(anyString())).thenReturn(null);
+        when(apiService.getMessagesBatch(anyString(), any(BatchMessagesRequest.class))).thenReturn(batchCall);
+        
+        CountDownLatch latch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            latch.countDown();
+            return null;
+        }).when(syncCallback).onSuccess(anyInt());
+        
+        // Act
+        repository.syncMessages(TEST_TOKEN, 3L, syncCallback);
+        
+        ArgumentCaptor<Callback<ResponseBody>> batchCaptor = ArgumentCaptor.forClass(Callback.class);
+        verify(batchCall, timeout(1000)).enqueue(batchCaptor.capture());
+        batchCaptor.getValue().onResponse(batchCall, Response.success(messagePage(3L, 1L, false)));
+        
+        // Assert
+        assertTrue("Async operation timed out", latch.await(1, TimeUnit.SECONDS));
+        ArgumentCaptor<BatchMessagesRequest> requestCaptor = ArgumentCaptor.forClass(BatchMessagesRequest.class);
+        verify(apiService).getMessagesBatch(anyString(), requestCaptor.capture());
+        assertEquals(1, requestCaptor.getValue().getCursors().size());
+        assertEquals(3L, requestCaptor.getValue().getCursors().get(0).getQuestionId());
+        verify(messageDao).insert(any(MessageEntity.class));
+        verify(syncCallback).onSuccess(1);
+    }
+    
+    /**
+     * 测试按需同步 - 批量请求失败时回调错误，不报告成功
+     */
+    @Test
+    public void testSyncMessages_OnDemandReportsFailure() throws InterruptedException {
+        // Arrange
+        when(syncStateDao.get(anyString())).thenReturn(null);
+        when(apiService.getMessagesBatch(anyString(), any(BatchMessagesRequest.class))).thenReturn(batchCall);
+        
+        CountDownLatch latch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            latch.countDown();
+            return null;
+        }).when(syncCallback).onError(anyString());
+        
+        // Act
+        repository.syncMessages(TEST_TOKEN, 3L, syncCallback);
+        
+        ArgumentCaptor<Callback<ResponseBody>> batchCaptor = ArgumentCaptor.forClass(Callback.class);
+        verify(batchCall, timeout(1000)).enqueue(batchCaptor.capture());
+        batchCaptor.getValue().onResponse(batchCall, Response.error(500, jsonBody("{\"success\":false}")));
+        
+        // Assert
+        assertTrue("Async operation timed out", latch.await(1, TimeUnit.SECONDS));
+        verify(syncCallback, never()).onSuccess(anyInt());
+        verify(messageDao, never()).insert(any(MessageEntity.class));
+        assertEquals(0, syncScheduler.getRunningCount());
+    }
+    
+    /**
+     * 测试按需同步 - 当前用户不是参与者（服务端返回 unavailable）时报告空结果而不是错误
+     */
+    @Test
+    public void testSyncMessages_OnDemandUnavailableIsEmptySuccess() throws InterruptedException {
+        // Arrange
+        when(syncStateDao.get(anyString())).thenReturn(null);
+        when(apiService.getMessagesBatch(anyString(), any(BatchMessagesRequest.class))).thenReturn(batchCall);
+    
+        CountDownLatch latch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            latch.countDown();
+            return null;
+        }).when(syncCallback).onSuccess(anyInt());
+    
+        // Act
+        repository.syncMessages(TEST_TOKEN, 3L, syncCallback);
+    
+        ArgumentCaptor<Callback<ResponseBody>> batchCaptor = ArgumentCaptor.forClass(Callback.class);
+        verify(batchCall, timeout(1000)).enqueue(batchCaptor.capture());
+        batchCaptor.getValue().onResponse(batchCall, Response.success(jsonBody(
+            "{\"success\":true,\"results\":[],\"unavailable\":[3]}"
+        )));
+    
+        // Assert - 不写入、不推进游标
+        assertTrue("Async operation timed out", latch.await(1, TimeUnit.SECONDS));
+        verify(syncCallback).onSuccess(0);
+        verify(syncCallback, never()).onError(anyString());
+        verify(messageDao, never()).insert(any(MessageEntity.class));
+        verify(syncStateDao, never()).upsert(any(SyncStateEntity.class));
+    }
+    
+    /**
+     * 测试流式写入 - 响应体中途截断时未读完的问题不写入、不推进游标，重新同步时从原游标拉取
+     */
+    @Test
+    public void testSyncMessages_TruncatedStreamRollsBack() throws InterruptedException {
+        // Arrange
+        when(syncStateDao.get(anyString())).thenReturn(null);
+        when(apiService.getMessagesBatch(anyString(), any(BatchMessagesRequest.class))).thenReturn(batchCall);
+        
+        CountDownLatch firstLatch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback firstCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            firstLatch.countDown();
+            return null;
+        }).when(firstCallback).onError(anyString());
+        
+        // Act - 第一条消息完整，第二条读到一半连接断开
+        repository.syncMessages(TEST_TOKEN, 3L, firstCallback);
+        
+        ArgumentCaptor<Callback<ResponseBody>> batchCaptor = ArgumentCaptor.forClass(Callback.class);
+        verify(batchCall, timeout(1000)).enqueue(batchCaptor.capture());
+        batchCaptor.getValue().onResponse(batchCall, Response.success(jsonBody(
+            "{\"success\":true,\"results\":[{\"questionId\":3,\"messages\":["
+                + "{\"id\":1,\"questionId\":3,\"senderId\":1,\"content\":\"message 1\",\"messageType\":\"text\"},"
+                + "{\"id\":2,\"questionId\":3,\"con"
+        )));
+        assertTrue("Async operation timed out", firstLatch.await(1, TimeUnit.SECONDS));
+        
+        // Assert - 游标未推进，名额已释放，打开的页面收到错误
+        verify(syncStateDao, never()).upsert(any(SyncStateEntity.class));
+        verify(firstCallback, never()).onSuccess(anyInt());
+        assertEquals(0, syncScheduler.getRunningCount());
+        
+        // Act - 重新同步
+        CountDownLatch secondLatch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback secondCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            secondLatch.countDown();
+            return null;
+        }).when(secondCallback).onSuccess(anyInt());
+        repository.syncMessages(TEST_TOKEN, 3L, secondCallback);
+        
+        verify(batchCall, timeout(1000).times(2)).enqueue(batchCaptor.capture());
+        batchCaptor.getValue().onResponse(batchCall, Response.success(messagePage(3L, 1L, false)));
+        assertTrue("Async operation timed out", secondLatch.await(1, TimeUnit.SECONDS));
+        
+        // Assert - 未提交的消息没有被写入过滤器记录
+        verify(messageDao, times(1)).insert(any(MessageEntity.class));
+        ArgumentCaptor<SyncStateEntity> stateCaptor = ArgumentCaptor.forClass(SyncStateEntity.class);
+        verify(syncStateDao).upsert(stateCaptor.capture());
+        assertEquals(1L, stateCaptor.getValue().getCursorId());
+    }
+    
+    /**
+     * 测试流式读取 - 响应体读取缓慢时不占用仓库的 executor，其他写入照常执行
+     */
+    @Test
+    public void testSyncMessages_SlowBodyDoesNotBlockExecutor() throws Exception {
+        // Arrange
+        when(syncStateDao.get(anyString())).thenReturn(null);
+        when(apiService.getMessagesBatch(anyString(), any(BatchMessagesRequest.class))).thenReturn(batchCall);
+        PipedOutputStream server = new PipedOutputStream();
+        PipedInputStream client = new PipedInputStream(server);
+        
+        CountDownLatch latch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            latch.countDown();
+            return null;
+        }).when(syncCallback).onSuccess(anyInt());
+        
+        // Act - 响应体只到达一半
+        repository.syncMessages(TEST_TOKEN, 3L, syncCallback);
+        ArgumentCaptor<Callback<ResponseBody>> batchCaptor = ArgumentCaptor.forClass(Callback.class);
+        verify(batchCall, timeout(1000)).enqueue(batchCaptor.capture());
+        batchCaptor.getValue().onResponse(batchCall, Response.success(ResponseBody.create(
+            Okio.buffer(Okio.source(client)), MediaType.get("application/json"), -1
+        )));
+        server.write("{\"success\":true,\"results\":[{\"questionId\":3,\"messages\":[".getBytes(StandardCharsets.UTF_8));
+        server.flush();
+        
+        // Assert - 读取阻塞期间 executor 仍能执行其他任务
+        executor.submit(() -> { }).get(1, TimeUnit.SECONDS);
+        
+        // Act - 响应体剩余部分到达
+        server.write(("{\"id\":1,\"questionId\":3,\"senderId\":1,\"content\":\"message 1\",\"messageType\":\"text\"}],"
+            + "\"cursor\":1,\"hasMore\":false}]}").getBytes(StandardCharsets.UTF_8));
+        server.close();
+        
+        // Assert
+        assertTrue("Async operation timed out", latch.await(1, TimeUnit.SECONDS));
+        verify(messageDao).insert(any(MessageEntity.class));
+        verify(syncCallback).onSuccess(1);
+    }
+    
+    /**
+     * 测试分块写入 - 每个问题在自己的短事务中提交，后面的问题读取中断不影响已提交的问题
+     */
+    @Test
+    public void testSyncMessages_CommitsEachQuestionSeparately() throws InterruptedException {
+        // Arrange
+        when(syncStateDao.get(anyString())).thenReturn(null);
+        when(apiService.getQuestionChanges(anyString(), anyLong(), anyLong(), anyInt())).thenReturn(changesCall);
+        when(apiService.getMessagesBatch(anyString(), any(BatchMessagesRequest.class))).thenReturn(batchCall);
+        
+        CountDownLatch latch = new CountDownLatch(1);
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            latch.countDown();
+            return null;
+        }).when(syncCallback).onPageLoaded(anyBoolean());
+        
+        // Act - 问题 3 完整，问题 4 读到一半连接断开
+        repository.syncQuestionChanges(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, syncCallback);
+        respondWithChangedQuestions(3L, 4L);
+        
+        String complete = questionResult(3L, 1L, false, serverMessage(3L, 1L)).toString();
+        ArgumentCaptor<Callback<ResponseBody>> batchCaptor = ArgumentCaptor.forClass(Callback.class);
+        verify(batchCall, timeout(1000)).enqueue(batchCaptor.capture());
+        batchCaptor.getValue().onResponse(batchCall, Response.success(jsonBody(
+            "{\"success\":true,\"results\":[" + complete + ",{\"questionId\":4,\"messages\":[{\"id\":2,"
+        )));
+        
+        // Assert - 一个问题一个事务，问题 3 的消息和游标已提交
+        assertTrue("Async operation timed out", latch.await(1, TimeUnit.SECONDS));
+        ArgumentCaptor<SyncStateEntity> stateCaptor = ArgumentCaptor.forClass(SyncStateEntity.class);
+        verify(syncStateDao, atLeastOnce()).upsert(stateCaptor.capture());
+        for (SyncStateEntity state : stateCaptor.getAllValues()) {
+            assertNotEquals(SyncStateEntity.messagesKey(4L), state.getKey());
+        }
+        assertTrue(stateCaptor.getAllValues().stream()
+            .anyMatch(state -> SyncStateEntity.messagesKey(3L).equals(state.getKey()) && state.getCursorId() == 1L));
+        verify(messageDao, times(1)).insert(any(MessageEntity.class));
+        // 增量同步页一个事务，问题 3 一个事务；问题 4 没有读完，不开启事务
+        verify(appDatabase, times(2)).runInTransaction(any(Runnable.class));
+    }
+    
+    /**
+     * 测试并发同步合并 - 两个页面同时发起增量同步，只发出一次请求，两者都收到结果
+     */
+    @Test
+    public void testSyncQuestionChanges_ConcurrentCallersShareOneRequest() throws InterruptedException {
+        // Arrange
+        when(apiService.getQuestionChanges(anyString(), anyLong(), anyLong(), anyInt())).thenReturn(changesCall);
+        
+        CountDownLatch latch = new CountDownLatch(2);
+        QuestionRepository.SyncCallback first = mock(QuestionRepository.SyncCallback.class);
+        QuestionRepository.SyncCallback second = mock(QuestionRepository.SyncCallback.class);
+        doAnswer(invocation -> {
+            latch.countDown();
+            return null;
+        }).when(first).onPageLoaded(anyBoolean());
+        doAnswer(invocation -> {
+            latch.countDown();
+            return null;
+        }).when(second).onPageLoaded(anyBoolean());
+        
+        // Act
+        repository.syncQuestionChanges(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, first);
+        repository.syncQuestionChanges(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, second);
+        respondWithQuestions(0, 3L);
+        
+        // Assert
+        assertTrue("Async operation timed out", latch.await(1, TimeUnit.SECONDS));
+        verify(apiService, times(1)).getQuestionChanges(anyString(), anyLong(), anyLong(), anyInt());
+        verify(first).onSuccess(1);
+        verify(second).onSuccess(1);
+    }
+    
+    /**
+     * 测试取消同步 - 取消后不再发出后续请求，也不再回调
+     */
+    @Test
+    public void testSyncQuestionChanges_CancelledScopeStopsSync() {
+        // Arrange
+        when(syncStateDao.get(anyString())).thenReturn(null);
+        when(apiService.getQuestionChanges(anyString(), anyLong(), anyLong(), anyInt())).thenReturn(changesCall);
+        
+        QuestionRepository.SyncCallback syncCallback = mock(QuestionRepository.SyncCallback.class);
+        
+        // Act
+        SyncScheduler.Scope scope = repository.syncQuestionChanges(TEST_TOKEN, TEST_USER_ID, TEST_ROLE_STUDENT, syncCallback);
+        verify(changesCall, timeout(1000)).enqueue(any());
+        scope.cancel();
+        
+        // Assert - 在途请求被取消，名额被释放
+        verify(changesCall).cancel();
+        assertEquals(0, syncScheduler.getRunningCount());
+        verify(apiService, never()).getMessagesBatch(anyString(), any(BatchMessagesRequest.class));
+        verifyNoInteractions(syncCallback);
+    }
+    
+    private static MessageEntity localMessage(long id) {
+        MessageEntity message = new MessageEntity();
+        message.setId(id);
+        message.setQuestionId(3L);
+        return message;
+    }
+    
+    /**
+     * 构造只包含一条消息的批量响应
+     */
+    private static ResponseBody messagePage(long questionId, long messageId, boolean hasMore) {
+        return batchBody(questionResult(questionId, messageId, hasMore, serverMessage(questionId, messageId)));
+    }
+    
+    private static MessagesListResponse.MessageData serverMessage(long questionId, long messageId) {
+        MessagesListResponse.MessageData message = new MessagesListResponse.MessageData();
+        message.setId(messageId);
+        message.setQuestionId(questionId);
+        message.setSenderId(TEST_USER_ID);
+        message.setContent("message " + messageId);
+        message.setMessageType("text");
+        return message;
+    }
+    
+    /**
+     * 构造批量响应中一个问题的结果
+     */
+    private static JsonObject questionResult(long questionId, long cursor, boolean hasMore,
+                                             MessagesListResponse.MessageData... messages) {
+        JsonObject result = new JsonObject();
+        result.addProperty("questionId", questionId);
+        result.add("messages", new Gson().toJsonTree(Arrays.asList(messages)));
+        result.addProperty("cursor", cursor);
+        result.addProperty("hasMore", hasMore);
+        return result;
+    }
+    
+    private static ResponseBody batchBody(JsonObject... results) {
+        JsonArray array = new JsonArray();
+        for (JsonObject result : results) {
+            array.add(result);
+        }
+        JsonObject response = new JsonObject();
+        response.addProperty("success", true);
+        response.add("results", array);
+        return jsonBody(response.toString());
+    }
+    
+    private static ResponseBody jsonBody(String json) {
+        return ResponseBody.create(json, MediaType.get("application/json"));
+    }
+    
+    /**
+     * 让增量同步请求返回变化的问题（进行中且有未读消息，会预取消息）
+     */
+    private void respondWithChangedQuestions(long... questionIds) {
+        respondWithQuestions(1, questionIds);
+    }
+    
+    /**
+     * 让增量同步请求返回变化的进行中问题
+     */
+    private void respondWithQuestions(int unreadCount, long... questionIds) {
+        List<QuestionsListResponse.QuestionData> questions = new ArrayList<>();
+        for (long questionId : questionIds) {
+            QuestionsListResponse.QuestionData question = new QuestionsListResponse.QuestionData();
+            question.setId(questionId);
+            question.setUserId(TEST_USER_ID);
+            question.setContent("Question " + questionId);
+            question.setStatus(QuestionStatus.IN_PROGRESS);
+            question.setCreatedAt(100L);
+            question.setUpdatedAt(200L);
+            question.setUnreadCount(unreadCount);
+            questions.add(question);
+        }
+        
+        QuestionChangesResponse changes = new QuestionChangesResponse();
+        changes.setSuccess(true);
+        changes.setQuestions(questions);
+        changes.setCursor(new QuestionChangesResponse.Cursor(200L, questionIds[questionIds.length - 1]));
+        changes.setHasMore(false);
+        
+        ArgumentCaptor<Callback<QuestionChangesResponse>> callbackCaptor = ArgumentCaptor.forClass(Callback.class);
+        verify(changesCall, timeout(1000)).enqueue(callbackCaptor.capture());
+        callbackCaptor.getValue().onResponse(changesCall, Response.success(changes));
+    }
+}
@@ -0,0 +1,141 @@
+package com.dowdah.asknow.data.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * SingleFlight 单元测试
+ *
+ * 测试功能：
+ * - 相同键的并发调用只发起一次同步，所有调用方收到同一结果
+ * - 不同键、已结束的同步和更早代次的同步不合并
+ * - 单个调用方取消不影响其他调用方，全部取消后才取消在途同步
+ */
+public class SingleFlightTest {
+
+    private SyncScheduler scheduler;
+    private SingleFlight singleFlight;
+    private List<QuestionRepository.SyncCallback> started;
+    private List<SyncScheduler.Scope> startedScopes;
+
+    @Before
+    public void setUp() {
+        scheduler = new SyncScheduler();
+        singleFlight = new SingleFlight(scheduler);
+        started = new ArrayList<>();
+        startedScopes = new ArrayList<>();
+    }
+
+    /**
+     * 测试相同键的并发调用合并为一次同步
+     */
+    @Test
+    public void testConcurrentCallersShareResult() {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+
+        singleFlight.run("changes:student:1", 0, first, this::start);
+        singleFlight.run("changes:student:1", 0, second, this::start);
+
+        assertEquals(1, started.size());
+
+        started.get(0).onSuccess(3);
+        started.get(0).onPageLoaded(false);
+
+        assertEquals("success:3,page:false", first.events());
+        assertEquals("success:3,page:false", second.events());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    /**
+     * 测试不同键和已结束的同步不合并
+     */
+    @Test
+    public void testDifferentKeyOrFinishedFlightStartsNewSync() {
+        singleFlight.run("page:tutor:1:1:20:refresh", 0, null, this::start);
+        singleFlight.run("page:tutor:1:2:20:append", 0, null, this::start);
+        assertEquals(2, started.size());
+
+        started.get(0).onError("boom");
+        singleFlight.run("page:tutor:1:1:20:refresh", 0, null, this::start);
+        assertEquals(3, started.size());
+    }
+
+    /**
+     * 测试在途同步的代次早于调用方要求时重新发起
+     */
+    @Test
+    public void testOlderEpochIsNotJoined() {
+        RecordingCallback stale = new RecordingCallback();
+        RecordingCallback fresh = new RecordingCallback();
+
+        singleFlight.run("changes:student:1", 1, stale, this::start);
+        singleFlight.run("changes:student:1", 2, fresh, this::start);
+        assertEquals(2, started.size());
+
+        // 旧同步结束不影响新同步的调用方
+        started.get(0).onSuccess(1);
+        assertEquals("success:1", stale.events());
+        assertEquals("", fresh.events());
+        assertEquals(1, singleFlight.getInFlightCount());
+    }
+
+    /**
+     * 测试取消：单个调用方退出后不再收到回调，全部退出后取消在途同步
+     */
+    @Test
+    public void testCancelOnlyWhenAllCallersLeave() {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+
+        SyncScheduler.Scope firstScope = singleFlight.run("changes:student:1", 0, first, this::start);
+        SyncScheduler.Scope secondScope = singleFlight.run("changes:student:1", 0, second, this::start);
+
+        firstScope.cancel();
+        assertFalse(startedScopes.get(0).isCancelled());
+
+        secondScope.cancel();
+        assertTrue(startedScopes.get(0).isCancelled());
+        assertEquals(0, singleFlight.getInFlightCount());
+
+        // 已取消的同步即使迟到的回调也不再转发
+        started.get(0).onSuccess(1);
+        assertEquals("", first.events());
+        assertEquals("", second.events());
+    }
+
+    private SyncScheduler.Scope start(QuestionRepository.SyncCallback callback) {
+        SyncScheduler.Scope scope = scheduler.newScope();
+        started.add(callback);
+        startedScopes.add(scope);
+        return scope;
+    }
+
+    private static final class RecordingCallback implements QuestionRepository.SyncCallback {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onSuccess(int syncedCount) {
+            events.add("success:" + syncedCount);
+        }
+
+        @Override
+        public void onError(String errorMessage) {
+            events.add("error:" + errorMessage);
+        }
+
+        @Override
+        public void onPageLoaded(boolean hasMore) {
+            events.add("page:" + hasMore);
+        }
+
+        String events() {
+            return String.join(",", events);
+        }
+    }
+}
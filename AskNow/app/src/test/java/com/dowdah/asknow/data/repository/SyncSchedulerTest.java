@@ -0,0 +1,150 @@
+package com.dowdah.asknow.data.repository;
+
+import com.dowdah.asknow.constants.enums.QuestionStatus;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * SyncScheduler 单元测试
+ *
+ * 测试功能：
+ * - 并发上限，超出的任务排队
+ * - 高优先级先执行，同优先级按提交顺序
+ * - 取消范围丢弃排队任务并释放名额
+ * - 正在查看和进行中的问题优先级
+ */
+public class SyncSchedulerTest {
+
+    private SyncScheduler scheduler;
+    private List<String> started;
+    private List<SyncScheduler.Ticket> tickets;
+
+    @Before
+    public void setUp() {
+        scheduler = new SyncScheduler(2);
+        started = new ArrayList<>();
+        tickets = new ArrayList<>();
+    }
+
+    /**
+     * 测试超过并发上限的任务排队，名额释放后继续执行
+     */
+    @Test
+    public void testConcurrencyCap() {
+        SyncScheduler.Scope scope = scheduler.newScope();
+        scheduler.submit(scope, SyncScheduler.PRIORITY_NORMAL, job("a"));
+        scheduler.submit(scope, SyncScheduler.PRIORITY_NORMAL, job("b"));
+        scheduler.submit(scope, SyncScheduler.PRIORITY_NORMAL, job("c"));
+
+        assertEquals(2, scheduler.getRunningCount());
+        assertEquals(1, scheduler.getQueuedCount());
+
+        tickets.get(0).done();
+        // 重复调用不会多释放名额
+        tickets.get(0).done();
+
+        assertEquals(3, started.size());
+        assertEquals("c", started.get(2));
+        assertEquals(2, scheduler.getRunningCount());
+        assertEquals(0, scheduler.getQueuedCount());
+    }
+
+    /**
+     * 测试高优先级任务先执行，同一优先级保持提交顺序
+     */
+    @Test
+    public void testPriorityOrder() {
+        SyncScheduler.Scope scope = scheduler.newScope();
+        scheduler.submit(scope, SyncScheduler.PRIORITY_NORMAL, job("busy1"));
+        scheduler.submit(scope, SyncScheduler.PRIORITY_NORMAL, job("busy2"));
+        scheduler.submit(scope, SyncScheduler.PRIORITY_NORMAL, job("normal1"));
+        scheduler.submit(scope, SyncScheduler.PRIORITY_ACTIVE, job("active"));
+        scheduler.submit(scope, SyncScheduler.PRIORITY_NORMAL, job("normal2"));
+        scheduler.submit(scope, SyncScheduler.PRIORITY_FOCUSED, job("focused"));
+
+        tickets.get(0).done();
+        tickets.get(1).done();
+        tickets.get(2).done();
+        tickets.get(3).done();
+
+        assertEquals("focused", started.get(2));
+        assertEquals("active", started.get(3));
+        assertEquals("normal1", started.get(4));
+        assertEquals("normal2", started.get(5));
+    }
+
+    /**
+     * 测试取消范围：丢弃排队任务，释放在途任务的名额，之后提交的任务直接丢弃
+     */
+    @Test
+    public void testCancelScope() {
+        SyncScheduler.Scope screen = scheduler.newScope();
+        SyncScheduler.Scope other = scheduler.newScope();
+        scheduler.submit(screen, SyncScheduler.PRIORITY_NORMAL, job("s1"));
+        scheduler.submit(screen, SyncScheduler.PRIORITY_NORMAL, job("s2"));
+        scheduler.submit(screen, SyncScheduler.PRIORITY_FOCUSED, job("s3"));
+        scheduler.submit(other, SyncScheduler.PRIORITY_NORMAL, job("o1"));
+
+        screen.cancel();
+
+        assertTrue(screen.isCancelled());
+        assertTrue(tickets.get(0).isCancelled());
+        assertEquals(3, started.size());
+        assertEquals("o1", started.get(2));
+        assertEquals(1, scheduler.getRunningCount());
+        assertEquals(0, scheduler.getQueuedCount());
+
+        scheduler.submit(screen, SyncScheduler.PRIORITY_FOCUSED, job("s4"));
+        assertEquals(3, started.size());
+    }
+
+    /**
+     * 测试任务抛出异常时释放名额
+     */
+    @Test
+    public void testJobExceptionReleasesSlot() {
+        SyncScheduler.Scope scope = scheduler.newScope();
+        try {
+            scheduler.submit(scope, SyncScheduler.PRIORITY_NORMAL, ticket -> {
+                throw new IllegalStateException("boom");
+            });
+            fail("Expected exception");
+        } catch (IllegalStateException expected) {
+            // 预期异常
+        }
+
+        assertEquals(0, scheduler.getRunningCount());
+    }
+
+    /**
+     * 测试问题优先级：正在查看 > 进行中 > 其他，focus 引用计数
+     */
+    @Test
+    public void testPriorityOf() {
+        assertEquals(SyncScheduler.PRIORITY_NORMAL, scheduler.priorityOf(1L, QuestionStatus.PENDING));
+        assertEquals(SyncScheduler.PRIORITY_ACTIVE, scheduler.priorityOf(1L, QuestionStatus.IN_PROGRESS));
+
+        scheduler.focus(1L);
+        scheduler.focus(1L);
+        assertEquals(SyncScheduler.PRIORITY_FOCUSED, scheduler.priorityOf(1L, QuestionStatus.CLOSED));
+
+        scheduler.unfocus(1L);
+        assertEquals(SyncScheduler.PRIORITY_FOCUSED, scheduler.priorityOf(1L, QuestionStatus.CLOSED));
+
+        scheduler.unfocus(1L);
+        assertEquals(SyncScheduler.PRIORITY_NORMAL, scheduler.priorityOf(1L, QuestionStatus.CLOSED));
+    }
+
+    private SyncScheduler.Job job(String name) {
+        return ticket -> {
+            started.add(name);
+            tickets.add(ticket);
+        };
+    }
+}
@@ -0,0 +1,107 @@
+package com.dowdah.asknow.data.websocket;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * ConnectionQualityMonitor 单元测试
+ *
+ * 测试功能：
+ * - RTT 平滑值、平均偏差和探测超时
+ * - 连续丢失判定僵尸连接，超时后到达的回复被忽略
+ * - 按网络类型自适应调整保活间隔
+ */
+public class ConnectionQualityMonitorTest {
+
+    private ConnectionQualityMonitor monitor;
+
+    @Before
+    public void setUp() {
+        monitor = new ConnectionQualityMonitor(10_000, 25_000, 120_000, 3000, 1000, 10_000, 2);
+        monitor.reset(false);
+    }
+
+    /**
+     * 测试 RTT 估计和探测超时
+     */
+    @Test
+    public void testRttEstimate() {
+        assertFalse(monitor.snapshot().hasRtt());
+        assertEquals(3000, monitor.getProbeTimeoutMs());
+
+        probe(0, 200);
+        assertEquals(200, monitor.snapshot().getSmoothedRttMs());
+        assertEquals(100, monitor.snapshot().getRttVarianceMs());
+        // 200 + 4 * 100
+        assertEquals(1000, monitor.getProbeTimeoutMs());
+
+        probe(1000, 1000);
+        // rttvar += (|1000 - 200| - 100) / 4，srtt += (1000 - 200) / 8
+        assertEquals(275, monitor.snapshot().getRttVarianceMs());
+        assertEquals(300, monitor.snapshot().getSmoothedRttMs());
+        assertEquals(1400, monitor.getProbeTimeoutMs());
+    }
+
+    /**
+     * 测试连续丢失判定为僵尸连接
+     */
+    @Test
+    public void testConsecutiveLossesDetectZombie() {
+        String first = monitor.startProbe(0);
+        assertFalse(monitor.onProbeTimeout(first));
+        // 超时后才到达的回复不计入 RTT
+        assertFalse(monitor.onPong(first, 5000));
+
+        String second = monitor.startProbe(5000);
+        assertTrue(monitor.onProbeTimeout(second));
+        assertEquals(2, monitor.snapshot().getProbesLost());
+        assertTrue(monitor.snapshot().getLossRate() > 0.3);
+
+        // 中间有一次成功则重新计数
+        monitor.reset(false);
+        assertFalse(monitor.onProbeTimeout(monitor.startProbe(0)));
+        probe(100, 50);
+        assertFalse(monitor.onProbeTimeout(monitor.startProbe(200)));
+    }
+
+    /**
+     * 测试保活间隔：稳定时放大到网络类型的上限，丢失时减半，各网络类型分别记录
+     */
+    @Test
+    public void testKeepAliveAdaptsPerNetworkType() {
+        assertEquals(25_000, monitor.getKeepAliveIntervalMs());
+        for (int i = 0; i < 8; i++) {
+            probe(i * 1000L, 50);
+        }
+        // 蜂窝网络不超过上限
+        assertEquals(25_000, monitor.getKeepAliveIntervalMs());
+
+        monitor.reset(true);
+        assertEquals(25_000, monitor.getKeepAliveIntervalMs());
+        for (int i = 0; i < 40; i++) {
+            probe(i * 1000L, 20);
+        }
+        assertEquals(120_000, monitor.getKeepAliveIntervalMs());
+
+        monitor.onProbeTimeout(monitor.startProbe(0));
+        assertEquals(60_000, monitor.getKeepAliveIntervalMs());
+
+        // 蜂窝网络的间隔独立保存
+        monitor.onProbeTimeout(monitor.startProbe(0));
+        monitor.reset(false);
+        assertEquals(25_000, monitor.getKeepAliveIntervalMs());
+        monitor.onProbeTimeout(monitor.startProbe(0));
+        monitor.onProbeTimeout(monitor.startProbe(0));
+        assertEquals(10_000, monitor.getKeepAliveIntervalMs());
+
+        monitor.reset(true);
+        assertEquals(30_000, monitor.getKeepAliveIntervalMs());
+    }
+
+    private void probe(long sentAt, long rtt) {
+        String probeId = monitor.startProbe(sentAt);
+        assertTrue(monitor.onPong(probeId, sentAt + rtt));
+    }
+}
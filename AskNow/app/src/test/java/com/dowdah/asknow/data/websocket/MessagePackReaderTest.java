@@ -0,0 +1,197 @@
+package com.dowdah.asknow.data.websocket;
+
+import com.google.gson.stream.JsonToken;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * MessagePackReader 单元测试
+ *
+ * 测试功能：
+ * - 二进制帧与等价 JSON 帧解码结果一致，且体积更小
+ * - 整数各宽度、浮点数、嵌套容器的读取与跳过
+ * - 截断及不支持的格式被丢弃
+ *
+ * 二进制样本由 backend/ws_codec.py 的 packb 生成，JSON 样本为同一消息的紧凑 JSON。
+ */
+public class MessagePackReaderTest {
+
+    private static final String NEW_QUESTION_JSON = "{\"type\":\"NEW_QUESTION\",\"data\":{\"questionId\":9,\"userId\":2,"
+        + "\"tutorId\":null,\"content\":\"二次函数的顶点怎么求？\",\"imagePaths\":[\"/uploads/a.jpg\",\"/uploads/b.jpg\"],"
+        + "\"status\":\"pending\",\"createdAt\":1700000000000,\"updatedAt\":1700000000000},"
+        + "\"timestamp\":\"1700000000001\",\"seq\":70000}";
+    private static final String NEW_QUESTION_MSGPACK = "84a474797065ac4e45575f5155455354494f4ea46461746188aa7175657374696f6e"
+        + "496409a675736572496402a77475746f724964c0a7636f6e74656e74d921e4ba8ce6aca1e587bde695b0e79a84e9a1b6e782b9e6808e"
+        + "e4b988e6b182efbc9faa696d616765506174687392ae2f75706c6f6164732f612e6a7067ae2f75706c6f6164732f622e6a7067a67374"
+        + "61747573a770656e64696e67a9637265617465644174cf0000018bcfe56800a9757064617465644174cf0000018bcfe56800a974696d"
+        + "657374616d70ad31373030303030303030303031a3736571ce00011170";
+
+    private static final String CHAT_MESSAGE_JSON = "{\"type\":\"CHAT_MESSAGE\",\"data\":{\"id\":42,\"questionId\":7,"
+        + "\"senderId\":3,\"content\":\"hello\",\"messageType\":\"image\",\"createdAt\":1700000000000,\"isRead\":true},"
+        + "\"timestamp\":\"1700000000001\",\"seq\":1}";
+    private static final String CHAT_MESSAGE_MSGPACK = "84a474797065ac434841545f4d455353414745a46461746187a269642aaa717565"
+        + "7374696f6e496407a873656e646572496403a7636f6e74656e74a568656c6c6fab6d65737361676554797065a5696d616765a9637265"
+        + "617465644174cf0000018bcfe56800a6697352656164c3a974696d657374616d70ad31373030303030303030303031a373657101";
+
+    /**
+     * ACK 帧，data.extra 为未知字段（含浮点数、负数、nil、空数组）
+     */
+    private static final String ACK_JSON = "{\"type\":\"ACK\",\"messageId\":\"c-1\",\"data\":{\"status\":\"ok\","
+        + "\"message\":{\"id\":300,\"questionId\":7,\"senderId\":3,\"content\":\"hi\",\"messageType\":\"text\","
+        + "\"createdAt\":1700000000000,\"isRead\":false},\"extra\":{\"nested\":[1.5,-40,null,{\"a\":[]}]}}}";
+    private static final String ACK_MSGPACK = "83a474797065a341434ba96d6573736167654964a3632d31a46461746183a67374617475"
+        + "73a26f6ba76d65737361676587a26964cd012caa7175657374696f6e496407a873656e646572496403a7636f6e74656e74a26869ab6d"
+        + "65737361676554797065a474657874a9637265617465644174cf0000018bcfe56800a6697352656164c2a5657874726181a66e657374"
+        + "656494cb3ff8000000000000d0d8c081a16190";
+
+    /**
+     * data 出现在 type 之前，走暂存为树的兜底路径
+     */
+    private static final String DATA_FIRST_MSGPACK = "82a46461746183aa7175657374696f6e496409a6737461747573a6636c6f736564"
+        + "a9757064617465644174cf0000018bcfe56800a474797065b05155455354494f4e5f55504441544544";
+
+    private final WebSocketFrameDecoder decoder = new WebSocketFrameDecoder();
+
+    /**
+     * 测试新问题帧：二进制与 JSON 解码结果一致
+     */
+    @Test
+    public void testNewQuestion_MatchesJson() {
+        WebSocketFrame json = decoder.decode(NEW_QUESTION_JSON);
+        WebSocketFrame binary = decoder.decodeBinary(hex(NEW_QUESTION_MSGPACK));
+
+        assertNotNull(json);
+        assertNotNull(binary);
+        assertEquals(json.getType(), binary.getType());
+        assertEquals(json.getTimestamp(), binary.getTimestamp());
+        assertEquals(70000L, binary.getSeq());
+
+        QuestionPayload expected = json.getQuestion();
+        QuestionPayload actual = binary.getQuestion();
+        assertEquals(expected.getQuestionId(), actual.getQuestionId());
+        assertEquals(expected.getUserId(), actual.getUserId());
+        assertNull(actual.getTutorId());
+        assertEquals("二次函数的顶点怎么求？", actual.getContent());
+        assertEquals(expected.getImagePathsJson(), actual.getImagePathsJson());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(1700000000000L, actual.getCreatedAt());
+    }
+
+    /**
+     * 测试聊天消息帧：二进制与 JSON 解码结果一致
+     */
+    @Test
+    public void testChatMessage_MatchesJson() {
+        ChatMessagePayload expected = decoder.decode(CHAT_MESSAGE_JSON).getChatMessage();
+        ChatMessagePayload actual = decoder.decodeBinary(hex(CHAT_MESSAGE_MSGPACK)).getChatMessage();
+
+        assertNotNull(actual);
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getQuestionId(), actual.getQuestionId());
+        assertEquals(expected.getSenderId(), actual.getSenderId());
+        assertEquals(expected.getContent(), actual.getContent());
+        assertEquals(expected.getMessageType(), actual.getMessageType());
+        assertEquals(expected.getCreatedAtOr(0L), actual.getCreatedAtOr(0L));
+        assertTrue(actual.isRead());
+    }
+
+    /**
+     * 测试 ACK 帧：嵌套消息被解码，未知字段被跳过
+     */
+    @Test
+    public void testAck_SkipsUnknownFields() {
+        WebSocketFrame frame = decoder.decodeBinary(hex(ACK_MSGPACK));
+
+        assertNotNull(frame);
+        assertEquals("c-1", frame.getMessageId());
+        AckPayload ack = frame.getAck();
+        assertNotNull(ack);
+        assertTrue(ack.isOk());
+        assertEquals(300L, ack.getMessage().getId());
+        assertEquals(decoder.decode(ACK_JSON).getAck().getMessage().getContent(), ack.getMessage().getContent());
+    }
+
+    /**
+     * 测试 data 在 type 之前的二进制帧
+     */
+    @Test
+    public void testDataBeforeType() {
+        WebSocketFrame frame = decoder.decodeBinary(hex(DATA_FIRST_MSGPACK));
+
+        assertNotNull(frame);
+        assertEquals("closed", frame.getQuestion().getStatus());
+        assertEquals(1700000000000L, frame.getQuestion().getUpdatedAtOr(0L));
+    }
+
+    /**
+     * 测试二进制帧比等价的 JSON 帧小
+     */
+    @Test
+    public void testBinaryIsSmallerThanJson() {
+        assertTrue(hex(NEW_QUESTION_MSGPACK).length < NEW_QUESTION_JSON.getBytes(StandardCharsets.UTF_8).length);
+        assertTrue(hex(CHAT_MESSAGE_MSGPACK).length < CHAT_MESSAGE_JSON.getBytes(StandardCharsets.UTF_8).length);
+        assertTrue(hex(ACK_MSGPACK).length < ACK_JSON.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    /**
+     * 测试各宽度整数与浮点数
+     */
+    @Test
+    public void testNumbers() throws IOException {
+        // [1, -1, 300, -300, 2^40, 1.5, nil, true, "12"]
+        MessagePackReader reader = new MessagePackReader(hex("9901ffcd012cd1fed4cf0000010000000000cb3ff8000000000000c0c3a23132"));
+
+        reader.beginArray();
+        assertEquals(1, reader.nextInt());
+        assertEquals(-1L, reader.nextLong());
+        assertEquals("300", reader.nextString());
+        assertEquals(-300.0, reader.nextDouble(), 0.0);
+        assertEquals(1L << 40, reader.nextLong());
+        assertEquals(JsonToken.NUMBER, reader.peek());
+        try {
+            reader.nextLong();
+            fail("1.5 is not a long");
+        } catch (NumberFormatException expected) {
+            // 与 JsonReader 一致
+        }
+        // 转换失败时不消耗该值，可以改用 nextDouble 读取
+        assertEquals(1.5, reader.nextDouble(), 0.0);
+        reader.nextNull();
+        assertTrue(reader.nextBoolean());
+        assertEquals(12L, reader.nextLong());
+        assertFalse(reader.hasNext());
+        reader.endArray();
+        assertEquals(JsonToken.END_DOCUMENT, reader.peek());
+    }
+
+    /**
+     * 测试截断帧和不支持的格式被丢弃
+     */
+    @Test
+    public void testMalformed() {
+        byte[] full = hex(CHAT_MESSAGE_MSGPACK);
+        byte[] truncated = new byte[full.length - 5];
+        System.arraycopy(full, 0, truncated, 0, truncated.length);
+
+        assertNull(decoder.decodeBinary(truncated));
+        assertNull(decoder.decodeBinary(new byte[0]));
+        assertNull(decoder.decodeBinary(null));
+        // 顶层为 bin 类型
+        assertNull(decoder.decodeBinary(hex("c40101")));
+        // 顶层为数组而不是 map
+        assertNull(decoder.decodeBinary(hex("9101")));
+    }
+
+    private static byte[] hex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,78 @@
+package com.dowdah.asknow.data.websocket;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * ReconnectBackoff 单元测试
+ *
+ * 测试功能：
+ * - 延迟始终落在 [base, cap] 区间内
+ * - 重置后回到最小延迟附近
+ * - 不同客户端的重连时间相互分散
+ */
+public class ReconnectBackoffTest {
+
+    private static final long BASE = 1000;
+    private static final long CAP = 30000;
+
+    /**
+     * 测试延迟范围及每次不超过上次延迟的三倍
+     */
+    @Test
+    public void testDelayStaysWithinBounds() {
+        ReconnectBackoff backoff = new ReconnectBackoff(BASE, CAP, new Random(42));
+        long previous = BASE;
+        for (int i = 0; i < 1000; i++) {
+            long delay = backoff.nextDelayMs();
+            assertTrue("delay " + delay + " below base", delay >= BASE);
+            assertTrue("delay " + delay + " above cap", delay <= CAP);
+            assertTrue("delay " + delay + " grew too fast", delay <= previous * 3);
+            previous = delay;
+        }
+        assertEquals(1000, backoff.getAttempts());
+    }
+
+    /**
+     * 测试重置后从最小延迟重新开始
+     */
+    @Test
+    public void testReset() {
+        ReconnectBackoff backoff = new ReconnectBackoff(BASE, CAP, new Random(7));
+        for (int i = 0; i < 20; i++) {
+            backoff.nextDelayMs();
+        }
+        backoff.reset();
+        assertEquals(0, backoff.getAttempts());
+        assertTrue(backoff.nextDelayMs() <= BASE * 3);
+    }
+
+    /**
+     * 测试同时断线的多个客户端第一次重连时间不会集中在同一时刻
+     */
+    @Test
+    public void testClientsSpreadOut() {
+        Random seeds = new Random(1);
+        Set<Long> secondBuckets = new HashSet<>();
+        for (int client = 0; client < 200; client++) {
+            ReconnectBackoff backoff = new ReconnectBackoff(BASE, CAP, new Random(seeds.nextLong()));
+            backoff.nextDelayMs();
+            secondBuckets.add(backoff.nextDelayMs() / 1000);
+        }
+        // 第二次重连分布在多个不同的秒内
+        assertTrue(secondBuckets.size() >= 5);
+    }
+
+    /**
+     * 测试非法参数
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRange() {
+        new ReconnectBackoff(5000, 1000, new Random());
+    }
+}
@@ -0,0 +1,139 @@
+package com.dowdah.asknow.data.websocket;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * WebSocketEventBus 单元测试
+ *
+ * 测试功能：
+ * - 同一投递周期内的多帧全部按顺序投递（不像 postValue 那样合并）
+ * - 多个订阅者互不影响
+ * - 缓冲区溢出策略及计数
+ * - 新消息通知合并为问题ID集合
+ */
+public class WebSocketEventBusTest {
+
+    /**
+     * 手动执行的投递线程池，模拟主线程消息队列
+     */
+    private final ArrayDeque<Runnable> mainQueue = new ArrayDeque<>();
+    private WebSocketEventBus bus;
+
+    @Before
+    public void setUp() {
+        mainQueue.clear();
+        bus = new WebSocketEventBus(mainQueue::add);
+    }
+
+    /**
+     * 测试主线程处理之前到达的多批帧全部按顺序投递给每个订阅者
+     */
+    @Test
+    public void testFramesDeliveredInOrderToAllSubscribers() {
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        bus.subscribeFrames(16, WebSocketEventBus.OverflowPolicy.DROP_OLDEST, f -> first.add(f.getMessageId()));
+        bus.subscribeFrames(16, WebSocketEventBus.OverflowPolicy.DROP_OLDEST, f -> second.add(f.getMessageId()));
+
+        bus.publishFrames(Arrays.asList(frame("a"), frame("b")));
+        bus.publishFrames(Arrays.asList(frame("c")));
+        runMainQueue();
+
+        assertEquals(Arrays.asList("a", "b", "c"), first);
+        assertEquals(Arrays.asList("a", "b", "c"), second);
+        assertEquals(3, bus.getPublishedCount());
+        assertEquals(6, bus.getDeliveredCount());
+        assertEquals(0, bus.getDroppedCount());
+    }
+
+    /**
+     * 测试 DROP_OLDEST 溢出时保留最新的帧
+     */
+    @Test
+    public void testDropOldest() {
+        List<String> received = new ArrayList<>();
+        WebSocketEventBus.Subscription subscription = bus.subscribeFrames(2,
+            WebSocketEventBus.OverflowPolicy.DROP_OLDEST, f -> received.add(f.getMessageId()));
+
+        bus.publishFrames(Arrays.asList(frame("a"), frame("b"), frame("c"), frame("d")));
+        runMainQueue();
+
+        assertEquals(Arrays.asList("c", "d"), received);
+        assertEquals(2, subscription.getDeliveredCount());
+        assertEquals(2, subscription.getDroppedCount());
+        assertEquals(2, bus.getDroppedCount());
+    }
+
+    /**
+     * 测试 DROP_NEWEST 溢出时保留已缓冲的帧
+     */
+    @Test
+    public void testDropNewest() {
+        List<String> received = new ArrayList<>();
+        WebSocketEventBus.Subscription subscription = bus.subscribeFrames(2,
+            WebSocketEventBus.OverflowPolicy.DROP_NEWEST, f -> received.add(f.getMessageId()));
+
+        bus.publishFrames(Arrays.asList(frame("a"), frame("b"), frame("c")));
+        runMainQueue();
+
+        assertEquals(Arrays.asList("a", "b"), received);
+        assertEquals(1, subscription.getDroppedCount());
+    }
+
+    /**
+     * 测试取消订阅后不再投递，已缓冲的帧被丢弃
+     */
+    @Test
+    public void testCancel() {
+        List<String> received = new ArrayList<>();
+        WebSocketEventBus.Subscription subscription = bus.subscribeFrames(8,
+            WebSocketEventBus.OverflowPolicy.DROP_OLDEST, f -> received.add(f.getMessageId()));
+
+        bus.publishFrames(Arrays.asList(frame("a")));
+        subscription.cancel();
+        bus.publishFrames(Arrays.asList(frame("b")));
+        runMainQueue();
+
+        assertTrue(received.isEmpty());
+    }
+
+    /**
+     * 测试投递前到达的多次新消息通知合并为一个问题ID集合
+     */
+    @Test
+    public void testNewMessagesCompacted() {
+        List<Set<Long>> received = new ArrayList<>();
+        bus.subscribeNewMessages(ids -> received.add(new HashSet<>(ids)));
+
+        bus.publishNewMessages(new HashSet<>(Arrays.asList(1L, 2L)));
+        bus.publishNewMessages(new HashSet<>(Arrays.asList(2L, 3L)));
+        runMainQueue();
+        bus.publishNewMessages(new HashSet<>(Arrays.asList(4L)));
+        runMainQueue();
+
+        assertEquals(2, received.size());
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L, 3L)), received.get(0));
+        assertEquals(new HashSet<>(Arrays.asList(4L)), received.get(1));
+    }
+
+    private void runMainQueue() {
+        Runnable task;
+        while ((task = mainQueue.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static WebSocketFrame frame(String messageId) {
+        return new WebSocketFrame("CHAT_MESSAGE", messageId, null, null);
+    }
+}
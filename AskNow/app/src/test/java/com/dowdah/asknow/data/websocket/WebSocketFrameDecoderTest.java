@@ -0,0 +1,214 @@
+package com.dowdah.asknow.data.websocket;
+
+import com.dowdah.asknow.constants.enums.MessageType;
+import com.dowdah.asknow.constants.enums.WebSocketMessageType;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * WebSocketFrameDecoder 单元测试
+ *
+ * 测试功能：
+ * - 各消息类型到类型化载荷的映射
+ * - 必填字段校验
+ * - 非法帧丢弃
+ */
+public class WebSocketFrameDecoderTest {
+
+    private final WebSocketFrameDecoder decoder = new WebSocketFrameDecoder();
+
+    /**
+     * 测试后端格式的聊天消息（data.id）
+     */
+    @Test
+    public void testDecodeChatMessage() {
+        WebSocketFrame frame = decoder.decode("{\"type\":\"CHAT_MESSAGE\",\"data\":{\"id\":42,\"questionId\":7,"
+            + "\"senderId\":3,\"content\":\"hello\",\"messageType\":\"image\",\"createdAt\":1700000000000,"
+            + "\"isRead\":true},\"timestamp\":\"1700000000001\"}");
+
+        assertNotNull(frame);
+        assertEquals(WebSocketMessageType.CHAT_MESSAGE, frame.getType());
+        assertEquals("1700000000001", frame.getTimestamp());
+        assertNull(frame.getQuestion());
+
+        ChatMessagePayload payload = frame.getChatMessage();
+        assertNotNull(payload);
+        assertEquals(42L, payload.getId());
+        assertEquals(7L, payload.getQuestionId());
+        assertEquals(3L, payload.getSenderId());
+        assertEquals("hello", payload.getContent());
+        assertEquals(MessageType.IMAGE, payload.getMessageType());
+        assertEquals(1700000000000L, payload.getCreatedAtOr(0L));
+        assertTrue(payload.isRead());
+    }
+
+    /**
+     * 测试客户端转发格式（data.messageId）及默认值
+     */
+    @Test
+    public void testDecodeChatMessage_ForwardedFormatAndDefaults() {
+        WebSocketFrame frame = decoder.decode("{\"type\":\"CHAT_MESSAGE\",\"data\":{\"messageId\":\"15\","
+            + "\"questionId\":7,\"senderId\":3,\"content\":\"hi\",\"messageType\":null}}");
+
+        assertNotNull(frame);
+        ChatMessagePayload payload = frame.getChatMessage();
+        assertNotNull(payload);
+        assertEquals(15L, payload.getId());
+        assertEquals(MessageType.TEXT, payload.getMessageType());
+        assertEquals(99L, payload.getCreatedAtOr(99L));
+        assertFalse(payload.isRead());
+    }
+
+    /**
+     * 测试聊天消息缺少必填字段时被丢弃
+     */
+    @Test
+    public void testDecodeChatMessage_MissingRequiredField() {
+        assertNull(decoder.decode("{\"type\":\"CHAT_MESSAGE\",\"data\":{\"questionId\":7,\"senderId\":3,\"content\":\"x\"}}"));
+        assertNull(decoder.decode("{\"type\":\"CHAT_MESSAGE\",\"data\":{\"id\":1,\"senderId\":3,\"content\":\"x\"}}"));
+        assertNull(decoder.decode("{\"type\":\"CHAT_MESSAGE\",\"data\":{\"id\":1,\"questionId\":7,\"content\":\"x\"}}"));
+        assertNull(decoder.decode("{\"type\":\"CHAT_MESSAGE\",\"data\":{\"id\":1,\"questionId\":7,\"senderId\":3,\"content\":null}}"));
+        assertNull(decoder.decode("{\"type\":\"CHAT_MESSAGE\",\"data\":null}"));
+        assertNull(decoder.decode("{\"type\":\"CHAT_MESSAGE\"}"));
+    }
+
+    /**
+     * 测试新问题消息，imagePaths 直接转换为 JSON 字符串
+     */
+    @Test
+    public void testDecodeNewQuestion() {
+        WebSocketFrame frame = decoder.decode("{\"type\":\"NEW_QUESTION\",\"data\":{\"questionId\":9,\"userId\":2,"
+            + "\"tutorId\":null,\"content\":\"q\",\"imagePaths\":[\"/uploads/a.jpg\",\"/uploads/b.jpg\"],"
+            + "\"status\":\"pending\",\"createdAt\":100,\"updatedAt\":100}}");
+
+        assertNotNull(frame);
+        QuestionPayload payload = frame.getQuestion();
+        assertNotNull(payload);
+        assertEquals(9L, payload.getQuestionId());
+        assertEquals(2L, payload.getUserId());
+        assertNull(payload.getTutorId());
+        assertEquals("q", payload.getContent());
+        assertEquals("[\"/uploads/a.jpg\",\"/uploads/b.jpg\"]", payload.getImagePathsJson());
+        assertEquals("pending", payload.getStatus());
+        assertEquals(100L, payload.getCreatedAt());
+    }
+
+    /**
+     * 测试空的 imagePaths 数组视为没有图片
+     */
+    @Test
+    public void testDecodeNewQuestion_EmptyImagePaths() {
+        WebSocketFrame frame = decoder.decode("{\"type\":\"NEW_QUESTION\",\"data\":{\"questionId\":9,\"userId\":2,"
+            + "\"content\":\"q\",\"imagePaths\":[],\"status\":\"pending\",\"createdAt\":100}}");
+
+        assertNotNull(frame);
+        assertNull(frame.getQuestion().getImagePathsJson());
+    }
+
+    /**
+     * 测试新问题消息缺少必填字段时被丢弃
+     */
+    @Test
+    public void testDecodeNewQuestion_MissingRequiredField() {
+        assertNull(decoder.decode("{\"type\":\"NEW_QUESTION\",\"data\":{\"questionId\":9,\"content\":\"q\","
+            + "\"status\":\"pending\",\"createdAt\":100}}"));
+    }
+
+    /**
+     * 测试问题更新消息的可选字段
+     */
+    @Test
+    public void testDecodeQuestionUpdated() {
+        WebSocketFrame frame = decoder.decode("{\"type\":\"QUESTION_UPDATED\",\"data\":{\"questionId\":9,"
+            + "\"tutorId\":5,\"status\":\"in_progress\"}}");
+
+        assertNotNull(frame);
+        QuestionPayload payload = frame.getQuestion();
+        assertNotNull(payload);
+        assertEquals(Long.valueOf(5L), payload.getTutorId());
+        assertEquals("in_progress", payload.getStatus());
+        assertNull(payload.getContent());
+        assertEquals(123L, payload.getUpdatedAtOr(123L));
+
+        // 缺少 status
+        assertNull(decoder.decode("{\"type\":\"QUESTION_UPDATED\",\"data\":{\"questionId\":9}}"));
+    }
+
+    /**
+     * 测试 data 出现在 type 之前的帧
+     */
+    @Test
+    public void testDecode_DataBeforeType() {
+        WebSocketFrame frame = decoder.decode("{\"data\":{\"questionId\":9,\"status\":\"closed\"},"
+            + "\"type\":\"QUESTION_UPDATED\"}");
+
+        assertNotNull(frame);
+        assertEquals("closed", frame.getQuestion().getStatus());
+    }
+
+    /**
+     * 测试 data 出现在 type 之前且格式错误的帧被丢弃，不向调用方抛出异常
+     */
+    @Test
+    public void testDecode_MalformedDataBeforeType() {
+        assertNull(decoder.decode("{\"data\":{\"questionId\":9,\"status\" \"closed\"},"
+            + "\"type\":\"QUESTION_UPDATED\"}"));
+        assertNull(decoder.decode("{\"data\":{\"questionId\":9,"));
+    }
+
+    /**
+     * 测试 ACK 及未知类型的帧（无载荷，未知字段被跳过）
+     */
+    @Test
+    public void testDecodeAckAndUnknownType() {
+        WebSocketFrame ack = decoder.decode("{\"type\":\"ACK\",\"messageId\":\"abc\",\"timestamp\":\"1\"}");
+        assertNotNull(ack);
+        assertEquals("abc", ack.getMessageId());
+        assertNull(ack.getChatMessage());
+        assertNull(ack.getQuestion());
+
+        WebSocketFrame unknown = decoder.decode("{\"type\":\"SOMETHING_NEW\",\"data\":{\"nested\":[1,{\"a\":2}]},\"extra\":true}");
+        assertNotNull(unknown);
+        assertEquals("SOMETHING_NEW", unknown.getType());
+    }
+
+    /**
+     * 测试事件序号和重连握手帧
+     */
+    @Test
+    public void testDecodeSeqAndResume() {
+        WebSocketFrame event = decoder.decode("{\"type\":\"QUESTION_UPDATED\",\"data\":{\"questionId\":9,"
+            + "\"status\":\"closed\"},\"seq\":1024}");
+        assertNotNull(event);
+        assertEquals(1024L, event.getSeq());
+
+        WebSocketFrame resume = decoder.decode("{\"type\":\"RESUME\",\"data\":{\"mode\":\"snapshot\","
+            + "\"epoch\":\"3f9a1c0b2d4e\",\"seq\":1030,\"count\":6}}");
+        assertNotNull(resume);
+        assertEquals(0L, resume.getSeq());
+        ResumePayload payload = resume.getResume();
+        assertNotNull(payload);
+        assertTrue(payload.isSnapshot());
+        assertEquals("3f9a1c0b2d4e", payload.getEpoch());
+        assertEquals(1030L, payload.getSeq());
+        assertEquals(6, payload.getCount());
+
+        // 缺少 epoch
+        assertNull(decoder.decode("{\"type\":\"RESUME\",\"data\":{\"mode\":\"delta\",\"seq\":1}}"));
+    }
+
+    /**
+     * 测试非法帧被丢弃
+     */
+    @Test
+    public void testDecodeMalformed() {
+        assertNull(decoder.decode(null));
+        assertNull(decoder.decode(""));
+        assertNull(decoder.decode("not json"));
+        assertNull(decoder.decode("{\"type\":\"CHAT_MESSAGE\",\"data\":{\"id\":"));
+        assertNull(decoder.decode("{\"data\":{}}"));
+        assertNull(decoder.decode("{\"type\":\"CHAT_MESSAGE\",\"data\":{\"id\":\"abc\",\"questionId\":7,\"senderId\":3,\"content\":\"x\"}}"));
+    }
+}
@@ -0,0 +1,93 @@
+package com.dowdah.asknow.data.websocket;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * WebSocketHandlerRegistry 单元测试
+ *
+ * 测试功能：
+ * - 按类型分发
+ * - 角色过滤
+ * - 调用次数、失败次数和耗时统计
+ */
+public class WebSocketHandlerRegistryTest {
+
+    /**
+     * 测试按类型分发并统计调用次数
+     */
+    @Test
+    public void testDispatchByType() {
+        WebSocketHandlerRegistry registry = new WebSocketHandlerRegistry();
+        AtomicInteger calls = new AtomicInteger();
+        registry.register("CHAT_MESSAGE", (frame, result) -> calls.incrementAndGet());
+
+        assertTrue(registry.dispatch(frame("CHAT_MESSAGE"), "student", new WebSocketBatchResult()));
+        assertTrue(registry.dispatch(frame("CHAT_MESSAGE"), "tutor", new WebSocketBatchResult()));
+        assertFalse(registry.dispatch(frame("NEW_ANSWER"), "student", new WebSocketBatchResult()));
+
+        assertEquals(2, calls.get());
+        assertEquals(2L, registry.getStats("CHAT_MESSAGE").getInvocations());
+        assertEquals(1L, registry.getUnhandledCount());
+        assertNull(registry.getStats("NEW_ANSWER"));
+    }
+
+    /**
+     * 测试登记时声明的角色过滤
+     */
+    @Test
+    public void testRoleFilter() {
+        WebSocketHandlerRegistry registry = new WebSocketHandlerRegistry();
+        AtomicInteger calls = new AtomicInteger();
+        registry.register("NEW_QUESTION", (frame, result) -> calls.incrementAndGet(), "tutor");
+
+        assertFalse(registry.dispatch(frame("NEW_QUESTION"), "student", new WebSocketBatchResult()));
+        assertFalse(registry.dispatch(frame("NEW_QUESTION"), null, new WebSocketBatchResult()));
+        assertTrue(registry.dispatch(frame("NEW_QUESTION"), "tutor", new WebSocketBatchResult()));
+
+        assertEquals(1, calls.get());
+        assertEquals(2L, registry.getUnhandledCount());
+    }
+
+    /**
+     * 测试处理器异常被捕获并计入失败次数
+     */
+    @Test
+    public void testHandlerFailureIsCounted() {
+        WebSocketHandlerRegistry registry = new WebSocketHandlerRegistry();
+        registry.register("QUESTION_UPDATED", (frame, result) -> {
+            throw new IllegalStateException("boom");
+        });
+
+        assertTrue(registry.dispatch(frame("QUESTION_UPDATED"), "tutor", new WebSocketBatchResult()));
+
+        WebSocketHandlerRegistry.HandlerStats stats = registry.getStats("QUESTION_UPDATED");
+        assertEquals(1L, stats.getInvocations());
+        assertEquals(1L, stats.getFailures());
+        long total = 0;
+        for (long count : stats.getHistogram()) {
+            total += count;
+        }
+        assertEquals(1L, total);
+    }
+
+    /**
+     * 测试耗时直方图分桶
+     */
+    @Test
+    public void testLatencyBuckets() {
+        assertEquals(0, WebSocketHandlerRegistry.HandlerStats.bucketOf(0));
+        assertEquals(1, WebSocketHandlerRegistry.HandlerStats.bucketOf(1));
+        assertEquals(2, WebSocketHandlerRegistry.HandlerStats.bucketOf(3));
+        assertEquals(11, WebSocketHandlerRegistry.HandlerStats.bucketOf(1024));
+        assertEquals(WebSocketHandlerRegistry.LATENCY_BUCKETS - 1,
+            WebSocketHandlerRegistry.HandlerStats.bucketOf(Long.MAX_VALUE));
+    }
+
+    private static WebSocketFrame frame(String type) {
+        return new WebSocketFrame(type, null, null, null);
+    }
+}
@@ -0,0 +1,249 @@
+package com.dowdah.asknow.data.websocket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * WebSocketIngestQueue 单元测试
+ *
+ * 测试功能：
+ * - 窗口内的帧合并为一批
+ * - 达到最大批量时立即处理，积压的帧按最大批量分批
+ * - clear 丢弃未处理的帧
+ * - 队列满时合并同一问题的状态更新，无法合并时溢出并回调
+ * - 深度、延迟和溢出统计
+ */
+public class WebSocketIngestQueueTest {
+
+    private ScheduledExecutorService executor;
+    private List<List<WebSocketFrame>> batches;
+    private List<Integer> overflows;
+    private final WebSocketFrameDecoder decoder = new WebSocketFrameDecoder();
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        batches = new CopyOnWriteArrayList<>();
+        overflows = new CopyOnWriteArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 测试窗口内的多帧合并为一批，并保持到达顺序
+     */
+    @Test
+    public void testFramesWithinWindowAreBatched() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        WebSocketIngestQueue queue = new WebSocketIngestQueue(executor, 100, 64, 256, batch -> {
+            batches.add(batch);
+            latch.countDown();
+        }, overflows::add);
+
+        for (int i = 0; i < 5; i++) {
+            queue.enqueue(frame("f" + i));
+        }
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals(1, batches.size());
+        assertEquals(5, batches.get(0).size());
+        assertEquals("f0", batches.get(0).get(0).getMessageId());
+        assertEquals("f4", batches.get(0).get(4).getMessageId());
+    }
+
+    /**
+     * 测试达到最大批量时不等待窗口结束
+     */
+    @Test
+    public void testFullBatchFlushesImmediately() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        WebSocketIngestQueue queue = new WebSocketIngestQueue(executor, 60_000, 3, 256, batch -> {
+            batches.add(batch);
+            latch.countDown();
+        }, overflows::add);
+
+        queue.enqueue(frame("a"));
+        queue.enqueue(frame("b"));
+        queue.enqueue(frame("c"));
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals(3, batches.get(0).size());
+    }
+
+    /**
+     * 测试积压超过最大批量时按顺序分成多批，每批不超过最大批量
+     */
+    @Test
+    public void testBacklogSplitIntoBoundedBatches() throws Exception {
+        CountDownLatch gate = blockExecutor();
+        CountDownLatch latch = new CountDownLatch(3);
+        WebSocketIngestQueue queue = new WebSocketIngestQueue(executor, 60_000, 3, 16, batch -> {
+            batches.add(batch);
+            latch.countDown();
+        }, overflows::add);
+
+        queue.enqueue(update(9L, "pending"));
+        for (int i = 0; i < 4; i++) {
+            queue.enqueue(frame("f" + i));
+        }
+        queue.enqueue(update(10L, "pending"));
+        queue.enqueue(frame("f4"));
+        assertEquals(7, queue.getDepth());
+
+        gate.countDown();
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals(3, batches.size());
+        assertEquals(3, batches.get(0).size());
+        assertEquals(3, batches.get(1).size());
+        assertEquals(1, batches.get(2).size());
+        assertEquals("f2", batches.get(1).get(0).getMessageId());
+        assertEquals(10L, batches.get(1).get(2).getQuestion().getQuestionId());
+        assertEquals("f4", batches.get(2).get(0).getMessageId());
+    }
+
+    /**
+     * 测试 clear 后未处理的帧不再交付
+     */
+    @Test
+    public void testClearDropsPendingFrames() throws Exception {
+        WebSocketIngestQueue queue = new WebSocketIngestQueue(executor, 50, 64, 256, batches::add, overflows::add);
+
+        queue.enqueue(frame("a"));
+        queue.clear();
+
+        Thread.sleep(200);
+        assertTrue(batches.isEmpty());
+    }
+
+    /**
+     * 测试队列满时新的状态更新替换同一问题的待处理更新，保持原位置
+     */
+    @Test
+    public void testSupersededUpdateCollapsedWhenFull() throws Exception {
+        CountDownLatch gate = blockExecutor();
+        CountDownLatch latch = new CountDownLatch(1);
+        WebSocketIngestQueue queue = new WebSocketIngestQueue(executor, 60_000, 4, 4, batch -> {
+            batches.add(batch);
+            latch.countDown();
+        }, overflows::add);
+
+        queue.enqueue(update(9L, "pending"));
+        queue.enqueue(frame("a"));
+        queue.enqueue(frame("b"));
+        queue.enqueue(frame("c"));
+        queue.enqueue(update(9L, "in_progress"));
+        queue.enqueue(update(9L, "closed"));
+
+        assertEquals(4, queue.getDepth());
+        assertEquals(2, queue.getCollapsedCount());
+        assertTrue(overflows.isEmpty());
+
+        gate.countDown();
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        List<WebSocketFrame> batch = batches.get(0);
+        assertEquals(4, batch.size());
+        assertEquals("closed", batch.get(0).getQuestion().getStatus());
+        assertEquals("a", batch.get(1).getMessageId());
+    }
+
+    /**
+     * 测试队列满且无法合并时丢弃所有待处理的帧并回调溢出
+     */
+    @Test
+    public void testOverflowDropsPendingAndNotifies() throws Exception {
+        CountDownLatch gate = blockExecutor();
+        WebSocketIngestQueue queue = new WebSocketIngestQueue(executor, 60_000, 3, 3, batches::add, overflows::add);
+
+        queue.enqueue(update(9L, "pending"));
+        queue.enqueue(frame("a"));
+        queue.enqueue(frame("b"));
+        // 其他问题的更新无法合并
+        queue.enqueue(update(10L, "pending"));
+
+        assertEquals(1, overflows.size());
+        assertEquals(4, overflows.get(0).intValue());
+        assertEquals(0, queue.getDepth());
+        assertEquals(1, queue.getOverflowCount());
+        assertEquals(4, queue.getDroppedCount());
+
+        // 溢出后继续正常接收
+        queue.enqueue(frame("c"));
+        assertEquals(1, queue.getDepth());
+
+        gate.countDown();
+        Thread.sleep(200);
+        // 丢弃的帧不再交付
+        assertEquals(1, batches.size());
+        assertEquals(1, batches.get(0).size());
+        assertEquals("c", batches.get(0).get(0).getMessageId());
+    }
+
+    /**
+     * 测试深度和入队到提交的延迟统计
+     */
+    @Test
+    public void testDepthAndLatencyMetrics() throws Exception {
+        CountDownLatch gate = blockExecutor();
+        CountDownLatch latch = new CountDownLatch(1);
+        WebSocketIngestQueue queue = new WebSocketIngestQueue(executor, 60_000, 3, 16, batch -> {
+            batches.add(batch);
+            latch.countDown();
+        }, overflows::add);
+
+        queue.enqueue(frame("a"));
+        queue.enqueue(frame("b"));
+        queue.enqueue(frame("c"));
+        queue.enqueue(frame("d"));
+        assertEquals(4, queue.getDepth());
+
+        Thread.sleep(50);
+        gate.countDown();
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        // 统计在回调返回后记录，等待单线程执行器处理完当前任务
+        executor.submit(() -> { }).get(2, TimeUnit.SECONDS);
+
+        assertEquals(0, queue.getDepth());
+        assertEquals(4, queue.getMaxDepth());
+        assertEquals(4, queue.getEnqueuedCount());
+        assertEquals(4, queue.getAppliedCount());
+        assertTrue(queue.getMaxLatencyMs() >= 50);
+        assertTrue(queue.getAverageLatencyMs() >= 50);
+    }
+
+    /**
+     * 阻塞摄入线程，使帧停留在队列中
+     */
+    private CountDownLatch blockExecutor() {
+        CountDownLatch gate = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        return gate;
+    }
+
+    private WebSocketFrame update(long questionId, String status) {
+        return decoder.decode("{\"type\":\"QUESTION_UPDATED\",\"data\":{\"questionId\":" + questionId
+            + ",\"status\":\"" + status + "\"}}");
+    }
+
+    private static WebSocketFrame frame(String messageId) {
+        return new WebSocketFrame("ACK", messageId, null, null);
+    }
+}
@@ -0,0 +1,164 @@
+package com.dowdah.asknow.data.websocket;
+
+import androidx.annotation.NonNull;
+
+import com.dowdah.asknow.data.model.WebSocketMessage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * WebSocketOutbox 单元测试
+ *
+ * 测试功能：
+ * - ACK 成功/失败回调
+ * - ACK 超时重传，重传用完后回退
+ * - 连接不可用及断开时回退
+ */
+public class WebSocketOutboxTest {
+
+    private final WebSocketFrameDecoder decoder = new WebSocketFrameDecoder();
+    private ScheduledExecutorService scheduler;
+    private List<String> sent;
+    private volatile boolean transportOpen;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        sent = new CopyOnWriteArrayList<>();
+        transportOpen = true;
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 测试收到成功 ACK 时回调服务端保存的消息
+     */
+    @Test
+    public void testAckDeliversSavedMessage() {
+        WebSocketOutbox outbox = newOutbox(10_000, 2);
+        RecordingCallback callback = new RecordingCallback();
+
+        outbox.send(message("m1"), callback);
+        assertEquals(1, sent.size());
+        assertEquals(1, outbox.getInFlightCount());
+
+        WebSocketFrame ack = decoder.decode("{\"type\":\"ACK\",\"messageId\":\"m1\",\"data\":{\"status\":\"ok\","
+            + "\"message\":{\"id\":77,\"questionId\":5,\"senderId\":2,\"content\":\"hi\",\"createdAt\":100}}}");
+        assertTrue(outbox.onAck(ack.getMessageId(), ack.getAck()));
+
+        assertEquals("acked:77", callback.events.get(0));
+        assertEquals(0, outbox.getInFlightCount());
+        // 迟到的重复 ACK 被忽略
+        assertFalse(outbox.onAck("m1", ack.getAck()));
+        assertEquals(1, callback.events.size());
+    }
+
+    /**
+     * 测试服务端拒绝及旧版服务端的无载荷 ACK
+     */
+    @Test
+    public void testRejectedAndLegacyAck() {
+        WebSocketOutbox outbox = newOutbox(10_000, 2);
+        RecordingCallback rejected = new RecordingCallback();
+        RecordingCallback legacy = new RecordingCallback();
+
+        outbox.send(message("m1"), rejected);
+        outbox.send(message("m2"), legacy);
+        WebSocketFrame error = decoder.decode("{\"type\":\"ACK\",\"messageId\":\"m1\","
+            + "\"data\":{\"status\":\"error\",\"error\":\"Question not found\"}}");
+        outbox.onAck(error.getMessageId(), error.getAck());
+        outbox.onAck("m2", null);
+
+        assertEquals("rejected:Question not found", rejected.events.get(0));
+        assertEquals("fallback", legacy.events.get(0));
+    }
+
+    /**
+     * 测试 ACK 超时后重传，重传次数用完后回退
+     */
+    @Test
+    public void testTimeoutRetransmitsThenFallsBack() throws Exception {
+        WebSocketOutbox outbox = newOutbox(30, 3);
+        RecordingCallback callback = new RecordingCallback();
+
+        outbox.send(message("m1"), callback);
+
+        assertTrue(callback.done.await(2, TimeUnit.SECONDS));
+        assertEquals(3, sent.size());
+        assertEquals("fallback", callback.events.get(0));
+        assertEquals(2, outbox.getRetransmitCount());
+        assertEquals(1, outbox.getFallbackCount());
+        assertEquals(0, outbox.getInFlightCount());
+    }
+
+    /**
+     * 测试连接不可用时立即回退，连接断开时所有在途消息回退
+     */
+    @Test
+    public void testTransportClosedAndFailAll() {
+        WebSocketOutbox outbox = newOutbox(10_000, 2);
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+
+        outbox.send(message("m1"), first);
+        transportOpen = false;
+        outbox.send(message("m2"), second);
+        assertEquals("fallback", second.events.get(0));
+        assertTrue(first.events.isEmpty());
+
+        outbox.failAll();
+        assertEquals("fallback", first.events.get(0));
+        assertEquals(0, outbox.getInFlightCount());
+    }
+
+    private WebSocketOutbox newOutbox(long ackTimeoutMs, int maxAttempts) {
+        return new WebSocketOutbox(scheduler, message -> {
+            if (!transportOpen) {
+                return false;
+            }
+            sent.add(message.getMessageId());
+            return true;
+        }, ackTimeoutMs, maxAttempts);
+    }
+
+    private static WebSocketMessage message(String messageId) {
+        return new WebSocketMessage("CHAT_MESSAGE", null, null, messageId);
+    }
+
+    private static final class RecordingCallback implements WebSocketOutbox.Callback {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        public void onAcked(@NonNull ChatMessagePayload message) {
+            events.add("acked:" + message.getId());
+            done.countDown();
+        }
+
+        @Override
+        public void onRejected(@NonNull String error) {
+            events.add("rejected:" + error);
+            done.countDown();
+        }
+
+        @Override
+        public void onFallback() {
+            events.add("fallback");
+            done.countDown();
+        }
+    }
+}
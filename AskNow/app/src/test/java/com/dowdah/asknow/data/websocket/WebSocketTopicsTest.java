@@ -0,0 +1,66 @@
+package com.dowdah.asknow.data.websocket;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * WebSocketTopics 单元测试
+ *
+ * 测试功能：
+ * - 第一次持有和最后一次释放才需要通知服务端
+ * - 释放未持有的主题不产生通知
+ * - 快照有序，用于生成连接地址
+ */
+public class WebSocketTopicsTest {
+
+    private WebSocketTopics topics;
+
+    @Before
+    public void setUp() {
+        topics = new WebSocketTopics();
+    }
+
+    /**
+     * 测试引用计数：多个页面持有同一主题
+     */
+    @Test
+    public void testReferenceCounting() {
+        String topic = WebSocketTopics.question(42);
+        assertEquals("question:42", topic);
+
+        assertTrue(topics.acquire(topic));
+        assertFalse(topics.acquire(topic));
+
+        assertFalse(topics.release(topic));
+        assertTrue(topics.snapshot().contains(topic));
+        assertTrue(topics.release(topic));
+        assertTrue(topics.snapshot().isEmpty());
+
+        // 重复释放不再通知
+        assertFalse(topics.release(topic));
+        assertFalse(topics.release(WebSocketTopics.TUTOR_PENDING));
+    }
+
+    /**
+     * 测试快照有序且与后续修改无关
+     */
+    @Test
+    public void testSnapshotIsSortedCopy() {
+        topics.acquire(WebSocketTopics.TUTOR_PENDING);
+        topics.acquire(WebSocketTopics.question(7));
+        topics.acquire(WebSocketTopics.question(12));
+
+        Set<String> snapshot = topics.snapshot();
+        assertEquals(Arrays.asList("question:12", "question:7", "tutor:pending"), new ArrayList<>(snapshot));
+
+        topics.release(WebSocketTopics.TUTOR_PENDING);
+        assertEquals(3, snapshot.size());
+        assertEquals(2, topics.snapshot().size());
+    }
+}
@@ -8,6 +8,7 @@ import androidx.lifecycle.Observer;
 import com.dowdah.asknow.constants.MessageStatus;
 import com.dowdah.asknow.constants.QuestionStatus;
 import com.dowdah.asknow.data.api.ApiService;
+import com.dowdah.asknow.data.local.WriteDedupFilter;
 import com.dowdah.asknow.data.local.dao.MessageDao;
 import com.dowdah.asknow.data.local.dao.QuestionDao;
 import com.dowdah.asknow.data.local.entity.MessageEntity;
@@ -15,7 +16,10 @@ import com.dowdah.asknow.data.local.entity.QuestionEntity;
 import com.dowdah.asknow.data.model.MessageRequest;
 import com.dowdah.asknow.data.model.MessageResponse;
 import com.dowdah.asknow.data.repository.MessageRepository;
+import com.dowdah.asknow.data.repository.QuestionRepository;
+import com.dowdah.asknow.data.repository.SyncScheduler;
 import com.dowdah.asknow.utils.SharedPreferencesManager;
+import com.dowdah.asknow.utils.WebSocketManager;
 import com.google.gson.JsonObject;
 
 import org.junit.Before;
@@ -72,6 +76,12 @@ public class ChatViewModelTest {
     @Mock
     private SharedPreferencesManager prefsManager;
     
+    @Mock
+    private WebSocketManager webSocketManager;
+    
+    @Mock
+    private QuestionRepository questionRepository;
+    
     @Mock
     private Call<MessageResponse> messageCall;
     
@@ -107,7 +117,11 @@ public class ChatViewModelTest {
             questionDao,
             messageDao,
             messageRepository,
-            prefsManager
+            prefsManager,
+            webSocketManager,
+            new WriteDedupFilter(),
+            new SyncScheduler(),
+            questionRepository
         );
     }
     
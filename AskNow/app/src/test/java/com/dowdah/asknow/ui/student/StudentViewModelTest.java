@@ -3,17 +3,17 @@ package com.dowdah.asknow.ui.student;
 import android.app.Application;
 
 import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
-import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.Observer;
 
 import com.dowdah.asknow.constants.QuestionStatus;
-import com.dowdah.asknow.data.model.WebSocketMessage;
 import com.dowdah.asknow.data.api.ApiService;
+import com.dowdah.asknow.data.local.WriteDedupFilter;
 import com.dowdah.asknow.data.local.dao.QuestionDao;
 import com.dowdah.asknow.data.local.entity.QuestionEntity;
 import com.dowdah.asknow.data.model.QuestionRequest;
 import com.dowdah.asknow.data.model.QuestionResponse;
 import com.dowdah.asknow.data.repository.QuestionRepository;
+import com.dowdah.asknow.data.websocket.WebSocketEventBus;
 import com.dowdah.asknow.utils.SharedPreferencesManager;
 import com.dowdah.asknow.utils.WebSocketManager;
 
@@ -35,6 +35,8 @@ import retrofit2.Response;
 
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -45,6 +47,7 @@ import static org.mockito.Mockito.*;
  * - 创建新问题
  * - 查询自己的问题列表
  * - 分页加载逻辑
+ * - 回到前台时按推送流连续性决定是否完整同步
  */
 @RunWith(MockitoJUnitRunner.class)
 public class StudentViewModelTest {
@@ -94,9 +97,8 @@ public class StudentViewModelTest {
         when(prefsManager.getUserId()).thenReturn(TEST_USER_ID);
         when(prefsManager.getToken()).thenReturn(TEST_TOKEN);
         
-        // Mock WebSocketManager.getIncomingMessage() 以避免 NullPointerException
-        MutableLiveData<WebSocketMessage> mockIncomingMessage = new MutableLiveData<>();
-        when(webSocketManager.getIncomingMessage()).thenReturn(mockIncomingMessage);
+        // Mock WebSocketManager.getEventBus() 以避免 NullPointerException
+        when(webSocketManager.getEventBus()).thenReturn(new WebSocketEventBus(Runnable::run));
         
         viewModel = new StudentViewModel(
             application,
@@ -104,7 +106,8 @@ public class StudentViewModelTest {
             questionDao,
             prefsManager,
             questionRepository,
-            webSocketManager
+            webSocketManager,
+            new WriteDedupFilter()
         );
     }
     
@@ -255,5 +258,37 @@ public class StudentViewModelTest {
         // Assert - 应该查询当前用户的问题
         verify(questionDao).getQuestionsByUserId(TEST_USER_ID);
     }
+    
+    /**
+     * 测试推送流连续时回到前台不做完整同步
+     */
+    @Test
+    public void testSyncOnResume_SkippedWhenStreamContinuous() {
+        when(webSocketManager.needsFullSync()).thenReturn(false);
+        
+        viewModel.syncQuestionsOnResume();
+        
+        verify(questionRepository, never()).syncQuestionChanges(anyString(), anyLong(), anyString(), any());
+    }
+    
+    /**
+     * 测试推送流出现缺口时完整同步，成功后记录同步开始时的代次
+     */
+    @Test
+    public void testSyncOnResume_FullSyncWhenStreamHasGap() {
+        when(webSocketManager.needsFullSync()).thenReturn(true);
+        when(webSocketManager.getStreamGeneration()).thenReturn(3);
+        
+        viewModel.syncQuestionsOnResume();
+        
+        ArgumentCaptor<QuestionRepository.SyncCallback> callbackCaptor =
+            ArgumentCaptor.forClass(QuestionRepository.SyncCallback.class);
+        verify(questionRepository).syncQuestionChanges(
+            eq(TEST_TOKEN), eq(TEST_USER_ID), anyString(), callbackCaptor.capture());
+        verify(webSocketManager, never()).markFullSyncCompleted(anyInt());
+        
+        callbackCaptor.getValue().onSuccess(5);
+        verify(webSocketManager).markFullSyncCompleted(3);
+    }
 }
 
@@ -0,0 +1,113 @@
+package com.dowdah.asknow.utils;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * LongFingerprintCache 单元测试
+ *
+ * 测试功能：
+ * - 写入、匹配、读取、覆盖、删除
+ * - 容量满时的 CLOCK 淘汰（命中过的条目保留）
+ * - 向后移位删除后探测链仍然完整
+ */
+public class LongFingerprintCacheTest {
+
+    /**
+     * 测试基本的写入、匹配和删除
+     */
+    @Test
+    public void testPutMatchRemove() {
+        LongFingerprintCache cache = new LongFingerprintCache(8);
+
+        assertFalse(cache.matches(1L, 100L));
+        cache.put(1L, 100L);
+        assertTrue(cache.matches(1L, 100L));
+        assertFalse(cache.matches(1L, 101L));
+
+        cache.put(1L, 101L);
+        assertTrue(cache.matches(1L, 101L));
+        assertEquals(101L, cache.get(1L, -1L));
+        assertEquals(-1L, cache.get(2L, -1L));
+        assertEquals(1, cache.size());
+
+        assertTrue(cache.remove(1L));
+        assertFalse(cache.remove(1L));
+        assertFalse(cache.matches(1L, 101L));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * 测试容量满时淘汰未被命中的条目
+     */
+    @Test
+    public void testClockEvictionKeepsReferencedEntries() {
+        LongFingerprintCache cache = new LongFingerprintCache(4);
+        for (long key = 1; key <= 4; key++) {
+            cache.put(key, key);
+        }
+        // 命中 1、2、3，只有 4 没有引用标记
+        assertTrue(cache.matches(1L, 1L));
+        assertTrue(cache.matches(2L, 2L));
+        assertTrue(cache.matches(3L, 3L));
+
+        cache.put(5L, 5L);
+
+        assertEquals(4, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertFalse(cache.matches(4L, 4L));
+        assertTrue(cache.matches(1L, 1L));
+        assertTrue(cache.matches(2L, 2L));
+        assertTrue(cache.matches(3L, 3L));
+        assertTrue(cache.matches(5L, 5L));
+    }
+
+    /**
+     * 测试随机写入和删除后与 HashMap 结果一致（覆盖探测链上的向后移位）
+     */
+    @Test
+    public void testRandomOperationsMatchHashMap() {
+        LongFingerprintCache cache = new LongFingerprintCache(512);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextInt(400);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key) != null, cache.remove(key));
+            } else {
+                long value = random.nextLong();
+                cache.put(key, value);
+                expected.put(key, value);
+            }
+        }
+
+        assertEquals(expected.size(), cache.size());
+        assertEquals(0, cache.getEvictionCount());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertTrue(cache.matches(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * 测试清空
+     */
+    @Test
+    public void testClear() {
+        LongFingerprintCache cache = new LongFingerprintCache(4);
+        cache.put(1L, 1L);
+        cache.put(2L, 2L);
+
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertFalse(cache.matches(1L, 1L));
+        cache.put(1L, 3L);
+        assertTrue(cache.matches(1L, 3L));
+    }
+}
@@ -0,0 +1,61 @@
+package com.dowdah.asknow.utils;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * SortedLongSet 单元测试
+ *
+ * 测试功能：
+ * - 升序追加和查询
+ * - 乱序和重复追加后去重
+ * - 扩容后内容完整
+ */
+public class SortedLongSetTest {
+
+    /**
+     * 测试升序追加（服务端返回顺序）
+     */
+    @Test
+    public void testAscendingAdds() {
+        SortedLongSet set = new SortedLongSet(2);
+        set.add(1L);
+        set.add(5L);
+        set.add(5L);
+        set.add(9L);
+
+        assertEquals(3, set.size());
+        assertTrue(set.contains(5L));
+        assertFalse(set.contains(4L));
+        assertFalse(set.contains(10L));
+    }
+
+    /**
+     * 测试乱序和重复追加，结果与 HashSet 一致
+     */
+    @Test
+    public void testUnorderedAddsMatchHashSet() {
+        SortedLongSet set = new SortedLongSet();
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 5000; i++) {
+            long value = random.nextInt(2000);
+            set.add(value);
+            expected.add(value);
+            if (i % 500 == 0) {
+                // 中途查询会触发排序，之后继续追加
+                assertEquals(expected.contains(42L), set.contains(42L));
+            }
+        }
+
+        assertEquals(expected.size(), set.size());
+        for (long value = -1; value <= 2000; value++) {
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+    }
+}
@@ -81,10 +81,18 @@ LOG_TO_CONSOLE = os.getenv("LOG_TO_CONSOLE", "True").lower() == "true"
 DEFAULT_QUESTIONS_PAGE_SIZE = 20
 MAX_QUESTIONS_PAGE_SIZE = 100
 
+# 增量同步只返回更新时间早于当前时间该毫秒数的变更，
+# 避免先取时间戳、后提交的写入落在已返回的游标之后而被跳过（这段时间内的变更由 WebSocket 实时推送）
+SYNC_SETTLE_MS = int(os.getenv("SYNC_SETTLE_MS", "1000"))
+
 # 消息列表默认分页大小
 DEFAULT_MESSAGES_PAGE_SIZE = 50
 MAX_MESSAGES_PAGE_SIZE = 200
 
+# 批量获取消息：每次最多的问题数，以及一次响应最多的消息总数（按问题数平分到每个问题）
+MAX_BATCH_QUESTIONS = 100
+MAX_BATCH_MESSAGES = 2000
+
 # ============================================================================
 # 用户角色
 # ============================================================================
@@ -116,6 +124,56 @@ WS_TYPE_QUESTION_ACCEPTED = "QUESTION_ACCEPTED"
 WS_TYPE_QUESTION_CLOSED = "QUESTION_CLOSED"
 WS_TYPE_CHAT_MESSAGE = "CHAT_MESSAGE"
 WS_TYPE_ACK = "ACK"
+WS_TYPE_RESUME = "RESUME"
+WS_TYPE_PING = "PING"
+WS_TYPE_PONG = "PONG"
+WS_TYPE_SUBSCRIBE = "SUBSCRIBE"
+WS_TYPE_UNSUBSCRIBE = "UNSUBSCRIBE"
+
+# ============================================================================
+# WebSocket订阅主题
+# ============================================================================
+# 待接取问题列表（仅老师）：新问题、待接取问题被接受或关闭
+WS_TOPIC_TUTOR_PENDING = "tutor:pending"
+# 单个问题的聊天和状态更新，格式 question:{id}
+WS_TOPIC_QUESTION_PREFIX = "question:"
+# 每个连接最多订阅的主题数
+WS_MAX_TOPICS = int(os.getenv("WS_MAX_TOPICS", "64"))
+
+# ============================================================================
+# WebSocket断线续传配置
+# ============================================================================
+# 服务端保留的最近推送事件数量（用于重连时增量补发）
+WS_EVENT_LOG_SIZE = int(os.getenv("WS_EVENT_LOG_SIZE", "2000"))
+# 单次重连最多补发的事件数，超过则改为发送全量快照
+WS_RESUME_MAX_REPLAY = int(os.getenv("WS_RESUME_MAX_REPLAY", "200"))
+# 续传模式
+WS_RESUME_MODE_DELTA = "delta"
+WS_RESUME_MODE_SNAPSHOT = "snapshot"
+
+# ============================================================================
+# WebSocket上行消息配置
+# ============================================================================
+# 记住最近处理过的客户端消息ID数量，用于重传和 HTTP 回退时的幂等去重
+WS_CLIENT_MESSAGE_CACHE_SIZE = int(os.getenv("WS_CLIENT_MESSAGE_CACHE_SIZE", "5000"))
+# ACK 处理结果
+WS_ACK_STATUS_OK = "ok"
+WS_ACK_STATUS_ERROR = "error"
+
+# ============================================================================
+# WebSocket帧编码配置
+# ============================================================================
+# 通过 Sec-WebSocket-Protocol 协商的子协议
+WS_SUBPROTOCOL_MSGPACK = "asknow.msgpack.v1"
+WS_SUBPROTOCOL_JSON = "asknow.json.v1"
+# 服务端偏好顺序（设置 WS_BINARY_CODEC=false 可关闭二进制编码）
+WS_SUBPROTOCOLS = (
+    [WS_SUBPROTOCOL_MSGPACK, WS_SUBPROTOCOL_JSON]
+    if os.getenv("WS_BINARY_CODEC", "true").lower() == "true"
+    else [WS_SUBPROTOCOL_JSON]
+)
+# permessage-deflate 压缩（客户端在握手中提供时启用）
+WS_PER_MESSAGE_DEFLATE = os.getenv("WS_PER_MESSAGE_DEFLATE", "true").lower() == "true"
 
 # ============================================================================
 # HTTP状态码
@@ -1,3 +1,6 @@
+import base64
+import binascii
+import hashlib
 import json
 import logging
 import time
@@ -6,11 +9,11 @@ from pathlib import Path
 from typing import List, Optional, Dict, Any
 
 from fastapi import FastAPI, Depends, HTTPException, WebSocket, WebSocketDisconnect, UploadFile, File, Header, Query
-from fastapi.responses import FileResponse
+from fastapi.responses import FileResponse, Response
 from fastapi.middleware.cors import CORSMiddleware
 from pydantic import BaseModel
 from sqlalchemy.ext.asyncio import AsyncSession
-from sqlalchemy import select, and_, func
+from sqlalchemy import select, and_, or_, func
 from sqlalchemy.orm import selectinload
 from sqlalchemy.exc import SQLAlchemyError
 
@@ -18,7 +21,7 @@ import config
 from database import init_db, get_db
 from models import User, Question, Message
 from auth import hash_password, verify_password, create_access_token, decode_access_token
-from websocket_manager import manager
+from websocket_manager import manager, question_topic
 
 # 配置日志系统
 log_handlers = []
@@ -99,6 +102,7 @@ class MessageRequest(BaseModel):
     questionId: int
     content: str
     messageType: str = "text"
+    clientMessageId: Optional[str] = None
 
 
 class QuestionActionRequest(BaseModel):
@@ -109,6 +113,16 @@ class MarkReadRequest(BaseModel):
     questionId: int
 
 
+class MessageCursor(BaseModel):
+    questionId: int
+    afterId: int = 0
+
+
+class BatchMessagesRequest(BaseModel):
+    cursors: List[MessageCursor]
+    pageSize: int = config.DEFAULT_MESSAGES_PAGE_SIZE
+
+
 # 依赖注入：从Header获取并验证token
 async def get_token_from_header(authorization: str = Header(...)) -> str:
     """
@@ -321,69 +335,284 @@ async def login(request: LoginRequest, db: AsyncSession = Depends(get_db)) -> Di
         raise HTTPException(status_code=500, detail="Login failed")
 
 
+# Pagination helpers
+def encode_page_cursor(kind: str, position: Dict[str, int]) -> str:
+    """
+    把列表分页位置编码为不透明游标
+    
+    游标只是上一页最后一行的排序键，下一页用 WHERE 从该位置继续（keyset 分页），
+    与 OFFSET 不同，深页和第一页代价相同，翻页期间插入新行也不会造成重复或遗漏。
+    客户端只需原样传回，不应解析游标内容。
+    
+    Args:
+        kind: 游标所属列表（如 "q"、"m"），防止不同接口的游标混用
+        position: 排序键
+        
+    Returns:
+        str: URL 安全的游标字符串
+    """
+    raw = json.dumps({"k": kind, **position}, separators=(",", ":")).encode()
+    return base64.urlsafe_b64encode(raw).decode().rstrip("=")
+
+
+def decode_page_cursor(cursor: str, kind: str, fields: List[str]) -> Dict[str, int]:
+    """
+    解析 encode_page_cursor 生成的游标
+    
+    Args:
+        cursor: 游标字符串
+        kind: 期望的游标所属列表
+        fields: 期望的排序键字段
+        
+    Returns:
+        Dict[str, int]: 排序键
+        
+    Raises:
+        HTTPException: 如果游标格式错误或不属于该列表
+    """
+    try:
+        padded = cursor + "=" * (-len(cursor) % 4)
+        data = json.loads(base64.urlsafe_b64decode(padded.encode()))
+        if not isinstance(data, dict) or data.get("k") != kind:
+            raise ValueError("cursor kind mismatch")
+        position = {field: data[field] for field in fields}
+        if not all(isinstance(value, int) and not isinstance(value, bool) for value in position.values()):
+            raise ValueError("cursor field is not an integer")
+        return position
+    except (ValueError, KeyError, binascii.Error):
+        raise HTTPException(status_code=400, detail="Invalid cursor")
+
+
+# Conditional GET helpers
+def etag_json_response(payload: Dict[str, Any], if_none_match: Optional[str]) -> Response:
+    """
+    返回带 ETag 的 JSON 响应，请求的 If-None-Match 与之匹配时返回 304（无响应体）
+    
+    ETag 是响应体的哈希，内容不变时不变，客户端无需下载和解析就能确认列表没有变化。
+    Cache-Control 为 private, no-cache：客户端可以缓存，但每次使用前都要带 If-None-Match 重新验证；
+    Vary: Authorization 让不同登录身份的缓存互不复用。
+    
+    Args:
+        payload: 响应内容
+        if_none_match: 请求头 If-None-Match
+        
+    Returns:
+        Response: 200（带响应体）或 304
+    """
+    body = json.dumps(payload, ensure_ascii=False, allow_nan=False, separators=(",", ":")).encode("utf-8")
+    etag = '"' + hashlib.sha256(body).hexdigest()[:32] + '"'
+    headers = {"ETag": etag, "Cache-Control": "private, no-cache", "Vary": "Authorization"}
+    if if_none_match:
+        # 弱验证器（W/ 前缀）按同一个值比较
+        candidates = [tag.strip()[2:] if tag.strip().startswith("W/") else tag.strip() for tag in if_none_match.split(",")]
+        if etag in candidates or "*" in candidates:
+            return Response(status_code=304, headers=headers)
+    return Response(content=body, media_type="application/json", headers=headers)
+
+
 # Question endpoints
+async def attach_message_summaries(
+    db: AsyncSession,
+    current_user: User,
+    questions: List[Dict[str, Any]]
+) -> List[Dict[str, Any]]:
+    """
+    为问题列表附加当前用户的未读消息数和最后一条消息，客户端无需下载消息即可显示列表
+    
+    整页问题共用两次分组查询，与问题数量无关。
+    
+    Args:
+        db: 数据库会话
+        current_user: 当前用户
+        questions: 问题字典列表（原地修改）
+        
+    Returns:
+        List[Dict[str, Any]]: 同一个列表
+    """
+    if not questions:
+        return questions
+    question_ids = [q["id"] for q in questions]
+    
+    unread_result = await db.execute(
+        select(Message.question_id, func.count(Message.id)).where(
+            and_(
+                Message.question_id.in_(question_ids),
+                Message.sender_id != current_user.id,
+                Message.is_read == False,
+                Message.is_deleted == config.USER_NOT_DELETED
+            )
+        ).group_by(Message.question_id)
+    )
+    unread_counts = {question_id: count for question_id, count in unread_result.all()}
+    
+    last_ids = select(func.max(Message.id)).where(
+        and_(
+            Message.question_id.in_(question_ids),
+            Message.is_deleted == config.USER_NOT_DELETED
+        )
+    ).group_by(Message.question_id)
+    last_result = await db.execute(select(Message).where(Message.id.in_(last_ids)))
+    last_messages = {m.question_id: m.to_dict() for m in last_result.scalars().all()}
+    
+    for question in questions:
+        question["unreadCount"] = unread_counts.get(question["id"], 0)
+        question["lastMessage"] = last_messages.get(question["id"])
+    return questions
+
+
+async def fetch_question_changes(
+    db: AsyncSession,
+    current_user: User,
+    updated_since: int,
+    since_id: int,
+    page_size: int
+) -> Dict[str, Any]:
+    """
+    增量同步：返回游标 (updated_since, since_id) 之后变化的问题
+    
+    按 (updated_at, id) 升序返回，包括已软删除的问题（作为墓碑只返回ID）。
+    范围与普通列表相同：学生为自己创建的问题，老师为自己接取的问题。
+    
+    Args:
+        db: 数据库会话
+        current_user: 当前用户
+        updated_since: 游标中的更新时间（毫秒），0表示从头开始
+        since_id: 游标中的问题ID，用于区分更新时间相同的问题
+        page_size: 每页数量
+        
+    Returns:
+        Dict[str, Any]: 变化的问题、被删除的问题ID、新的游标和是否还有更多
+    """
+    if current_user.role == config.ROLE_STUDENT:
+        scope = Question.user_id == current_user.id
+    else:
+        scope = Question.tutor_id == current_user.id
+    
+    settled_before = int(time.time() * 1000) - config.SYNC_SETTLE_MS
+    query = select(Question).where(
+        and_(
+            scope,
+            Question.updated_at <= settled_before,
+            or_(
+                Question.updated_at > updated_since,
+                and_(Question.updated_at == updated_since, Question.id > since_id)
+            )
+        )
+    ).order_by(Question.updated_at.asc(), Question.id.asc()).limit(page_size + 1)
+    
+    result = await db.execute(query)
+    rows = result.scalars().all()
+    has_more = len(rows) > page_size
+    rows = rows[:page_size]
+    
+    changed = await attach_message_summaries(
+        db, current_user, [q.to_dict() for q in rows if q.is_deleted == config.USER_NOT_DELETED]
+    )
+    deleted_ids = [q.id for q in rows if q.is_deleted != config.USER_NOT_DELETED]
+    cursor = {"updatedAt": updated_since, "id": since_id}
+    if rows:
+        cursor = {"updatedAt": rows[-1].updated_at, "id": rows[-1].id}
+    
+    logger.info(
+        f"User {current_user.id} fetched question changes since {updated_since}/{since_id}: "
+        f"{len(changed)} changed, {len(deleted_ids)} deleted, hasMore={has_more}"
+    )
+    return {
+        "success": True,
+        "questions": changed,
+        "deletedIds": deleted_ids,
+        "cursor": cursor,
+        "hasMore": has_more
+    }
+
+
 @app.get("/api/questions")
 async def get_questions(
     current_user: User = Depends(get_current_user),
     status: str = None,
-    page: int = Query(1, ge=1, description="页码，从1开始"),
+    cursor: Optional[str] = Query(None, description="分页游标，取自上一页响应的 nextCursor，不传为第一页"),
     page_size: int = Query(config.DEFAULT_QUESTIONS_PAGE_SIZE, ge=1, le=config.MAX_QUESTIONS_PAGE_SIZE, 
                            description=f"每页数量，1-{config.MAX_QUESTIONS_PAGE_SIZE}"),
+    updated_since: Optional[int] = Query(None, ge=0, description="增量同步游标：更新时间（毫秒）"),
+    since_id: int = Query(0, ge=0, description="增量同步游标：问题ID"),
+    if_none_match: Optional[str] = Header(None),
     db: AsyncSession = Depends(get_db)
-) -> Dict[str, Any]:
+) -> Response:
     """
-    获取问题列表（支持分页）
+    获取问题列表（游标分页）
+    
+    按 (created_at, id) 降序返回，nextCursor 指向本页最后一个问题，为 null 表示没有更多。
+    传入 updated_since 时为增量同步模式，忽略 status 和 cursor，见 fetch_question_changes。
+    响应带 ETag，内容未变化时返回 304，见 etag_json_response
     
     Args:
         current_user: 当前用户
         status: 问题状态过滤
-        page: 页码
+        cursor: 上一页响应的 nextCursor
         page_size: 每页数量
+        updated_since: 增量同步游标的更新时间
+        since_id: 增量同步游标的问题ID
+        if_none_match: 客户端缓存的 ETag
         db: 数据库会话
         
     Returns:
-        Dict[str, Any]: 问题列表和分页信息
+        Response: 问题列表、下一页游标和是否还有更多，或 304
         
     Raises:
-        HTTPException: 如果查询失败
+        HTTPException: 如果游标无效或查询失败
     """
     try:
+        if updated_since is not None:
+            changes = await fetch_question_changes(db, current_user, updated_since, since_id, page_size)
+            return etag_json_response(changes, if_none_match)
+        
         # 构建基础查询（排除已删除的问题）
         query = select(Question).where(Question.is_deleted == config.USER_NOT_DELETED)
         
+        if status and status not in config.VALID_STATUSES:
+            raise HTTPException(status_code=400, detail=f"Invalid status: {status}")
+        
+        if current_user.role == config.ROLE_STUDENT:
+            # 学生只获取自己创建的问题
+            query = query.where(Question.user_id == current_user.id)
+        elif current_user.role == config.ROLE_TUTOR and status != config.STATUS_PENDING:
+            # 老师获取自己接取的问题（in_progress和closed状态）；待接取的问题对所有老师可见
+            query = query.where(Question.tutor_id == current_user.id)
+        
         if status:
+            # 按状态过滤，教师端每个标签页只获取自己的状态
             query = query.where(Question.status == status)
-        else:
-            if current_user.role == config.ROLE_STUDENT:
-                # 学生只获取自己创建的问题
-                query = query.where(Question.user_id == current_user.id)
-            elif current_user.role == config.ROLE_TUTOR:
-                # 老师获取自己接取的问题（in_progress和closed状态）
-                query = query.where(Question.tutor_id == current_user.id)
-        
-        # 获取总数（用于分页）
-        count_query = select(func.count()).select_from(query.subquery())
-        total_result = await db.execute(count_query)
-        total = total_result.scalar()
-        
-        # 应用分页和排序
-        query = query.order_by(Question.created_at.desc())
-        query = query.offset((page - 1) * page_size).limit(page_size)
+        
+        if cursor:
+            # 从上一页最后一个问题之后继续，创建时间相同的问题按ID区分
+            position = decode_page_cursor(cursor, "q", ["createdAt", "id"])
+            query = query.where(
+                or_(
+                    Question.created_at < position["createdAt"],
+                    and_(Question.created_at == position["createdAt"], Question.id < position["id"])
+                )
+            )
+        
+        # 多取一条判断是否还有更多，不再统计总数
+        query = query.order_by(Question.created_at.desc(), Question.id.desc()).limit(page_size + 1)
         
         result = await db.execute(query)
         questions = result.scalars().all()
-        
-        logger.info(f"User {current_user.id} fetched {len(questions)} questions (page {page})")
-        return {
+        has_more = len(questions) > page_size
+        questions = questions[:page_size]
+        next_cursor = None
+        if has_more:
+            next_cursor = encode_page_cursor("q", {"createdAt": questions[-1].created_at, "id": questions[-1].id})
+        
+        logger.info(f"User {current_user.id} fetched {len(questions)} questions (hasMore={has_more})")
+        return etag_json_response({
             "success": True,
-            "questions": [q.to_dict() for q in questions],
-            "pagination": {
-                "page": page,
-                "pageSize": page_size,
-                "total": total,
-                "totalPages": (total + page_size - 1) // page_size
-            }
-        }
+            "questions": await attach_message_summaries(db, current_user, [q.to_dict() for q in questions]),
+            "nextCursor": next_cursor,
+            "hasMore": has_more
+        }, if_none_match)
+    except HTTPException:
+        raise
     except SQLAlchemyError as e:
         logger.error(f"Database error fetching questions: {str(e)}", exc_info=True)
         raise HTTPException(status_code=500, detail="Failed to fetch questions")
@@ -434,8 +663,11 @@ async def create_question(
         await db.commit()
         await db.refresh(new_question)
         
-        # 广播新问题给所有老师
-        await manager.broadcast_to_tutors(new_question.to_ws_message(config.WS_TYPE_NEW_QUESTION))
+        # 推送给正在查看待接取列表的老师
+        await manager.publish(
+            new_question.to_ws_message(config.WS_TYPE_NEW_QUESTION),
+            topics=[config.WS_TOPIC_TUTOR_PENDING]
+        )
         
         logger.info(f"Question created: ID {new_question.id} by user {current_user.id}")
         return {
@@ -454,6 +686,86 @@ async def create_question(
 
 
 # Message endpoints
+async def persist_chat_message(
+    db: AsyncSession,
+    sender: User,
+    question_id: int,
+    content: str,
+    message_type: str,
+    client_message_id: Optional[str] = None
+) -> Dict[str, Any]:
+    """
+    保存聊天消息并推送给对方，HTTP 和 WebSocket 上行两条路径共用
+    
+    携带 clientMessageId 时按 (发送者, clientMessageId) 幂等：
+    WebSocket 重传或超时后回退到 HTTP 重发同一条消息，只会保存一次
+    
+    Args:
+        db: 数据库会话
+        sender: 发送者
+        question_id: 问题ID
+        content: 消息内容
+        message_type: 消息类型
+        client_message_id: 客户端生成的消息ID（可选）
+        
+    Returns:
+        Dict[str, Any]: 已保存的消息字典
+        
+    Raises:
+        HTTPException: 如果问题不存在
+    """
+    if client_message_id:
+        saved = manager.lookup_client_message(sender.id, client_message_id)
+        if saved is not None:
+            logger.info(f"Duplicate client message {client_message_id} from user {sender.id}, returning saved message")
+            return saved
+    
+    # 检查问题是否存在且未删除
+    result = await db.execute(
+        select(Question).where(
+            and_(Question.id == question_id, Question.is_deleted == config.USER_NOT_DELETED)
+        )
+    )
+    question = result.scalar_one_or_none()
+    if not question:
+        raise HTTPException(status_code=404, detail=config.MSG_QUESTION_NOT_FOUND)
+    
+    # 创建消息
+    new_message = Message(
+        question_id=question_id,
+        sender_id=sender.id,
+        content=content,
+        message_type=message_type,
+        created_at=int(time.time() * 1000),
+        is_read=False,
+        is_deleted=config.USER_NOT_DELETED
+    )
+    
+    db.add(new_message)
+    
+    # 更新问题的updated_at时间
+    question.updated_at = int(time.time() * 1000)
+    
+    await db.commit()
+    await db.refresh(new_message)
+    
+    saved = new_message.to_dict()
+    if client_message_id:
+        manager.remember_client_message(sender.id, client_message_id, saved)
+    
+    # 通过 WebSocket 发送消息到对方（学生发给老师，老师发给学生），以及正在查看该问题的其他连接
+    recipient = question.tutor_id if sender.role == config.ROLE_STUDENT else question.user_id
+    await manager.publish(
+        new_message.to_ws_message(),
+        topics=[question_topic(question.id)],
+        user_ids=[recipient],
+        exclude=sender.id
+    )
+    
+    logger.info(f"Message sent: ID {new_message.id} for question {question.id}")
+    return saved
+
+
 @app.post("/api/messages")
 async def send_message(
     request: MessageRequest,
@@ -464,7 +776,7 @@ async def send_message(
     发送消息
     
     Args:
-        request: 消息请求数据
+        request: 消息请求数据（可携带 clientMessageId 用于幂等去重）
         current_user: 当前用户
         db: 数据库会话
         
@@ -475,46 +787,13 @@ async def send_message(
         HTTPException: 如果发送失败
     """
     try:
-        # 检查问题是否存在且未删除
-        result = await db.execute(
-            select(Question).where(
-                and_(Question.id == request.questionId, Question.is_deleted == config.USER_NOT_DELETED)
-            )
-        )
-        question = result.scalar_one_or_none()
-        if not question:
-            raise HTTPException(status_code=404, detail=config.MSG_QUESTION_NOT_FOUND)
-        
-        # 创建消息
-        new_message = Message(
-            question_id=request.questionId,
-            sender_id=current_user.id,
-            content=request.content,
-            message_type=request.messageType,
-            created_at=int(time.time() * 1000),
-            is_read=False,
-            is_deleted=config.USER_NOT_DELETED
+        saved = await persist_chat_message(
+            db, current_user, request.questionId, request.content, request.messageType, request.clientMessageId
         )
-        
-        db.add(new_message)
-        
-        # 更新问题的updated_at时间
-        question.updated_at = int(time.time() * 1000)
-        
-        await db.commit()
-        await db.refresh(new_message)
-        
-        # 通过 WebSocket 发送消息到对方（学生发给老师，老师发给学生）
-        if current_user.role == config.ROLE_STUDENT and question.tutor_id:
-            await manager.send_personal_message(new_message.to_ws_message(), question.tutor_id)
-        elif current_user.role == config.ROLE_TUTOR and question.user_id:
-            await manager.send_personal_message(new_message.to_ws_message(), question.user_id)
-        
-        logger.info(f"Message sent: ID {new_message.id} for question {question.id}")
         return {
             "success": True,
             "message": config.MSG_MESSAGE_SENT,
-            "data": new_message.to_dict()
+            "data": saved
         }
     except HTTPException:
         raise
@@ -531,29 +810,41 @@ async def send_message(
 @app.get("/api/messages")
 async def get_messages(
     questionId: int,
-    page: int = Query(1, ge=1, description="页码，从1开始"),
+    cursor: Optional[str] = Query(None, description="分页游标，取自上一页响应的 nextCursor，不传为第一页"),
     page_size: int = Query(config.DEFAULT_MESSAGES_PAGE_SIZE, ge=1, le=config.MAX_MESSAGES_PAGE_SIZE,
                            description=f"每页数量，1-{config.MAX_MESSAGES_PAGE_SIZE}"),
+    after_id: Optional[int] = Query(None, ge=0, description="增量同步：只返回ID大于该值的消息"),
+    if_none_match: Optional[str] = Header(None),
     current_user: User = Depends(get_current_user),
     db: AsyncSession = Depends(get_db)
-) -> Dict[str, Any]:
+) -> Response:
     """
-    获取消息列表（支持分页）
+    获取消息列表（游标分页）
+    
+    按ID升序返回，nextCursor 指向本页最后一条消息，为 null 表示没有更多。
+    传入 after_id 时从该消息之后开始（增量同步），同时传入 cursor 时以 cursor 为准。
+    响应带 ETag，内容未变化时返回 304，见 etag_json_response
     
     Args:
         questionId: 问题ID
-        page: 页码
+        cursor: 上一页响应的 nextCursor
         page_size: 每页数量
+        after_id: 增量同步的起始消息ID（不含）
+        if_none_match: 客户端缓存的 ETag
         current_user: 当前用户
         db: 数据库会话
         
     Returns:
-        Dict[str, Any]: 消息列表和分页信息
+        Response: 消息列表、下一页游标和是否还有更多，或 304
         
     Raises:
-        HTTPException: 如果查询失败
+        HTTPException: 如果游标无效或查询失败
     """
     try:
+        start_id = after_id or 0
+        if cursor:
+            start_id = decode_page_cursor(cursor, "m", ["id"])["id"]
+        
         # 验证问题是否存在且未删除
         question_result = await db.execute(
             select(Question).where(
@@ -573,32 +864,25 @@ async def get_messages(
             and_(Message.question_id == questionId, Message.is_deleted == config.USER_NOT_DELETED)
         )
         
-        # 获取总数
-        count_query = select(func.count()).select_from(query.subquery())
-        total_result = await db.execute(count_query)
-        total = total_result.scalar()
-        
-        # 应用分页和排序
-        query = query.order_by(Message.created_at.asc())
-        query = query.offset((page - 1) * page_size).limit(page_size)
+        # 消息ID自增，按ID排序与插入顺序一致；从游标位置继续，多取一条判断是否还有更多
+        query = query.where(Message.id > start_id).order_by(Message.id.asc()).limit(page_size + 1)
         
         # 使用 selectinload 预加载发送者信息（解决 N+1 查询问题）
         query = query.options(selectinload(Message.sender))
         
         result = await db.execute(query)
         messages = result.scalars().all()
+        has_more = len(messages) > page_size
+        messages = messages[:page_size]
+        next_cursor = encode_page_cursor("m", {"id": messages[-1].id}) if has_more else None
         
-        logger.info(f"User {current_user.id} fetched {len(messages)} messages for question {questionId}")
-        return {
+        logger.info(f"User {current_user.id} fetched {len(messages)} messages for question {questionId} after {start_id}")
+        return etag_json_response({
             "success": True,
             "messages": [m.to_dict() for m in messages],
-            "pagination": {
-                "page": page,
-                "pageSize": page_size,
-                "total": total,
-                "totalPages": (total + page_size - 1) // page_size
-            }
-        }
+            "nextCursor": next_cursor,
+            "hasMore": has_more
+        }, if_none_match)
     except HTTPException:
         raise
     except SQLAlchemyError as e:
@@ -609,6 +893,104 @@ async def get_messages(
         raise HTTPException(status_code=500, detail="Failed to fetch messages")
 
 
+@app.post("/api/messages/batch")
+async def get_messages_batch(
+    request: BatchMessagesRequest,
+    current_user: User = Depends(get_current_user),
+    db: AsyncSession = Depends(get_db)
+) -> Dict[str, Any]:
+    """
+    批量增量获取多个问题的消息（一次请求代替每个问题一次请求）
+    
+    每个问题返回 ID 大于其 afterId 的消息（按ID升序），以及该问题的新游标和是否还有更多。
+    每个问题的条数为 pageSize 与 MAX_BATCH_MESSAGES / 问题数 中的较小值。
+    不存在或无权查看的问题放在 unavailable 中，不影响其他问题。
+    
+    Args:
+        request: 每个问题的游标和每页数量
+        current_user: 当前用户
+        db: 数据库会话
+        
+    Returns:
+        Dict[str, Any]: 按问题分组的消息
+        
+    Raises:
+        HTTPException: 如果参数无效或查询失败
+    """
+    if not request.cursors:
+        return {"success": True, "results": [], "unavailable": []}
+    if len(request.cursors) > config.MAX_BATCH_QUESTIONS:
+        raise HTTPException(status_code=400, detail=f"At most {config.MAX_BATCH_QUESTIONS} questions per batch")
+    
+    try:
+        after_ids = {cursor.questionId: max(0, cursor.afterId) for cursor in request.cursors}
+        
+        # 验证问题存在且当前用户是参与者
+        question_result = await db.execute(
+            select(Question.id).where(
+                and_(
+                    Question.id.in_(list(after_ids)),
+                    Question.is_deleted == config.USER_NOT_DELETED,
+                    or_(Question.user_id == current_user.id, Question.tutor_id == current_user.id)
+                )
+            )
+        )
+        allowed_ids = set(question_result.scalars().all())
+        unavailable = [question_id for question_id in after_ids if question_id not in allowed_ids]
+        
+        results = []
+        if allowed_ids:
+            page_size = max(1, min(request.pageSize, config.MAX_MESSAGES_PAGE_SIZE))
+            per_question = max(1, min(page_size, config.MAX_BATCH_MESSAGES // len(allowed_ids)))
+            
+            # 一次查询取出所有问题的新消息：按问题分区编号，每个问题多取一条判断是否还有更多
+            row_number = func.row_number().over(
+                partition_by=Message.question_id, order_by=Message.id
+            ).label("row_number")
+            ranked = select(Message.id.label("message_id"), row_number).where(
+                and_(
+                    Message.is_deleted == config.USER_NOT_DELETED,
+                    or_(*[
+                        and_(Message.question_id == question_id, Message.id > after_ids[question_id])
+                        for question_id in allowed_ids
+                    ])
+                )
+            ).subquery()
+            query = (
+                select(Message)
+                .join(ranked, Message.id == ranked.c.message_id)
+                .where(ranked.c.row_number <= per_question + 1)
+                .order_by(Message.question_id, Message.id)
+            )
+            message_result = await db.execute(query)
+            
+            grouped: Dict[int, List[Message]] = {question_id: [] for question_id in allowed_ids}
+            for message in message_result.scalars().all():
+                grouped[message.question_id].append(message)
+            
+            for question_id, messages in grouped.items():
+                has_more = len(messages) > per_question
+                messages = messages[:per_question]
+                results.append({
+                    "questionId": question_id,
+                    "messages": [m.to_dict() for m in messages],
+                    "cursor": messages[-1].id if messages else after_ids[question_id],
+                    "hasMore": has_more
+                })
+        
+        logger.info(
+            f"User {current_user.id} fetched batch messages for {len(results)} questions "
+            f"({sum(len(r['messages']) for r in results)} messages, {len(unavailable)} unavailable)"
+        )
+        return {"success": True, "results": results, "unavailable": unavailable}
+    except SQLAlchemyError as e:
+        logger.error(f"Database error fetching batch messages: {str(e)}", exc_info=True)
+        raise HTTPException(status_code=500, detail="Failed to fetch messages")
+    except Exception as e:
+        logger.error(f"Unexpected error fetching batch messages: {str(e)}", exc_info=True)
+        raise HTTPException(status_code=500, detail="Failed to fetch messages")
+
+
 @app.post("/api/messages/mark-read")
 async def mark_messages_as_read(
     request: MarkReadRequest,
@@ -726,13 +1108,17 @@ async def accept_question(
         await db.commit()
         await db.refresh(question)
         
-        # 广播问题状态更新到相关用户（学生和老师）
-        ws_message = question.to_ws_message(config.WS_TYPE_QUESTION_UPDATED)
+        # 推送给学生、正在查看该问题的连接和待接取列表（移除已接受的问题）
+        await manager.publish(
+            question.to_ws_message(config.WS_TYPE_QUESTION_UPDATED),
+            topics=[config.WS_TOPIC_TUTOR_PENDING, question_topic(question.id)],
+            user_ids=[question.user_id]
+        )
         
-        # 发送给学生
-        await manager.send_personal_message(ws_message, question.user_id)
-        # 发送给所有老师（移除已接受的问题）
-        await manager.broadcast_to_tutors(ws_message)
+        # 待处理期间任何老师都能订阅问题主题，接受后只保留提问者和接受的老师，避免私聊消息推送给其他老师
+        revoked = manager.revoke_topic(question_topic(question.id), [question.user_id, question.tutor_id])
+        if revoked:
+            logger.info(f"Revoked topic {question_topic(question.id)} from users {revoked}")
         
         logger.info(f"Question {question.id} accepted by tutor {current_user.id}")
         return {
@@ -790,20 +1176,22 @@ async def close_question(
         if current_user.role == config.ROLE_STUDENT and question.user_id != current_user.id:
             raise HTTPException(status_code=403, detail="You can only close your own questions")
         
+        was_pending = question.status == config.STATUS_PENDING
         question.status = config.STATUS_CLOSED
         question.updated_at = int(time.time() * 1000)
         
         await db.commit()
         await db.refresh(question)
         
-        # 广播问题状态更新到相关用户
-        ws_message = question.to_ws_message(config.WS_TYPE_QUESTION_UPDATED)
-        
-        # 发送给学生
-        await manager.send_personal_message(ws_message, question.user_id)
-        # 如果有老师，也发送给老师
-        if question.tutor_id:
-            await manager.send_personal_message(ws_message, question.tutor_id)
+        # 推送给学生、老师和正在查看该问题的连接；待接取的问题被关闭时同时从待接取列表移除
+        topics = [question_topic(question.id)]
+        if was_pending:
+            topics.append(config.WS_TOPIC_TUTOR_PENDING)
+        await manager.publish(
+            question.to_ws_message(config.WS_TYPE_QUESTION_UPDATED),
+            topics=topics,
+            user_ids=[question.user_id, question.tutor_id]
+        )
         
         logger.info(f"Question {question.id} closed by user {current_user.id}")
         return {
@@ -933,15 +1321,109 @@ async def get_image(user_id: int, filename: str) -> FileResponse:
         raise HTTPException(status_code=500, detail="Failed to serve image")
 
 
+async def handle_ws_chat_message(
+    db: AsyncSession,
+    sender: User,
+    message_id: str,
+    data: Any
+) -> Dict[str, Any]:
+    """
+    处理 WebSocket 上行的聊天消息
+    
+    Args:
+        db: 数据库会话
+        sender: 发送者
+        message_id: 客户端生成的消息ID
+        data: 帧的 data 字段，包含 questionId、content、messageType
+        
+    Returns:
+        Dict[str, Any]: ACK 的 data 字段，成功时携带已保存的消息，失败时携带错误信息
+    """
+    if not isinstance(data, dict) or not isinstance(data.get("questionId"), int) or not data.get("content"):
+        return {"status": config.WS_ACK_STATUS_ERROR, "error": "Invalid chat message"}
+    message_type = data.get("messageType") or config.MESSAGE_TYPE_TEXT
+    if message_type not in config.VALID_MESSAGE_TYPES:
+        return {"status": config.WS_ACK_STATUS_ERROR, "error": "Invalid message type"}
+    
+    try:
+        saved = await persist_chat_message(db, sender, data["questionId"], data["content"], message_type, message_id)
+        return {"status": config.WS_ACK_STATUS_OK, "message": saved}
+    except HTTPException as e:
+        return {"status": config.WS_ACK_STATUS_ERROR, "error": str(e.detail)}
+    except SQLAlchemyError as e:
+        logger.error(f"Database error saving WebSocket message: {str(e)}", exc_info=True)
+        await db.rollback()
+        return {"status": config.WS_ACK_STATUS_ERROR, "error": "Failed to send message"}
+
+
+async def authorize_topics(db: AsyncSession, user: User, topics: Any) -> List[str]:
+    """
+    过滤客户端请求订阅的主题，只保留有权查看的
+    
+    - tutor:pending：仅老师
+    - question:{id}：问题的提问者、接取的老师，或问题仍待接取时的任何老师
+    
+    Args:
+        db: 数据库会话
+        user: 当前用户
+        topics: 客户端提交的主题列表
+        
+    Returns:
+        List[str]: 允许订阅的主题
+    """
+    if not isinstance(topics, list):
+        return []
+    allowed: List[str] = []
+    question_ids: Dict[int, str] = {}
+    for topic in topics[:config.WS_MAX_TOPICS]:
+        if not isinstance(topic, str):
+            continue
+        if topic == config.WS_TOPIC_TUTOR_PENDING:
+            if user.role == config.ROLE_TUTOR:
+                allowed.append(topic)
+        elif topic.startswith(config.WS_TOPIC_QUESTION_PREFIX):
+            suffix = topic[len(config.WS_TOPIC_QUESTION_PREFIX):]
+            if suffix.isdigit():
+                question_ids[int(suffix)] = topic
+    
+    if question_ids:
+        result = await db.execute(
+            select(Question).where(
+                and_(Question.id.in_(list(question_ids)), Question.is_deleted == config.USER_NOT_DELETED)
+            )
+        )
+        for question in result.scalars().all():
+            if (question.user_id == user.id or question.tutor_id == user.id
+                    or (user.role == config.ROLE_TUTOR and question.status == config.STATUS_PENDING)):
+                allowed.append(question_ids[question.id])
+    
+    rejected = len(topics) - len(allowed)
+    if rejected:
+        logger.warning(f"Rejected {rejected} topic subscriptions for user {user.id}")
+    return allowed
+
+
 # WebSocket endpoint
 @app.websocket("/ws/{user_id}")
-async def websocket_endpoint(websocket: WebSocket, user_id: int) -> None:
+async def websocket_endpoint(
+    websocket: WebSocket,
+    user_id: int,
+    since: int = Query(0, ge=0),
+    epoch: Optional[str] = Query(None),
+    topics: Optional[str] = Query(None)
+) -> None:
     """
     WebSocket连接端点
     
+    客户端重连时携带最后应用的事件序号（since）和服务端纪元（epoch），
+    服务端只补发错过的事件；缺口过大或纪元不一致时改为发送全量快照
+    
     Args:
         websocket: WebSocket连接对象
         user_id: 用户ID
+        since: 客户端最后应用的事件序号，0表示没有记录
+        epoch: 客户端记录的服务端纪元
+        topics: 逗号分隔的订阅主题，在补发之前生效，补发的主题事件按这些订阅过滤
         
     Returns:
         None
@@ -964,23 +1446,30 @@ async def websocket_endpoint(websocket: WebSocket, user_id: int) -> None:
             await websocket.close(code=1008, reason="User not found")
             return
         
+        # 鉴权查询会让出事件循环，必须在注册连接之前完成：
+        # 注册之后到补发结束之前，实时推送不能先于补发的事件到达客户端
+        authorized_topics = await authorize_topics(db, user, topics.split(",")) if topics else []
+        
         await manager.connect(websocket, user_id, user.role)
         logger.info(f"WebSocket connected: user {user_id} ({user.role})")
+        manager.subscribe(user_id, authorized_topics)
         
-        # If tutor connects, send all pending questions
-        if user.role == config.ROLE_TUTOR:
-            result = await db.execute(
+        async def load_snapshot() -> List[Dict[str, Any]]:
+            """全量快照：订阅了待接取列表的老师为所有待处理问题，其余数据由 HTTP 同步负责"""
+            if not manager.is_subscribed(user_id, config.WS_TOPIC_TUTOR_PENDING):
+                return []
+            snapshot_result = await db.execute(
                 select(Question).where(
                     and_(Question.status == config.STATUS_PENDING, Question.is_deleted == config.USER_NOT_DELETED)
                 ).order_by(Question.created_at.asc())
             )
-            pending_questions = result.scalars().all()
-            
-            for question in pending_questions:
-                await manager.send_personal_message(question.to_ws_message(config.WS_TYPE_NEW_QUESTION), user_id)
-            
-            if pending_questions:
-                logger.info(f"Sent {len(pending_questions)} pending questions to tutor {user_id}")
+            return [
+                question.to_ws_message(config.WS_TYPE_NEW_QUESTION)
+                for question in snapshot_result.scalars().all()
+            ]
+        
+        # 增量补发错过的事件，或发送全量快照
+        await manager.resume(user_id, since, epoch, load_snapshot)
         
         try:
             while True:
@@ -989,34 +1478,49 @@ async def websocket_endpoint(websocket: WebSocket, user_id: int) -> None:
                 
                 message_type = message.get("type")
                 message_id = message.get("messageId")
+                logger.debug(f"Received WebSocket message type={message_type} from user {user_id}")
+                
+                # 连接质量探测：立即回复，不发送 ACK
+                if message_type == config.WS_TYPE_PING:
+                    if message_id:
+                        await manager.send_pong(user_id, message_id)
+                    continue
+                
+                # 订阅管理：不发送 ACK，客户端重连时会在连接地址中重新声明全部订阅
+                if message_type == config.WS_TYPE_SUBSCRIBE:
+                    data = message.get("data") or {}
+                    manager.subscribe(user_id, await authorize_topics(db, user, data.get("topics")))
+                    continue
+                if message_type == config.WS_TYPE_UNSUBSCRIBE:
+                    data = message.get("data") or {}
+                    requested = data.get("topics")
+                    manager.unsubscribe(user_id, requested if isinstance(requested, list) else [])
+                    continue
+                
+                # 上行聊天消息：保存后在 ACK 中返回结果，messageId 同时作为幂等键
+                if message_type == config.WS_TYPE_CHAT_MESSAGE and message_id:
+                    ack_data = await handle_ws_chat_message(db, user, message_id, message.get("data"))
+                    await manager.send_ack(user_id, message_id, ack_data)
+                    continue
                 
                 # Send ACK
                 if message_id:
                     await manager.send_ack(user_id, message_id)
                 
-                # 注意：客户端不再通过 WebSocket 发送业务消息
-                # 所有消息现在都通过 HTTP API 处理，后端自动推送
-                # 保留此处以便接收心跳或其他控制消息
-                logger.debug(f"Received WebSocket message type={message_type} from user {user_id}")
-                
-                # 如果将来需要处理特殊的 WebSocket 消息，可以在这里添加
-                # 例如：心跳检测、在线状态更新等
-                
-                # 以下转发逻辑已废弃，因为客户端不再发送这些消息：
+                # 其他业务操作仍通过 HTTP API 处理，后端自动推送：
                 # - NEW_QUESTION: 由 /api/questions POST 处理并广播
-                # - CHAT_MESSAGE: 由 /api/messages POST 处理并推送
                 # - QUESTION_ACCEPTED: 由 /api/questions/accept POST 处理并推送
                 # - QUESTION_CLOSED: 由 /api/questions/close POST 处理并推送
         
         except WebSocketDisconnect:
-            manager.disconnect(user_id)
+            manager.disconnect(user_id, websocket)
             logger.info(f"WebSocket disconnected: user {user_id}")
         except (json.JSONDecodeError, KeyError) as e:
             logger.error(f"WebSocket message parse error for user {user_id}: {str(e)}", exc_info=True)
-            manager.disconnect(user_id)
+            manager.disconnect(user_id, websocket)
         except Exception as e:
             logger.error(f"WebSocket error for user {user_id}: {str(e)}", exc_info=True)
-            manager.disconnect(user_id)
+            manager.disconnect(user_id, websocket)
     
     finally:
         await db.close()
@@ -1024,5 +1528,11 @@ async def websocket_endpoint(websocket: WebSocket, user_id: int) -> None:
 
 if __name__ == "__main__":
     import uvicorn
-    uvicorn.run("main:app", host=config.HOST, port=config.PORT, reload=config.RELOAD)
+    uvicorn.run(
+        "main:app",
+        host=config.HOST,
+        port=config.PORT,
+        reload=config.RELOAD,
+        ws_per_message_deflate=config.WS_PER_MESSAGE_DEFLATE
+    )
 
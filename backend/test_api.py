@@ -71,6 +71,7 @@ class APITester:
         self.tutor_id: Optional[int] = None
         self.test_question_id: Optional[int] = None
         self.test_results: list = []
+        self.last_error: Optional[str] = None
         
     def add_result(self, test_name: str, passed: bool, details: str = "") -> None:
         """记录测试结果"""
@@ -173,36 +174,80 @@ class APITester:
         
         return None
     
-    def test_get_questions(self, token: str, page: int = 1, page_size: int = 20) -> bool:
-        """测试获取问题列表（支持分页）"""
-        print_info(f"测试获取问题列表 (page={page}, page_size={page_size})")
-        
-        try:
+    def fetch_all_pages(self, token: str, path: str, params: Dict[str, Any], key: str) -> Optional[Tuple[list, int]]:
+        """按 nextCursor 逐页获取列表，返回 (条目列表, 页数)；请求失败时记录原因并返回 None"""
+        items = []
+        pages = 0
+        cursor = None
+        while True:
+            page_params = dict(params)
+            if cursor:
+                page_params["cursor"] = cursor
             response = requests.get(
-                f"{self.base_url}/api/questions",
-                params={"page": page, "page_size": page_size},
+                f"{self.base_url}{path}",
+                params=page_params,
                 headers={"Authorization": f"Bearer {token}"},
                 timeout=5
             )
-            
-            if response.status_code == 200:
-                data = response.json()
-                if data.get("success"):
-                    questions = data.get("questions", [])
-                    pagination = data.get("pagination", {})
-                    details = f"当前页 {len(questions)} 个问题，总共 {pagination.get('total', 0)} 个"
+            if response.status_code != 200:
+                self.last_error = f"HTTP {response.status_code}"
+                return None
+            data = response.json()
+            if not data.get("success"):
+                self.last_error = data.get("message")
+                return None
+            items.extend(data.get(key, []))
+            pages += 1
+            cursor = data.get("nextCursor")
+            if not data.get("hasMore") or not cursor:
+                return items, pages
+    
+    def test_get_questions(self, token: str, page_size: int = 20) -> bool:
+        """测试获取问题列表（游标分页，逐页取完并检查没有重复）"""
+        print_info(f"测试获取问题列表 (page_size={page_size})")
+        
+        try:
+            fetched = self.fetch_all_pages(token, "/api/questions", {"page_size": page_size}, "questions")
+            if fetched:
+                questions, pages = fetched
+                ids = [q["id"] for q in questions]
+                if len(ids) == len(set(ids)):
+                    details = f"共 {pages} 页 {len(questions)} 个问题"
                     self.add_result("获取问题列表", True, details)
                     return True
-                else:
-                    self.add_result("获取问题列表", False, data.get("message"))
+                self.add_result("获取问题列表", False, "翻页结果有重复问题")
             else:
-                self.add_result("获取问题列表", False, f"HTTP {response.status_code}")
+                self.add_result("获取问题列表", False, self.last_error)
                 
         except Exception as e:
             self.add_result("获取问题列表", False, str(e))
         
         return False
     
+    def test_conditional_get_questions(self, token: str) -> bool:
+        """测试问题列表的条件请求：带上次的 ETag 再次请求，内容未变化时返回 304"""
+        print_info("测试问题列表条件请求 (ETag / If-None-Match)")
+        
+        try:
+            url = f"{self.base_url}/api/questions"
+            headers = {"Authorization": f"Bearer {token}"}
+            first = requests.get(url, headers=headers, timeout=5)
+            etag = first.headers.get("ETag")
+            if first.status_code != 200 or not etag:
+                self.add_result("问题列表条件请求", False, f"HTTP {first.status_code}, ETag={etag}")
+                return False
+            
+            second = requests.get(url, headers={**headers, "If-None-Match": etag}, timeout=5)
+            if second.status_code == 304 and not second.content:
+                self.add_result("问题列表条件请求", True, f"ETag {etag} 未变化，返回 304")
+                return True
+            self.add_result("问题列表条件请求", False, f"期望 304，实际 HTTP {second.status_code}")
+                
+        except Exception as e:
+            self.add_result("问题列表条件请求", False, str(e))
+        
+        return False
+    
     def test_accept_question(self, token: str, question_id: int) -> bool:
         """测试接受问题"""
         print_info(f"测试接受问题: {question_id}")
@@ -262,30 +307,24 @@ class APITester:
         
         return False
     
-    def test_get_messages(self, token: str, question_id: int, page: int = 1, page_size: int = 50) -> bool:
-        """测试获取消息列表（支持分页）"""
-        print_info(f"测试获取消息列表: 问题 {question_id} (page={page}, page_size={page_size})")
+    def test_get_messages(self, token: str, question_id: int, page_size: int = 50) -> bool:
+        """测试获取消息列表（游标分页，逐页取完并检查按ID升序）"""
+        print_info(f"测试获取消息列表: 问题 {question_id} (page_size={page_size})")
         
         try:
-            response = requests.get(
-                f"{self.base_url}/api/messages",
-                params={"questionId": question_id, "page": page, "page_size": page_size},
-                headers={"Authorization": f"Bearer {token}"},
-                timeout=5
+            fetched = self.fetch_all_pages(
+                token, "/api/messages", {"questionId": question_id, "page_size": page_size}, "messages"
             )
-            
-            if response.status_code == 200:
-                data = response.json()
-                if data.get("success"):
-                    messages = data.get("messages", [])
-                    pagination = data.get("pagination", {})
-                    details = f"当前页 {len(messages)} 条消息，总共 {pagination.get('total', 0)} 条"
+            if fetched:
+                messages, pages = fetched
+                ids = [m["id"] for m in messages]
+                if ids == sorted(set(ids)):
+                    details = f"共 {pages} 页 {len(messages)} 条消息"
                     self.add_result("获取消息列表", True, details)
                     return True
-                else:
-                    self.add_result("获取消息列表", False, data.get("message"))
+                self.add_result("获取消息列表", False, "翻页结果重复或乱序")
             else:
-                self.add_result("获取消息列表", False, f"HTTP {response.status_code}")
+                self.add_result("获取消息列表", False, self.last_error)
                 
         except Exception as e:
             self.add_result("获取消息列表", False, str(e))
@@ -351,6 +390,131 @@ class APITester:
         
         return False
     
+    async def test_websocket_resume_during_authorization(self, user_id: int, question_id: int) -> bool:
+        """
+        测试握手期间发布的事件：订阅鉴权时发布的事件只通过补发到达，且先于 RESUME，
+        之后的实时推送在 RESUME 之后到达
+
+        在测试进程内直接驱动连接端点，鉴权函数在查询前发布一条事件，模拟并发的推送
+        """
+        print_info("测试订阅鉴权期间的推送顺序")
+        
+        try:
+            import main as server
+            from fastapi import WebSocketDisconnect
+        except ImportError as e:
+            self.add_result("鉴权期间推送顺序", False, f"无法加载服务端模块: {e}")
+            return False
+        
+        manager = server.manager
+        authorize_topics = server.authorize_topics
+        
+        async def authorize_and_publish(db, user, topics):
+            await manager.publish(
+                {"type": "QUESTION_UPDATED", "data": {"questionId": question_id, "status": "during-auth"}},
+                user_ids=[user_id]
+            )
+            return await authorize_topics(db, user, topics)
+        
+        class RecordingWebSocket:
+            """记录下行帧的连接，disconnected 置位后下一次读取时断开"""
+            def __init__(self) -> None:
+                self.scope: Dict[str, Any] = {"subprotocols": []}
+                self.frames: list = []
+                self.disconnected = asyncio.Event()
+            
+            async def accept(self, subprotocol: Optional[str] = None) -> None:
+                pass
+            
+            async def send_text(self, text: str) -> None:
+                self.frames.append(json.loads(text))
+            
+            async def send_bytes(self, data: bytes) -> None:
+                raise AssertionError("unexpected binary frame")
+            
+            async def receive_text(self) -> str:
+                await self.disconnected.wait()
+                raise WebSocketDisconnect(code=1000)
+            
+            async def close(self, code: int = 1000, reason: Optional[str] = None) -> None:
+                self.disconnected.set()
+        
+        async def wait_for_type(websocket: RecordingWebSocket, frame_type: str) -> None:
+            while not any(frame.get("type") == frame_type for frame in websocket.frames):
+                await asyncio.sleep(0.01)
+        
+        # 让序号大于 0，握手走增量补发而不是全量快照
+        await manager.publish({"type": "QUESTION_UPDATED", "data": {"questionId": question_id, "status": "warm-up"}})
+        since = manager.seq
+        
+        websocket = RecordingWebSocket()
+        server.authorize_topics = authorize_and_publish
+        try:
+            endpoint = asyncio.create_task(server.websocket_endpoint(
+                websocket, user_id, since=since, epoch=manager.epoch,
+                topics=server.question_topic(question_id)
+            ))
+            await asyncio.wait_for(wait_for_type(websocket, "RESUME"), timeout=5.0)
+            
+            await manager.publish(
+                {"type": "QUESTION_UPDATED", "data": {"questionId": question_id, "status": "live"}},
+                user_ids=[user_id]
+            )
+            websocket.disconnected.set()
+            await asyncio.wait_for(endpoint, timeout=5.0)
+        finally:
+            server.authorize_topics = authorize_topics
+        
+        statuses = [
+            frame["type"] if frame.get("type") == "RESUME" else frame["data"]["status"]
+            for frame in websocket.frames
+        ]
+        passed = statuses == ["during-auth", "RESUME", "live"]
+        self.add_result("鉴权期间推送顺序", passed, " -> ".join(statuses))
+        return passed
+    
+    async def test_question_topic_revoked_on_accept(self, other_tutor_id: int) -> bool:
+        """
+        测试问题被接受后撤销其他老师的问题主题订阅：待处理期间订阅了问题主题的老师，
+        在问题被其他老师接受后不再收到该问题的私聊消息
+        """
+        print_info("测试问题接受后撤销其他老师的主题订阅")
+        
+        try:
+            question_id = self.test_create_question(self.student_token, "主题订阅撤销测试问题")
+            if not question_id:
+                self.add_result("接受后撤销主题订阅", False, "创建问题失败")
+                return False
+            
+            ws_uri = f"{self.ws_url}/ws/{other_tutor_id}?topics=question:{question_id}"
+            async with websockets.connect(ws_uri, ping_interval=None) as other_ws:
+                # RESUME 是握手的最后一帧，此时订阅已生效
+                while json.loads(await asyncio.wait_for(other_ws.recv(), timeout=5.0)).get("type") != "RESUME":
+                    pass
+                
+                if not self.test_accept_question(self.tutor_token, question_id):
+                    self.add_result("接受后撤销主题订阅", False, "接受问题失败")
+                    return False
+                if not self.test_send_message(self.student_token, question_id, "只应推送给接受问题的老师"):
+                    self.add_result("接受后撤销主题订阅", False, "发送消息失败")
+                    return False
+                
+                received = []
+                try:
+                    while True:
+                        received.append(json.loads(await asyncio.wait_for(other_ws.recv(), timeout=2.0)).get("type"))
+                except asyncio.TimeoutError:
+                    pass
+            
+            passed = "CHAT_MESSAGE" not in received
+            self.add_result("接受后撤销主题订阅", passed, f"其他老师收到: {received or '无'}")
+            return passed
+                    
+        except Exception as e:
+            self.add_result("接受后撤销主题订阅", False, str(e))
+        
+        return False
+    
     async def test_websocket_message_broadcast(self) -> bool:
         """测试 WebSocket 消息广播"""
         print_info("测试 WebSocket 消息广播")
@@ -452,6 +616,7 @@ async def main() -> int:
     timestamp = int(time.time())
     student_username = f"test_student_{timestamp}"
     tutor_username = f"test_tutor_{timestamp}"
+    other_tutor_username = f"test_tutor2_{timestamp}"
     password = "test123456"
     
     # 注册学生
@@ -466,6 +631,10 @@ async def main() -> int:
     # 登录老师
     tester.tutor_token, tester.tutor_id = tester.test_login_user(tutor_username, password)
     
+    # 注册并登录第二个老师（用于主题订阅撤销测试）
+    tester.test_register_user(other_tutor_username, password, "tutor")
+    _, other_tutor_id = tester.test_login_user(other_tutor_username, password)
+    
     if not tester.student_token or not tester.tutor_token:
         print_error("用户登录失败，终止测试")
         tester.print_summary()
@@ -483,12 +652,15 @@ async def main() -> int:
     # 获取问题列表（学生）- 默认分页
     tester.test_get_questions(tester.student_token)
     
-    # 获取问题列表（学生）- 自定义分页
-    tester.test_get_questions(tester.student_token, page=1, page_size=10)
+    # 获取问题列表（学生）- 每页一条，逐页翻完
+    tester.test_get_questions(tester.student_token, page_size=1)
     
     # 获取问题列表（老师）
     tester.test_get_questions(tester.tutor_token)
     
+    # 问题列表未变化时返回 304
+    tester.test_conditional_get_questions(tester.student_token)
+    
     if not tester.test_question_id:
         print_error("创建问题失败，跳过后续测试")
     else:
@@ -518,8 +690,8 @@ async def main() -> int:
         # 获取消息列表（关闭前）- 默认分页
         tester.test_get_messages(tester.student_token, tester.test_question_id)
         
-        # 获取消息列表（关闭前）- 自定义分页
-        tester.test_get_messages(tester.student_token, tester.test_question_id, page=1, page_size=5)
+        # 获取消息列表（关闭前）- 每页一条，逐页翻完
+        tester.test_get_messages(tester.student_token, tester.test_question_id, page_size=1)
         
         # 关闭问题
         tester.test_close_question(tester.student_token, tester.test_question_id)
@@ -542,6 +714,14 @@ async def main() -> int:
     # 测试消息广播
     await tester.test_websocket_message_broadcast()
     
+    # 测试问题接受后其他老师不再收到该问题的私聊消息
+    if other_tutor_id:
+        await tester.test_question_topic_revoked_on_accept(other_tutor_id)
+    
+    # 测试握手期间的推送顺序（在测试进程内驱动连接端点）
+    if tester.student_id and tester.test_question_id:
+        await tester.test_websocket_resume_during_authorization(tester.student_id, tester.test_question_id)
+    
     # ========== 测试总结 ==========
     all_passed = tester.print_summary()
     
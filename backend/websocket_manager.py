@@ -1,13 +1,34 @@
 from fastapi import WebSocket
 from fastapi.websockets import WebSocketDisconnect, WebSocketState
-from typing import Dict, List, Any
-import json
+from typing import Dict, List, Any, Optional, Tuple, Deque, Union, Set, Iterable
+from collections import deque, OrderedDict
 import asyncio
 import logging
+import uuid
+
+import config
+from ws_codec import choose_subprotocol, encode_frame
 
 # 配置日志
 logger = logging.getLogger(__name__)
 
+# 事件受众：("user", user_id)、("role", role)，
+# 或 ("topics", 主题集合, 用户ID集合, 排除的用户ID)：订阅了任一主题或在用户集合中的连接
+Audience = Tuple[Any, ...]
+
+
+def question_topic(question_id: int) -> str:
+    """
+    问题主题名
+    
+    Args:
+        question_id: 问题ID
+        
+    Returns:
+        str: question:{id}
+    """
+    return f"{config.WS_TOPIC_QUESTION_PREFIX}{question_id}"
+
 
 class ConnectionManager:
     """WebSocket连接管理器"""
@@ -16,11 +37,27 @@ class ConnectionManager:
         """初始化连接管理器"""
         self.active_connections: Dict[int, WebSocket] = {}
         self.user_roles: Dict[int, str] = {}
+        # 每个连接一把发送锁：重连握手补发期间阻塞实时推送，保证客户端按序号顺序收到事件
+        self.send_locks: Dict[int, asyncio.Lock] = {}
+        # 每个连接协商的子协议（None 表示 JSON 文本帧）
+        self.subprotocols: Dict[int, Optional[str]] = {}
+        # 每个连接订阅的主题，以及主题到订阅者的反向索引（推送时只遍历订阅者）
+        self.subscriptions: Dict[int, Set[str]] = {}
+        self.topic_members: Dict[str, Set[int]] = {}
+        # 服务端纪元：进程重启后序号从头开始，客户端据此判断旧序号是否仍然有效
+        self.epoch: str = uuid.uuid4().hex[:12]
+        self.seq: int = 0
+        # 最近推送事件日志：(seq, audience, message)
+        self.event_log: Deque[Tuple[int, Audience, Dict[str, Any]]] = deque(maxlen=config.WS_EVENT_LOG_SIZE)
+        # 最近处理过的客户端消息：(user_id, client_message_id) -> 已保存的消息字典
+        self.client_messages: "OrderedDict[Tuple[int, str], Dict[str, Any]]" = OrderedDict()
     
     async def connect(self, websocket: WebSocket, user_id: int, role: str) -> None:
         """
         连接新的WebSocket客户端
         
+        握手时按客户端提供的 Sec-WebSocket-Protocol 协商下行帧编码
+        
         Args:
             websocket: WebSocket连接对象
             user_id: 用户ID
@@ -29,72 +66,318 @@ class ConnectionManager:
         Returns:
             None
         """
-        await websocket.accept()
+        subprotocol = choose_subprotocol(websocket.scope.get("subprotocols", []))
+        await websocket.accept(subprotocol=subprotocol)
         self.active_connections[user_id] = websocket
         self.user_roles[user_id] = role
-        logger.info(f"User {user_id} ({role}) connected. Total connections: {len(self.active_connections)}")
+        self.send_locks[user_id] = asyncio.Lock()
+        self.subprotocols[user_id] = subprotocol
+        # 同一用户的新连接替换旧连接，订阅由新连接重新声明
+        self._clear_subscriptions(user_id)
+        logger.info(
+            f"User {user_id} ({role}) connected with {subprotocol or 'default JSON'} framing. "
+            f"Total connections: {len(self.active_connections)}"
+        )
     
-    def disconnect(self, user_id: int) -> None:
+    def disconnect(self, user_id: int, websocket: Optional[WebSocket] = None) -> None:
         """
         断开WebSocket客户端连接
         
         Args:
             user_id: 用户ID
+            websocket: 断开的连接；已被同一用户的新连接替换时不做任何事
             
         Returns:
             None
         """
+        if websocket is not None and self.active_connections.get(user_id) is not websocket:
+            return
+        self._clear_subscriptions(user_id)
         if user_id in self.active_connections:
             del self.active_connections[user_id]
         if user_id in self.user_roles:
             del self.user_roles[user_id]
+        if user_id in self.send_locks:
+            del self.send_locks[user_id]
+        if user_id in self.subprotocols:
+            del self.subprotocols[user_id]
         logger.info(f"User {user_id} disconnected. Total connections: {len(self.active_connections)}")
     
-    async def send_personal_message(self, message: Dict[str, Any], user_id: int) -> None:
+    def subscribe(self, user_id: int, topics: Iterable[str]) -> List[str]:
+        """
+        为连接添加订阅（调用方负责鉴权）
+        
+        Args:
+            user_id: 用户ID
+            topics: 主题列表
+            
+        Returns:
+            List[str]: 实际新增的主题
+        """
+        if user_id not in self.active_connections:
+            return []
+        current = self.subscriptions.setdefault(user_id, set())
+        added = []
+        for topic in topics:
+            if topic in current:
+                continue
+            if len(current) >= config.WS_MAX_TOPICS:
+                logger.warning(f"User {user_id} reached topic limit {config.WS_MAX_TOPICS}, ignoring {topic}")
+                break
+            current.add(topic)
+            self.topic_members.setdefault(topic, set()).add(user_id)
+            added.append(topic)
+        return added
+    
+    def unsubscribe(self, user_id: int, topics: Iterable[str]) -> None:
+        """
+        取消连接的订阅
+        
+        Args:
+            user_id: 用户ID
+            topics: 主题列表
+            
+        Returns:
+            None
+        """
+        current = self.subscriptions.get(user_id)
+        if not current:
+            return
+        for topic in topics:
+            if topic not in current:
+                continue
+            current.discard(topic)
+            members = self.topic_members.get(topic)
+            if members is not None:
+                members.discard(user_id)
+                if not members:
+                    del self.topic_members[topic]
+    
+    def revoke_topic(self, topic: str, keep: Iterable[Optional[int]]) -> List[int]:
+        """
+        取消主题中除 keep 以外所有连接的订阅
+        
+        订阅只在建立时鉴权，参与者变化后（如问题被接受）需调用此方法撤销不再有权限的订阅
+        
+        Args:
+            topic: 主题
+            keep: 保留订阅的用户ID列表
+            
+        Returns:
+            List[int]: 被撤销订阅的用户ID
+        """
+        members = self.topic_members.get(topic)
+        if not members:
+            return []
+        keep_ids = {user_id for user_id in keep if user_id is not None}
+        revoked = [user_id for user_id in members if user_id not in keep_ids]
+        for user_id in revoked:
+            self.unsubscribe(user_id, [topic])
+        return revoked
+    
+    def _clear_subscriptions(self, user_id: int) -> None:
+        """
+        清除连接的全部订阅
+        
+        Args:
+            user_id: 用户ID
+            
+        Returns:
+            None
+        """
+        topics = self.subscriptions.get(user_id)
+        if topics:
+            self.unsubscribe(user_id, list(topics))
+        self.subscriptions.pop(user_id, None)
+    
+    def is_subscribed(self, user_id: int, topic: str) -> bool:
+        """
+        Args:
+            user_id: 用户ID
+            topic: 主题
+            
+        Returns:
+            bool: 连接是否订阅了该主题
+        """
+        return topic in self.subscriptions.get(user_id, ())
+    
+    def _record_event(self, message: Dict[str, Any], audience: Audience) -> Dict[str, Any]:
+        """
+        为推送事件分配序号并写入事件日志
+        
+        Args:
+            message: 消息字典
+            audience: 事件受众
+            
+        Returns:
+            Dict[str, Any]: 带 seq 字段的消息副本
+        """
+        self.seq += 1
+        stamped = dict(message)
+        stamped["seq"] = self.seq
+        self.event_log.append((self.seq, audience, stamped))
+        return stamped
+    
+    def _encode(self, user_id: int, message: Dict[str, Any]) -> Union[str, bytes]:
+        """
+        按连接协商的子协议编码消息
+        
+        Args:
+            user_id: 目标用户ID
+            message: 消息字典
+            
+        Returns:
+            Union[str, bytes]: JSON 文本或 MessagePack 二进制
+        """
+        return encode_frame(message, self.subprotocols.get(user_id))
+    
+    @staticmethod
+    async def _write(websocket: WebSocket, frame: Union[str, bytes]) -> None:
+        """
+        写出一帧：bytes 作为二进制帧，str 作为文本帧
+        
+        Args:
+            websocket: WebSocket连接对象
+            frame: 已编码的消息
+            
+        Returns:
+            None
+        """
+        if isinstance(frame, bytes):
+            await websocket.send_bytes(frame)
+        else:
+            await websocket.send_text(frame)
+    
+    async def _send(self, user_id: int, frame: Union[str, bytes]) -> bool:
+        """
+        在连接的发送锁内发送一帧
+        
+        Args:
+            user_id: 目标用户ID
+            frame: 已编码的消息
+            
+        Returns:
+            bool: 发送成功返回True
+        """
+        websocket = self.active_connections.get(user_id)
+        lock = self.send_locks.get(user_id)
+        if websocket is None or lock is None:
+            return False
+        async with lock:
+            await self._write(websocket, frame)
+        return True
+    
+    async def send_personal_message(self, message: Dict[str, Any], user_id: int, sequenced: bool = True) -> None:
         """
         发送个人消息
         
         Args:
             message: 消息字典
             user_id: 目标用户ID
+            sequenced: 是否作为推送事件分配序号（ACK 等控制帧不需要）
             
         Returns:
             None
         """
+        if sequenced:
+            message = self._record_event(message, ("user", user_id))
         if user_id in self.active_connections:
             try:
-                await self.active_connections[user_id].send_text(json.dumps(message))
+                await self._send(user_id, self._encode(user_id, message))
                 logger.debug(f"Sent message to user {user_id}: {message.get('type', 'unknown')}")
             except (WebSocketDisconnect, RuntimeError, ConnectionError) as e:
                 logger.error(f"Error sending message to user {user_id}: {e}")
                 self.disconnect(user_id)
     
-    async def broadcast_to_tutors(self, message: Dict[str, Any]) -> None:
+    async def _broadcast_to_role(self, message: Dict[str, Any], role: str) -> int:
         """
-        广播消息到所有连接的老师
+        广播消息到指定角色的所有连接
         
         Args:
             message: 要广播的消息字典
+            role: 目标角色
+            
+        Returns:
+            int: 目标连接数
+        """
+        stamped = self._record_event(message, ("role", role))
+        targets = [user_id for user_id in self.active_connections if self.user_roles.get(user_id) == role]
+        await self._fan_out(stamped, targets)
+        return len(targets)
+    
+    async def publish(
+        self,
+        message: Dict[str, Any],
+        topics: Iterable[str] = (),
+        user_ids: Iterable[Optional[int]] = (),
+        exclude: Optional[int] = None
+    ) -> int:
+        """
+        推送到订阅了任一主题的连接，以及指定的用户；每个连接最多收到一份
+        
+        Args:
+            message: 消息字典
+            topics: 主题列表
+            user_ids: 无论是否订阅都要收到的用户（例如问题的参与者），None 会被忽略
+            exclude: 不需要收到的用户（例如消息发送者本人）
+            
+        Returns:
+            int: 目标连接数
+        """
+        topic_set = frozenset(topics)
+        user_set = frozenset(user_id for user_id in user_ids if user_id is not None)
+        stamped = self._record_event(message, ("topics", topic_set, user_set, exclude))
+        
+        targets: Set[int] = {user_id for user_id in user_set if user_id in self.active_connections}
+        for topic in topic_set:
+            targets.update(self.topic_members.get(topic, ()))
+        targets.discard(exclude)
+        await self._fan_out(stamped, list(targets))
+        logger.debug(
+            f"Published {message.get('type', 'unknown')} to {len(targets)} connections "
+            f"(topics {sorted(topic_set)})"
+        )
+        return len(targets)
+    
+    async def _fan_out(self, stamped: Dict[str, Any], user_ids: List[int]) -> None:
+        """
+        发送一个已分配序号的事件到多个连接，每种编码只序列化一次
+        
+        Args:
+            stamped: 带 seq 字段的消息
+            user_ids: 目标用户ID
             
         Returns:
             None
         """
+        encoded: Dict[Optional[str], Union[str, bytes]] = {}
         disconnected_users: List[int] = []
-        tutor_count = 0
         
-        for user_id, websocket in self.active_connections.items():
-            if self.user_roles.get(user_id) == "tutor":
-                tutor_count += 1
-                try:
-                    await websocket.send_text(json.dumps(message))
-                except (WebSocketDisconnect, RuntimeError, ConnectionError) as e:
-                    logger.error(f"Error broadcasting to tutor {user_id}: {e}")
-                    disconnected_users.append(user_id)
+        for user_id in user_ids:
+            subprotocol = self.subprotocols.get(user_id)
+            if subprotocol not in encoded:
+                encoded[subprotocol] = encode_frame(stamped, subprotocol)
+            try:
+                await self._send(user_id, encoded[subprotocol])
+            except (WebSocketDisconnect, RuntimeError, ConnectionError) as e:
+                logger.error(f"Error pushing to user {user_id}: {e}")
+                disconnected_users.append(user_id)
         
         # Clean up disconnected users
         for user_id in disconnected_users:
             self.disconnect(user_id)
+    
+    async def broadcast_to_tutors(self, message: Dict[str, Any]) -> None:
+        """
+        广播消息到所有连接的老师
         
+        Args:
+            message: 要广播的消息字典
+            
+        Returns:
+            None
+        """
+        tutor_count = await self._broadcast_to_role(message, config.ROLE_TUTOR)
         logger.debug(f"Broadcast to {tutor_count} tutors: {message.get('type', 'unknown')}")
     
     async def broadcast_to_students(self, message: Dict[str, Any]) -> None:
@@ -107,42 +390,174 @@ class ConnectionManager:
         Returns:
             None
         """
-        disconnected_users: List[int] = []
-        student_count = 0
+        student_count = await self._broadcast_to_role(message, config.ROLE_STUDENT)
+        logger.debug(f"Broadcast to {student_count} students: {message.get('type', 'unknown')}")
+    
+    def _missed_events(self, user_id: int, role: str, since: int) -> Optional[List[Dict[str, Any]]]:
+        """
+        查找客户端错过的事件
         
-        for user_id, websocket in self.active_connections.items():
-            if self.user_roles.get(user_id) == "student":
-                student_count += 1
-                try:
-                    await websocket.send_text(json.dumps(message))
-                except (WebSocketDisconnect, RuntimeError, ConnectionError) as e:
-                    logger.error(f"Error broadcasting to student {user_id}: {e}")
-                    disconnected_users.append(user_id)
+        Args:
+            user_id: 用户ID
+            role: 用户角色
+            since: 客户端最后应用的序号
+            
+        Returns:
+            Optional[List[Dict[str, Any]]]: 需要补发的事件；缺口超出事件日志范围或补发量过大时返回None
+        """
+        if since <= 0 or since > self.seq:
+            return None
+        oldest = self.event_log[0][0] if self.event_log else self.seq + 1
+        if since < oldest - 1:
+            # 缺口中的事件已被淘汰，无法保证增量完整
+            return None
         
-        # Clean up disconnected users
-        for user_id in disconnected_users:
-            self.disconnect(user_id)
+        missed = [
+            message for seq, audience, message in self.event_log
+            if seq > since and self._in_audience(audience, user_id, role)
+        ]
+        if len(missed) > config.WS_RESUME_MAX_REPLAY:
+            return None
+        return missed
+    
+    def _in_audience(self, audience: Audience, user_id: int, role: Optional[str]) -> bool:
+        """
+        判断连接是否属于事件受众（主题受众按补发时的订阅判断，客户端在连接地址中声明订阅）
         
-        logger.debug(f"Broadcast to {student_count} students: {message.get('type', 'unknown')}")
+        Args:
+            audience: 事件受众
+            user_id: 用户ID
+            role: 用户角色
+            
+        Returns:
+            bool: 是否需要补发给该连接
+        """
+        kind = audience[0]
+        if kind == "user":
+            return audience[1] == user_id
+        if kind == "role":
+            return audience[1] == role
+        _, topics, user_set, exclude = audience
+        if user_id == exclude:
+            return False
+        return user_id in user_set or not topics.isdisjoint(self.subscriptions.get(user_id, ()))
+    
+    async def resume(self, user_id: int, since: int, epoch: Optional[str], snapshot_loader) -> None:
+        """
+        重连握手：增量补发错过的事件，或在缺口过大时发送全量快照
+        
+        握手期间持有连接的发送锁，实时推送会在握手结束后再发出；
+        握手最后发送 RESUME 帧，携带当前纪元和序号，客户端应用完此前所有帧后保存该序号
+        
+        Args:
+            user_id: 用户ID
+            since: 客户端最后应用的序号
+            epoch: 客户端记录的服务端纪元
+            snapshot_loader: 异步函数，返回全量快照消息列表
+            
+        Returns:
+            None
+        """
+        lock = self.send_locks.get(user_id)
+        websocket = self.active_connections.get(user_id)
+        if lock is None or websocket is None:
+            return
+        role = self.user_roles.get(user_id)
+        
+        async with lock:
+            head = self.seq
+            missed = self._missed_events(user_id, role, since) if epoch == self.epoch else None
+            if missed is not None:
+                mode = config.WS_RESUME_MODE_DELTA
+                frames = missed
+            else:
+                mode = config.WS_RESUME_MODE_SNAPSHOT
+                frames = await snapshot_loader()
+            
+            for frame in frames:
+                await self._write(websocket, self._encode(user_id, frame))
+            
+            await self._write(websocket, self._encode(user_id, {
+                "type": config.WS_TYPE_RESUME,
+                "data": {
+                    "mode": mode,
+                    "epoch": self.epoch,
+                    "seq": head,
+                    "count": len(frames)
+                }
+            }))
+        logger.info(f"Resumed user {user_id} in {mode} mode from seq {since} (head {head}, {len(frames)} frames)")
     
-    async def send_ack(self, user_id: int, message_id: str) -> None:
+    def lookup_client_message(self, user_id: int, client_message_id: str) -> Optional[Dict[str, Any]]:
+        """
+        查找已处理过的客户端消息（重传或 HTTP 回退时直接返回上次的结果）
+        
+        Args:
+            user_id: 发送者ID
+            client_message_id: 客户端生成的消息ID
+            
+        Returns:
+            Optional[Dict[str, Any]]: 已保存的消息字典，未处理过时返回None
+        """
+        key = (user_id, client_message_id)
+        saved = self.client_messages.get(key)
+        if saved is not None:
+            self.client_messages.move_to_end(key)
+        return saved
+    
+    def remember_client_message(self, user_id: int, client_message_id: str, saved: Dict[str, Any]) -> None:
+        """
+        记录客户端消息的处理结果，超出容量时淘汰最久未访问的记录
+        
+        Args:
+            user_id: 发送者ID
+            client_message_id: 客户端生成的消息ID
+            saved: 已保存的消息字典
+            
+        Returns:
+            None
+        """
+        self.client_messages[(user_id, client_message_id)] = saved
+        while len(self.client_messages) > config.WS_CLIENT_MESSAGE_CACHE_SIZE:
+            self.client_messages.popitem(last=False)
+    
+    async def send_ack(self, user_id: int, message_id: str, data: Optional[Dict[str, Any]] = None) -> None:
         """
         发送确认消息
         
         Args:
             user_id: 用户ID
             message_id: 消息ID
+            data: 处理结果（可选），上行聊天消息的 ACK 携带 status 和已保存的消息
             
         Returns:
             None
         """
         ack_message = {
-            "type": "ACK",
+            "type": config.WS_TYPE_ACK,
             "messageId": message_id,
             "timestamp": str(int(asyncio.get_event_loop().time() * 1000))
         }
-        await self.send_personal_message(ack_message, user_id)
+        if data is not None:
+            ack_message["data"] = data
+        await self.send_personal_message(ack_message, user_id, sequenced=False)
+    
+    async def send_pong(self, user_id: int, probe_id: str) -> None:
+        """
+        回复连接质量探测，原样返回探测编号，客户端据此计算往返时间
+        
+        Args:
+            user_id: 用户ID
+            probe_id: PING 帧的 messageId
+            
+        Returns:
+            None
+        """
+        pong_message = {
+            "type": config.WS_TYPE_PONG,
+            "messageId": probe_id
+        }
+        await self.send_personal_message(pong_message, user_id, sequenced=False)
 
 
 manager = ConnectionManager()
-
@@ -0,0 +1,195 @@
+"""
+WebSocket 帧编码
+
+通过 Sec-WebSocket-Protocol 协商下行帧的编码：
+- asknow.msgpack.v1: MessagePack 二进制帧
+- asknow.json.v1 / 未协商: JSON 文本帧（默认，兼容旧客户端）
+
+MessagePack 编码器只实现推送消息用到的类型（None、bool、int、float、str、list、dict），
+不引入额外依赖。上行帧仍为 JSON 文本。
+"""
+import json
+import struct
+from typing import Any, Iterable, Optional, Union
+
+import config
+
+
+def choose_subprotocol(offered: Iterable[str]) -> Optional[str]:
+    """
+    按服务端偏好从客户端提供的子协议中选择一个
+    
+    Args:
+        offered: 客户端在 Sec-WebSocket-Protocol 中提供的子协议
+        
+    Returns:
+        Optional[str]: 选中的子协议；客户端没有提供支持的子协议时返回None（使用 JSON 文本帧）
+    """
+    offered = [protocol.strip() for protocol in offered]
+    for protocol in config.WS_SUBPROTOCOLS:
+        if protocol in offered:
+            return protocol
+    return None
+
+
+def encode_frame(message: Any, subprotocol: Optional[str]) -> Union[str, bytes]:
+    """
+    按协商的子协议编码一帧
+    
+    Args:
+        message: 消息字典
+        subprotocol: 协商的子协议
+        
+    Returns:
+        Union[str, bytes]: JSON 文本或 MessagePack 二进制
+    """
+    if subprotocol == config.WS_SUBPROTOCOL_MSGPACK:
+        return packb(message)
+    return json.dumps(message)
+
+
+def packb(obj: Any) -> bytes:
+    """
+    编码为 MessagePack
+    
+    Args:
+        obj: 要编码的对象
+        
+    Returns:
+        bytes: MessagePack 字节
+        
+    Raises:
+        TypeError: 如果对象包含不支持的类型
+    """
+    out = bytearray()
+    _pack(obj, out)
+    return bytes(out)
+
+
+def _pack(obj: Any, out: bytearray) -> None:
+    if obj is None:
+        out.append(0xc0)
+    elif obj is True:
+        out.append(0xc3)
+    elif obj is False:
+        out.append(0xc2)
+    elif isinstance(obj, int):
+        _pack_int(obj, out)
+    elif isinstance(obj, float):
+        out.append(0xcb)
+        out += struct.pack(">d", obj)
+    elif isinstance(obj, str):
+        data = obj.encode("utf-8")
+        size = len(data)
+        if size < 32:
+            out.append(0xa0 | size)
+        elif size < 0x100:
+            out += struct.pack(">BB", 0xd9, size)
+        elif size < 0x10000:
+            out += struct.pack(">BH", 0xda, size)
+        else:
+            out += struct.pack(">BI", 0xdb, size)
+        out += data
+    elif isinstance(obj, (list, tuple)):
+        _pack_header(len(obj), 0x90, 0xdc, 0xdd, out)
+        for item in obj:
+            _pack(item, out)
+    elif isinstance(obj, dict):
+        _pack_header(len(obj), 0x80, 0xde, 0xdf, out)
+        for key, value in obj.items():
+            _pack(str(key), out)
+            _pack(value, out)
+    else:
+        raise TypeError(f"Cannot encode {type(obj).__name__} as MessagePack")
+
+
+def _pack_header(size: int, fix_base: int, code16: int, code32: int, out: bytearray) -> None:
+    if size < 16:
+        out.append(fix_base | size)
+    elif size < 0x10000:
+        out += struct.pack(">BH", code16, size)
+    else:
+        out += struct.pack(">BI", code32, size)
+
+
+def _pack_int(value: int, out: bytearray) -> None:
+    if 0 <= value < 0x80:
+        out.append(value)
+    elif -32 <= value < 0:
+        out.append(value & 0xff)
+    elif 0 <= value < 0x100:
+        out += struct.pack(">BB", 0xcc, value)
+    elif 0 <= value < 0x10000:
+        out += struct.pack(">BH", 0xcd, value)
+    elif 0 <= value < 0x100000000:
+        out += struct.pack(">BI", 0xce, value)
+    elif 0 <= value < 0x10000000000000000:
+        out += struct.pack(">BQ", 0xcf, value)
+    elif -0x80 <= value < 0:
+        out += struct.pack(">Bb", 0xd0, value)
+    elif -0x8000 <= value < 0:
+        out += struct.pack(">Bh", 0xd1, value)
+    elif -0x80000000 <= value < 0:
+        out += struct.pack(">Bi", 0xd2, value)
+    elif -0x8000000000000000 <= value < 0:
+        out += struct.pack(">Bq", 0xd3, value)
+    else:
+        raise TypeError(f"Integer {value} out of MessagePack range")
+
+
+if __name__ == "__main__":
+    # 编码大小与耗时对比：python ws_codec.py
+    import time
+    import zlib
+    
+    now = int(time.time() * 1000)
+    samples = {
+        "NEW_QUESTION": {
+            "type": config.WS_TYPE_NEW_QUESTION,
+            "data": {
+                "questionId": 10234, "userId": 512, "tutorId": None,
+                "content": "请问这道二次函数题的顶点坐标怎么求？已经尝试了配方法但结果不对。",
+                "imagePaths": ["/uploads/512/1700000000000.jpg", "/uploads/512/1700000000001.jpg"],
+                "status": "pending", "createdAt": now, "updatedAt": now
+            },
+            "timestamp": str(now),
+            "seq": 48213
+        },
+        "QUESTION_UPDATED": {
+            "type": config.WS_TYPE_QUESTION_UPDATED,
+            "data": {"questionId": 10234, "userId": 512, "tutorId": 77, "status": "in_progress", "updatedAt": now},
+            "timestamp": str(now),
+            "seq": 48214
+        },
+        "CHAT_MESSAGE": {
+            "type": config.WS_TYPE_CHAT_MESSAGE,
+            "data": {
+                "id": 880123, "questionId": 10234, "senderId": 77, "content": "先把二次项系数提出来",
+                "messageType": "text", "createdAt": now, "isRead": False
+            },
+            "timestamp": str(now),
+            "seq": 48215
+        }
+    }
+    
+    def deflate(data: bytes) -> int:
+        compressor = zlib.compressobj(6, zlib.DEFLATED, -15)
+        return len(compressor.compress(data) + compressor.flush(zlib.Z_SYNC_FLUSH)) - 4
+    
+    print(f"{'type':<18}{'json':>8}{'msgpack':>10}{'json+deflate':>14}{'msgpack+deflate':>17}")
+    for name, message in samples.items():
+        text = json.dumps(message).encode("utf-8")
+        binary = packb(message)
+        print(f"{name:<18}{len(text):>8}{len(binary):>10}{deflate(text):>14}{deflate(binary):>17}")
+    
+    rounds = 20000
+    message = samples["NEW_QUESTION"]
+    start = time.perf_counter()
+    for _ in range(rounds):
+        json.dumps(message)
+    json_us = (time.perf_counter() - start) / rounds * 1e6
+    start = time.perf_counter()
+    for _ in range(rounds):
+        packb(message)
+    msgpack_us = (time.perf_counter() - start) / rounds * 1e6
+    print(f"encode NEW_QUESTION: json {json_us:.1f} us, msgpack {msgpack_us:.1f} us")